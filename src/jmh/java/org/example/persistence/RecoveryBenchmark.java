@@ -0,0 +1,73 @@
+package org.example.persistence;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.example.service.LockMode;
+import org.example.service.WarehouseService;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Time for WarehouseService to start up from a data directory holding a snapshot plus a log tail written since it.
+// Every measurement recovers from freshly written files, so nothing is left over from the previous start.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecoveryBenchmark {
+
+    @Param({"900000"})
+    int snapshotProducts;
+
+    @Param({"100000"})
+    int loggedProducts;
+
+    Path dataDirectory;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dataDirectory = Files.createTempDirectory("recovery-benchmark");
+        List<ProductRecord> products = new ArrayList<>(snapshotProducts);
+        for (int id = 1; id <= snapshotProducts; id++) {
+            products.add(product(id, Category.values()[id % Category.values().length], 1 + id % 10));
+        }
+        ProductSnapshot.write(dataDirectory.resolve(String.format("snapshot-%020d.bin", snapshotProducts)), snapshotProducts, products);
+        try (ProductLog log = new ProductLog(dataDirectory.resolve(String.format("wal-%020d.log", snapshotProducts + 1)), snapshotProducts)) {
+            long sequence = 0;
+            for (int id = snapshotProducts + 1; id <= snapshotProducts + loggedProducts; id++) {
+                sequence = log.append(product(id, Category.BOOKS, 5));
+            }
+            log.awaitDurable(sequence);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int recover() {
+        WarehouseService recovered = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+        int size = recovered.getAllProducts().size();
+        recovered.close();
+        return size;
+    }
+
+    private static ProductRecord product(int id, Category category, int rating) {
+        return new ProductRecord(id, "Product " + id, category, rating, Instant.ofEpochMilli(id), Instant.ofEpochMilli(id));
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.resource;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost and size of a page of products in each wire format, run with the GC profiler to see allocation too:
+//   mvn -Pbenchmark test-compile exec:exec -Djmh.args="ProductFormatBenchmark -prof gc"
+// jsonb is what responses cost before the hand-written formats; the size of each body is printed at setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductFormatBenchmark {
+
+    @Param({"1000"})
+    int size;
+
+    List<ProductRecord> products;
+    byte[] json;
+    byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        products = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            products.add(new ProductRecord(id, "Product " + id, Category.values()[id % 4], 1 + id % 10,
+                    Instant.ofEpochMilli(1_700_000_000_000L + id * 1000L), id % 3 == 0 ? Instant.ofEpochMilli(1_700_000_000_000L + id * 2000L) : null));
+        }
+        json = ProductStreamingOutput.jsonb.toJson(products).getBytes(StandardCharsets.UTF_8);
+        binary = ProductFormat.BINARY.render(products);
+        System.out.printf("%njson %d bytes, ndjson %d bytes, binary %d bytes%n", json.length,
+                ProductFormat.NDJSON.render(products).length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] jsonb() {
+        return ProductStreamingOutput.jsonb.toJson(products).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] json() {
+        return ProductFormat.JSON.render(products);
+    }
+
+    @Benchmark
+    public byte[] ndjson() {
+        return ProductFormat.NDJSON.render(products);
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return ProductFormat.BINARY.render(products);
+    }
+
+    @Benchmark
+    public Object readJsonb() {
+        return ProductStreamingOutput.jsonb.fromJson(new ByteArrayInputStream(json), ProductRecord[].class);
+    }
+
+    @Benchmark
+    public void readBinary(Blackhole blackhole) throws IOException {
+        InputStream input = new ByteArrayInputStream(binary);
+        for (ProductRecord product = ProductFormat.readRow(input); product != null; product = ProductFormat.readRow(input)) {
+            blackhole.consume(product);
+        }
+    }
+}
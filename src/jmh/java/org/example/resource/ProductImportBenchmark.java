@@ -0,0 +1,94 @@
+package org.example.resource;
+
+import jakarta.ws.rs.core.Response;
+import org.example.entities.Category;
+import org.example.entities.ProductImportReport;
+import org.example.entities.ProductRecord;
+import org.example.service.WarehouseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Products per second through the bulk import, for a JSON array and for NDJSON. read* only parses the body into
+// products with ProductBatchReader; import* is the whole POST /products/batch, reading, validating and inserting
+// into an empty in-memory warehouse in batches.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductImportBenchmark {
+    static final int SIZE = 100_000;
+
+    byte[] json;
+    byte[] ndjson;
+    ProductResource productResource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<ProductRecord> products = new ArrayList<>(SIZE);
+        for (int id = 1; id <= SIZE; id++) {
+            products.add(new ProductRecord(id, "Product " + id, Category.values()[id % 4], 1 + id % 10,
+                    Instant.ofEpochMilli(1_700_000_000_000L + id * 1000L), null));
+        }
+        json = ProductFormat.JSON.render(products);
+        ndjson = ProductFormat.NDJSON.render(products);
+    }
+
+    // Every import starts from an empty warehouse, as the IDs are the same each time
+    @Setup(Level.Invocation)
+    public void emptyWarehouse() {
+        productResource = new ProductResource(new WarehouseService(), new ResponseCache(),
+                new RequestExecutor(RequestExecutor.Mode.SYNCHRONOUS, 1, 0, 0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void readJson(Blackhole blackhole) throws IOException {
+        read(ProductBatchReader.jsonArray(new ByteArrayInputStream(json)), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void readNdjson(Blackhole blackhole) throws IOException {
+        read(ProductBatchReader.ndjson(new ByteArrayInputStream(ndjson)), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int importJson() {
+        return importProducts(productResource::addProducts, json);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int importNdjson() {
+        return importProducts(productResource::addProductsFromNdjson, ndjson);
+    }
+
+    private static void read(ProductBatchReader reader, Blackhole blackhole) throws IOException {
+        try (reader) {
+            for (ProductBatchReader.Item item = reader.next(); item != null; item = reader.next()) {
+                blackhole.consume(item);
+            }
+        }
+    }
+
+    private static int importProducts(Function<InputStream, CompletionStage<Response>> endpoint, byte[] body) {
+        Response response = endpoint.apply(new ByteArrayInputStream(body)).toCompletableFuture().join();
+        ProductImportReport report = (ProductImportReport) response.getEntity();
+        if (report.added() != SIZE) {
+            throw new IllegalStateException("Imported " + report.added() + " of " + SIZE + " products: " + report.errors());
+        }
+        return report.added();
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.resource;
+
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.example.metrics.LatencyHistogram;
+import org.example.service.LockMode;
+import org.example.service.WarehouseService;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.specimpl.RequestImpl;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// GET latency under overload in each request execution mode. A fixed pool of worker threads stands in for the
+// container's, an open-loop generator sends product lookups at a fixed rate whether or not earlier ones finished, and a
+// writer imports a large batch every second, holding the write lock while GETs arrive. Latency is measured from when
+// each request was due, so a backlog in the worker pool shows up as it would to clients. Not a JMH benchmark, run it
+// through the benchmark profile with a request rate, a duration in seconds and a number of workers:
+//   mvn -Pbenchmark test-compile exec:exec -Djmh.main=org.example.resource.RequestLoadTest -Djmh.args="4000 10 16"
+public final class RequestLoadTest {
+    private static final int CATALOG_SIZE = 100_000;
+    private static final int BURST_SIZE = 50_000;
+
+    private RequestLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        for (RequestExecutor.Mode mode : RequestExecutor.Mode.values()) {
+            run(mode, rate, seconds, workers);
+        }
+    }
+
+    private static void run(RequestExecutor.Mode mode, int rate, int seconds, int workers) throws Exception {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        warehouseService.addProducts(products(1, CATALOG_SIZE));
+        RequestExecutor requestExecutor = new RequestExecutor(mode, workers, 10 * workers, 500);
+        // No response cache, so every lookup reads the warehouse
+        ProductResource productResource = new ProductResource(warehouseService, new ResponseCache(0), requestExecutor);
+        ExecutorService workerPool = Executors.newFixedThreadPool(workers);
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder shed = new LongAdder();
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = Thread.ofPlatform().name("writer").start(() -> {
+            for (int firstId = CATALOG_SIZE + 1; writing.get(); firstId += BURST_SIZE) {
+                warehouseService.addProducts(products(firstId, BURST_SIZE));
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        });
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        for (long i = 0; i < (long) rate * seconds; i++) {
+            long due = start + i * interval;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int id = 1 + (int) (i * 7919 % CATALOG_SIZE);
+            workerPool.execute(() -> productResource.getProductById(id, null, request(id)).whenComplete((response, failure) -> {
+                if (failure != null) {
+                    shed.increment();
+                } else {
+                    latencies.record(System.nanoTime() - due);
+                }
+            }));
+        }
+        workerPool.shutdown();
+        workerPool.awaitTermination(1, TimeUnit.MINUTES);
+        requestExecutor.close();
+        writing.set(false);
+        writer.join();
+        warehouseService.close();
+
+        System.out.printf("%-15s %,d requests: p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms, %,d shed with 503%n",
+                mode, latencies.count() + shed.sum(), millis(latencies.valueAtQuantile(0.5)), millis(latencies.valueAtQuantile(0.99)),
+                millis(latencies.valueAtQuantile(0.999)), millis(latencies.max()), shed.sum());
+    }
+
+    private static Request request(int id) {
+        try {
+            return new RequestImpl(MockHttpRequest.get("/products/" + id), new MockHttpResponse());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<ProductRecord> products(int firstId, int count) {
+        List<ProductRecord> products = new ArrayList<>(count);
+        for (int id = firstId; id < firstId + count; id++) {
+            products.add(new ProductRecord(id, "Product " + id, Category.values()[id % 4], 1 + id % 10, Instant.now(), null));
+        }
+        return products;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.resource;
+
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.example.service.LockMode;
+import org.example.service.WarehouseService;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.specimpl.RequestImpl;
+import org.openjdk.jmh.annotations.*;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Allocation cost of logging on the full-catalog GET, run with the GC profiler:
+//   mvn -Pbenchmark test-compile exec:exec -Djmh.args="RequestLoggingBenchmark -prof gc"
+// Compare gc.alloc.rate.norm of getAllProductsThroughResource with fetchAllProducts, which does the same work
+// without the resource: the difference is what the resource and its logging allocate, and must not grow with size.
+// INFO is enabled and log lines go to target/benchmark.log, so messages are really formatted.
+// The response cache is disabled so every call builds its response; getAllProductsCached shows a cache hit.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dorg.slf4j.simpleLogger.logFile=target/benchmark.log", "-Dorg.slf4j.simpleLogger.defaultLogLevel=info"})
+public class RequestLoggingBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    WarehouseService warehouseService;
+    ProductResource productResource;
+    ProductResource cachedProductResource;
+    Request request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws URISyntaxException {
+        warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        List<ProductRecord> products = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            products.add(new ProductRecord(id, "Product " + id, Category.values()[id % 4], 1 + id % 10, Instant.now(), null));
+        }
+        warehouseService.addProducts(products);
+        productResource = new ProductResource(warehouseService, new ResponseCache(0));
+        cachedProductResource = new ProductResource(warehouseService, new ResponseCache(1L << 30));
+        request = new RequestImpl(MockHttpRequest.get("/products"), new MockHttpResponse());
+    }
+
+    @Benchmark
+    public List<ProductRecord> fetchAllProducts() {
+        return warehouseService.getAllProducts();
+    }
+
+    @Benchmark
+    public Response getAllProductsThroughResource() {
+        return productResource.getAllProducts(0, null, false, null, null, request).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Response getAllProductsCached() {
+        return cachedProductResource.getAllProducts(0, null, false, null, null, request).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.service;
+
+import org.example.entities.ProductRecord;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Full scans run sequentially and as parallel fork-join segments, to find the catalog size where splitting starts to
+// pay off on the machine at hand (the default of -Dwarehouse.parallel.threshold). Compare the two parallel values
+// per size, e.g. -Djmh.args="ParallelScanBenchmark -p storeType=COLUMNAR".
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelScanBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    @Param({"PERSISTENT", "COLUMNAR", "MAPPED"})
+    StoreType storeType;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    Warehouse warehouse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        warehouse = Products.warehouse(storeType);
+        Products.fill(warehouse, size);
+        // Every tenth product modified, so the modified scan returns a tenth of the catalog
+        for (int id = 1; id <= size; id += 10) {
+            warehouse.updateProduct(id, Products.name(id + 1), Products.category(id), Products.rating(id));
+        }
+        ParallelScan.setThreshold(parallel ? 1 : Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Products.close(warehouse);
+    }
+
+    @Benchmark
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        return warehouse.getAllProductsThatHasBeenModifiedSinceCreation();
+    }
+
+    // Only the row stores build their records in parallel
+    @Benchmark
+    public List<ProductRecord> getAllProducts() {
+        return warehouse.getAllProducts();
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Deterministic synthetic catalog shared by the benchmarks
+final class Products {
+    private static final String[] WORDS = {"Apple", "Blue", "Cotton", "Digital", "Electric", "Funny", "Green", "Happy",
+            "Iron", "Jumbo", "Kids", "Large", "Magic", "Nordic", "Orange", "Pocket", "Quiet", "Retro", "Smart", "Tiny"};
+    private static final Category[] CATEGORIES = Category.values();
+    // Creation dates are spread over the last year, one step per product id
+    private static final long NOW = System.currentTimeMillis();
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private Products() {}
+
+    static String name(int id) {
+        return WORDS[id % WORDS.length] + " " + WORDS[(id / WORDS.length) % WORDS.length] + " " + id;
+    }
+
+    static Category category(int id) {
+        return CATEGORIES[id % CATEGORIES.length];
+    }
+
+    static int rating(int id) {
+        return 1 + (id * 7) % 10;
+    }
+
+    static Instant createdDate(int id, int size) {
+        return Instant.ofEpochMilli(NOW - YEAR_MILLIS + YEAR_MILLIS / size * id);
+    }
+
+    static ProductRecord product(int id, int size) {
+        Instant createdDate = createdDate(id, size);
+        return new ProductRecord(id, name(id), category(id), rating(id), createdDate, createdDate);
+    }
+
+    static List<ProductRecord> products(int firstId, int count, int size) {
+        List<ProductRecord> products = new ArrayList<>(count);
+        for (int id = firstId; id < firstId + count; id++) {
+            products.add(product(id, size));
+        }
+        return products;
+    }
+
+    // An empty warehouse of the store type, the mapped store kept in a fresh temporary directory
+    static Warehouse warehouse(StoreType storeType) {
+        if (storeType != StoreType.MAPPED) {
+            return new Warehouse(storeType, Clock.systemDefaultZone());
+        }
+        try {
+            return new Warehouse(MappedProductStore.open(Files.createTempDirectory("warehouse-store"), Clock.systemDefaultZone()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Closes the warehouse and removes the temporary files of a mapped store
+    static void close(Warehouse warehouse) {
+        warehouse.close();
+        if (warehouse.snapshot() instanceof MappedProductStore store) {
+            try (var paths = Files.walk(store.directory())) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static void fill(Warehouse warehouse, int size) {
+        for (int id = 1; id <= size; id++) {
+            warehouse.addProduct(id, name(id), category(id), rating(id), createdDate(id, size));
+        }
+    }
+
+    static void fill(WarehouseService warehouseService, int size) {
+        for (int firstId = 1; firstId <= size; firstId += 10_000) {
+            warehouseService.addProducts(products(firstId, Math.min(10_000, size - firstId + 1), size));
+        }
+    }
+}
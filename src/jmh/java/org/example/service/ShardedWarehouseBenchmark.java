@@ -0,0 +1,69 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of a catalog split over in-process shards against one WarehouseService (shards=1 routes every call to
+// the one shard). Writes on different shards take different locks, so concurrent updates scale with the shards up to
+// the cores there are; queries spanning all shards pay for the scatter and the merge.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedWarehouseBenchmark {
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"1", "4"})
+    int shards;
+
+    ShardedWarehouse warehouse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        warehouse = ShardedWarehouse.inProcess(shards, shard -> new WarehouseService(LockMode.SNAPSHOT, StoreType.COLUMNAR));
+        for (int firstId = 1; firstId <= size; firstId += 10_000) {
+            warehouse.addProducts(Products.products(firstId, Math.min(10_000, size - firstId + 1), size));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        warehouse.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean update() {
+        int id = randomId();
+        return warehouse.updateProduct(id, Products.name(id + 1), Products.category(id), Products.rating(id + 1));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<ProductRecord> lookup() {
+        return warehouse.getProductById(randomId());
+    }
+
+    @Benchmark
+    public List<ProductRecord> categoryPage() {
+        return warehouse.getProductsByCategorySortedByProductNameAfterId(Category.BOOKS, 0, 100);
+    }
+
+    @Benchmark
+    public long categoryCount() {
+        return warehouse.getNumberOfProductsInCategory(Category.TOYS);
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(size);
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Instant;
+
+// Retained heap per product of each store type, measured as the heap in use after a full GC with and without a filled
+// catalog. The mapped store keeps its products in files, so only its orderings count. Not a JMH benchmark, run it
+// through the benchmark profile with a catalog size:
+//   mvn -Pbenchmark test-compile exec:exec -Djmh.main=org.example.service.StoreFootprint -Djmh.args=1000000
+public final class StoreFootprint {
+
+    private StoreFootprint() {}
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        for (StoreType storeType : StoreType.values()) {
+            long before = usedHeapAfterGc();
+            Warehouse warehouse = Products.warehouse(storeType);
+            Products.fill(warehouse, size);
+            // Builds the orderings the columnar store creates lazily, so both stores hold every index
+            warehouse.getProductsAfterId(0, 1);
+            warehouse.getAllProductsCreatedAfterASpecificDate(Instant.now());
+            for (Category category : Category.values()) {
+                warehouse.getProductsByCategorySortedByProductNameAfterId(category, 0, 1);
+            }
+            long retained = usedHeapAfterGc() - before;
+            System.out.printf("%-10s %,d products: %,d MB retained, %d bytes per product%n",
+                    storeType, warehouse.getAllProducts().size(), retained >> 20, retained / size);
+            Products.close(warehouse);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,154 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import org.openjdk.jmh.annotations.*;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Single-threaded cost of every Warehouse query at different catalog sizes.
+// The 10M catalog needs a large heap, e.g. -Djmh.args="WarehouseBenchmark -jvmArgs -Xmx16g".
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarehouseBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int size;
+
+    @Param({"PERSISTENT", "COLUMNAR", "MAPPED"})
+    StoreType storeType;
+
+    Warehouse warehouse;
+    Instant recentDate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        warehouse = Products.warehouse(storeType);
+        Products.fill(warehouse, size);
+        // Roughly the newest 1% of the catalog
+        recentDate = Products.createdDate(size - size / 100, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Products.close(warehouse);
+    }
+
+    @Benchmark
+    public Optional<ProductRecord> getProductById() {
+        return warehouse.getProductById(randomId());
+    }
+
+    // Ids above the catalog size never exist, so this measures the successful check done on every add
+    @Benchmark
+    public void checkIfProductIdExists() {
+        warehouse.checkIfProductIdExists(size + randomId());
+    }
+
+    @Benchmark
+    public boolean updateProduct() {
+        int id = randomId();
+        return warehouse.updateProduct(id, Products.name(id + 1), Products.category(id), Products.rating(id + 1));
+    }
+
+    // Only the rating changes, so the name index and name orderings are left alone
+    @Benchmark
+    public Optional<ProductRecord> patchRating() {
+        int id = randomId();
+        return warehouse.patchProduct(id, null, null, Products.rating(id + 1));
+    }
+
+    // Puts the product back so the catalog keeps its size; the row stores move their last row into the hole
+    @Benchmark
+    public void removeAndAddBack() {
+        ProductRecord product = warehouse.removeProduct(randomId()).orElseThrow();
+        warehouse.addProduct(product.id(), product.name(), product.category(), product.rating(), product.createdDate());
+    }
+
+    @Benchmark
+    public List<ProductRecord> getProductsAfterId() {
+        return warehouse.getProductsAfterId(randomId(), 100);
+    }
+
+    @Benchmark
+    public List<ProductRecord> getAllProducts() {
+        return warehouse.getAllProducts();
+    }
+
+    @Benchmark
+    public List<ProductRecord> getAllProductsByCategorySortedByProductName() {
+        return warehouse.getAllProductsByCategorySortedByProductName(Category.BOOKS);
+    }
+
+    @Benchmark
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate() {
+        return warehouse.getAllProductsCreatedAfterASpecificDate(recentDate);
+    }
+
+    @Benchmark
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        return warehouse.getAllProductsThatHasBeenModifiedSinceCreation();
+    }
+
+    @Benchmark
+    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
+        return warehouse.getAllCategoriesThatHasAtLeastOneProduct();
+    }
+
+    @Benchmark
+    public long getNumberOfProductsInCategory() {
+        return warehouse.getNumberOfProductsInCategory(Category.TOYS);
+    }
+
+    @Benchmark
+    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
+        return warehouse.getNumberOfProductsStartingWithEachLetter();
+    }
+
+    @Benchmark
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
+        return warehouse.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate();
+    }
+
+    // Read in the requested order from the category's name index, stopping after the limit
+    @Benchmark
+    public ProductSearch.Result searchCategoryByName() {
+        return warehouse.search(new ProductQuery(null, Set.of(Category.BOOKS), 1, 10, null, null, null, null, null, null,
+                List.of(new ProductQuery.SortKey(ProductField.NAME, false)), 20));
+    }
+
+    // Best rated of the recent products, kept in a bounded heap while reading the creation date range
+    @Benchmark
+    public ProductSearch.Result searchRecentTopRated() {
+        return warehouse.search(new ProductQuery(null, null, 5, 10, recentDate, null, null, null, null, null,
+                List.of(new ProductQuery.SortKey(ProductField.RATING, true)), 20));
+    }
+
+    // Every word of the name, the rarest of which is the product ID, read from its posting list
+    @Benchmark
+    public ProductSearch.Result searchText() {
+        return warehouse.search(new ProductQuery(null, null, 1, 10, null, null, null, null, null, Products.name(randomId()),
+                List.of(), 20));
+    }
+
+    // Digit prefixes complete to many product IDs, all as rare as each other
+    @Benchmark
+    public List<NameSuggestion> suggestWords() {
+        return warehouse.suggest("Magic " + ThreadLocalRandom.current().nextInt(100), 10);
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(size);
+    }
+}
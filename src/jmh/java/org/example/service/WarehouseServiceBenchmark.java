@@ -0,0 +1,82 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductImportError;
+import org.example.entities.ProductRecord;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Throughput of WarehouseService under concurrent read/write mixes for every lock mode.
+// Each group runs 15 reader threads against 1 writer thread (about 94% reads).
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarehouseServiceBenchmark {
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    @Param({"EXCLUSIVE", "READ_WRITE", "STAMPED", "SNAPSHOT"})
+    LockMode lockMode;
+
+    WarehouseService warehouseService;
+    AtomicInteger nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        warehouseService = new WarehouseService(lockMode);
+        Products.fill(warehouseService, size);
+        nextId = new AtomicInteger(size);
+    }
+
+    @Benchmark
+    @Group("lookups")
+    @GroupThreads(15)
+    public Optional<ProductRecord> lookupsRead() {
+        return warehouseService.getProductById(randomId());
+    }
+
+    @Benchmark
+    @Group("lookups")
+    @GroupThreads(1)
+    public boolean lookupsUpdate() {
+        int id = randomId();
+        return warehouseService.updateProduct(id, Products.name(id + 1), Products.category(id), Products.rating(id + 1));
+    }
+
+    @Benchmark
+    @Group("pages")
+    @GroupThreads(15)
+    public List<ProductRecord> pagesRead() {
+        return warehouseService.getProductsByCategorySortedByProductNameAfterId(Category.BOOKS, 0, 100);
+    }
+
+    @Benchmark
+    @Group("pages")
+    @GroupThreads(1)
+    public void pagesAdd() {
+        int id = nextId.incrementAndGet();
+        warehouseService.addProduct(id, Products.name(id), Products.category(id), Products.rating(id), Products.createdDate(size, size));
+    }
+
+    // Bulk import path: one lock acquisition per batch of 10000 new products
+    @Benchmark
+    @Group("import")
+    @GroupThreads(1)
+    @OperationsPerInvocation(10_000)
+    public List<ProductImportError> importBatch() {
+        int firstId = nextId.getAndAdd(10_000) + 1;
+        return warehouseService.addProducts(Products.products(firstId, 10_000, size));
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(size);
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of single product updates from 8 concurrent writers, each taking the write lock itself (LOCKED) or
+// queuing for the writer thread (QUEUED), in memory and with every change made durable in a temporary data directory.
+//   mvn -Pbenchmark test-compile exec:exec -Djmh.args="WriteQueueBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class WriteQueueBenchmark {
+
+    @Param({"100000"})
+    int size;
+
+    @Param({"LOCKED", "QUEUED"})
+    WriteMode writeMode;
+
+    @Param({"false", "true"})
+    boolean durable;
+
+    WarehouseService warehouseService;
+    Path dataDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty(WriteMode.PROPERTY, writeMode.name());
+        if (durable) {
+            dataDirectory = Files.createTempDirectory("warehouse-data");
+            warehouseService = new WarehouseService(LockMode.SNAPSHOT, dataDirectory);
+        } else {
+            warehouseService = new WarehouseService(LockMode.SNAPSHOT);
+        }
+        Products.fill(warehouseService, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        warehouseService.close();
+        if (dataDirectory != null) {
+            try (var paths = Files.walk(dataDirectory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean update() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(size);
+        return warehouseService.updateProduct(id, Products.name(id + 1), Products.category(id), Products.rating(id + 1));
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.entities;
+
+import jakarta.json.bind.adapter.JsonbAdapter;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+// Keeps product dates in the JSON clients have always seen, which is how JSON-B writes a java.util.Date: an ISO
+// date-time in the UTC zone such as 2023-11-14T22:13:20.12Z[UTC], trailing zeros of the fraction left out.
+// Reads ISO date-times with or without offset and zone; without an offset the time is taken as UTC.
+public class JsonDateAdapter implements JsonbAdapter<Instant, String> {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ISO_DATE_TIME.withZone(ZoneId.of("UTC"));
+
+    @Override
+    public String adaptToJson(Instant instant) {
+        return format(instant);
+    }
+
+    @Override
+    public Instant adaptFromJson(String text) {
+        return parse(text);
+    }
+
+    public static String format(Instant instant) {
+        return FORMAT.format(instant);
+    }
+
+    // Throws a DateTimeParseException for text that is not an ISO date-time
+    public static Instant parse(String text) {
+        TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parse(text);
+        if (parsed.isSupported(ChronoField.OFFSET_SECONDS)) {
+            return ZonedDateTime.from(parsed).toInstant();
+        }
+        return LocalDateTime.from(parsed).toInstant(ZoneOffset.UTC);
+    }
+}
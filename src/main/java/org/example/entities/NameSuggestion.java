@@ -0,0 +1,7 @@
+package org.example.entities;
+
+// A word completing a prefix and how many product names have it
+public record NameSuggestion(
+        String word,
+        int products) {
+}
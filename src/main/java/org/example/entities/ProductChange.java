@@ -0,0 +1,19 @@
+package org.example.entities;
+
+import jakarta.json.bind.annotation.JsonbCreator;
+
+// A product's state after a change, numbered in the order the changes were applied; a removal carries the last state
+public record ProductChange(
+        long sequence,
+        ProductRecord product,
+        boolean removed) {
+
+    // Read back by replicas, which JSON-B does with the canonical constructor only when told to
+    @JsonbCreator
+    public ProductChange {
+    }
+
+    public ProductChange(long sequence, ProductRecord product) {
+        this(sequence, product, false);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.entities;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+// The fields of a product by their JSON names, for sorting and projecting search results
+public enum ProductField {
+    ID("id", ProductRecord::id, Comparator.comparingInt(ProductRecord::id)),
+    NAME("name", ProductRecord::name, Comparator.comparing(ProductRecord::name, ProductField::compareNames)),
+    CATEGORY("category", ProductRecord::category, Comparator.comparing(ProductRecord::category)),
+    RATING("rating", ProductRecord::rating, Comparator.comparingInt(ProductRecord::rating)),
+    // Products without a date sort first
+    CREATED_DATE("createdDate", ProductRecord::createdDate,
+            Comparator.comparing(ProductRecord::createdDate, Comparator.nullsFirst(Comparator.naturalOrder()))),
+    MODIFIED_DATE("modifiedDate", ProductRecord::modifiedDate,
+            Comparator.comparing(ProductRecord::modifiedDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+    private final String jsonName;
+    private final Function<ProductRecord, Object> value;
+    private final Comparator<ProductRecord> comparator;
+
+    ProductField(String jsonName, Function<ProductRecord, Object> value, Comparator<ProductRecord> comparator) {
+        this.jsonName = jsonName;
+        this.value = value;
+        this.comparator = comparator;
+    }
+
+    public String jsonName() {
+        return jsonName;
+    }
+
+    public Object valueOf(ProductRecord product) {
+        return value.apply(product);
+    }
+
+    // Ascending order of the field
+    public Comparator<ProductRecord> comparator() {
+        return comparator;
+    }
+
+    // The one order of names, by code point, which is also the order of their UTF-8 bytes. Every store, index, search
+    // and shard merge sorts names this way, so their orders agree and cursors from one are valid in another.
+    public static int compareNames(String name, String other) {
+        for (int i = 0; i < Math.min(name.length(), other.length()); i++) {
+            char c = name.charAt(i);
+            char d = other.charAt(i);
+            if (c != d) {
+                // Surrogate pairs encode the code points above every other char
+                if (Character.isSurrogate(c) != Character.isSurrogate(d)) {
+                    return Character.isSurrogate(c) ? 1 : -1;
+                }
+                return c - d;
+            }
+        }
+        return name.length() - other.length();
+    }
+
+    public static ProductField fromJsonName(String name) {
+        for (ProductField field : values()) {
+            if (field.jsonName.equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown product field: " + name + ".");
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.entities;
+
+// Why the product at a position in an import could not be added
+public record ProductImportError(
+        int index,
+        Integer id,
+        String message) {
+}
@@ -0,0 +1,9 @@
+package org.example.entities;
+
+import java.util.List;
+
+public record ProductImportReport(
+        int received,
+        int added,
+        List<ProductImportError> errors) {
+}
@@ -1,7 +1,8 @@
 package org.example.entities;
 
+import jakarta.json.bind.annotation.JsonbTypeAdapter;
 import jakarta.validation.constraints.*;
-import java.util.Date;
+import java.time.Instant;
 
 public record ProductRecord(
         @Min(value = 1, message = "Product ID must be at least 1.")
@@ -14,6 +15,8 @@ public record ProductRecord(
         @Max(value = 10, message = "Product rating must be at most 10.")
         int rating,
         @PastOrPresent(message = "Product creation date cannot be in the future.")
-        Date createdDate,
-        Date modifiedDate) {
-}
\ No newline at end of file
+        @JsonbTypeAdapter(JsonDateAdapter.class)
+        Instant createdDate,
+        @JsonbTypeAdapter(JsonDateAdapter.class)
+        Instant modifiedDate) {
+}
@@ -0,0 +1,15 @@
+package org.example.exceptionmapper;
+
+// A conditional change was refused because the product is no longer at a version the client named in If-Match
+public class ProductVersionConflictException extends RuntimeException {
+    private final long currentVersion;
+
+    public ProductVersionConflictException(String message, long currentVersion) {
+        super(message);
+        this.currentVersion = currentVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
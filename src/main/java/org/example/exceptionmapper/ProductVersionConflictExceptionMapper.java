@@ -0,0 +1,23 @@
+package org.example.exceptionmapper;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Provider
+public class ProductVersionConflictExceptionMapper implements ExceptionMapper<ProductVersionConflictException> {
+    private static final Logger logger = LoggerFactory.getLogger(ProductVersionConflictExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ProductVersionConflictException exception) {
+        logger.info("Precondition failed: {}", exception.getMessage());
+        // The current entity tag tells the client which version it would now be changing
+        return Response.status(Response.Status.PRECONDITION_FAILED)
+                .tag(new EntityTag(Long.toString(exception.getCurrentVersion())))
+                .entity("Precondition failed: " + exception.getMessage())
+                .build();
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.exceptionmapper;
+
+// A replica has not caught up with the change a client asked to read after; the client should retry after the given
+// number of seconds or read from the primary
+public class ReplicaLagException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public ReplicaLagException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.exceptionmapper;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Provider
+public class ReplicaLagExceptionMapper implements ExceptionMapper<ReplicaLagException> {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ReplicaLagException exception) {
+        logger.warn("Replica behind: {}", exception.getMessage());
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds())
+                .entity("Replica behind: " + exception.getMessage())
+                .build();
+    }
+}
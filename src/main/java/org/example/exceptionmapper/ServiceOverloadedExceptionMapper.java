@@ -0,0 +1,23 @@
+package org.example.exceptionmapper;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Provider
+public class ServiceOverloadedExceptionMapper implements ExceptionMapper<ServiceOverloadedException> {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceOverloadedExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ServiceOverloadedException exception) {
+        // Shed requests come in bursts, so they are not worth a line each at warn level
+        logger.debug("Request shed: {}", exception.getMessage());
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds())
+                .entity("Service overloaded: " + exception.getMessage())
+                .build();
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.filters;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Structured access log: one key=value line per sampled request on the "org.example.access" logger,
+// so it can be routed to its own (asynchronous) appender. Only 1 in warehouse.accesslog.sample-rate
+// requests is logged, server errors always are. Log arguments are strings and boxed numbers only,
+// so an async appender never keeps request or response objects alive.
+@Provider
+public class AccessLogFilter implements ContainerResponseFilter {
+    public static final String SAMPLE_RATE_PROPERTY = "warehouse.accesslog.sample-rate";
+    private static final Logger accessLogger = LoggerFactory.getLogger("org.example.access");
+
+    private final long sampleRate = Math.max(1, Long.getLong(SAMPLE_RATE_PROPERTY, 100));
+    private final AtomicLong requests = new AtomicLong();
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        boolean sampled = requests.getAndIncrement() % sampleRate == 0;
+        if (!accessLogger.isInfoEnabled() || !(sampled || responseContext.getStatus() >= 500)) {
+            return;
+        }
+        long durationMicros = requestContext.getProperty(MetricsFilter.START_PROPERTY) instanceof MetricsFilter.RequestStart start
+                ? (System.nanoTime() - start.nanos) / 1_000 : -1;
+        accessLogger.info("method={} path={} status={} durationMicros={} sampleRate={}",
+                requestContext.getMethod(), requestContext.getUriInfo().getPath(), responseContext.getStatus(), durationMicros, sampleRate);
+    }
+}
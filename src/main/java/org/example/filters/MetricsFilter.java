@@ -0,0 +1,45 @@
+package org.example.filters;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import org.example.metrics.RequestMetrics;
+
+// Times every request from the first filter to the response and records it per endpoint
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    // The RequestStart of the request, also read by AccessLogFilter
+    static final String START_PROPERTY = MetricsFilter.class.getName() + ".start";
+
+    // Request start in System.nanoTime(), kept as a primitive in the one object a request allocates for it
+    static final class RequestStart {
+        final long nanos;
+
+        RequestStart(long nanos) {
+            this.nanos = nanos;
+        }
+    }
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Inject
+    RequestMetrics requestMetrics;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, new RequestStart(System.nanoTime()));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (requestContext.getProperty(START_PROPERTY) instanceof RequestStart start && requestMetrics != null) {
+            requestMetrics.record(resourceInfo.getResourceMethod(), System.nanoTime() - start.nanos);
+        }
+    }
+}
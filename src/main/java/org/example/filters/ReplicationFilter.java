@@ -0,0 +1,63 @@
+package org.example.filters;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+import org.example.service.ReplicaFollower;
+import org.example.service.WarehouseService;
+import java.net.URI;
+import java.util.Set;
+
+// Read-your-writes across a primary and its read replicas. Every response tells the last change sequence of the
+// catalog it was served from in X-Warehouse-Sequence; a client that made a change passes the sequence it got as
+// ?min-sequence=<n> to a replica, whose product reads wait up to a bound until it has applied that change and answer
+// 503 with Retry-After when it has not. The wait is done by ProductResource on its request executor; this filter only
+// rejects a malformed sequence. A replica does not take changes itself and redirects them to its primary with 307.
+@Provider
+public class ReplicationFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    public static final String MIN_SEQUENCE_PARAMETER = "min-sequence";
+    private static final Set<String> READ_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    @Inject
+    WarehouseService warehouseService;
+
+    public ReplicationFilter() {
+    }
+
+    public ReplicationFilter(WarehouseService warehouseService) {
+        this.warehouseService = warehouseService;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        ReplicaFollower replica = warehouseService.getReplica();
+        String path = requestContext.getUriInfo().getPath(false);
+        path = path.startsWith("/") ? path.substring(1) : path;
+        if (replica != null && !READ_METHODS.contains(requestContext.getMethod()) && !path.startsWith("replication")) {
+            String query = requestContext.getUriInfo().getRequestUri().getRawQuery();
+            URI location = replica.primary().resolve(query == null ? path : path + "?" + query);
+            requestContext.abortWith(Response.temporaryRedirect(location).build());
+            return;
+        }
+        String minSequence = requestContext.getUriInfo().getQueryParameters().getFirst(MIN_SEQUENCE_PARAMETER);
+        if (minSequence != null) {
+            try {
+                Long.parseLong(minSequence);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + MIN_SEQUENCE_PARAMETER + ": " + minSequence);
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (!responseContext.getHeaders().containsKey(ReplicaFollower.SEQUENCE_HEADER)) {
+            responseContext.getHeaders().add(ReplicaFollower.SEQUENCE_HEADER, warehouseService.getChangeJournal().lastSequence());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.metrics;
+
+import java.util.concurrent.locks.Lock;
+
+// Wait and hold time histograms for the read and write side of a lock
+public class LockMetrics {
+    private final LatencyHistogram readWait = new LatencyHistogram();
+    private final LatencyHistogram readHold = new LatencyHistogram();
+    private final LatencyHistogram writeWait = new LatencyHistogram();
+    private final LatencyHistogram writeHold = new LatencyHistogram();
+
+    public TimedLock timeReads(Lock readLock) {
+        return new TimedLock(readLock, readWait, readHold);
+    }
+
+    public TimedLock timeWrites(Lock writeLock) {
+        return new TimedLock(writeLock, writeWait, writeHold);
+    }
+
+    public void writePrometheus(PrometheusWriter writer) {
+        writer.summary("warehouse_lock_wait_seconds", "Time spent waiting to acquire the warehouse lock.", "mode", "read", readWait);
+        writer.summary("warehouse_lock_wait_seconds", null, "mode", "write", writeWait);
+        writer.summary("warehouse_lock_hold_seconds", "Time the warehouse lock was held.", "mode", "read", readHold);
+        writer.summary("warehouse_lock_hold_seconds", null, "mode", "write", writeHold);
+    }
+}
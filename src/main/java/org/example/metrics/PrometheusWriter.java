@@ -0,0 +1,65 @@
+package org.example.metrics;
+
+// Builds metrics in the Prometheus text exposition format (version 0.0.4).
+// Durations are recorded in nanoseconds and exported in seconds, as Prometheus conventions ask.
+public class PrometheusWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final StringBuilder output = new StringBuilder();
+
+    // Pass a null help text for further series of a metric that has already been described
+    public void summary(String name, String help, String labelName, String labelValue, LatencyHistogram histogram) {
+        if (help != null) {
+            header(name, help, "summary");
+        }
+        String labels = labelName + "=\"" + escape(labelValue) + "\"";
+        for (double quantile : QUANTILES) {
+            output.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.valueAtQuantile(quantile))).append('\n');
+        }
+        output.append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.sum())).append('\n');
+        output.append(name).append("_count{").append(labels).append("} ").append(histogram.count()).append('\n');
+    }
+
+    public void gauge(String name, String help, String labelName, String labelValue, long value) {
+        if (help != null) {
+            header(name, help, "gauge");
+        }
+        output.append(name).append('{').append(labelName).append("=\"").append(escape(labelValue)).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    public void gauge(String name, String help, long value) {
+        header(name, help, "gauge");
+        output.append(name).append(' ').append(value).append('\n');
+    }
+
+    public void gauge(String name, String help, double value) {
+        header(name, help, "gauge");
+        output.append(name).append(' ').append(value).append('\n');
+    }
+
+    public void counter(String name, String help, long value) {
+        header(name, help, "counter");
+        output.append(name).append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        return output.toString();
+    }
+
+    private void header(String name, String help, String type) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
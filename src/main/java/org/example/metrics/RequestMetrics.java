@@ -0,0 +1,78 @@
+package org.example.metrics;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Path;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Request count and latency per endpoint, keyed by the matched resource method.
+// The histogram for a method is created on its first request; after that recording is a map lookup and an atomic update.
+@ApplicationScoped
+public class RequestMetrics {
+    private static final String UNMATCHED = "unmatched";
+
+    private final ConcurrentMap<Method, LatencyHistogram> histogramsByMethod = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> histogramsByEndpoint = new ConcurrentHashMap<>();
+
+    // A null method records a request that did not match any resource
+    public void record(Method resourceMethod, long nanos) {
+        LatencyHistogram histogram = resourceMethod == null ? null : histogramsByMethod.get(resourceMethod);
+        if (histogram == null) {
+            histogram = histogramFor(resourceMethod);
+        }
+        histogram.record(nanos);
+    }
+
+    public void writePrometheus(PrometheusWriter writer) {
+        String help = "Time taken to handle HTTP requests per endpoint.";
+        for (Map.Entry<String, LatencyHistogram> endpoint : new TreeMap<>(histogramsByEndpoint).entrySet()) {
+            writer.summary("http_request_duration_seconds", help, "endpoint", endpoint.getKey(), endpoint.getValue());
+            help = null;
+        }
+    }
+
+    private LatencyHistogram histogramFor(Method resourceMethod) {
+        if (resourceMethod == null) {
+            return histogramsByEndpoint.computeIfAbsent(UNMATCHED, k -> new LatencyHistogram());
+        }
+        return histogramsByMethod.computeIfAbsent(resourceMethod,
+                m -> histogramsByEndpoint.computeIfAbsent(endpointOf(m), k -> new LatencyHistogram()));
+    }
+
+    // Names an endpoint by HTTP method and path template, e.g. "GET /products/{id}"
+    static String endpointOf(Method resourceMethod) {
+        String httpMethod = "ANY";
+        for (Annotation annotation : resourceMethod.getAnnotations()) {
+            HttpMethod designator = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (designator != null) {
+                httpMethod = designator.value();
+            }
+        }
+        return httpMethod + " " + join(resourceMethod.getDeclaringClass().getAnnotation(Path.class), resourceMethod.getAnnotation(Path.class));
+    }
+
+    private static String join(Path classPath, Path methodPath) {
+        String path = classPath == null ? "" : trimSlashes(classPath.value());
+        if (methodPath != null && !trimSlashes(methodPath.value()).isEmpty()) {
+            path = path.isEmpty() ? trimSlashes(methodPath.value()) : path + "/" + trimSlashes(methodPath.value());
+        }
+        return "/" + path;
+    }
+
+    private static String trimSlashes(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
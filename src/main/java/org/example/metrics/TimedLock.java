@@ -0,0 +1,33 @@
+package org.example.metrics;
+
+import java.util.concurrent.locks.Lock;
+
+// Lock decorator that records how long callers wait to acquire the lock and how long they hold it.
+// lock() answers when the lock was acquired and the caller hands that back to unlock, so the start of every hold stays
+// on the caller's stack: shared read locks held by many threads are timed correctly, and no per-thread state is
+// allocated for the virtual thread each request may run on.
+public class TimedLock {
+    private final Lock delegate;
+    private final LatencyHistogram waitTimes;
+    private final LatencyHistogram holdTimes;
+
+    public TimedLock(Lock delegate, LatencyHistogram waitTimes, LatencyHistogram holdTimes) {
+        this.delegate = delegate;
+        this.waitTimes = waitTimes;
+        this.holdTimes = holdTimes;
+    }
+
+    // Returns the System.nanoTime() the lock was acquired at, to be passed to unlock
+    public long lock() {
+        long start = System.nanoTime();
+        delegate.lock();
+        long acquiredAt = System.nanoTime();
+        waitTimes.record(acquiredAt - start);
+        return acquiredAt;
+    }
+
+    public void unlock(long acquiredAt) {
+        holdTimes.record(System.nanoTime() - acquiredAt);
+        delegate.unlock();
+    }
+}
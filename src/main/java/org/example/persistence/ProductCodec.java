@@ -0,0 +1,69 @@
+package org.example.persistence;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Binary layout of a product shared by the write-ahead log and snapshots:
+// id (int), category ordinal (byte, -1 for null), rating (byte), created and modified epoch millis
+// (long, Long.MIN_VALUE for null), name length (int) followed by the UTF-8 encoded name.
+// A removal is written in the same layout with category -2 and only the ID meaningful.
+final class ProductCodec {
+    private static final int FIXED_SIZE = 4 + 1 + 1 + 8 + 8 + 4;
+    private static final byte REMOVED = -2;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final Category[] CATEGORIES = Category.values();
+
+    private ProductCodec() {}
+
+    static int maxSize(ProductRecord product) {
+        return FIXED_SIZE + product.name().length() * 3;
+    }
+
+    static void write(ByteBuffer buffer, ProductRecord product) {
+        byte[] name = product.name().getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(product.id());
+        buffer.put(product.category() == null ? -1 : (byte) product.category().ordinal());
+        buffer.put((byte) product.rating());
+        buffer.putLong(product.createdDate() == null ? NULL_DATE : product.createdDate().toEpochMilli());
+        buffer.putLong(product.modifiedDate() == null ? NULL_DATE : product.modifiedDate().toEpochMilli());
+        buffer.putInt(name.length);
+        buffer.put(name);
+    }
+
+    static int removalSize() {
+        return FIXED_SIZE;
+    }
+
+    static void writeRemoval(ByteBuffer buffer, int id) {
+        buffer.putInt(id);
+        buffer.put(REMOVED);
+        buffer.put((byte) 0);
+        buffer.putLong(NULL_DATE);
+        buffer.putLong(NULL_DATE);
+        buffer.putInt(0);
+    }
+
+    // Whether the entry at the buffer's position is a removal, which read returns with only its ID
+    static boolean isRemoval(ByteBuffer buffer) {
+        return buffer.get(buffer.position() + 4) == REMOVED;
+    }
+
+    static ProductRecord read(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        byte category = buffer.get();
+        int rating = buffer.get();
+        long createdDate = buffer.getLong();
+        long modifiedDate = buffer.getLong();
+        byte[] name = new byte[buffer.getInt()];
+        buffer.get(name);
+        return new ProductRecord(id, new String(name, StandardCharsets.UTF_8), category < 0 ? null : CATEGORIES[category],
+                rating, toInstant(createdDate), toInstant(modifiedDate));
+    }
+
+    private static Instant toInstant(long millis) {
+        return millis == NULL_DATE ? null : Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.persistence;
+
+import org.example.entities.ProductRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32C;
+
+// Append-only write-ahead log of product states with group commit.
+// Appends only copy the entry into a memory buffer; a flusher thread writes everything appended so far
+// with a single write and fsync, so concurrent writers waiting in awaitDurable share one fsync.
+// Each entry is framed as length (int), CRC32C of the rest (int), sequence (long), then the product.
+final class ProductLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ProductLog.class);
+    private static final int FRAME_HEADER_SIZE = 4 + 4;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 20;
+
+    // Guards the file channel and the flushing buffer, always taken before this object's monitor
+    private final Object ioLock = new Object();
+    private final Thread flusher;
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long lastSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+
+    ProductLog(Path segment, long lastSequence) throws IOException {
+        this.channel = openSegment(segment);
+        this.lastSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        this.flusher = new Thread(this::flushLoop, "warehouse-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Buffers the product state and returns its sequence number; not durable until awaitDurable returns
+    synchronized long append(ProductRecord product) {
+        int start = beginEntry(ProductCodec.maxSize(product));
+        ProductCodec.write(pending, product);
+        return endEntry(start);
+    }
+
+    // Buffers the removal of a product and returns its sequence number, like append
+    synchronized long appendRemoval(int id) {
+        int start = beginEntry(ProductCodec.removalSize());
+        ProductCodec.writeRemoval(pending, id);
+        return endEntry(start);
+    }
+
+    // Makes room for an entry and writes its sequence, returning where its frame starts
+    private int beginEntry(int maxSize) {
+        if (closed) {
+            throw new IllegalStateException("Product log is closed.");
+        }
+        int maxEntrySize = FRAME_HEADER_SIZE + 8 + maxSize;
+        if (pending.remaining() < maxEntrySize) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + maxEntrySize));
+            pending.flip();
+            pending = larger.put(pending);
+        }
+        int start = pending.position();
+        pending.position(start + FRAME_HEADER_SIZE);
+        pending.putLong(++lastSequence);
+        return start;
+    }
+
+    // Fills in the frame header of the entry written since start and wakes the flusher
+    private long endEntry(int start) {
+        int end = pending.position();
+        CRC32C crc = new CRC32C();
+        crc.update(pending.array(), start + FRAME_HEADER_SIZE, end - start - FRAME_HEADER_SIZE);
+        pending.putInt(start, end - start - FRAME_HEADER_SIZE);
+        pending.putInt(start + 4, (int) crc.getValue());
+        notifyAll();
+        return lastSequence;
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    // Blocks until every entry up to the sequence has been written and fsynced
+    synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        while (durableSequence < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (durableSequence < sequence) {
+            throw new UncheckedIOException("Failed to write product log", failure);
+        }
+    }
+
+    // Flushes everything appended so far and continues in a new segment file
+    void rollover(Path segment) throws IOException {
+        synchronized (ioLock) {
+            flush();
+            channel.close();
+            channel = openSegment(segment);
+        }
+    }
+
+    // Replays the entries of a segment with a sequence above afterSequence and returns the last sequence read.
+    // Replay stops at the first torn or corrupt entry, which is what a crash in the middle of a write leaves behind.
+    static long replay(Path segment, long afterSequence, Consumer<ProductRecord> consumer, IntConsumer removals) throws IOException {
+        long lastSequence = afterSequence;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 8 || length > buffer.remaining()) {
+                    logger.warn("Ignoring torn entry at the end of {}", segment);
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.slice(buffer.position(), length));
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Ignoring corrupt entry in {}", segment);
+                    break;
+                }
+                long sequence = buffer.getLong();
+                boolean removal = ProductCodec.isRemoval(buffer);
+                ProductRecord product = ProductCodec.read(buffer);
+                if (sequence > afterSequence) {
+                    if (removal) {
+                        removals.accept(product.id());
+                    } else {
+                        consumer.accept(product);
+                    }
+                    lastSequence = sequence;
+                }
+            }
+        }
+        return lastSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ioLock) {
+            flush();
+            channel.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            synchronized (ioLock) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    logger.error("Failed to write product log", e);
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    // Swaps out the pending buffer, writes and fsyncs it, then releases the writers waiting for it
+    private void flush() throws IOException {
+        long sequence;
+        synchronized (this) {
+            ByteBuffer swap = flushing;
+            flushing = pending;
+            pending = swap;
+            pending.clear();
+            sequence = lastSequence;
+        }
+        flushing.flip();
+        while (flushing.hasRemaining()) {
+            channel.write(flushing);
+        }
+        flushing.clear();
+        channel.force(false);
+        synchronized (this) {
+            durableSequence = Math.max(durableSequence, sequence);
+            notifyAll();
+        }
+    }
+
+    private static FileChannel openSegment(Path segment) throws IOException {
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.persistence;
+
+import org.example.entities.ProductRecord;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+// Compact binary image of the whole catalog as of a log sequence number.
+// Layout: magic (int), format version (int), sequence (long), product count (int), then the products.
+final class ProductSnapshot {
+    private static final int MAGIC = 0x57485350;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ProductSnapshot() {}
+
+    // Writes to a temporary file first so a crash never leaves a half written snapshot behind
+    static void write(Path file, long sequence, Collection<ProductRecord> products) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(products.size());
+            for (ProductRecord product : products) {
+                if (buffer.remaining() < ProductCodec.maxSize(product)) {
+                    drain(channel, buffer);
+                    if (buffer.capacity() < ProductCodec.maxSize(product)) {
+                        buffer = ByteBuffer.allocateDirect(ProductCodec.maxSize(product));
+                    }
+                }
+                ProductCodec.write(buffer, product);
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The rename is only durable once the directory is, and the caller deletes the log segments it replaces next
+        syncDirectory(file.getParent());
+    }
+
+    // Windows does not open directories as files, and its file systems journal renames anyway
+    private static void syncDirectory(Path directory) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    // Maps the snapshot into memory, passes every product to the consumer and returns the snapshot's sequence
+    static long read(Path file, Consumer<ProductRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a warehouse snapshot: " + file);
+            }
+            long sequence = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(ProductCodec.read(buffer));
+            }
+            return sequence;
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
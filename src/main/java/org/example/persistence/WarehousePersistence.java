@@ -0,0 +1,132 @@
+package org.example.persistence;
+
+import org.example.entities.ProductRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+// Keeps the catalog durable in a data directory as the latest snapshot plus write-ahead log segments.
+// Files are named after sequence numbers: snapshot-<last sequence included>.bin and wal-<first sequence>.log.
+public class WarehousePersistence implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WarehousePersistence.class);
+    public static final String DATA_DIRECTORY_PROPERTY = "warehouse.data.dir";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "warehouse.snapshot.interval";
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+
+    private final Path directory;
+    private final ProductLog log;
+    private final long snapshotInterval;
+    private volatile long lastSnapshotSequence;
+
+    private WarehousePersistence(Path directory, ProductLog log, long snapshotSequence, long snapshotInterval) {
+        this.directory = directory;
+        this.log = log;
+        this.lastSnapshotSequence = snapshotSequence;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public static WarehousePersistence open(Path directory, Consumer<ProductRecord> recovered, IntConsumer removed) throws IOException {
+        return open(directory, Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL), recovered, removed);
+    }
+
+    // Recovers the catalog by mapping the latest snapshot and replaying the log after it, passing every
+    // recovered product state in order to the consumer and the ID of every removed product to removed,
+    // then starts a fresh log segment for new writes
+    public static WarehousePersistence open(Path directory, long snapshotInterval, Consumer<ProductRecord> recovered,
+                                            IntConsumer removed) throws IOException {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        List<Path> snapshots = list(directory, "snapshot-", ".bin");
+        long snapshotSequence = 0;
+        if (!snapshots.isEmpty()) {
+            snapshotSequence = ProductSnapshot.read(snapshots.get(snapshots.size() - 1), recovered);
+        }
+        long lastSequence = snapshotSequence;
+        for (Path segment : list(directory, "wal-", ".log")) {
+            lastSequence = Math.max(lastSequence, ProductLog.replay(segment, lastSequence, recovered, removed));
+        }
+        logger.info("Recovered warehouse up to sequence {} from {} in {} ms", lastSequence, directory, (System.nanoTime() - start) / 1_000_000);
+        ProductLog log = new ProductLog(segmentFile(directory, lastSequence + 1), lastSequence);
+        return new WarehousePersistence(directory, log, snapshotSequence, snapshotInterval);
+    }
+
+    // Must be called in the same order the changes were applied to the warehouse
+    public long append(ProductRecord product) {
+        return log.append(product);
+    }
+
+    // Logs the removal of a product, in the same order as append
+    public long appendRemoval(int id) {
+        return log.appendRemoval(id);
+    }
+
+    // The sequence of the last change recovered or appended
+    public long lastSequence() {
+        return log.lastSequence();
+    }
+
+    public void awaitDurable(long sequence) {
+        log.awaitDurable(sequence);
+    }
+
+    public boolean isSnapshotDue() {
+        return log.lastSequence() - lastSnapshotSequence >= snapshotInterval;
+    }
+
+    // Starts a new log segment and returns the sequence the next snapshot covers.
+    // Must be called while no appends can happen, and the snapshot must be taken in that same state.
+    public long beginSnapshot() throws IOException {
+        long sequence = log.lastSequence();
+        log.rollover(segmentFile(directory, sequence + 1));
+        return sequence;
+    }
+
+    // Writes the snapshot and removes the snapshots and log segments it makes obsolete, only once the snapshot is durable
+    public void writeSnapshot(long sequence, Collection<ProductRecord> products) throws IOException {
+        long start = System.nanoTime();
+        ProductSnapshot.write(directory.resolve(String.format("snapshot-%020d.bin", sequence)), sequence, products);
+        lastSnapshotSequence = sequence;
+        for (Path snapshot : list(directory, "snapshot-", ".bin")) {
+            if (sequenceOf(snapshot, "snapshot-") < sequence) {
+                Files.delete(snapshot);
+            }
+        }
+        for (Path segment : list(directory, "wal-", ".log")) {
+            if (sequenceOf(segment, "wal-") <= sequence) {
+                Files.delete(segment);
+            }
+        }
+        logger.info("Wrote snapshot of {} products at sequence {} in {} ms", products.size(), sequence, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private static Path segmentFile(Path directory, long firstSequence) {
+        return directory.resolve(String.format("wal-%020d.log", firstSequence));
+    }
+
+    private static long sequenceOf(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.lastIndexOf('.')));
+    }
+
+    // Zero padded sequence numbers make name order the same as sequence order
+    private static List<Path> list(Path directory, String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix) && f.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.resource;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.example.service.ProductShard;
+import org.example.service.ShardedWarehouse;
+import org.example.service.WarehouseService;
+
+// Decides which catalog /products serves: this node's WarehouseService, or the ShardedWarehouse configured with
+// -Dwarehouse.shards or -Dwarehouse.shard.nodes. The sharded catalog is built once for the application and closed
+// with it. Replication and metrics stay with the local WarehouseService, which on a node listed in another node's
+// -Dwarehouse.shard.nodes is the shard its /shard resource serves.
+@ApplicationScoped
+public class CatalogRouter {
+    private final WarehouseService warehouseService;
+    private final ShardedWarehouse shardedWarehouse;
+
+    public CatalogRouter() {
+        this.warehouseService = null;
+        this.shardedWarehouse = null;
+    }
+
+    @Inject
+    public CatalogRouter(WarehouseService warehouseService) {
+        this(warehouseService, ShardedWarehouse.fromSystemProperties());
+    }
+
+    // Serves the sharded catalog unless it is null
+    public CatalogRouter(WarehouseService warehouseService, ShardedWarehouse shardedWarehouse) {
+        this.warehouseService = warehouseService;
+        this.shardedWarehouse = shardedWarehouse;
+    }
+
+    public ProductShard catalog() {
+        return shardedWarehouse != null ? shardedWarehouse : warehouseService;
+    }
+
+    // This node's warehouse, which holds the whole catalog only when it is not sharded
+    public WarehouseService localWarehouse() {
+        return warehouseService;
+    }
+
+    public boolean isSharded() {
+        return shardedWarehouse != null;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (shardedWarehouse != null) {
+            shardedWarehouse.close();
+        }
+    }
+}
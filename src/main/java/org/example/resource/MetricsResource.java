@@ -0,0 +1,70 @@
+package org.example.resource;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import org.example.entities.Category;
+import org.example.metrics.PrometheusWriter;
+import org.example.metrics.RequestMetrics;
+import org.example.service.ProductShard;
+import org.example.service.ReplicaFollower;
+import org.example.service.WarehouseService;
+
+
+@Path("/metrics")
+public class MetricsResource {
+    // The catalog served, whose products are counted, and this node's warehouse, whose lock, journal and replication
+    // are reported
+    private final ProductShard catalog;
+    private final WarehouseService warehouseService;
+    private final RequestMetrics requestMetrics;
+    private final ResponseCache responseCache;
+    private final RequestExecutor requestExecutor;
+
+    public MetricsResource() {
+        this.catalog = null;
+        this.warehouseService = null;
+        this.requestMetrics = null;
+        this.responseCache = null;
+        this.requestExecutor = null;
+    }
+
+    public MetricsResource(WarehouseService warehouseService, RequestMetrics requestMetrics, ResponseCache responseCache,
+                           RequestExecutor requestExecutor) {
+        this(new CatalogRouter(warehouseService, null), requestMetrics, responseCache, requestExecutor);
+    }
+
+    @Inject
+    public MetricsResource(CatalogRouter catalogRouter, RequestMetrics requestMetrics, ResponseCache responseCache,
+                           RequestExecutor requestExecutor) {
+        this.catalog = catalogRouter.catalog();
+        this.warehouseService = catalogRouter.localWarehouse();
+        this.requestMetrics = requestMetrics;
+        this.responseCache = responseCache;
+        this.requestExecutor = requestExecutor;
+    }
+
+    // Get all metrics in Prometheus text format, answered on the calling thread so they stay available under overload
+    @GET
+    @Produces(PrometheusWriter.CONTENT_TYPE)
+    public String getMetrics() {
+        PrometheusWriter writer = new PrometheusWriter();
+        requestMetrics.writePrometheus(writer);
+        warehouseService.getLockMetrics().writePrometheus(writer);
+        responseCache.writePrometheus(writer);
+        requestExecutor.writePrometheus(writer);
+        String help = "Number of products in the catalog per category.";
+        for (Category category : Category.values()) {
+            writer.gauge("warehouse_products", help, "category", category.name(), catalog.getNumberOfProductsInCategory(category));
+            help = null;
+        }
+        writer.gauge("warehouse_change_sequence", "Sequence of the last change applied to the catalog.",
+                warehouseService.getChangeJournal().lastSequence());
+        ReplicaFollower replica = warehouseService.getReplica();
+        if (replica != null) {
+            replica.writePrometheus(writer);
+        }
+        return writer.toString();
+    }
+}
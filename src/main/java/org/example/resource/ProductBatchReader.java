@@ -0,0 +1,208 @@
+package org.example.resource;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+import org.example.entities.Category;
+import org.example.entities.JsonDateAdapter;
+import org.example.entities.ProductRecord;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+// Reads products one at a time from a JSON array, from NDJSON (one product object per line) or from binary rows,
+// so an import never holds more than the current batch in memory.
+// Each item is either a product or the reason it could not be read.
+abstract class ProductBatchReader implements Closeable {
+    // Json.createParser looks the provider up on every call, which dominates when parsing line by line
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+
+    record Item(int index, ProductRecord product, Integer id, String error) {
+    }
+
+    // Thrown when the input can no longer be read at all
+    static class MalformedInputException extends RuntimeException {
+        MalformedInputException(String message) {
+            super(message);
+        }
+    }
+
+    private int index;
+
+    static ProductBatchReader jsonArray(InputStream input) {
+        return new JsonArrayReader(input);
+    }
+
+    static ProductBatchReader ndjson(InputStream input) {
+        return new NdjsonReader(input);
+    }
+
+    static ProductBatchReader binary(InputStream input) {
+        return new BinaryReader(input);
+    }
+
+    // Returns the next item, or null when the input is exhausted
+    abstract Item next();
+
+    Item error(String message) {
+        return new Item(index++, null, null, message);
+    }
+
+    Item toItem(ProductRecord product) {
+        return new Item(index++, product, product.id(), null);
+    }
+
+    Item toItem(JsonValue value) {
+        if (value.getValueType() != JsonValue.ValueType.OBJECT) {
+            return error("Expected a product object.");
+        }
+        int itemIndex = index++;
+        JsonObject json = value.asJsonObject();
+        Integer id = null;
+        try {
+            id = json.get("id") instanceof JsonNumber number ? toInt(number, "ID") : null;
+            return new Item(itemIndex, toProduct(json), id, null);
+        } catch (IllegalArgumentException | ClassCastException | DateTimeParseException e) {
+            return new Item(itemIndex, null, id, "Invalid product: " + e.getMessage());
+        }
+    }
+
+    // Maps the same JSON shape JSON-B accepts for ProductRecord
+    private static ProductRecord toProduct(JsonObject json) {
+        JsonNumber id = json.getJsonNumber("id");
+        JsonNumber rating = json.getJsonNumber("rating");
+        return new ProductRecord(
+                id == null ? 0 : toInt(id, "ID"),
+                json.containsKey("name") && !json.isNull("name") ? json.getString("name") : null,
+                json.containsKey("category") && !json.isNull("category") ? Category.valueOf(json.getString("category")) : null,
+                rating == null ? 0 : toInt(rating, "rating"),
+                toInstant(json.get("createdDate")),
+                toInstant(json.get("modifiedDate")));
+    }
+
+    // intValueExact rejects fractions and numbers out of range with an ArithmeticException, which only fails this item
+    private static int toInt(JsonNumber number, String field) {
+        try {
+            return number.intValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Product " + field + " must be a whole number, not " + number + ".");
+        }
+    }
+
+    private static Instant toInstant(JsonValue value) {
+        if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+            return null;
+        }
+        return JsonDateAdapter.parse(((JsonString) value).getString());
+    }
+
+    private static class JsonArrayReader extends ProductBatchReader {
+        private final JsonParser parser;
+        private boolean started;
+
+        JsonArrayReader(InputStream input) {
+            this.parser = parserFactory.createParser(input);
+        }
+
+        @Override
+        Item next() {
+            try {
+                if (!started) {
+                    started = true;
+                    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY) {
+                        throw new MalformedInputException("Expected a JSON array of products.");
+                    }
+                }
+                if (!parser.hasNext()) {
+                    throw new MalformedInputException("Unexpected end of JSON array.");
+                }
+                JsonParser.Event event = parser.next();
+                if (event == JsonParser.Event.END_ARRAY) {
+                    return null;
+                }
+                return toItem(parser.getValue());
+            } catch (JsonException e) {
+                throw new MalformedInputException("Malformed JSON: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            parser.close();
+        }
+    }
+
+    private static class NdjsonReader extends ProductBatchReader {
+        private final BufferedReader reader;
+
+        NdjsonReader(InputStream input) {
+            this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        }
+
+        // A malformed line only fails that item, since the next line starts a fresh document
+        @Override
+        Item next() {
+            try {
+                String line = reader.readLine();
+                while (line != null && line.isBlank()) {
+                    line = reader.readLine();
+                }
+                if (line == null) {
+                    return null;
+                }
+                try (JsonParser parser = parserFactory.createParser(new StringReader(line))) {
+                    parser.next();
+                    return toItem(parser.getValue());
+                } catch (JsonException e) {
+                    return error("Malformed JSON: " + e.getMessage());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    // Rows of ProductFormat.BINARY; a malformed row ends the import, since the rows after it cannot be found
+    private static class BinaryReader extends ProductBatchReader {
+        private final InputStream input;
+
+        BinaryReader(InputStream input) {
+            this.input = new BufferedInputStream(input);
+        }
+
+        @Override
+        Item next() {
+            try {
+                ProductRecord product = ProductFormat.readRow(input);
+                return product == null ? null : toItem(product);
+            } catch (IllegalArgumentException e) {
+                throw new MalformedInputException(e.getMessage());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.resource;
+
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.example.entities.ProductChange;
+import org.example.service.ProductChangeJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+// Sends the changes following a sequence as server-sent events until the client goes away. Each "changes" event carries
+// a JSON array of up to batchSize changes with the last sequence as its event ID, so a reconnecting client resumes with
+// Last-Event-ID. A "reset" event tells the client that changes it has not seen are no longer kept, and carries the
+// sequence to follow from after loading the catalog again. The next batch is only read once the client took the
+// previous one, so a slow client holds back only its own stream.
+public class ProductChangeStream implements Runnable {
+    static final long HEARTBEAT_MILLIS = 15_000;
+    private static final Logger logger = LoggerFactory.getLogger(ProductChangeStream.class);
+
+    private final ProductChangeJournal journal;
+    private final SseEventSink sink;
+    private final Sse sse;
+    private final int batchSize;
+    private long sequence;
+
+    public ProductChangeStream(ProductChangeJournal journal, long sequence, int batchSize, SseEventSink sink, Sse sse) {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Sequence must not be negative.");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be a positive number.");
+        }
+        this.journal = journal;
+        this.sequence = sequence;
+        this.batchSize = batchSize;
+        this.sink = sink;
+        this.sse = sse;
+    }
+
+    @Override
+    public void run() {
+        try (sink) {
+            while (!sink.isClosed()) {
+                List<ProductChange> changes = journal.since(sequence, batchSize);
+                if (changes == null) {
+                    sequence = journal.lastSequence();
+                    send(sse.newEventBuilder().name("reset").id(Long.toString(sequence)).data(Long.toString(sequence)).build());
+                } else if (!changes.isEmpty()) {
+                    sequence = changes.get(changes.size() - 1).sequence();
+                    send(sse.newEventBuilder().name("changes").id(Long.toString(sequence))
+                            .data(ProductStreamingOutput.jsonb.toJson(changes)).build());
+                } else if (journal.isClosed()) {
+                    break;
+                } else if (!journal.await(sequence, HEARTBEAT_MILLIS)) {
+                    // Keeps proxies from closing an idle connection and notices clients that went away
+                    send(sse.newEventBuilder().comment("heartbeat").build());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.debug("Change stream client went away at sequence {}", sequence, e.getCause());
+        }
+    }
+
+    // Waits for the event to be written, so changes are not read faster than the client takes them
+    private void send(OutboundSseEvent event) throws InterruptedException, ExecutionException {
+        sink.send(event).toCompletableFuture().get();
+    }
+}
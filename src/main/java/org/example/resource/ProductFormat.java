@@ -0,0 +1,288 @@
+package org.example.resource;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Variant;
+import org.example.entities.Category;
+import org.example.entities.JsonDateAdapter;
+import org.example.entities.ProductRecord;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+// The wire formats products are sent in, chosen from the Accept header, each written by hand straight into a pooled
+// buffer rather than through JSON-B's reflection.
+// JSON is exactly what JSON-B writes for ProductRecord: properties in alphabetical order, null ones left out, dates
+// as JsonDateAdapter writes them. NDJSON is the same objects, one per line.
+// BINARY is a row per product: the row length (varint) followed by the id (varint), the category ordinal plus one or 0
+// for none (byte), the rating (byte), flags (byte, 1 when there is a created date, 2 when there is a modified date),
+// the created date as zig-zag varint epoch millis, the modified date as a zig-zag varint of its difference to the
+// created date (or of its epoch millis without one), and the name as a varint byte length and UTF-8 bytes.
+enum ProductFormat {
+    JSON(MediaType.APPLICATION_JSON_TYPE) {
+        @Override
+        void start(ProductOutput output) throws IOException {
+            output.write('[');
+        }
+
+        @Override
+        void write(ProductOutput output, ProductRecord product, boolean first) throws IOException {
+            if (!first) {
+                output.write(',');
+            }
+            writeJson(output, product);
+        }
+
+        @Override
+        void end(ProductOutput output) throws IOException {
+            output.write(']');
+        }
+
+        @Override
+        void writeOne(ProductOutput output, ProductRecord product) throws IOException {
+            writeJson(output, product);
+        }
+    },
+    NDJSON(MediaType.valueOf(ProductResource.APPLICATION_NDJSON)) {
+        @Override
+        void write(ProductOutput output, ProductRecord product, boolean first) throws IOException {
+            writeJson(output, product);
+            output.write('\n');
+        }
+    },
+    BINARY(MediaType.valueOf(ProductResource.APPLICATION_PRODUCT_BINARY)) {
+        @Override
+        void write(ProductOutput output, ProductRecord product, boolean first) throws IOException {
+            writeRow(output, product);
+        }
+    };
+
+    private static final List<Variant> VARIANTS = Variant.mediaTypes(JSON.mediaType, NDJSON.mediaType, BINARY.mediaType).build();
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int CREATED = 1;
+    private static final int MODIFIED = 2;
+
+    private final MediaType mediaType;
+
+    ProductFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    MediaType mediaType() {
+        return mediaType;
+    }
+
+    // The format of a media type, ignoring its parameters, or null for another type
+    static ProductFormat of(MediaType mediaType) {
+        for (ProductFormat format : values()) {
+            if (format.mediaType.getType().equalsIgnoreCase(mediaType.getType())
+                    && format.mediaType.getSubtype().equalsIgnoreCase(mediaType.getSubtype())) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    // The format the client prefers, JSON when it has no preference
+    static ProductFormat negotiate(Request request) {
+        Variant variant = request.selectVariant(VARIANTS);
+        return variant == null ? JSON : of(variant.getMediaType());
+    }
+
+    // Called before the first product of a list
+    void start(ProductOutput output) throws IOException {
+    }
+
+    abstract void write(ProductOutput output, ProductRecord product, boolean first) throws IOException;
+
+    // Called after the last product of a list
+    void end(ProductOutput output) throws IOException {
+    }
+
+    // A product on its own rather than in a list
+    void writeOne(ProductOutput output, ProductRecord product) throws IOException {
+        write(output, product, true);
+    }
+
+    // Writes a product, a list of products, or for the JSON formats anything else through JSON-B
+    void write(Object entity, ProductOutput output) throws IOException {
+        if (entity instanceof ProductRecord product) {
+            writeOne(output, product);
+        } else if (entity instanceof Collection<?> items && items.stream().allMatch(ProductRecord.class::isInstance)) {
+            start(output);
+            boolean first = true;
+            for (Object product : items) {
+                write(output, (ProductRecord) product, first);
+                first = false;
+            }
+            end(output);
+        } else if (this == BINARY) {
+            throw new IllegalArgumentException("Only products can be sent as " + mediaType + ".");
+        } else if (this == NDJSON && entity instanceof Collection<?> items) {
+            for (Object item : items) {
+                output.writeUtf8(ProductStreamingOutput.jsonb.toJson(item));
+                output.write('\n');
+            }
+        } else {
+            output.writeUtf8(ProductStreamingOutput.jsonb.toJson(entity));
+        }
+    }
+
+    byte[] render(Object entity) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ProductOutput output = new ProductOutput(bytes)) {
+            write(entity, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeJson(ProductOutput output, ProductRecord product) throws IOException {
+        output.write('{');
+        if (product.category() != null) {
+            output.writeAscii("\"category\":\"");
+            output.writeAscii(product.category().name());
+            output.writeAscii("\",");
+        }
+        if (product.createdDate() != null) {
+            output.writeAscii("\"createdDate\":\"");
+            writeJsonDate(output, product.createdDate());
+            output.writeAscii("\",");
+        }
+        output.writeAscii("\"id\":");
+        output.writeDecimal(product.id());
+        if (product.modifiedDate() != null) {
+            output.writeAscii(",\"modifiedDate\":\"");
+            writeJsonDate(output, product.modifiedDate());
+            output.write('"');
+        }
+        if (product.name() != null) {
+            output.writeAscii(",\"name\":");
+            output.writeJsonString(product.name());
+        }
+        output.writeAscii(",\"rating\":");
+        output.writeDecimal(product.rating());
+        output.write('}');
+    }
+
+    private static void writeJsonDate(ProductOutput output, Instant date) throws IOException {
+        output.writeAscii(JsonDateAdapter.format(date));
+    }
+
+    private static void writeRow(ProductOutput output, ProductRecord product) throws IOException {
+        int flags = (product.createdDate() != null ? CREATED : 0) | (product.modifiedDate() != null ? MODIFIED : 0);
+        long created = product.createdDate() != null ? ProductOutput.zigZag(product.createdDate().toEpochMilli()) : 0;
+        long modified = product.modifiedDate() == null ? 0 : ProductOutput.zigZag(product.createdDate() == null
+                ? product.modifiedDate().toEpochMilli() : product.modifiedDate().toEpochMilli() - product.createdDate().toEpochMilli());
+        String name = product.name() == null ? "" : product.name();
+        int nameLength = ProductOutput.utf8Length(name);
+        int length = ProductOutput.varintLength(Integer.toUnsignedLong(product.id())) + 3
+                + ((flags & CREATED) != 0 ? ProductOutput.varintLength(created) : 0)
+                + ((flags & MODIFIED) != 0 ? ProductOutput.varintLength(modified) : 0)
+                + ProductOutput.varintLength(nameLength) + nameLength;
+        output.writeVarint(length);
+        output.writeVarint(Integer.toUnsignedLong(product.id()));
+        output.write(product.category() == null ? 0 : product.category().ordinal() + 1);
+        output.write(product.rating());
+        output.write(flags);
+        if ((flags & CREATED) != 0) {
+            output.writeVarint(created);
+        }
+        if ((flags & MODIFIED) != 0) {
+            output.writeVarint(modified);
+        }
+        output.writeVarint(nameLength);
+        output.writeUtf8(name);
+    }
+
+    // Reads the next binary row, or returns null at the end of the input; a row that is cut short or does not add up
+    // is rejected with an IllegalArgumentException
+    static ProductRecord readRow(InputStream input) throws IOException {
+        int first = input.read();
+        if (first < 0) {
+            return null;
+        }
+        long length = readVarint(input, first);
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Binary product row is too long.");
+        }
+        byte[] row = input.readNBytes((int) length);
+        if (row.length < length) {
+            throw new IllegalArgumentException("Binary product row is cut short.");
+        }
+        Row cursor = new Row(row);
+        try {
+            int id = (int) cursor.varint();
+            int category = cursor.next();
+            int rating = cursor.next();
+            int flags = cursor.next();
+            Instant createdDate = (flags & CREATED) != 0 ? Instant.ofEpochMilli(unZigZag(cursor.varint())) : null;
+            Instant modifiedDate = null;
+            if ((flags & MODIFIED) != 0) {
+                long modified = unZigZag(cursor.varint());
+                modifiedDate = Instant.ofEpochMilli(createdDate == null ? modified : createdDate.toEpochMilli() + modified);
+            }
+            int nameLength = (int) cursor.varint();
+            if (nameLength != row.length - cursor.position || category > CATEGORIES.length) {
+                throw new IllegalArgumentException("Binary product row does not add up.");
+            }
+            String name = new String(row, cursor.position, nameLength, StandardCharsets.UTF_8);
+            return new ProductRecord(id, name.isEmpty() ? null : name, category == 0 ? null : CATEGORIES[category - 1],
+                    rating, createdDate, modifiedDate);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Binary product row does not add up.");
+        }
+    }
+
+    private static long readVarint(InputStream input, int first) throws IOException {
+        long value = first & 0x7f;
+        int shift = 7;
+        for (int b = first; (b & 0x80) != 0; shift += 7) {
+            b = input.read();
+            if (b < 0 || shift > 63) {
+                throw new IllegalArgumentException("Binary product row is cut short.");
+            }
+            value |= (long) (b & 0x7f) << shift;
+        }
+        return value;
+    }
+
+    private static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static final class Row {
+        final byte[] bytes;
+        int position;
+
+        Row(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int next() throws EOFException {
+            if (position == bytes.length) {
+                throw new EOFException();
+            }
+            return bytes[position++] & 0xff;
+        }
+
+        long varint() throws EOFException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = next();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new EOFException();
+        }
+    }
+}
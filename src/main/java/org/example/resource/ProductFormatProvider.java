@@ -0,0 +1,79 @@
+package org.example.resource;
+
+import jakarta.json.bind.JsonbException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import org.example.entities.ProductRecord;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+// Writes products and lists of products as NDJSON or binary rows without going through JSON-B, and reads a single
+// product from either or from JSON. Reading JSON here rather than in the container's JSON provider keeps dates in the
+// forms JsonDateAdapter accepts; JSON is written by the resources themselves.
+@Provider
+@Produces({ProductResource.APPLICATION_NDJSON, ProductResource.APPLICATION_PRODUCT_BINARY})
+@Consumes({MediaType.APPLICATION_JSON, ProductResource.APPLICATION_NDJSON, ProductResource.APPLICATION_PRODUCT_BINARY})
+public class ProductFormatProvider implements MessageBodyWriter<Object>, MessageBodyReader<ProductRecord> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return (ProductRecord.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type)) && format(mediaType) != null;
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        try (ProductOutput output = new ProductOutput(entityStream)) {
+            format(mediaType).write(entity, output);
+        }
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == ProductRecord.class && ProductFormat.of(mediaType) != null;
+    }
+
+    @Override
+    public ProductRecord readFrom(Class<ProductRecord> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                                  MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
+        ProductRecord product;
+        ProductFormat format = ProductFormat.of(mediaType);
+        if (format == ProductFormat.BINARY) {
+            product = ProductFormat.readRow(new BufferedInputStream(entityStream));
+        } else if (format == ProductFormat.JSON) {
+            try {
+                product = ProductStreamingOutput.jsonb.fromJson(entityStream, ProductRecord.class);
+            } catch (JsonbException e) {
+                throw new IllegalArgumentException("Invalid product: " + e.getMessage());
+            }
+        } else {
+            try (ProductBatchReader reader = ProductBatchReader.ndjson(entityStream)) {
+                ProductBatchReader.Item item = reader.next();
+                if (item != null && item.product() == null) {
+                    throw new IllegalArgumentException(item.error());
+                }
+                product = item == null ? null : item.product();
+            }
+        }
+        if (product == null) {
+            throw new IllegalArgumentException("Expected a product.");
+        }
+        return product;
+    }
+
+    private static ProductFormat format(MediaType mediaType) {
+        ProductFormat format = ProductFormat.of(mediaType);
+        return format == ProductFormat.JSON ? null : format;
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Buffered output for the hand-written product formats. Bytes are collected in a pooled buffer and written to the
+// stream whenever it fills up, so a response of any size needs one buffer and no intermediate strings. Closing hands
+// the buffer back to the pool without closing the stream, which belongs to the container.
+final class ProductOutput implements Closeable {
+    static final int BUFFER_SIZE = 32 * 1024;
+    private static final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(64);
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream output;
+    private byte[] buffer;
+    private int position;
+
+    ProductOutput(OutputStream output) {
+        this.output = output;
+        byte[] pooled = pool.poll();
+        this.buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+    void write(int b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    // Characters below 0x80 only
+    void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+    }
+
+    void writeUtf8(String text) throws IOException {
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            writeUtf8(codePoint);
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    // The number of bytes writeUtf8 writes for the text
+    static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            length += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? (Character.isSurrogate((char) codePoint) ? 1 : 3) : 4;
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    static int varintLength(long value) {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    // A JSON string literal, escaping what JSON-B escapes: quotes, backslashes and control characters
+    void writeJsonString(String text) throws IOException {
+        write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> writeAscii("\\\"");
+                case '\\' -> writeAscii("\\\\");
+                case '\b' -> writeAscii("\\b");
+                case '\f' -> writeAscii("\\f");
+                case '\n' -> writeAscii("\\n");
+                case '\r' -> writeAscii("\\r");
+                case '\t' -> writeAscii("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writeAscii("\\u00");
+                        write(HEX[c >> 4]);
+                        write(HEX[c & 0xf]);
+                    } else if (c < 0x80) {
+                        write(c);
+                    } else {
+                        int codePoint = text.codePointAt(i);
+                        writeUtf8(codePoint);
+                        if (Character.isSupplementaryCodePoint(codePoint)) {
+                            i++;
+                        }
+                    }
+                }
+            }
+        }
+        write('"');
+    }
+
+    private void writeUtf8(int codePoint) throws IOException {
+        if (codePoint < 0x80) {
+            write(codePoint);
+        } else if (codePoint < 0x800) {
+            write(0xc0 | codePoint >> 6);
+            write(0x80 | codePoint & 0x3f);
+        } else if (codePoint < 0x10000) {
+            // A lone surrogate is written as '?', as String.getBytes does
+            if (Character.isSurrogate((char) codePoint)) {
+                write('?');
+                return;
+            }
+            write(0xe0 | codePoint >> 12);
+            write(0x80 | codePoint >> 6 & 0x3f);
+            write(0x80 | codePoint & 0x3f);
+        } else {
+            write(0xf0 | codePoint >> 18);
+            write(0x80 | codePoint >> 12 & 0x3f);
+            write(0x80 | codePoint >> 6 & 0x3f);
+            write(0x80 | codePoint & 0x3f);
+        }
+    }
+
+    void writeDecimal(long value) throws IOException {
+        writeAscii(Long.toString(value));
+    }
+
+    // Seven bits per byte, lowest first, the high bit set on every byte but the last
+    void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    // Small negative and positive values both take few bytes
+    void writeZigZag(long value) throws IOException {
+        writeVarint(zigZag(value));
+    }
+
+    void flush() throws IOException {
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+
+    // Writes what is buffered and returns the buffer to the pool
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            pool.offer(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.resource;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+import org.example.entities.Category;
+import java.io.InputStream;
+import java.util.Map;
+
+// The fields a PATCH changes, read from a JSON merge patch (RFC 7396) where a member left out keeps its value.
+// Only name, category and rating can be changed and none of them can be removed, so a null member is rejected.
+record ProductPatch(String name, Category category, Integer rating) {
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+
+    static ProductPatch read(InputStream input) {
+        JsonObject json;
+        try (JsonParser parser = parserFactory.createParser(input)) {
+            if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object of the fields to change.");
+            }
+            json = parser.getObject();
+        } catch (JsonException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getMessage());
+        }
+        String name = null;
+        Category category = null;
+        Integer rating = null;
+        for (Map.Entry<String, JsonValue> member : json.entrySet()) {
+            JsonValue value = member.getValue();
+            switch (member.getKey()) {
+                case "name" -> name = string(member.getKey(), value);
+                case "category" -> {
+                    String categoryName = string(member.getKey(), value);
+                    try {
+                        category = Category.valueOf(categoryName);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown category: " + categoryName + ".");
+                    }
+                }
+                case "rating" -> {
+                    if (!(value instanceof JsonNumber number)) {
+                        throw new IllegalArgumentException("Product rating must be a number.");
+                    }
+                    try {
+                        rating = number.intValueExact();
+                    } catch (ArithmeticException e) {
+                        throw new IllegalArgumentException("Product rating must be between 1 and 10.");
+                    }
+                }
+                default -> throw new IllegalArgumentException("Only name, category and rating can be changed, not " + member.getKey() + ".");
+            }
+        }
+        return new ProductPatch(name, category, rating);
+    }
+
+    private static String string(String field, JsonValue value) {
+        if (!(value instanceof JsonString string)) {
+            throw new IllegalArgumentException("Product " + field + " must be a string.");
+        }
+        return string.getString();
+    }
+}
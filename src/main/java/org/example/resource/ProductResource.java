@@ -3,77 +3,640 @@ package org.example.resource;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriBuilder;
+import jakarta.ws.rs.core.UriInfo;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
 import org.example.entities.Category;
+import org.example.entities.JsonDateAdapter;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductField;
+import org.example.entities.ProductImportError;
+import org.example.entities.ProductImportReport;
 import org.example.entities.ProductRecord;
 import org.example.exceptionmapper.ProductNotFoundException;
+import org.example.exceptionmapper.ReplicaLagException;
+import org.example.filters.ReplicationFilter;
+import org.example.service.ProductChangeJournal;
+import org.example.service.ProductQuery;
+import org.example.service.ProductSearch;
+import org.example.service.ProductShard;
 import org.example.service.WarehouseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 
 @Path("/products")
 public class ProductResource {
-    private final WarehouseService warehouseService;
+    static final int DEFAULT_PAGE_LIMIT = 100;
+    static final int IMPORT_BATCH_SIZE = 10_000;
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    // Length-prefixed binary product rows, see ProductFormat
+    public static final String APPLICATION_PRODUCT_BINARY = "application/x-warehouse-products";
+    public static final String APPLICATION_MERGE_PATCH_JSON = "application/merge-patch+json";
+    // How long a read with ?min-sequence waits for this node to apply that change
+    public static final String MAX_SEQUENCE_WAIT_MILLIS_PROPERTY = "warehouse.replication.max-wait-millis";
+    // The catalog served, this node's warehouse or a sharded one. The warehouse whose changes are streamed is null
+    // when the catalog is sharded, as no one journal orders the changes of every shard.
+    private final ProductShard catalog;
+    private final WarehouseService journaledWarehouse;
+    private final ResponseCache responseCache;
+    private final RequestExecutor requestExecutor;
+    private final long maxSequenceWaitMillis;
     public static final Logger logger = LoggerFactory.getLogger(ProductResource.class);
 
     public ProductResource() {
-        this.warehouseService = null;
+        this.catalog = null;
+        this.journaledWarehouse = null;
+        this.responseCache = null;
+        this.requestExecutor = null;
+        this.maxSequenceWaitMillis = 0;
     }
 
-    @Inject
     public ProductResource(WarehouseService warehouseService) {
-        this.warehouseService = warehouseService;
+        this(warehouseService, new ResponseCache());
+    }
+
+    public ProductResource(WarehouseService warehouseService, ResponseCache responseCache) {
+        this(warehouseService, responseCache, new RequestExecutor());
+    }
+
+    public ProductResource(WarehouseService warehouseService, ResponseCache responseCache, RequestExecutor requestExecutor) {
+        this(new CatalogRouter(warehouseService, null), responseCache, requestExecutor);
+    }
+
+    @Inject
+    public ProductResource(CatalogRouter catalogRouter, ResponseCache responseCache, RequestExecutor requestExecutor) {
+        this(catalogRouter, responseCache, requestExecutor, Long.getLong(MAX_SEQUENCE_WAIT_MILLIS_PROPERTY, 2000));
+    }
+
+    public ProductResource(CatalogRouter catalogRouter, ResponseCache responseCache, RequestExecutor requestExecutor, long maxSequenceWaitMillis) {
+        this.catalog = catalogRouter.catalog();
+        this.journaledWarehouse = catalogRouter.isSharded() ? null : catalogRouter.localWarehouse();
+        this.responseCache = responseCache;
+        this.requestExecutor = requestExecutor;
+        this.maxSequenceWaitMillis = maxSequenceWaitMillis;
     }
 
     // Add a product
     @POST
+    @Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_PRODUCT_BINARY})
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> addProduct(@Valid ProductRecord productRecord) {
+        return requestExecutor.submit(() -> {
+            logger.info("Adding product with ID {}", productRecord.id());
+            logger.debug("Adding product: {}", productRecord);
+            catalog.addProduct(productRecord.id(), productRecord.name(), productRecord.category(), productRecord.rating(), productRecord.createdDate());
+            var updatedProductRecord = catalog.getProductById(productRecord.id());
+            if (updatedProductRecord.isPresent()) {
+                logger.debug("Product added successfully {}", updatedProductRecord.get());
+                return Response.status(Response.Status.CREATED).entity(ProductFormat.JSON.render(updatedProductRecord.get())).type(MediaType.APPLICATION_JSON_TYPE).build();
+            } else {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to retrieve added product").build();
+            }
+        });
+    }
+
+    // Add many products from a JSON array, validated and inserted in batches
+    @POST
+    @Path("/batch")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addProduct(@Valid ProductRecord productRecord) {
-        logger.info("Adding product: {}", productRecord);
-        warehouseService.addProduct(productRecord.id(), productRecord.name(), productRecord.category(), productRecord.rating(), productRecord.createdDate());
-        var updatedProductRecord = warehouseService.getProductById(productRecord.id());
-        if (updatedProductRecord.isPresent()) {
-            logger.info("Product added successfully {}", updatedProductRecord.get());
-            return Response.status(Response.Status.CREATED).entity(updatedProductRecord.get()).build();
-        } else {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to retrieve added product").build();
+    public CompletionStage<Response> addProducts(InputStream body) {
+        return requestExecutor.submit(() -> {
+            try (ProductBatchReader reader = ProductBatchReader.jsonArray(body)) {
+                return importProducts(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Add many products from newline delimited JSON, one product per line
+    @POST
+    @Path("/batch")
+    @Consumes(APPLICATION_NDJSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> addProductsFromNdjson(InputStream body) {
+        return requestExecutor.submit(() -> {
+            try (ProductBatchReader reader = ProductBatchReader.ndjson(body)) {
+                return importProducts(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Add many products from binary product rows
+    @POST
+    @Path("/batch")
+    @Consumes(APPLICATION_PRODUCT_BINARY)
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> addProductsFromBinary(InputStream body) {
+        return requestExecutor.submit(() -> {
+            try (ProductBatchReader reader = ProductBatchReader.binary(body)) {
+                return importProducts(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Response importProducts(ProductBatchReader reader) {
+        List<ProductImportError> errors = new ArrayList<>();
+        List<ProductRecord> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int[] batchIndexes = new int[IMPORT_BATCH_SIZE];
+        int received = 0;
+        int added = 0;
+        try {
+            for (ProductBatchReader.Item item = reader.next(); item != null; item = reader.next()) {
+                received++;
+                if (item.product() == null) {
+                    errors.add(new ProductImportError(item.index(), item.id(), item.error()));
+                    continue;
+                }
+                batchIndexes[batch.size()] = item.index();
+                batch.add(item.product());
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    added += addBatch(batch, batchIndexes, errors);
+                }
+            }
+        } catch (ProductBatchReader.MalformedInputException e) {
+            errors.add(new ProductImportError(received, null, e.getMessage()));
+        }
+        added += addBatch(batch, batchIndexes, errors);
+        errors.sort(Comparator.comparingInt(ProductImportError::index));
+        logger.info("Imported {} of {} products", added, received);
+        return Response.ok(new ProductImportReport(received, added, errors)).build();
+    }
+
+    // Returns how many products of the batch were added
+    private int addBatch(List<ProductRecord> batch, int[] batchIndexes, List<ProductImportError> errors) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<ProductImportError> batchErrors = catalog.addProducts(batch);
+        for (ProductImportError error : batchErrors) {
+            errors.add(new ProductImportError(batchIndexes[error.index()], error.id(), error.message()));
+        }
+        int added = batch.size() - batchErrors.size();
+        batch.clear();
+        return added;
+    }
+
+    // Get all products, a page of products with ?after=<id>&limit=<n>, or stream them with ?stream=true
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_PRODUCT_BINARY})
+    public CompletionStage<Response> getAllProducts(@QueryParam("after") @DefaultValue("0") int after, @QueryParam("limit") Integer limit,
+                                                    @QueryParam("stream") boolean stream,
+                                                    @QueryParam(ReplicationFilter.MIN_SEQUENCE_PARAMETER) Long minSequence,
+                                                    @Context UriInfo uriInfo, @Context Request request) {
+        ProductFormat format = ProductFormat.negotiate(request);
+        UriBuilder next = !stream && (after != 0 || limit != null) ? uriInfo.getRequestUriBuilder() : null;
+        return afterSequence(minSequence, request, current -> getAllProducts(after, limit, stream, next, format, current));
+    }
+
+    private CompletionStage<Response> getAllProducts(int after, Integer limit, boolean stream, UriBuilder next, ProductFormat format,
+                                                     Request request) {
+        if (stream) {
+            logger.info("Streaming products after ID {}", after);
+            return CompletableFuture.completedFuture(Response.ok(new ProductStreamingOutput((afterName, afterId, pageLimit) ->
+                    catalog.getProductsAfterId(afterId, pageLimit), "", after, limit, format),
+                    format.mediaType()).build());
+        }
+        if (next != null) {
+            int pageLimit = limit == null ? DEFAULT_PAGE_LIMIT : limit;
+            return requestExecutor.submit(() -> {
+                List<ProductRecord> products = catalog.getProductsAfterId(after, pageLimit);
+                logger.info("Retrieved page of {} products after ID {}", products.size(), after);
+                return pageResponse(products, pageLimit, next, format, false);
+            });
+        }
+        return cachedResponse("products", catalog.getVersion(), request, format, () -> {
+            List<ProductRecord> products = catalog.getAllProducts();
+            logger.info("Retrieved {} products from WarehouseService", products.size());
+            // Rendering the whole catalog is proportional to its size, so it only happens when asked for
+            if (logger.isDebugEnabled()) {
+                logger.debug("Retrieved products: {}", products);
+            }
+            return products;
+        });
+    }
+
+    // Get products with max rating created this month, or in ?month=yyyy-MM, latest first
+    @GET
+    @Path("/top-rated")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_PRODUCT_BINARY})
+    public CompletionStage<Response> getTopRatedProducts(@QueryParam("month") String month,
+                                                         @QueryParam(ReplicationFilter.MIN_SEQUENCE_PARAMETER) Long minSequence,
+                                                         @Context Request request) {
+        ProductFormat format = ProductFormat.negotiate(request);
+        return afterSequence(minSequence, request, current -> getTopRatedProducts(month, format));
+    }
+
+    private CompletionStage<Response> getTopRatedProducts(String month, ProductFormat format) {
+        return requestExecutor.submit(() -> {
+            List<ProductRecord> products;
+            if (month == null) {
+                products = catalog.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate();
+            } else {
+                try {
+                    products = catalog.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth.parse(month));
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("Month must be formatted as yyyy-MM.");
+                }
+            }
+            logger.info("Returning {} top rated products", products.size());
+            return Response.ok(format.render(products), format.mediaType()).build();
+        });
+    }
+
+    // Search products, e.g. ?category=BOOKS,TOYS&minRating=8&createdFrom=2024-01-01T00:00:00Z&name=Harry&q=potter
+    // &sort=-rating,name&limit=10&fields=id,name. Repeated or comma separated values of one parameter are alternatives,
+    // date ranges include their start and exclude their end, q matches names having all of its words regardless of
+    // case, and ?explain=true returns the plan instead of the products.
+    @GET
+    @Path("/search")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_PRODUCT_BINARY})
+    public CompletionStage<Response> searchProducts(@QueryParam("id") List<String> ids, @QueryParam("category") List<String> categories,
+                                                    @QueryParam("minRating") @DefaultValue("1") int minRating,
+                                                    @QueryParam("maxRating") @DefaultValue("10") int maxRating,
+                                                    @QueryParam("createdFrom") String createdFrom, @QueryParam("createdTo") String createdTo,
+                                                    @QueryParam("modifiedFrom") String modifiedFrom, @QueryParam("modifiedTo") String modifiedTo,
+                                                    @QueryParam("name") String namePrefix, @QueryParam("q") String text,
+                                                    @QueryParam("sort") String sort,
+                                                    @QueryParam("limit") Integer limit, @QueryParam("fields") String fields,
+                                                    @QueryParam("explain") boolean explain,
+                                                    @QueryParam(ReplicationFilter.MIN_SEQUENCE_PARAMETER) Long minSequence,
+                                                    @Context UriInfo uriInfo, @Context Request request) {
+        ProductQuery query = new ProductQuery(parseIds(ids), parseCategories(categories), minRating, maxRating,
+                parseDate("createdFrom", createdFrom), parseDate("createdTo", createdTo),
+                parseDate("modifiedFrom", modifiedFrom), parseDate("modifiedTo", modifiedTo),
+                namePrefix, text, parseSort(sort), limit == null ? DEFAULT_PAGE_LIMIT : limit);
+        List<ProductField> projection = fields == null ? null : split(fields).stream().map(ProductField::fromJsonName).toList();
+        ProductFormat format = ProductFormat.negotiate(request);
+        if (projection != null && format == ProductFormat.BINARY) {
+            throw new IllegalArgumentException("Fields can only be selected in JSON and NDJSON.");
+        }
+        if (explain) {
+            return afterSequence(minSequence, request, current -> requestExecutor.submit(() -> Response.ok(catalog.search(query).plan()).build()));
         }
+        String key = "products/search?" + uriInfo.getRequestUri().getRawQuery();
+        return afterSequence(minSequence, request, current -> cachedResponse(key, catalog.getVersion(), current, format, () -> {
+            ProductSearch.Result result = catalog.search(query);
+            logger.info("Search found {} products using {}", result.products().size(), result.plan().accessPath());
+            return projection == null ? result.products() : project(result.products(), projection);
+        }));
     }
 
-    // Get all products
+    // Get the most common words of product names starting with the last word of the prefix, for type-ahead
     @GET
+    @Path("/suggest")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllProducts() {
-        List<ProductRecord> products = warehouseService.getAllProducts();
-        logger.info("Retrieved {} products from WarehouseService: {}", products.size(), products);
-        return Response.ok(products).build();
+    public CompletionStage<Response> suggestWords(@QueryParam("prefix") @DefaultValue("") String prefix,
+                                                  @QueryParam("limit") @DefaultValue("10") int limit,
+                                                  @QueryParam(ReplicationFilter.MIN_SEQUENCE_PARAMETER) Long minSequence) {
+        return afterSequence(minSequence, null, current -> requestExecutor.submit(() -> {
+            List<NameSuggestion> suggestions = catalog.suggest(prefix, limit);
+            logger.debug("Suggesting {} words for prefix {}", suggestions.size(), prefix);
+            return Response.ok(suggestions).build();
+        }));
+    }
+
+    // Follow added, updated and deleted products as server-sent events, from ?since=<sequence> or the Last-Event-ID of a
+    // reconnecting client, otherwise from now on; ?batch=<n> caps the changes per event
+    @GET
+    @Path("/changes")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamChanges(@QueryParam("since") Long since, @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) Long lastEventId,
+                              @QueryParam("batch") @DefaultValue("100") int batch,
+                              @Context SseEventSink sink, @Context Sse sse) {
+        if (journaledWarehouse == null) {
+            throw new IllegalArgumentException("Product changes are streamed by the nodes of a sharded catalog, not by the node routing it.");
+        }
+        ProductChangeJournal journal = journaledWarehouse.getChangeJournal();
+        long sequence = lastEventId != null ? lastEventId : since != null ? since : journal.lastSequence();
+        ProductChangeStream stream = new ProductChangeStream(journal, sequence, batch, sink, sse);
+        logger.info("Streaming product changes after sequence {}", sequence);
+        // Each stream mostly waits for changes or for its client, which is what virtual threads are cheap for, but each
+        // holds on to its client's connection, so only so many are open at once
+        requestExecutor.stream("product-changes", stream);
     }
 
     // Get product by ID
     @GET
     @Path("/{id}")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_PRODUCT_BINARY})
+    public CompletionStage<Response> getProductById(@PathParam("id") int id, @QueryParam(ReplicationFilter.MIN_SEQUENCE_PARAMETER) Long minSequence,
+                                                    @Context Request request) {
+        logger.debug("Received request to get product by ID: {}", id);
+        ProductFormat format = ProductFormat.negotiate(request);
+        return afterSequence(minSequence, request, current -> getProductById(id, format, current));
+    }
+
+    // The product is looked up before preconditions are evaluated, as an ID without a product has a version too and a
+    // client's entity tag must not turn a 404 into a 304
+    private CompletionStage<Response> getProductById(int id, ProductFormat format, Request request) {
+        long version = catalog.getProductVersion(id);
+        var product = catalog.getProductById(id)
+                .orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
+        logger.debug("Product found: {}", product);
+        return cachedResponse("products/" + id, version, request, format, () -> product);
+    }
+
+    // Change some fields of a product with a JSON merge patch, only while it has a version in If-Match when given.
+    // Answers with the product and its new entity tag.
+    @PATCH
+    @Path("/{id}")
+    @Consumes({MediaType.APPLICATION_JSON, APPLICATION_MERGE_PATCH_JSON})
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getProductById(@PathParam("id") int id) {
-        logger.info("Received request to get product by ID: {}", id);
-        var product = warehouseService.getProductById(id);
-        return product.map(p -> {
-            logger.info("Product found: {}", p);
-            return Response.ok(p).build();
-        }).orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
+    public CompletionStage<Response> patchProduct(@PathParam("id") int id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, InputStream body) {
+        Set<Long> versions = parseIfMatch(ifMatch);
+        return requestExecutor.submit(() -> {
+            ProductPatch patch = ProductPatch.read(body);
+            logger.info("Patching product with ID {}", id);
+            if (!catalog.patchProduct(id, patch.name(), patch.category(), patch.rating(), versions)) {
+                throw new ProductNotFoundException("Product with ID " + id + " not found");
+            }
+            // The version is read before the product, so the tag is never newer than the body
+            long version = catalog.getProductVersion(id);
+            ProductRecord product = catalog.getProductById(id)
+                    .orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
+            return Response.ok(ProductFormat.JSON.render(product), MediaType.APPLICATION_JSON_TYPE).tag(new EntityTag(Long.toString(version))).build();
+        });
     }
 
-    // Get products by category
+    // Delete a product, only while it has a version in If-Match when given
+    @DELETE
+    @Path("/{id}")
+    public CompletionStage<Response> deleteProduct(@PathParam("id") int id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        Set<Long> versions = parseIfMatch(ifMatch);
+        return requestExecutor.submit(() -> {
+            logger.info("Deleting product with ID {}", id);
+            if (!catalog.deleteProduct(id, versions)) {
+                throw new ProductNotFoundException("Product with ID " + id + " not found");
+            }
+            return Response.noContent().build();
+        });
+    }
+
+    // Get products by category, a page of them with ?afterName=<name>&after=<id>&limit=<n>, or stream them with ?stream=true.
+    // Pages continue after a name and ID rather than after a product, so they go on where they left off even when that
+    // product has since been deleted, renamed or moved to another category.
     @GET
     @Path("/category/{category}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getProductsByCategory(@PathParam("category") Category category) {
-        logger.info("Received request to get products by category: {}", category);
-        List<ProductRecord> products = warehouseService.getAllProductsByCategorySortedByProductName(category);
-        logger.info("Returning {} products for category: {}", products.size(), category);
-        return Response.ok(products).build();
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_PRODUCT_BINARY})
+    public CompletionStage<Response> getProductsByCategory(@PathParam("category") Category category, @QueryParam("after") @DefaultValue("0") int after,
+                                                           @QueryParam("afterName") String afterName,
+                                                           @QueryParam("limit") Integer limit, @QueryParam("stream") boolean stream,
+                                                           @QueryParam(ReplicationFilter.MIN_SEQUENCE_PARAMETER) Long minSequence,
+                                                           @Context UriInfo uriInfo, @Context Request request) {
+        logger.debug("Received request to get products by category: {}", category);
+        ProductFormat format = ProductFormat.negotiate(request);
+        UriBuilder next = !stream && (after != 0 || afterName != null || limit != null) ? uriInfo.getRequestUriBuilder() : null;
+        return afterSequence(minSequence, request, current -> getProductsByCategory(category, after, afterName, limit, stream, next, format, current));
+    }
+
+    private CompletionStage<Response> getProductsByCategory(Category category, int after, String afterName, Integer limit, boolean stream,
+                                                            UriBuilder next, ProductFormat format, Request request) {
+        if (stream) {
+            String startName = cursorName(category, afterName, after);
+            return CompletableFuture.completedFuture(Response.ok(new ProductStreamingOutput((name, afterId, pageLimit) ->
+                    catalog.getProductsByCategorySortedByProductNameAfter(category, name, afterId, pageLimit), startName, after, limit, format),
+                    format.mediaType()).build());
+        }
+        if (next != null) {
+            int pageLimit = limit == null ? DEFAULT_PAGE_LIMIT : limit;
+            return requestExecutor.submit(() -> {
+                List<ProductRecord> products = catalog.getProductsByCategorySortedByProductNameAfter(category,
+                        cursorName(category, afterName, after), after, pageLimit);
+                logger.info("Returning page of {} products for category: {}", products.size(), category);
+                return pageResponse(products, pageLimit, next, format, true);
+            });
+        }
+        return cachedResponse("products/category/" + category, catalog.getCategoryVersion(category), request, format, () -> {
+            List<ProductRecord> products = catalog.getAllProductsByCategorySortedByProductName(category);
+            logger.info("Returning {} products for category: {}", products.size(), category);
+            return products;
+        });
+    }
+
+    // Runs a read once this node has applied the change the client asked to read after with ?min-sequence, as a read
+    // from a replica may come before the replica has caught up. The wait is a task on the request executor like the read
+    // itself, so it holds a request slot rather than the container's thread and is shed with 503 like any other
+    // request, and the read follows on the same thread. The request proxy does not follow it there, so a read that had
+    // to wait is given no request and answers in full rather than evaluating preconditions; everything else it needs
+    // from the request is taken beforehand. A sharded catalog is read from the nodes holding the shards, which have
+    // every change they answered for, so there is nothing to wait for.
+    private CompletionStage<Response> afterSequence(Long minSequence, Request request, Function<Request, CompletionStage<Response>> read) {
+        if (minSequence == null || journaledWarehouse == null || journaledWarehouse.getChangeJournal().lastSequence() >= minSequence) {
+            return read.apply(request);
+        }
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        requestExecutor.submit(() -> awaitSequence(minSequence)).thenCompose(applied -> read.apply(null)).whenComplete((answer, failure) -> {
+            if (failure == null) {
+                response.complete(answer);
+            } else {
+                response.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+            }
+        });
+        return response;
+    }
+
+    private boolean awaitSequence(long sequence) {
+        try {
+            if (!journaledWarehouse.awaitSequence(sequence, maxSequenceWaitMillis)) {
+                throw new ReplicaLagException("change " + sequence + " not applied yet, at "
+                        + journaledWarehouse.getChangeJournal().lastSequence(), 1);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReplicaLagException("interrupted waiting for change " + sequence, 1);
+        }
+    }
+
+    // The name a category page continues after. Links we hand out carry it; a bare ?after=<id> takes the name of that
+    // product while it is still in the category.
+    private String cursorName(Category category, String afterName, int after) {
+        if (afterName != null || after == 0) {
+            return afterName == null ? "" : afterName;
+        }
+        return catalog.getProductById(after)
+                .filter(product -> product.category() == category)
+                .map(ProductRecord::name)
+                .orElseThrow(() -> new IllegalArgumentException("Product ID " + after + " to continue after is not in category " + category
+                        + ", continue after its name with afterName."));
+    }
+
+    private static List<String> split(String values) {
+        List<String> parts = new ArrayList<>();
+        for (String part : values.split(",")) {
+            if (!part.isBlank()) {
+                parts.add(part.trim());
+            }
+        }
+        return parts;
+    }
+
+    // The versions named by the entity tags of If-Match, whatever format they were tagged for, or null when any version
+    // will do. If-Match compares strongly, so weak tags and tags that are not ours match no version.
+    static Set<Long> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        Set<Long> versions = new HashSet<>();
+        for (String tag : split(ifMatch)) {
+            if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+                continue;
+            }
+            String value = tag.substring(1, tag.length() - 1);
+            int suffix = value.indexOf(';');
+            try {
+                versions.add(Long.parseLong(suffix < 0 ? value : value.substring(0, suffix)));
+            } catch (NumberFormatException e) {
+                // Not one of our tags
+            }
+        }
+        return versions;
+    }
+
+    private static Set<Integer> parseIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return null;
+        }
+        Set<Integer> parsed = new HashSet<>();
+        for (String value : ids) {
+            for (String id : split(value)) {
+                try {
+                    parsed.add(Integer.parseInt(id));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Product ID must be a number: " + id + ".");
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static Set<Category> parseCategories(List<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            return null;
+        }
+        Set<Category> parsed = EnumSet.noneOf(Category.class);
+        for (String value : categories) {
+            for (String category : split(value)) {
+                try {
+                    parsed.add(Category.valueOf(category.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown category: " + category + ".");
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static Instant parseDate(String parameter, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Instant.ofEpochMilli(Instant.parse(value).toEpochMilli());
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException(parameter + " must be an instant such as 2024-05-01T00:00:00Z.");
+        }
+    }
+
+    // Field names separated by commas, a leading minus sorting that field in descending order
+    private static List<ProductQuery.SortKey> parseSort(String sort) {
+        if (sort == null) {
+            return List.of();
+        }
+        List<ProductQuery.SortKey> keys = new ArrayList<>();
+        for (String key : split(sort)) {
+            boolean descending = key.startsWith("-");
+            keys.add(new ProductQuery.SortKey(ProductField.fromJsonName(descending ? key.substring(1) : key), descending));
+        }
+        return keys;
+    }
+
+    private static List<Map<String, Object>> project(List<ProductRecord> products, List<ProductField> fields) {
+        List<Map<String, Object>> projected = new ArrayList<>(products.size());
+        for (ProductRecord product : products) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (ProductField field : fields) {
+                Object value = field.valueOf(product);
+                values.put(field.jsonName(), value instanceof Instant date ? JsonDateAdapter.format(date) : value);
+            }
+            projected.add(values);
+        }
+        return projected;
+    }
+
+    // Answers from the response cache while the version is unchanged, taking neither the warehouse lock nor serializing.
+    // The version is read before the data, so a body is never tagged with a version newer than its contents. Each
+    // format is cached and tagged on its own, JSON keeping the plain key and version as its entity tag.
+    // Not-modified answers and cache hits are given on the calling thread; only building the body goes through the
+    // request executor, which is also why the request is only read here, since its proxy does not follow the work to
+    // another thread. Without a request, as after waiting for ?min-sequence, there are no preconditions to evaluate.
+    private CompletionStage<Response> cachedResponse(String key, long version, Request request, ProductFormat format, Supplier<Object> entity) {
+        String suffix = format == ProductFormat.JSON ? "" : ";" + format.name().toLowerCase();
+        EntityTag etag = new EntityTag(version + suffix);
+        String formatKey = key + suffix;
+        Response.ResponseBuilder notModified = request == null ? null : request.evaluatePreconditions(etag);
+        if (notModified != null) {
+            responseCache.recordNotModified();
+            return CompletableFuture.completedFuture(notModified.build());
+        }
+        byte[] cached = responseCache.get(formatKey, version);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Response.ok(cached, format.mediaType()).tag(etag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build());
+        }
+        return requestExecutor.submit(() -> {
+            byte[] body = format.render(entity.get());
+            responseCache.put(formatKey, version, body);
+            return Response.ok(body, format.mediaType()).tag(etag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+        });
+    }
+
+    // A full page links to the next one through the ID of its last product, and its name too when pages are sorted by
+    // name. Like every product body it is rendered by ProductFormat rather than left to the container's JSON provider,
+    // so dates look the same on every server.
+    private Response pageResponse(List<ProductRecord> products, int limit, UriBuilder next, ProductFormat format, boolean byName) {
+        Response.ResponseBuilder response = Response.ok(format.render(products), format.mediaType());
+        if (!products.isEmpty() && products.size() == limit) {
+            ProductRecord last = products.get(products.size() - 1);
+            next.replaceQueryParam("after", last.id());
+            if (byName) {
+                next.replaceQueryParam("afterName", last.name());
+            }
+            response.header("X-Next-After", last.id())
+                    .link(next.build(), "next");
+        }
+        return response.build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package org.example.resource;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.example.entities.ProductRecord;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+// Writes products as a JSON array, or in another ProductFormat, one page at a time, so the whole result is never held
+// in memory and the warehouse lock is only taken for the duration of each page fetch.
+public class ProductStreamingOutput implements StreamingOutput {
+    static final int PAGE_SIZE = 1000;
+    static final Jsonb jsonb = JsonbBuilder.create();
+
+    @FunctionalInterface
+    public interface PageSource {
+        // Returns at most limit products following where a product named afterName with ID afterId sorts, whether or
+        // not that product still exists. Sources ordered by ID alone ignore the name. The first page follows ("", 0).
+        List<ProductRecord> nextPage(String afterName, int afterId, int limit);
+    }
+
+    private final PageSource pageSource;
+    private final String afterName;
+    private final int afterId;
+    private final long limit;
+    private final ProductFormat format;
+
+    // A null limit streams every remaining product
+    public ProductStreamingOutput(PageSource pageSource, int afterId, Integer limit) {
+        this(pageSource, "", afterId, limit, ProductFormat.JSON);
+    }
+
+    ProductStreamingOutput(PageSource pageSource, String afterName, int afterId, Integer limit, ProductFormat format) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("Limit must be a positive number.");
+        }
+        this.pageSource = pageSource;
+        this.afterName = afterName;
+        this.afterId = afterId;
+        this.limit = limit == null ? Long.MAX_VALUE : limit;
+        this.format = format;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (ProductOutput products = new ProductOutput(output)) {
+            format.start(products);
+            String cursorName = afterName;
+            int cursorId = afterId;
+            long remaining = limit;
+            boolean first = true;
+            while (remaining > 0) {
+                List<ProductRecord> page = pageSource.nextPage(cursorName, cursorId, (int) Math.min(PAGE_SIZE, remaining));
+                for (ProductRecord product : page) {
+                    format.write(products, product, first);
+                    first = false;
+                }
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+                remaining -= page.size();
+                ProductRecord last = page.get(page.size() - 1);
+                cursorName = last.name();
+                cursorId = last.id();
+            }
+            format.end(products);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.resource;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.example.entities.ProductChange;
+import org.example.service.ProductChangeJournal;
+import org.example.service.ReplicaFollower;
+import org.example.service.ReplicationSnapshot;
+import org.example.service.WarehouseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+// The primary's side of log shipping to read replicas, called by ReplicaFollower. A replica loads the catalog once
+// from /snapshot and then asks /changes for the changes after the last one it applied, waiting on the primary until
+// there are some. Both answer with the ID of the change journal in X-Warehouse-Journal, and /changes answers 410 when
+// the journal no longer keeps the changes asked for, so the replica knows to load the catalog again.
+@Path("/replication")
+public class ReplicationResource {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationResource.class);
+    private final WarehouseService warehouseService;
+
+    public ReplicationResource() {
+        this.warehouseService = null;
+    }
+
+    @Inject
+    public ReplicationResource(WarehouseService warehouseService) {
+        this.warehouseService = warehouseService;
+    }
+
+    // NDJSON: {"baseVersion":..,"sequence":..} first, then one change per product as of that sequence
+    @GET
+    @Path("/snapshot")
+    @Produces(ProductResource.APPLICATION_NDJSON)
+    public Response snapshot() {
+        String journal = warehouseService.getChangeJournal().id();
+        ReplicationSnapshot snapshot = warehouseService.replicationSnapshot();
+        logger.info("Shipping a snapshot of {} products at sequence {}", snapshot.entries().size(), snapshot.sequence());
+        StreamingOutput output = stream -> {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write("{\"baseVersion\":" + snapshot.baseVersion() + ",\"sequence\":" + snapshot.sequence() + "}\n");
+            for (ProductChange entry : snapshot.entries()) {
+                writer.write(ProductStreamingOutput.jsonb.toJson(entry));
+                writer.write('\n');
+            }
+            writer.flush();
+        };
+        return Response.ok(output).header(ReplicaFollower.JOURNAL_HEADER, journal).build();
+    }
+
+    // At most limit changes after the sequence, as a JSON array, waiting up to waitMillis for one when there is none
+    // yet; 410 Gone when some of them are no longer kept
+    @GET
+    @Path("/changes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> changes(@QueryParam("after") long after, @QueryParam("limit") @DefaultValue("1000") int limit,
+                                             @QueryParam("waitMillis") @DefaultValue("0") long waitMillis) {
+        if (after < 0) {
+            throw new IllegalArgumentException("Sequence must not be negative.");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1.");
+        }
+        if (waitMillis < 0) {
+            throw new IllegalArgumentException("Wait must not be negative.");
+        }
+        ProductChangeJournal journal = warehouseService.getChangeJournal();
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        // A replica mostly waits here for the next change, which is what virtual threads are cheap for
+        Thread.ofVirtual().name("replication-changes").start(() -> {
+            try {
+                List<ProductChange> changes = journal.since(after, limit);
+                if (changes != null && changes.isEmpty() && waitMillis > 0 && journal.await(after, waitMillis)) {
+                    changes = journal.since(after, limit);
+                }
+                if (changes == null) {
+                    response.complete(Response.status(Response.Status.GONE).header(ReplicaFollower.JOURNAL_HEADER, journal.id()).build());
+                    return;
+                }
+                // Read after the changes, so a replica never takes itself to be further than the primary
+                long sequence = journal.lastSequence();
+                response.complete(Response.ok(ProductStreamingOutput.jsonb.toJson(changes).getBytes(StandardCharsets.UTF_8))
+                        .header(ReplicaFollower.JOURNAL_HEADER, journal.id())
+                        .header(ReplicaFollower.SEQUENCE_HEADER, sequence)
+                        .build());
+            } catch (InterruptedException | RuntimeException e) {
+                response.completeExceptionally(e);
+            }
+        });
+        return response;
+    }
+}
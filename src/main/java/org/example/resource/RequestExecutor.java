@@ -0,0 +1,167 @@
+package org.example.resource;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.example.exceptionmapper.ServiceOverloadedException;
+import org.example.metrics.PrometheusWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Runs the work of resource methods, selectable with -Dwarehouse.requests.mode. SYNCHRONOUS runs it on the container's
+// worker thread as before. VIRTUAL_THREADS hands it to a virtual thread and releases the worker, so requests waiting
+// for the warehouse lock no longer tie up the container's bounded pool. At most max-concurrent requests run at a time
+// and up to max-queued more wait for a slot, first come first served, for at most max-queue-millis; anything beyond
+// that is answered with 503 and Retry-After right away instead of adding to a queue the service cannot drain.
+// Long-lived streams get a virtual thread of their own instead of a slot, at most max-streams of them at a time.
+@ApplicationScoped
+public class RequestExecutor {
+    public static final String MODE_PROPERTY = "warehouse.requests.mode";
+    public static final String MAX_CONCURRENT_PROPERTY = "warehouse.requests.max-concurrent";
+    public static final String MAX_QUEUED_PROPERTY = "warehouse.requests.max-queued";
+    public static final String MAX_QUEUE_MILLIS_PROPERTY = "warehouse.requests.max-queue-millis";
+    public static final String MAX_STREAMS_PROPERTY = "warehouse.requests.max-streams";
+    static final long RETRY_AFTER_SECONDS = 1;
+
+    public enum Mode {
+        SYNCHRONOUS,
+        VIRTUAL_THREADS;
+
+        public static Mode fromSystemProperty() {
+            String mode = System.getProperty(MODE_PROPERTY);
+            return mode == null ? SYNCHRONOUS : valueOf(mode.trim().toUpperCase());
+        }
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxQueueNanos;
+    // Null in SYNCHRONOUS mode
+    private final ExecutorService executor;
+    private final Semaphore running;
+    private final Semaphore admitted;
+    private final int maxStreams;
+    private final Semaphore streams;
+    private final LongAdder shed = new LongAdder();
+
+    public RequestExecutor() {
+        this(Mode.fromSystemProperty(), Integer.getInteger(MAX_CONCURRENT_PROPERTY, 64),
+                Integer.getInteger(MAX_QUEUED_PROPERTY, 1000), Long.getLong(MAX_QUEUE_MILLIS_PROPERTY, 1000));
+    }
+
+    public RequestExecutor(Mode mode, int maxConcurrent, int maxQueued, long maxQueueMillis) {
+        this(mode, maxConcurrent, maxQueued, maxQueueMillis, Integer.getInteger(MAX_STREAMS_PROPERTY, 1000));
+    }
+
+    public RequestExecutor(Mode mode, int maxConcurrent, int maxQueued, long maxQueueMillis, int maxStreams) {
+        if (maxConcurrent < 1 || maxQueued < 0 || maxQueueMillis < 0 || maxStreams < 0) {
+            throw new IllegalArgumentException("Request limits must be positive, queue and stream limits must not be negative.");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMillis);
+        // Creating the executor starts no thread, so the CDI client proxy constructing one costs nothing
+        this.executor = mode == Mode.VIRTUAL_THREADS ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("request-", 0).factory()) : null;
+        this.running = new Semaphore(maxConcurrent, true);
+        this.admitted = new Semaphore(maxConcurrent + maxQueued);
+        this.maxStreams = maxStreams;
+        this.streams = new Semaphore(maxStreams);
+    }
+
+    // The request's result, completed with a ServiceOverloadedException when it was shed. Exceptions of the request
+    // itself complete the stage too, and reach the exception mappers like those of synchronous methods.
+    public <T> CompletionStage<T> submit(Supplier<T> request) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(request.get());
+        }
+        if (!admitted.tryAcquire()) {
+            shed.increment();
+            return CompletableFuture.failedFuture(new ServiceOverloadedException("Too many requests waiting.", RETRY_AFTER_SECONDS));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(request, result, queuedAt));
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            result.completeExceptionally(new ServiceOverloadedException("Shutting down.", RETRY_AFTER_SECONDS));
+        }
+        return result;
+    }
+
+    // Runs a stream that lasts as long as its client listens, such as a feed of changes, on a virtual thread in every
+    // mode, as in a request slot it would keep requests from running for that long. Beyond max-streams open at once a
+    // ServiceOverloadedException is thrown, answered with 503 like a shed request.
+    public void stream(String name, Runnable stream) {
+        if (!streams.tryAcquire()) {
+            shed.increment();
+            throw new ServiceOverloadedException("Too many streams open.", RETRY_AFTER_SECONDS);
+        }
+        try {
+            Thread.ofVirtual().name(name).start(() -> {
+                try {
+                    stream.run();
+                } finally {
+                    streams.release();
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            streams.release();
+            throw e;
+        }
+    }
+
+    private <T> void run(Supplier<T> request, CompletableFuture<T> result, long queuedAt) {
+        boolean started = false;
+        T value = null;
+        Throwable failure = null;
+        try {
+            started = running.tryAcquire(maxQueueNanos - (System.nanoTime() - queuedAt), TimeUnit.NANOSECONDS);
+            if (started) {
+                value = request.get();
+            } else {
+                // The client is likely to have given up on a request that waited this long
+                shed.increment();
+                failure = new ServiceOverloadedException("Waited too long for a request slot.", RETRY_AFTER_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            failure = new ServiceOverloadedException("Shutting down.", RETRY_AFTER_SECONDS);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            // Released before completing, so a client sending its next request right away finds the slot free
+            if (started) {
+                running.release();
+            }
+            admitted.release();
+        }
+        if (failure != null) {
+            result.completeExceptionally(failure);
+        } else {
+            result.complete(value);
+        }
+    }
+
+    public void writePrometheus(PrometheusWriter writer) {
+        int inFlight = maxConcurrent - running.availablePermits();
+        writer.gauge("warehouse_requests_running", "Requests running on virtual threads.", inFlight);
+        writer.gauge("warehouse_requests_queued", "Requests waiting for a slot to run in.",
+                Math.max(0, maxConcurrent + maxQueued - admitted.availablePermits() - inFlight));
+        writer.gauge("warehouse_streams_open", "Streams open on virtual threads of their own.", maxStreams - streams.availablePermits());
+        writer.counter("warehouse_requests_shed_total", "Requests answered with 503 because the service was saturated.", shed.sum());
+    }
+
+    // Interrupts requests still waiting for a slot, which are answered with 503
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.resource;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.example.metrics.PrometheusWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Serialized response bodies keyed by endpoint and parameters, each tagged with the catalog version it was built from.
+// An entry is only served while the caller's current version still matches, so writes invalidate by bumping a counter
+// and stale entries simply age out. The total size is bounded by -Dwarehouse.cache.max-bytes (default 64 MiB);
+// when it is exceeded the least recently used entries are evicted.
+@ApplicationScoped
+public class ResponseCache {
+    public static final String MAX_BYTES_PROPERTY = "warehouse.cache.max-bytes";
+    private static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final class Entry {
+        final long version;
+        final byte[] body;
+        volatile long lastAccess;
+
+        Entry(long version, byte[] body, long lastAccess) {
+            this.version = version;
+            this.body = body;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long maxBytes;
+    private final AtomicLong bytes = new AtomicLong();
+    // Logical time for recency, cheaper than reading the clock on every hit
+    private final AtomicLong ticks = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public ResponseCache() {
+        this(Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    }
+
+    public ResponseCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns the body cached for the key at exactly this version, or null
+    public byte[] get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = ticks.incrementAndGet();
+        hits.increment();
+        return entry.body;
+    }
+
+    // Bodies larger than a quarter of the cache are not kept, so one huge response cannot flush everything else.
+    // A request that read an older version may finish after one that read a newer, so an entry is only replaced by
+    // one at least as new.
+    public void put(String key, long version, byte[] body) {
+        if (body.length > maxBytes / 4) {
+            return;
+        }
+        Entry entry = new Entry(version, body, ticks.incrementAndGet());
+        entries.compute(key, (k, previous) -> {
+            if (previous != null && previous.version > version) {
+                return previous;
+            }
+            bytes.addAndGet(body.length - (previous == null ? 0 : previous.body.length));
+            return entry;
+        });
+        if (bytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    public void recordNotModified() {
+        notModified.increment();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    public void writePrometheus(PrometheusWriter writer) {
+        writer.counter("warehouse_response_cache_hits_total", "Read requests answered from the response cache.", hits.sum());
+        writer.counter("warehouse_response_cache_misses_total", "Read requests that had to build their response.", misses.sum());
+        writer.counter("warehouse_response_cache_not_modified_total", "Read requests answered with 304 Not Modified.", notModified.sum());
+        writer.gauge("warehouse_response_cache_bytes", "Size of the cached response bodies.", bytes.get());
+    }
+
+    // Drops the least recently used entries until the cache is back under 90% of its budget
+    private synchronized void evict() {
+        if (bytes.get() <= maxBytes) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> byAge = new ArrayList<>(entries.entrySet());
+        byAge.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+        long target = maxBytes - maxBytes / 10;
+        for (Map.Entry<String, Entry> oldest : byAge) {
+            if (bytes.get() <= target) {
+                break;
+            }
+            if (entries.remove(oldest.getKey(), oldest.getValue())) {
+                bytes.addAndGet(-oldest.getValue().body.length);
+            }
+        }
+    }
+}
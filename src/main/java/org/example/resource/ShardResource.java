@@ -0,0 +1,253 @@
+package org.example.resource;
+
+import jakarta.inject.Inject;
+import jakarta.json.bind.JsonbException;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.example.entities.Category;
+import org.example.entities.JsonDateAdapter;
+import org.example.entities.ProductRecord;
+import org.example.exceptionmapper.ProductNotFoundException;
+import org.example.service.ProductQuery;
+import org.example.service.WarehouseService;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+
+
+// This node's warehouse as one shard of a sharded catalog, called by HttpProductShard on the node that routes the
+// requests. Every ProductShard operation maps to one request and answers exactly what the local WarehouseService
+// does, so the caller can merge the answers of several nodes: 400 for what the service rejects, 404 for a product
+// that is not here and 412 with the current version in ETag for a failed If-Match.
+@Path("/shard")
+public class ShardResource {
+    private final WarehouseService warehouseService;
+    private final RequestExecutor requestExecutor;
+
+    public ShardResource() {
+        this.warehouseService = null;
+        this.requestExecutor = null;
+    }
+
+    @Inject
+    public ShardResource(WarehouseService warehouseService, RequestExecutor requestExecutor) {
+        this.warehouseService = warehouseService;
+        this.requestExecutor = requestExecutor;
+    }
+
+    @POST
+    @Path("/products")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> addProduct(InputStream body) {
+        ProductRecord product = readJson(body, ProductRecord.class);
+        return requestExecutor.submit(() -> {
+            warehouseService.addProduct(product.id(), product.name(), product.category(), product.rating(), product.createdDate());
+            return Response.noContent().build();
+        });
+    }
+
+    // Adds a JSON array of products, answering with the rejected ones
+    @POST
+    @Path("/products/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> addProducts(InputStream body) {
+        ProductRecord[] products = readJson(body, ProductRecord[].class);
+        return requestExecutor.submit(() -> json(warehouseService.addProducts(List.of(products))));
+    }
+
+    // Replaces name, category and rating, given as a product without ID and dates
+    @PUT
+    @Path("/products/{id}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> updateProduct(@PathParam("id") int id, InputStream body) {
+        ProductRecord product = readJson(body, ProductRecord.class);
+        return requestExecutor.submit(() -> found(warehouseService.updateProduct(id, product.name(), product.category(), product.rating()), id));
+    }
+
+    @PATCH
+    @Path("/products/{id}")
+    @Consumes({MediaType.APPLICATION_JSON, ProductResource.APPLICATION_MERGE_PATCH_JSON})
+    public CompletionStage<Response> patchProduct(@PathParam("id") int id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, InputStream body) {
+        Set<Long> versions = ProductResource.parseIfMatch(ifMatch);
+        ProductPatch patch = ProductPatch.read(body);
+        return requestExecutor.submit(() -> found(warehouseService.patchProduct(id, patch.name(), patch.category(), patch.rating(), versions), id));
+    }
+
+    @DELETE
+    @Path("/products/{id}")
+    public CompletionStage<Response> deleteProduct(@PathParam("id") int id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        Set<Long> versions = ProductResource.parseIfMatch(ifMatch);
+        return requestExecutor.submit(() -> found(warehouseService.deleteProduct(id, versions), id));
+    }
+
+    @GET
+    @Path("/products/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getProductById(@PathParam("id") int id) {
+        return requestExecutor.submit(() -> warehouseService.getProductById(id)
+                .map(product -> Response.ok(ProductFormat.JSON.render(product), MediaType.APPLICATION_JSON_TYPE).build())
+                .orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found")));
+    }
+
+    @GET
+    @Path("/products/{id}/version")
+    @Produces(MediaType.TEXT_PLAIN)
+    public CompletionStage<Response> getProductVersion(@PathParam("id") int id) {
+        return requestExecutor.submit(() -> Response.ok(Long.toString(warehouseService.getProductVersion(id))).build());
+    }
+
+    @GET
+    @Path("/version")
+    @Produces(MediaType.TEXT_PLAIN)
+    public CompletionStage<Response> getVersion() {
+        return requestExecutor.submit(() -> Response.ok(Long.toString(warehouseService.getVersion())).build());
+    }
+
+    // All products, or a page of them after an ID when limit is given
+    @GET
+    @Path("/products")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getProducts(@QueryParam("after") @DefaultValue("0") int after, @QueryParam("limit") Integer limit) {
+        return requestExecutor.submit(() -> products(limit == null
+                ? warehouseService.getAllProducts() : warehouseService.getProductsAfterId(after, limit)));
+    }
+
+    // All products of a category, or a page of them after a name and ID when limit is given
+    @GET
+    @Path("/categories/{category}/products")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getProductsByCategory(@PathParam("category") Category category, @QueryParam("afterName") @DefaultValue("") String afterName,
+                                                           @QueryParam("afterId") @DefaultValue("0") int afterId, @QueryParam("limit") Integer limit) {
+        return requestExecutor.submit(() -> products(limit == null
+                ? warehouseService.getAllProductsByCategorySortedByProductName(category)
+                : warehouseService.getProductsByCategorySortedByProductNameAfter(category, afterName, afterId, limit)));
+    }
+
+    @GET
+    @Path("/categories/{category}/count")
+    @Produces(MediaType.TEXT_PLAIN)
+    public CompletionStage<Response> getNumberOfProductsInCategory(@PathParam("category") Category category) {
+        return requestExecutor.submit(() -> Response.ok(Long.toString(warehouseService.getNumberOfProductsInCategory(category))).build());
+    }
+
+    @GET
+    @Path("/categories/{category}/version")
+    @Produces(MediaType.TEXT_PLAIN)
+    public CompletionStage<Response> getCategoryVersion(@PathParam("category") Category category) {
+        return requestExecutor.submit(() -> Response.ok(Long.toString(warehouseService.getCategoryVersion(category))).build());
+    }
+
+    @GET
+    @Path("/categories")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getCategories() {
+        return requestExecutor.submit(() -> json(warehouseService.getAllCategoriesThatHasAtLeastOneProduct()));
+    }
+
+    // Counts by first letter, keyed by the letter as a string since JSON keys are strings
+    @GET
+    @Path("/letters")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getNumberOfProductsStartingWithEachLetter() {
+        return requestExecutor.submit(() -> {
+            Map<String, Long> letters = new TreeMap<>();
+            warehouseService.getNumberOfProductsStartingWithEachLetter().forEach((letter, count) -> letters.put(letter.toString(), count));
+            return json(letters);
+        });
+    }
+
+    @GET
+    @Path("/products/created-after")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getProductsCreatedAfter(@QueryParam("date") String date) {
+        if (date == null) {
+            throw new IllegalArgumentException("Date is required.");
+        }
+        try {
+            Instant instant = JsonDateAdapter.parse(date);
+            return requestExecutor.submit(() -> products(warehouseService.getAllProductsCreatedAfterASpecificDate(instant)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format: " + date + ".");
+        }
+    }
+
+    @GET
+    @Path("/products/modified")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getModifiedProducts() {
+        return requestExecutor.submit(() -> products(warehouseService.getAllProductsThatHasBeenModifiedSinceCreation()));
+    }
+
+    // For this node's current month unless a month is given
+    @GET
+    @Path("/products/top-rated")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> getTopRatedProducts(@QueryParam("month") String month) {
+        if (month == null) {
+            return requestExecutor.submit(() -> products(warehouseService.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate()));
+        }
+        try {
+            YearMonth yearMonth = YearMonth.parse(month);
+            return requestExecutor.submit(() -> products(warehouseService.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(yearMonth)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid month format: " + month + ".");
+        }
+    }
+
+    // Runs a ProductQuery given as JSON, answering with the products and the plan
+    @POST
+    @Path("/search")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> search(InputStream body) {
+        ProductQuery query = readJson(body, ProductQuery.class);
+        return requestExecutor.submit(() -> json(warehouseService.search(query)));
+    }
+
+    @GET
+    @Path("/suggest")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> suggest(@QueryParam("prefix") @DefaultValue("") String prefix, @QueryParam("limit") @DefaultValue("10") int limit) {
+        return requestExecutor.submit(() -> json(warehouseService.suggest(prefix, limit)));
+    }
+
+    private static Response found(boolean found, int id) {
+        if (!found) {
+            throw new ProductNotFoundException("Product with ID " + id + " not found");
+        }
+        return Response.noContent().build();
+    }
+
+    private static Response products(List<ProductRecord> products) {
+        return Response.ok(ProductFormat.JSON.render(products), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    // Written with JSON-B here rather than by the container's provider, so both ends agree on the format
+    private static Response json(Object value) {
+        return Response.ok(ProductStreamingOutput.jsonb.toJson(value).getBytes(StandardCharsets.UTF_8), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private static <T> T readJson(InputStream body, Class<T> type) {
+        try {
+            return ProductStreamingOutput.jsonb.fromJson(body, type);
+        } catch (JsonbException e) {
+            // ProductQuery rejects invalid values in its constructor, which JSON-B wraps
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IllegalArgumentException illegal) {
+                    throw illegal;
+                }
+            }
+            throw new IllegalArgumentException("Malformed JSON: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.service;
+
+import org.example.entities.ProductRecord;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+
+// Keeps each product field in its own primitive array, indexed by row, with names as UTF-8 bytes in one shared arena.
+// A product costs a few dozen bytes and no objects, so large catalogs stay small and cheap to garbage collect;
+// the price is a fresh ProductRecord built for every product a read returns.
+final class ColumnarProductStore extends RowProductStore {
+    private int size;
+    private int[] ids = new int[16];
+    private byte[] categories = new byte[16];
+    private byte[] ratings = new byte[16];
+    private long[] createdDates = new long[16];
+    private long[] modifiedDates = new long[16];
+    private int[] nameOffsets = new int[16];
+    private int[] nameLengths = new int[16];
+    private byte[] names = new byte[256];
+    private int namesSize;
+    // Arena bytes of names that were replaced or removed, reclaimed by compacting once they are half of it
+    private int unusedNameBytes;
+    private final IntIntHashMap rowsById = new IntIntHashMap(MISSING);
+
+    ColumnarProductStore(Clock clock) {
+        super(clock);
+    }
+
+    @Override
+    int rowCount() {
+        return size;
+    }
+
+    @Override
+    int rowOf(int id) {
+        return rowsById.get(id);
+    }
+
+    @Override
+    int idAt(int row) {
+        return ids[row];
+    }
+
+    @Override
+    int categoryAt(int row) {
+        return categories[row];
+    }
+
+    @Override
+    int ratingAt(int row) {
+        return ratings[row];
+    }
+
+    @Override
+    long createdDateAt(int row) {
+        return createdDates[row];
+    }
+
+    @Override
+    long modifiedDateAt(int row) {
+        return modifiedDates[row];
+    }
+
+    @Override
+    String nameAt(int row) {
+        return new String(names, nameOffsets[row], nameLengths[row], StandardCharsets.UTF_8);
+    }
+
+    // Decodes at most the four bytes a character can take rather than the whole name
+    @Override
+    char firstLetterAt(int row) {
+        return new String(names, nameOffsets[row], Math.min(nameLengths[row], 4), StandardCharsets.UTF_8).charAt(0);
+    }
+
+    // Unsigned UTF-8 bytes compare in code point order, which only differs from String order for names
+    // mixing characters outside the Basic Multilingual Plane with ones from U+E000 to U+FFFF
+    @Override
+    int compareNames(int row, int other) {
+        return Arrays.compareUnsigned(names, nameOffsets[row], nameOffsets[row] + nameLengths[row],
+                names, nameOffsets[other], nameOffsets[other] + nameLengths[other]);
+    }
+
+    @Override
+    boolean nameEquals(int row, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return Arrays.equals(names, nameOffsets[row], nameOffsets[row] + nameLengths[row], bytes, 0, bytes.length);
+    }
+
+    @Override
+    void appendRow(ProductRecord product) {
+        if (size == ids.length) {
+            grow();
+        }
+        int row = size++;
+        ids[row] = product.id();
+        createdDates[row] = millisOf(product.createdDate());
+        storeName(row, product.name());
+        setFields(row, product);
+        rowsById.put(product.id(), row);
+    }
+
+    @Override
+    void updateRow(int row, ProductRecord product, boolean nameChanged) {
+        createdDates[row] = millisOf(product.createdDate());
+        setFields(row, product);
+        if (nameChanged) {
+            unusedNameBytes += nameLengths[row];
+            storeName(row, product.name());
+            if (unusedNameBytes > namesSize / 2) {
+                compactNames();
+            }
+        }
+    }
+
+    @Override
+    void removeRow(int row) {
+        int last = --size;
+        rowsById.remove(ids[row]);
+        unusedNameBytes += nameLengths[row];
+        if (row != last) {
+            ids[row] = ids[last];
+            categories[row] = categories[last];
+            ratings[row] = ratings[last];
+            createdDates[row] = createdDates[last];
+            modifiedDates[row] = modifiedDates[last];
+            nameOffsets[row] = nameOffsets[last];
+            nameLengths[row] = nameLengths[last];
+            rowsById.put(ids[row], row);
+        }
+        if (unusedNameBytes > namesSize / 2) {
+            compactNames();
+        }
+    }
+
+    private void setFields(int row, ProductRecord product) {
+        categories[row] = (byte) product.category().ordinal();
+        ratings[row] = (byte) product.rating();
+        modifiedDates[row] = millisOf(product.modifiedDate());
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        createdDates = Arrays.copyOf(createdDates, capacity);
+        modifiedDates = Arrays.copyOf(modifiedDates, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+    }
+
+    private void storeName(int row, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (namesSize + bytes.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesSize + bytes.length));
+        }
+        System.arraycopy(bytes, 0, names, namesSize, bytes.length);
+        nameOffsets[row] = namesSize;
+        nameLengths[row] = bytes.length;
+        namesSize += bytes.length;
+    }
+
+    private void compactNames() {
+        byte[] compacted = new byte[Math.max(namesSize - unusedNameBytes, 256)];
+        int offset = 0;
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(names, nameOffsets[row], compacted, offset, nameLengths[row]);
+            nameOffsets[row] = offset;
+            offset += nameLengths[row];
+        }
+        names = compacted;
+        namesSize = offset;
+        unusedNameBytes = 0;
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Hands commands from any number of threads to one writer thread through a bounded lock-free ring. A producer claims
+// the next slot by advancing the tail with a CAS and then stores its command there; the writer takes stored commands in
+// slot order, up to maxBatch at a time, and passes each run of them to the consumer as one batch. A slot is only
+// reused once the writer emptied it, and a producer finding the ring full waits for the writer to catch up. An idle
+// writer parks, and a producer that sees it parked wakes it. Closing swaps the tail for SEALED, so each command is
+// either claimed before that and applied by the writer, or rejected without a slot.
+final class CommandQueue<E> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CommandQueue.class);
+    private static final long SEALED = -1;
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final int maxBatch;
+    private final Consumer<List<E>> consumer;
+    private final AtomicLong tail = new AtomicLong();
+    // Written by the writer only, read by producers to tell whether the ring is full
+    private volatile long head;
+    private volatile boolean parked;
+    // The tail at closing, which the writer applies commands up to before it stops, or SEALED while open
+    private volatile long end = SEALED;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Thread writer;
+
+    // The capacity is rounded up to a power of two
+    CommandQueue(String name, int capacity, int maxBatch, Consumer<List<E>> consumer) {
+        if (capacity < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive numbers.");
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxBatch = maxBatch;
+        this.consumer = consumer;
+        this.writer = Thread.ofPlatform().name(name).daemon().unstarted(this::run);
+    }
+
+    void submit(E command) {
+        // Started on first use, so an instance that is never written to never has a thread
+        if (!started.get() && started.compareAndSet(false, true)) {
+            writer.start();
+        }
+        long claimed;
+        while (true) {
+            claimed = tail.get();
+            if (claimed == SEALED) {
+                throw new IllegalStateException("Write queue is closed.");
+            } else if (claimed - head >= slots.length()) {
+                LockSupport.unpark(writer);
+                Thread.yield();
+            } else if (tail.compareAndSet(claimed, claimed + 1)) {
+                break;
+            }
+        }
+        // A volatile store, ordered before reading parked, so either the writer sees the command or this sees it parked
+        slots.set((int) claimed & mask, command);
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void run() {
+        List<E> batch = new ArrayList<>(Math.min(maxBatch, slots.length()));
+        long next = head;
+        while (true) {
+            E command;
+            long stop = end;
+            while (batch.size() < maxBatch && next != stop && (command = slots.get((int) next & mask)) != null) {
+                slots.set((int) next & mask, null);
+                batch.add(command);
+                next++;
+            }
+            if (!batch.isEmpty()) {
+                head = next;
+                try {
+                    consumer.accept(batch);
+                } catch (RuntimeException | Error e) {
+                    logger.error("Failed to apply a batch of {} commands", batch.size(), e);
+                }
+                batch.clear();
+                continue;
+            }
+            if (next == stop) {
+                return;
+            }
+            if (stop != SEALED) {
+                // Claimed before closing but not stored yet
+                Thread.onSpinWait();
+                continue;
+            }
+            parked = true;
+            if (slots.get((int) next & mask) == null && end == SEALED) {
+                LockSupport.park(this);
+            }
+            parked = false;
+        }
+    }
+
+    // Applies the commands already submitted and stops the writer; submitting afterwards fails
+    @Override
+    public void close() {
+        long claimed = tail.getAndSet(SEALED);
+        if (claimed == SEALED) {
+            return;
+        }
+        end = claimed;
+        // A producer starts the writer before claiming a slot, so any command claimed before the seal has a writer
+        if (started.get()) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
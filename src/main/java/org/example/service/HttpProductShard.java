@@ -0,0 +1,277 @@
+package org.example.service;
+
+import jakarta.json.Json;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import org.example.entities.Category;
+import org.example.entities.JsonDateAdapter;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductImportError;
+import org.example.entities.ProductRecord;
+import org.example.exceptionmapper.ProductVersionConflictException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// A shard on another node, reached through its /shard resource. Answers come back as the local service would give
+// them: 400 as an IllegalArgumentException with the node's message, 404 as a missing product, 412 as a version
+// conflict carrying the node's current version. A node that cannot be reached fails the call with an
+// UncheckedIOException rather than answering for part of the catalog.
+public final class HttpProductShard implements ProductShard {
+    public static final String TIMEOUT_PROPERTY = "warehouse.shard.timeout.millis";
+    private static final String JSON = "application/json";
+    private static final String ILLEGAL_ARGUMENT_PREFIX = "Illegal argument: ";
+    private static final String CONFLICT_PREFIX = "Precondition failed: ";
+    private static final Jsonb jsonb = JsonbBuilder.create();
+    private final URI shard;
+    private final HttpClient client;
+    private final Duration timeout;
+
+    // The base URI of the node's REST API, such as http://node-1:8080/warehouse/api/
+    public HttpProductShard(URI node) {
+        this(node, HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build(),
+                Duration.ofMillis(Long.getLong(TIMEOUT_PROPERTY, 10_000)));
+    }
+
+    HttpProductShard(URI node, HttpClient client, Duration timeout) {
+        String base = node.toString();
+        this.shard = URI.create(base.endsWith("/") ? base + "shard/" : base + "/shard/");
+        this.client = client;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void addProduct(int id, String name, Category category, int rating, Instant createdDate) {
+        send(request("products").POST(json(new ProductRecord(id, name, category, rating, createdDate, null))));
+    }
+
+    @Override
+    public List<ProductImportError> addProducts(List<ProductRecord> products) {
+        return List.of(read(send(request("products/batch").POST(json(products))), ProductImportError[].class));
+    }
+
+    @Override
+    public boolean updateProduct(int id, String newName, Category newCategory, int newRating) {
+        return sendForProduct(request("products/" + id).PUT(json(new ProductRecord(0, newName, newCategory, newRating, null, null)))) != null;
+    }
+
+    @Override
+    public boolean patchProduct(int id, String newName, Category newCategory, Integer newRating, Set<Long> ifMatch) {
+        JsonObjectBuilder patch = Json.createObjectBuilder();
+        if (newName != null) {
+            patch.add("name", newName);
+        }
+        if (newCategory != null) {
+            patch.add("category", newCategory.name());
+        }
+        if (newRating != null) {
+            patch.add("rating", newRating);
+        }
+        HttpRequest.Builder request = ifMatch(request("products/" + id), ifMatch)
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(patch.build().toString()));
+        return sendForProduct(request) != null;
+    }
+
+    @Override
+    public boolean deleteProduct(int id, Set<Long> ifMatch) {
+        return sendForProduct(ifMatch(request("products/" + id), ifMatch).DELETE()) != null;
+    }
+
+    @Override
+    public Optional<ProductRecord> getProductById(int id) {
+        return Optional.ofNullable(sendForProduct(request("products/" + id).GET())).map(body -> read(body, ProductRecord.class));
+    }
+
+    @Override
+    public long getProductVersion(int id) {
+        return Long.parseLong(send(request("products/" + id + "/version").GET()));
+    }
+
+    @Override
+    public long getVersion() {
+        return Long.parseLong(send(request("version").GET()));
+    }
+
+    @Override
+    public long getCategoryVersion(Category category) {
+        return Long.parseLong(send(request("categories/" + category + "/version").GET()));
+    }
+
+    @Override
+    public List<ProductRecord> getAllProducts() {
+        return products(request("products").GET());
+    }
+
+    @Override
+    public List<ProductRecord> getProductsAfterId(int afterId, int limit) {
+        return products(request("products?after=" + afterId + "&limit=" + limit).GET());
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
+        return products(request("categories/" + category + "/products").GET());
+    }
+
+    @Override
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfter(Category category, String afterName, int afterId, int limit) {
+        return products(request("categories/" + category + "/products?afterName=" + encode(afterName) + "&afterId=" + afterId + "&limit=" + limit).GET());
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date) {
+        return products(request("products/created-after?date=" + encode(JsonDateAdapter.format(date))).GET());
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        return products(request("products/modified").GET());
+    }
+
+    @Override
+    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
+        Set<Category> categories = EnumSet.noneOf(Category.class);
+        categories.addAll(List.of(read(send(request("categories").GET()), Category[].class)));
+        return Collections.unmodifiableSet(categories);
+    }
+
+    @Override
+    public long getNumberOfProductsInCategory(Category category) {
+        return Long.parseLong(send(request("categories/" + category + "/count").GET()));
+    }
+
+    @Override
+    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
+        Map<Character, Long> letters = new HashMap<>();
+        try (JsonReader reader = Json.createReader(new StringReader(send(request("letters").GET())))) {
+            reader.readObject().forEach((letter, count) -> letters.put(letter.charAt(0), ((JsonNumber) count).longValue()));
+        }
+        return Collections.unmodifiableMap(letters);
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month) {
+        return products(request("products/top-rated?month=" + month).GET());
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
+        return products(request("products/top-rated").GET());
+    }
+
+    @Override
+    public ProductSearch.Result search(ProductQuery query) {
+        // Read in parts, as JSON-B would fill the record's product list with maps
+        try (JsonReader reader = Json.createReader(new StringReader(send(request("search").POST(json(query)))))) {
+            JsonObject result = reader.readObject();
+            return new ProductSearch.Result(List.of(read(result.getJsonArray("products").toString(), ProductRecord[].class)),
+                    read(result.getJsonObject("plan").toString(), ProductSearch.Plan.class));
+        }
+    }
+
+    @Override
+    public List<NameSuggestion> suggest(String prefix, int limit) {
+        return List.of(read(send(request("suggest?prefix=" + encode(prefix) + "&limit=" + limit).GET()), NameSuggestion[].class));
+    }
+
+    // The client's connections close with it
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public String toString() {
+        return shard.toString();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(shard.resolve(path)).timeout(timeout).header("Accept", JSON + ", text/plain");
+    }
+
+    // An empty set of versions is sent as a tag matching none, so the node refuses the change as this one would
+    private static HttpRequest.Builder ifMatch(HttpRequest.Builder request, Set<Long> versions) {
+        if (versions == null) {
+            return request;
+        }
+        String tags = versions.isEmpty() ? "\"none\"" : versions.stream().map(version -> "\"" + version + "\"").collect(Collectors.joining(", "));
+        return request.header("If-Match", tags);
+    }
+
+    private static HttpRequest.BodyPublisher json(Object value) {
+        return HttpRequest.BodyPublishers.ofString(jsonb.toJson(value), StandardCharsets.UTF_8);
+    }
+
+    private List<ProductRecord> products(HttpRequest.Builder request) {
+        return List.of(read(send(request), ProductRecord[].class));
+    }
+
+    private static <T> T read(String body, Class<T> type) {
+        return jsonb.fromJson(body, type);
+    }
+
+    // The body of a successful answer to a request that should always succeed
+    private String send(HttpRequest.Builder builder) {
+        return send(builder, false);
+    }
+
+    // The body of a successful answer, or null when the node has no such product
+    private String sendForProduct(HttpRequest.Builder builder) {
+        return send(builder, true);
+    }
+
+    private String send(HttpRequest.Builder builder, boolean productMayBeMissing) {
+        HttpRequest request = builder.header("Content-Type", JSON).build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + shard + " failed to answer " + request.method() + " " + request.uri(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard " + shard, e);
+        }
+        return switch (response.statusCode()) {
+            case 200, 201, 204 -> response.body();
+            case 400 -> throw new IllegalArgumentException(withoutPrefix(response.body(), ILLEGAL_ARGUMENT_PREFIX));
+            case 404 -> {
+                if (!productMayBeMissing) {
+                    throw new UncheckedIOException(new IOException("Shard " + shard + " has no " + request.uri()));
+                }
+                yield null;
+            }
+            case 412 -> throw new ProductVersionConflictException(withoutPrefix(response.body(), CONFLICT_PREFIX),
+                    response.headers().firstValue("ETag").map(tag -> Long.parseLong(tag.replace("\"", ""))).orElse(0L));
+            default -> throw new UncheckedIOException(new IOException("Shard " + shard + " answered " + request.method() + " "
+                    + request.uri() + " with " + response.statusCode() + ": " + response.body()));
+        };
+    }
+
+    private static String withoutPrefix(String message, String prefix) {
+        return message.startsWith(prefix) ? message.substring(prefix.length()) : message;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.service;
+
+// Open-addressing hash map from primitive int to primitive int, so neither keys nor values are boxed.
+// Uses linear probing in power-of-two sized tables; not thread-safe for writers.
+final class IntIntHashMap {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    // Key 0 marks an empty slot, so a zero key is kept aside in its own fields.
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+    private boolean hasZeroKey;
+    private int zeroValue;
+    private final int missingValue;
+
+    // Lookups of absent keys return missingValue
+    IntIntHashMap(int missingValue) {
+        this.missingValue = missingValue;
+        keys = new int[16];
+        values = new int[16];
+        resizeThreshold = (int) (keys.length * LOAD_FACTOR);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey;
+        }
+        return keys[indexOf(key)] == key;
+    }
+
+    int get(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : missingValue;
+    }
+
+    void put(int key, int value) {
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int index = indexOf(key);
+        values[index] = value;
+        if (keys[index] != key) {
+            keys[index] = key;
+            if (++size > resizeThreshold) {
+                resize();
+            }
+        }
+    }
+
+    // Backward-shift deletion: later keys of the probe run move into the hole, so no tombstones slow down lookups
+    void remove(int key) {
+        if (key == EMPTY) {
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                size--;
+            }
+            return;
+        }
+        int mask = keys.length - 1;
+        int hole = indexOf(key);
+        if (keys[hole] != key) {
+            return;
+        }
+        size--;
+        for (int index = (hole + 1) & mask; keys[index] != EMPTY; index = (index + 1) & mask) {
+            int home = mix(keys[index]) & mask;
+            // A key may fill the hole when its home slot is not cyclically within (hole, index]
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hole = index;
+            }
+        }
+        keys[hole] = EMPTY;
+    }
+
+    // Returns the slot holding the key, or the empty slot where it would be inserted
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length << 1];
+        values = new int[oldValues.length << 1];
+        resizeThreshold = (int) (keys.length * LOAD_FACTOR);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    // Spreads sequential ids over the table (Murmur3 finalizer)
+    private static int mix(int key) {
+        int h = key * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
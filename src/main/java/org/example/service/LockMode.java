@@ -0,0 +1,52 @@
+package org.example.service;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+// How WarehouseService guards the warehouse, selectable with -Dwarehouse.lock.mode
+public enum LockMode {
+    // One lock for everything, readers block each other
+    EXCLUSIVE,
+    // Readers share a ReentrantReadWriteLock read lock, writers are exclusive
+    READ_WRITE,
+    // Read/write views of a StampedLock, non-reentrant and cheaper to acquire
+    STAMPED,
+    // Readers take no lock and read the published snapshot, writers are exclusive
+    SNAPSHOT;
+
+    public static final String PROPERTY = "warehouse.lock.mode";
+
+    public static LockMode fromSystemProperty() {
+        String mode = System.getProperty(PROPERTY);
+        return mode == null ? SNAPSHOT : valueOf(mode.trim().toUpperCase());
+    }
+
+    // Whether readers take the read lock before reading the warehouse snapshot
+    boolean locksReads() {
+        return this != SNAPSHOT;
+    }
+
+    // In SNAPSHOT mode only the write lock of the returned lock is used
+    ReadWriteLock createLock() {
+        switch (this) {
+            case EXCLUSIVE:
+                Lock lock = new ReentrantLock();
+                return new ReadWriteLock() {
+                    public Lock readLock() {
+                        return lock;
+                    }
+
+                    public Lock writeLock() {
+                        return lock;
+                    }
+                };
+            case STAMPED:
+                return new StampedLock().asReadWriteLock();
+            default:
+                return new ReentrantReadWriteLock();
+        }
+    }
+}
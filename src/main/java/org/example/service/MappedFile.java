@@ -0,0 +1,132 @@
+package org.example.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// A file mapped into memory in chunks of 1 GiB, since one MappedByteBuffer cannot address more than 2 GiB.
+// Values are read and written at absolute positions; ints and longs at positions aligned to their size never cross
+// a chunk boundary, byte ranges may. The file grows by doubling, and only the last chunk is mapped again when it does.
+// Not thread-safe for writers; growing must not overlap with reads.
+final class MappedFile implements Closeable {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long MINIMUM_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private long capacity;
+
+    private MappedFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Opens or creates the file, mapping at least its current size
+    static MappedFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedFile file = new MappedFile(channel);
+        try {
+            file.map(Math.max(channel.size(), MINIMUM_SIZE));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return file;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    // Makes positions below size addressable, doubling the file until they are
+    void ensureCapacity(long size) throws IOException {
+        if (size > capacity) {
+            long newCapacity = capacity;
+            while (newCapacity < size) {
+                newCapacity = newCapacity < CHUNK_SIZE ? newCapacity * 2 : newCapacity + CHUNK_SIZE;
+            }
+            map(newCapacity);
+        }
+    }
+
+    private void map(long newCapacity) throws IOException {
+        int chunkCount = (int) ((newCapacity + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        MappedByteBuffer[] newChunks = Arrays.copyOf(chunks, chunkCount);
+        // A partly mapped last chunk is mapped again at its new size
+        for (int chunk = Math.max(chunks.length - 1, 0); chunk < chunkCount; chunk++) {
+            long start = (long) chunk << CHUNK_BITS;
+            newChunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(CHUNK_SIZE, newCapacity - start));
+        }
+        chunks = newChunks;
+        capacity = newCapacity;
+    }
+
+    byte getByte(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+    }
+
+    void putByte(long position, byte value) {
+        chunks[(int) (position >>> CHUNK_BITS)].put((int) (position & CHUNK_MASK), value);
+    }
+
+    short getShort(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getShort((int) (position & CHUNK_MASK));
+    }
+
+    void putShort(long position, short value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putShort((int) (position & CHUNK_MASK), value);
+    }
+
+    int getInt(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    void putInt(long position, int value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putInt((int) (position & CHUNK_MASK), value);
+    }
+
+    long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    void putLong(long position, long value) {
+        chunks[(int) (position >>> CHUNK_BITS)].putLong((int) (position & CHUNK_MASK), value);
+    }
+
+    void getBytes(long position, byte[] bytes, int length) {
+        for (int done = 0; done < length; ) {
+            int offset = (int) ((position + done) & CHUNK_MASK);
+            int count = (int) Math.min(length - done, CHUNK_SIZE - offset);
+            chunks[(int) ((position + done) >>> CHUNK_BITS)].get(offset, bytes, done, count);
+            done += count;
+        }
+    }
+
+    void putBytes(long position, byte[] bytes) {
+        for (int done = 0; done < bytes.length; ) {
+            int offset = (int) ((position + done) & CHUNK_MASK);
+            int count = (int) Math.min(bytes.length - done, CHUNK_SIZE - offset);
+            chunks[(int) ((position + done) >>> CHUNK_BITS)].put(offset, bytes, done, count);
+            done += count;
+        }
+    }
+
+    // Writes changed pages back to the file
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    // The mapping itself is released when the buffers are garbage collected
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,371 @@
+package org.example.service;
+
+import org.example.entities.ProductRecord;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+
+// Keeps the catalog outside the heap in three memory-mapped files of a directory: fixed-width product rows, the
+// UTF-8 names they point into, and an open-addressing index from ID to row. The garbage collector never sees the
+// products, and reopening the directory makes the catalog available again without loading it; only the per
+// category and per letter counts are recounted. ProductRecords are built only for the products a read returns.
+// Pages are written back by the operating system, so the files survive a restart of the server but not
+// necessarily a crash of the machine; WarehousePersistence is what makes changes durable.
+// Renamed and removed products leave their old name bytes behind in the name file.
+final class MappedProductStore extends RowProductStore {
+    static final String ROWS_FILE = "products.rows";
+    static final String NAMES_FILE = "products.names";
+    static final String INDEX_FILE = "products.index";
+    private static final int ROWS_MAGIC = 0x57485253;
+    private static final int INDEX_MAGIC = 0x57484958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    // Names are stored with a 16 bit length
+    static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    // Row layout, 32 bytes so that rows never cross a chunk boundary of the mapped file
+    private static final int ROW_SIZE = 32;
+    private static final int ID = 0;
+    private static final int CATEGORY = 4;
+    private static final int RATING = 5;
+    private static final int NAME_LENGTH = 6;
+    private static final int CREATED_DATE = 8;
+    private static final int MODIFIED_DATE = 16;
+    private static final int NAME_OFFSET = 24;
+
+    // Rows file header
+    private static final int ROW_COUNT = 8;
+    private static final int NAMES_SIZE = 16;
+
+    // Index file header and slots of an ID and its row, ID 0 marking an empty slot
+    private static final int INDEX_CAPACITY = 8;
+    private static final int INDEX_SIZE = 12;
+    private static final int SLOT_SIZE = 8;
+    private static final int MINIMUM_INDEX_CAPACITY = 1024;
+
+    private final Path directory;
+    private final MappedFile rows;
+    private final MappedFile names;
+    private MappedFile index;
+    private int rowCount;
+    private long namesSize;
+    private int indexCapacity;
+    private int indexSize;
+
+    private MappedProductStore(Clock clock, Path directory, MappedFile rows, MappedFile names) {
+        super(clock);
+        this.directory = directory;
+        this.rows = rows;
+        this.names = names;
+    }
+
+    // Opens the catalog kept in the directory, or starts an empty one there
+    static MappedProductStore open(Path directory, Clock clock) throws IOException {
+        Files.createDirectories(directory);
+        MappedFile rows = MappedFile.open(directory.resolve(ROWS_FILE));
+        MappedFile names = MappedFile.open(directory.resolve(NAMES_FILE));
+        MappedProductStore store = new MappedProductStore(clock, directory, rows, names);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        int magic = rows.getInt(0);
+        if (magic == 0) {
+            rows.putInt(0, ROWS_MAGIC);
+            rows.putInt(4, VERSION);
+        } else if (magic != ROWS_MAGIC || rows.getInt(4) != VERSION) {
+            throw new IOException("Not a product rows file of version " + VERSION + ": " + directory.resolve(ROWS_FILE));
+        }
+        rowCount = (int) rows.getLong(ROW_COUNT);
+        namesSize = rows.getLong(NAMES_SIZE);
+        index = MappedFile.open(directory.resolve(INDEX_FILE));
+        indexCapacity = index.getInt(INDEX_CAPACITY);
+        indexSize = index.getInt(INDEX_SIZE);
+        // The index is written after the rows, so after a crash in between it is rebuilt from them
+        if (index.getInt(0) != INDEX_MAGIC || indexSize != rowCount) {
+            rebuildIndex(Math.max(MINIMUM_INDEX_CAPACITY, Integer.highestOneBit(Math.max(rowCount, 1)) * 4));
+        }
+        countRows();
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    @Override
+    public void close() {
+        try {
+            rows.close();
+            names.close();
+            if (index != null) {
+                index.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close product store in " + directory, e);
+        }
+    }
+
+    private static long rowPosition(int row) {
+        return HEADER_SIZE + (long) row * ROW_SIZE;
+    }
+
+    @Override
+    int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    int rowOf(int id) {
+        int mask = indexCapacity - 1;
+        for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+            long position = HEADER_SIZE + (long) slot * SLOT_SIZE;
+            int key = index.getInt(position);
+            if (key == id) {
+                return index.getInt(position + 4);
+            }
+            if (key == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    @Override
+    int idAt(int row) {
+        return rows.getInt(rowPosition(row) + ID);
+    }
+
+    @Override
+    int categoryAt(int row) {
+        return rows.getByte(rowPosition(row) + CATEGORY);
+    }
+
+    @Override
+    int ratingAt(int row) {
+        return rows.getByte(rowPosition(row) + RATING);
+    }
+
+    @Override
+    long createdDateAt(int row) {
+        return rows.getLong(rowPosition(row) + CREATED_DATE);
+    }
+
+    @Override
+    long modifiedDateAt(int row) {
+        return rows.getLong(rowPosition(row) + MODIFIED_DATE);
+    }
+
+    private int nameLengthAt(int row) {
+        return Short.toUnsignedInt(rows.getShort(rowPosition(row) + NAME_LENGTH));
+    }
+
+    private long nameOffsetAt(int row) {
+        return rows.getLong(rowPosition(row) + NAME_OFFSET);
+    }
+
+    @Override
+    String nameAt(int row) {
+        byte[] bytes = new byte[nameLengthAt(row)];
+        names.getBytes(nameOffsetAt(row), bytes, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Decodes at most the four bytes a character can take rather than the whole name
+    @Override
+    char firstLetterAt(int row) {
+        byte[] bytes = new byte[Math.min(nameLengthAt(row), 4)];
+        names.getBytes(nameOffsetAt(row), bytes, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8).charAt(0);
+    }
+
+    // Unsigned UTF-8 bytes compare in code point order, compared in place without decoding
+    @Override
+    int compareNames(int row, int other) {
+        long offset = nameOffsetAt(row);
+        long otherOffset = nameOffsetAt(other);
+        int length = nameLengthAt(row);
+        int otherLength = nameLengthAt(other);
+        for (int i = 0, common = Math.min(length, otherLength); i < common; i++) {
+            int comparison = Byte.compareUnsigned(names.getByte(offset + i), names.getByte(otherOffset + i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, otherLength);
+    }
+
+    @Override
+    boolean nameEquals(int row, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length != nameLengthAt(row)) {
+            return false;
+        }
+        long offset = nameOffsetAt(row);
+        for (int i = 0; i < bytes.length; i++) {
+            if (names.getByte(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The row and its name are written before the header counts them and the index points to them
+    @Override
+    void appendRow(ProductRecord product) {
+        if (product.id() == 0) {
+            throw new IllegalArgumentException("Product ID must not be 0.");
+        }
+        try {
+            int row = rowCount;
+            rows.ensureCapacity(rowPosition(row + 1));
+            rows.putInt(rowPosition(row) + ID, product.id());
+            writeRow(row, product, true);
+            rowCount++;
+            rows.putLong(ROW_COUNT, rowCount);
+            indexPut(product.id(), row);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to grow product store in " + directory, e);
+        }
+    }
+
+    @Override
+    void updateRow(int row, ProductRecord product, boolean nameChanged) {
+        try {
+            writeRow(row, product, nameChanged);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to grow product store in " + directory, e);
+        }
+    }
+
+    // The last row is copied over the removed one and the index updated before the header stops counting the last row
+    @Override
+    void removeRow(int row) {
+        int removedId = idAt(row);
+        int last = rowCount - 1;
+        if (row != last) {
+            long from = rowPosition(last);
+            long to = rowPosition(row);
+            for (int offset = 0; offset < ROW_SIZE; offset += 8) {
+                rows.putLong(to + offset, rows.getLong(from + offset));
+            }
+            insertSlot(index, indexCapacity, idAt(row), row);
+        }
+        indexRemove(removedId);
+        rowCount--;
+        rows.putLong(ROW_COUNT, rowCount);
+    }
+
+    private void writeRow(int row, ProductRecord product, boolean storeName) throws IOException {
+        long position = rowPosition(row);
+        if (storeName) {
+            byte[] bytes = product.name().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_NAME_LENGTH) {
+                throw new IllegalArgumentException("Product name cannot be longer than " + MAX_NAME_LENGTH + " bytes.");
+            }
+            names.ensureCapacity(namesSize + bytes.length);
+            names.putBytes(namesSize, bytes);
+            rows.putShort(position + NAME_LENGTH, (short) bytes.length);
+            rows.putLong(position + NAME_OFFSET, namesSize);
+            namesSize += bytes.length;
+            rows.putLong(NAMES_SIZE, namesSize);
+        }
+        rows.putByte(position + CATEGORY, (byte) product.category().ordinal());
+        rows.putByte(position + RATING, (byte) product.rating());
+        rows.putLong(position + CREATED_DATE, millisOf(product.createdDate()));
+        rows.putLong(position + MODIFIED_DATE, millisOf(product.modifiedDate()));
+    }
+
+    private void indexPut(int id, int row) throws IOException {
+        if ((indexSize + 1) * 2L > indexCapacity) {
+            rebuildIndex(indexCapacity * 2);
+        }
+        insertSlot(index, indexCapacity, id, row);
+        index.putInt(INDEX_SIZE, ++indexSize);
+    }
+
+    // Backward-shift deletion: later IDs of the probe run move into the hole, so lookups still stop at the first empty slot
+    private void indexRemove(int id) {
+        int mask = indexCapacity - 1;
+        int hole = mix(id) & mask;
+        while (index.getInt(slotPosition(hole)) != id) {
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; ; slot = (slot + 1) & mask) {
+            long position = slotPosition(slot);
+            int key = index.getInt(position);
+            if (key == 0) {
+                break;
+            }
+            int home = mix(key) & mask;
+            // An ID may fill the hole when its home slot is not cyclically within (hole, slot]
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                long holePosition = slotPosition(hole);
+                index.putInt(holePosition + 4, index.getInt(position + 4));
+                index.putInt(holePosition, key);
+                hole = slot;
+            }
+        }
+        index.putInt(slotPosition(hole), 0);
+        index.putInt(INDEX_SIZE, --indexSize);
+    }
+
+    private static long slotPosition(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    // Writes a complete index of the rows to a new file and moves it into place
+    private void rebuildIndex(int capacity) throws IOException {
+        Path newPath = directory.resolve(INDEX_FILE + ".new");
+        Files.deleteIfExists(newPath);
+        MappedFile newIndex = MappedFile.open(newPath);
+        try {
+            newIndex.ensureCapacity(HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            for (int row = 0; row < rowCount; row++) {
+                insertSlot(newIndex, capacity, idAt(row), row);
+            }
+            newIndex.putInt(INDEX_CAPACITY, capacity);
+            newIndex.putInt(INDEX_SIZE, rowCount);
+            newIndex.putInt(4, VERSION);
+            newIndex.putInt(0, INDEX_MAGIC);
+        } finally {
+            newIndex.close();
+        }
+        if (index != null) {
+            index.close();
+        }
+        Files.move(newPath, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index = MappedFile.open(directory.resolve(INDEX_FILE));
+        indexCapacity = capacity;
+        indexSize = rowCount;
+    }
+
+    private static void insertSlot(MappedFile index, int capacity, int id, int row) {
+        int mask = capacity - 1;
+        for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+            long position = HEADER_SIZE + (long) slot * SLOT_SIZE;
+            int key = index.getInt(position);
+            if (key == 0 || key == id) {
+                index.putInt(position + 4, row);
+                index.putInt(position, id);
+                return;
+            }
+        }
+    }
+
+    // Spreads sequential ids over the table (Murmur3 finalizer)
+    private static int mix(int key) {
+        int h = key * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,549 @@
+package org.example.service;
+
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Inverted index from the words of product names (lower-cased runs of letters and digits) to the IDs of the products
+// having them, immutable so that every store version carries its own. A compact base holds the words in code point
+// order in one UTF-8 arena, so the words with a prefix are one range of it, with a posting list of ascending IDs per
+// word stored as varint gaps, and a max-tree over the posting sizes to find the most common words of a range. Changes
+// since the base was built are kept beside it in persistent collections: the changed products, and for each of their
+// words how many products gained or lost it and which changed products have it now. Once more products changed than a 64th of the words of the base, at
+// least a few thousand, the changes are merged into a new base, which copies the untouched words and postings of the
+// old one in bulk.
+public final class NameIndex {
+    private static final int MINIMUM_CHANGES = 4096;
+
+    // Code point order, which is also the order of the UTF-8 bytes
+    private static final Comparator<String> WORD_ORDER = ProductField::compareNames;
+
+    private static final int[] NO_IDS = new int[0];
+
+    // A word of changed products: how many more products have it than in the base, fewer when negative, and the
+    // changed products having it now, ascending
+    private record Change(String word, int products, int[] ids) {
+    }
+
+    private static final Comparator<Change> CHANGE_ORDER = Comparator.comparing(Change::word, WORD_ORDER);
+    static final NameIndex EMPTY = new NameIndex(Base.EMPTY, PersistentIntMap.empty(), new PersistentSortedSet<>(CHANGE_ORDER));
+
+    private final Base base;
+    private final PersistentIntMap<Boolean> changedProducts;
+    private final PersistentSortedSet<Change> changes;
+
+    private NameIndex(Base base, PersistentIntMap<Boolean> changedProducts, PersistentSortedSet<Change> changes) {
+        this.base = base;
+        this.changedProducts = changedProducts;
+        this.changes = changes;
+    }
+
+    // The distinct words of a text in order of appearance
+    public static List<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (!word.isEmpty()) {
+            words.add(word.toString());
+        }
+        return List.copyOf(words);
+    }
+
+    static NameIndex build(Iterator<ProductRecord> products) {
+        Map<String, IdList> postingsByWord = new HashMap<>();
+        while (products.hasNext()) {
+            ProductRecord product = products.next();
+            for (String word : words(product.name())) {
+                postingsByWord.computeIfAbsent(word, w -> new IdList()).add(product.id());
+            }
+        }
+        String[] words = postingsByWord.keySet().toArray(new String[0]);
+        Arrays.sort(words, WORD_ORDER);
+        Base.Builder builder = new Base.Builder(words.length, 0, 0);
+        for (String word : words) {
+            IdList ids = postingsByWord.get(word);
+            Arrays.sort(ids.ids, 0, ids.size);
+            builder.add(word.getBytes(StandardCharsets.UTF_8), ids);
+        }
+        return new NameIndex(builder.build(), EMPTY.changedProducts, EMPTY.changes);
+    }
+
+    // The index after a product's name changed (previous null for a new product, product null for a removed one)
+    NameIndex replace(ProductRecord previous, ProductRecord product) {
+        if (previous != null && product != null && previous.name().equals(product.name())) {
+            return this;
+        }
+        int id = product != null ? product.id() : previous.id();
+        PersistentSortedSet<Change> changed = changes;
+        if (previous != null) {
+            for (String word : words(previous.name())) {
+                changed = change(changed, word, id, -1);
+            }
+        }
+        if (product != null) {
+            for (String word : words(product.name())) {
+                changed = change(changed, word, id, 1);
+            }
+        }
+        NameIndex index = new NameIndex(base, changedProducts.put(id, Boolean.TRUE), changed);
+        // Merging copies the whole base, so a larger base waits for more changes
+        return index.changedProducts.size() > Math.max(MINIMUM_CHANGES, base.size / 64) ? index.merge() : index;
+    }
+
+    // Adds the word to a product or takes it away, which it only has among the changes if its name changed before
+    private static PersistentSortedSet<Change> change(PersistentSortedSet<Change> changes, String word, int id, int products) {
+        Change change = find(changes, word);
+        int[] ids = change == null ? NO_IDS : change.ids();
+        int position = Arrays.binarySearch(ids, id);
+        if (products > 0) {
+            int[] added = new int[ids.length + 1];
+            position = -position - 1;
+            System.arraycopy(ids, 0, added, 0, position);
+            added[position] = id;
+            System.arraycopy(ids, position, added, position + 1, ids.length - position);
+            ids = added;
+        } else if (position >= 0) {
+            int[] removed = new int[ids.length - 1];
+            System.arraycopy(ids, 0, removed, 0, position);
+            System.arraycopy(ids, position + 1, removed, position, removed.length - position);
+            ids = removed;
+        }
+        products += change == null ? 0 : change.products();
+        return products == 0 && ids.length == 0 ? changes.remove(new Change(word, 0, NO_IDS)) : changes.add(new Change(word, products, ids));
+    }
+
+    private static Change find(PersistentSortedSet<Change> changes, String word) {
+        Iterator<Change> found = changes.iteratorFrom(new Change(word, 0, NO_IDS), true);
+        if (found.hasNext()) {
+            Change change = found.next();
+            if (change.word().equals(word)) {
+                return change;
+            }
+        }
+        return null;
+    }
+
+    // A new base with the changes in it. Every word whose posting list changed is among the changes, so the other
+    // words are copied as they are.
+    private NameIndex merge() {
+        int[] changedIds = new int[changedProducts.size()];
+        int[] size = new int[1];
+        changedProducts.forEach((id, changed) -> changedIds[size[0]++] = id);
+        Arrays.sort(changedIds);
+        Base.Builder builder = new Base.Builder(base.size + changes.size(), base.wordOffsets[base.size], base.postingOffsets[base.size]);
+        int copied = 0;
+        for (Change change : changes) {
+            byte[] bytes = change.word().getBytes(StandardCharsets.UTF_8);
+            int index = base.lowerBound(bytes);
+            builder.copy(base, copied, index);
+            copied = index;
+            IdList ids = new IdList(change.ids());
+            if (index < base.size && base.compare(index, bytes) == 0) {
+                copied++;
+                // No product of the base lost the word and the changed ones all come after it, as when adding products
+                if (ids.size > 0 && change.products() == ids.size && ids.ids[0] > base.lastIds[index]) {
+                    builder.append(base, index, ids);
+                    continue;
+                }
+                IdList unchanged = new IdList();
+                base.addUnchangedIds(index, changedIds, unchanged);
+                ids = IdList.merge(unchanged, ids);
+            }
+            builder.add(bytes, ids);
+        }
+        builder.copy(base, copied, base.size);
+        return new NameIndex(builder.build(), EMPTY.changedProducts, EMPTY.changes);
+    }
+
+    // How many products have the word
+    public int count(String word) {
+        int index = base.indexOf(word.getBytes(StandardCharsets.UTF_8));
+        Change change = find(changes, word);
+        return (index < 0 ? 0 : base.counts[index]) + (change == null ? 0 : change.products());
+    }
+
+    // IDs of the products whose name has the word, ascending
+    public PrimitiveIterator.OfInt productIds(String word) {
+        int index = base.indexOf(word.getBytes(StandardCharsets.UTF_8));
+        Change change = find(changes, word);
+        int[] changedIds = change == null ? NO_IDS : change.ids();
+        return new PrimitiveIterator.OfInt() {
+            private int position = index < 0 ? 0 : base.postingOffsets[index];
+            private final int end = index < 0 ? 0 : base.postingOffsets[index + 1];
+            private int previousId;
+            private int changedPosition;
+            private int nextBaseId = nextBaseId();
+            private int nextChangedId = nextChangedId();
+
+            // Skips products changed since the base was built, their current words are among the changes
+            private int nextBaseId() {
+                while (position < end) {
+                    int gap = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = base.postings[position++];
+                        gap |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    previousId += gap;
+                    if (!changedProducts.containsKey(previousId)) {
+                        return previousId;
+                    }
+                }
+                return Integer.MIN_VALUE;
+            }
+
+            private int nextChangedId() {
+                return changedPosition < changedIds.length ? changedIds[changedPosition++] : Integer.MIN_VALUE;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextBaseId != Integer.MIN_VALUE || nextChangedId != Integer.MIN_VALUE;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int id;
+                if (nextChangedId == Integer.MIN_VALUE || (nextBaseId != Integer.MIN_VALUE && nextBaseId < nextChangedId)) {
+                    id = nextBaseId;
+                    nextBaseId = nextBaseId();
+                } else {
+                    id = nextChangedId;
+                    nextChangedId = nextChangedId();
+                }
+                return id;
+            }
+        };
+    }
+
+    // At most limit words starting with the last word of the prefix, the most common first
+    public List<NameSuggestion> suggest(String prefix, int limit) {
+        ProductStore.validateLimit(limit);
+        List<String> prefixWords = words(prefix);
+        if (prefixWords.isEmpty()) {
+            return List.of();
+        }
+        String wordPrefix = prefixWords.get(prefixWords.size() - 1);
+        Map<String, Integer> counts = new HashMap<>();
+        for (Iterator<Change> changed = changes.iteratorFrom(new Change(wordPrefix, 0, NO_IDS), true); changed.hasNext(); ) {
+            Change change = changed.next();
+            if (!change.word().startsWith(wordPrefix)) {
+                break;
+            }
+            if (change.products() == 0) {
+                continue;
+            }
+            int index = base.indexOf(change.word().getBytes(StandardCharsets.UTF_8));
+            counts.put(change.word(), (index < 0 ? 0 : base.counts[index]) + change.products());
+        }
+        // The changed words may be among the most common of the base, so as many more are taken
+        for (int index : base.mostCommon(wordPrefix.getBytes(StandardCharsets.UTF_8), limit + counts.size())) {
+            counts.putIfAbsent(base.word(index), base.counts[index]);
+        }
+        return counts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey(WORD_ORDER)))
+                .limit(limit)
+                .map(entry -> new NameSuggestion(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    // Growable list of IDs
+    private static final class IdList {
+        int[] ids;
+        int size;
+
+        IdList() {
+            this.ids = new int[4];
+        }
+
+        IdList(int[] ids) {
+            this.ids = ids;
+            this.size = ids.length;
+        }
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size * 2, 4));
+            }
+            ids[size++] = id;
+        }
+
+        // Both ascending and without common IDs
+        static IdList merge(IdList list, IdList other) {
+            if (other.size == 0) {
+                return list;
+            }
+            IdList merged = new IdList();
+            merged.ids = new int[list.size + other.size];
+            for (int i = 0, j = 0; i < list.size || j < other.size; ) {
+                merged.ids[merged.size++] = j == other.size || (i < list.size && list.ids[i] < other.ids[j]) ? list.ids[i++] : other.ids[j++];
+            }
+            return merged;
+        }
+    }
+
+    private static final class Base {
+        static final Base EMPTY = new Builder(0, 0, 0).build();
+
+        // The arrays may be longer than the words in them
+        final int size;
+        final byte[] words;
+        final int[] wordOffsets;
+        final byte[] postings;
+        final int[] postingOffsets;
+        final int[] counts;
+        final int[] lastIds;
+        // Heap-ordered tree whose node holds the index of the word with most products in its range, leaves from
+        // leafStart on; -1 past the last word
+        final int[] mostCommon;
+        final int leafStart;
+
+        Base(int size, byte[] words, int[] wordOffsets, byte[] postings, int[] postingOffsets, int[] counts, int[] lastIds) {
+            this.size = size;
+            this.words = words;
+            this.wordOffsets = wordOffsets;
+            this.postings = postings;
+            this.postingOffsets = postingOffsets;
+            this.counts = counts;
+            this.lastIds = lastIds;
+            this.leafStart = Integer.highestOneBit(Math.max(size, 1) * 2 - 1);
+            this.mostCommon = new int[leafStart * 2];
+            Arrays.fill(mostCommon, -1);
+            for (int i = 0; i < size; i++) {
+                mostCommon[leafStart + i] = i;
+            }
+            for (int node = leafStart - 1; node > 0; node--) {
+                mostCommon[node] = moreCommon(mostCommon[node * 2], mostCommon[node * 2 + 1]);
+            }
+        }
+
+        // Appends words in order, each with its posting list or copied with theirs from another base
+        static final class Builder {
+            private byte[] words;
+            private int wordsSize;
+            private byte[] postings;
+            private int postingsSize;
+            private int[] wordOffsets;
+            private int[] postingOffsets;
+            private int[] counts;
+            private int[] lastIds;
+            private int size;
+
+            // Room for about as many words and bytes as given and a little more
+            Builder(int words, int wordBytes, int postingBytes) {
+                this.words = new byte[wordBytes + wordBytes / 8 + 16];
+                this.postings = new byte[postingBytes + postingBytes / 8 + 16];
+                this.wordOffsets = new int[Math.max(words, 1) + 1];
+                this.postingOffsets = new int[Math.max(words, 1) + 1];
+                this.counts = new int[Math.max(words, 1)];
+                this.lastIds = new int[Math.max(words, 1)];
+            }
+
+            // Words without products are left out
+            void add(byte[] word, IdList ids) {
+                if (ids.size == 0) {
+                    return;
+                }
+                ensureWords(1);
+                words = ensure(words, wordsSize + word.length);
+                System.arraycopy(word, 0, words, wordsSize, word.length);
+                wordsSize += word.length;
+                counts[size] = 0;
+                encode(0, ids);
+            }
+
+            // Adds a word of a base with more IDs after those of its posting list
+            void append(Base base, int index, IdList ids) {
+                copy(base, index, index + 1);
+                size--;
+                encode(base.lastIds[index], ids);
+            }
+
+            private void encode(int previousId, IdList ids) {
+                postings = ensure(postings, postingsSize + ids.size * 5);
+                for (int i = 0; i < ids.size; i++) {
+                    for (int gap = ids.ids[i] - previousId; ; gap >>>= 7) {
+                        if ((gap & ~0x7F) == 0) {
+                            postings[postingsSize++] = (byte) gap;
+                            break;
+                        }
+                        postings[postingsSize++] = (byte) ((gap & 0x7F) | 0x80);
+                    }
+                    previousId = ids.ids[i];
+                }
+                counts[size] += ids.size;
+                lastIds[size++] = previousId;
+                wordOffsets[size] = wordsSize;
+                postingOffsets[size] = postingsSize;
+            }
+
+            // Copies the words of a base from index from up to index to
+            void copy(Base base, int from, int to) {
+                if (from == to) {
+                    return;
+                }
+                ensureWords(to - from);
+                int wordBytes = base.wordOffsets[to] - base.wordOffsets[from];
+                int postingBytes = base.postingOffsets[to] - base.postingOffsets[from];
+                words = ensure(words, wordsSize + wordBytes);
+                postings = ensure(postings, postingsSize + postingBytes);
+                System.arraycopy(base.words, base.wordOffsets[from], words, wordsSize, wordBytes);
+                System.arraycopy(base.postings, base.postingOffsets[from], postings, postingsSize, postingBytes);
+                System.arraycopy(base.counts, from, counts, size, to - from);
+                System.arraycopy(base.lastIds, from, lastIds, size, to - from);
+                int wordShift = wordsSize - base.wordOffsets[from];
+                int postingShift = postingsSize - base.postingOffsets[from];
+                for (int i = from + 1; i <= to; i++) {
+                    wordOffsets[++size] = base.wordOffsets[i] + wordShift;
+                    postingOffsets[size] = base.postingOffsets[i] + postingShift;
+                }
+                wordsSize += wordBytes;
+                postingsSize += postingBytes;
+            }
+
+            Base build() {
+                return new Base(size, words, wordOffsets, postings, postingOffsets, counts, lastIds);
+            }
+
+            private void ensureWords(int more) {
+                if (size + more > counts.length) {
+                    int capacity = Math.max(size + more, counts.length + counts.length / 2);
+                    counts = Arrays.copyOf(counts, capacity);
+                    lastIds = Arrays.copyOf(lastIds, capacity);
+                    wordOffsets = Arrays.copyOf(wordOffsets, capacity + 1);
+                    postingOffsets = Arrays.copyOf(postingOffsets, capacity + 1);
+                }
+            }
+
+            private static byte[] ensure(byte[] bytes, int capacity) {
+                return capacity <= bytes.length ? bytes : Arrays.copyOf(bytes, Math.max(capacity, bytes.length + bytes.length / 2));
+            }
+        }
+
+        // Adds the IDs of a posting list that are not among the sorted changed IDs
+        void addUnchangedIds(int index, int[] changedIds, IdList ids) {
+            int id = 0;
+            int changed = -1;
+            for (int position = postingOffsets[index]; position < postingOffsets[index + 1]; ) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = postings[position++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                id += gap;
+                // The changed IDs are walked along with the posting list from the first one not below its first ID
+                if (changed < 0) {
+                    changed = Arrays.binarySearch(changedIds, id);
+                    changed = changed < 0 ? -changed - 1 : changed;
+                }
+                while (changed < changedIds.length && changedIds[changed] < id) {
+                    changed++;
+                }
+                if (changed == changedIds.length || changedIds[changed] != id) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        String word(int index) {
+            return new String(words, wordOffsets[index], wordOffsets[index + 1] - wordOffsets[index], StandardCharsets.UTF_8);
+        }
+
+        int compare(int index, byte[] word) {
+            return Arrays.compareUnsigned(words, wordOffsets[index], wordOffsets[index + 1], word, 0, word.length);
+        }
+
+        private boolean startsWith(int index, byte[] prefix) {
+            int length = wordOffsets[index + 1] - wordOffsets[index];
+            return length >= prefix.length
+                    && Arrays.equals(words, wordOffsets[index], wordOffsets[index] + prefix.length, prefix, 0, prefix.length);
+        }
+
+        // The first index whose word is not before the given one
+        int lowerBound(byte[] word) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(middle, word) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int indexOf(byte[] word) {
+            int index = lowerBound(word);
+            return index < size && compare(index, word) == 0 ? index : -1;
+        }
+
+        // Indexes of at most limit words with the prefix having the most products, taking the largest of the
+        // tree nodes covering the range until limit leaves came out
+        List<Integer> mostCommon(byte[] prefix, int limit) {
+            int from = lowerBound(prefix);
+            int low = from;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (startsWith(middle, prefix)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            PriorityQueue<Integer> nodes = new PriorityQueue<>((node, other) -> moreCommon(mostCommon[node], mostCommon[other]) == mostCommon[node] ? -1 : 1);
+            for (int left = from + leafStart, right = low + leafStart; left < right; left >>= 1, right >>= 1) {
+                if ((left & 1) == 1) {
+                    nodes.add(left++);
+                }
+                if ((right & 1) == 1) {
+                    nodes.add(--right);
+                }
+            }
+            List<Integer> indexes = new ArrayList<>();
+            while (indexes.size() < limit && !nodes.isEmpty()) {
+                int node = nodes.poll();
+                if (node >= leafStart) {
+                    indexes.add(mostCommon[node]);
+                } else {
+                    for (int child = node * 2; child <= node * 2 + 1; child++) {
+                        if (mostCommon[child] >= 0) {
+                            nodes.add(child);
+                        }
+                    }
+                }
+            }
+            return indexes;
+        }
+
+        // Ties go to the word sorting first
+        private int moreCommon(int index, int other) {
+            if (index < 0 || other < 0) {
+                return Math.max(index, other);
+            }
+            return counts[other] > counts[index] || (counts[other] == counts[index] && other < index) ? other : index;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.service;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+// Runs full scans of large catalogs on the common fork-join pool. The rows are split into segments that each build
+// their own partial result, so workers share nothing while scanning, and the partial results are merged in row order
+// once the segments are done. Catalogs smaller than the threshold (-Dwarehouse.parallel.threshold) are scanned on the
+// calling thread, where splitting would cost more than it saves; on a single core every scan is sequential.
+final class ParallelScan {
+    static final String THRESHOLD_PROPERTY = "warehouse.parallel.threshold";
+    // Enough segments per worker to even out uneven ones, but none too small to pay for its task
+    private static final int SEGMENTS_PER_THREAD = 4;
+    private static final int MINIMUM_SEGMENT_SIZE = 4096;
+
+    private static volatile int threshold = Integer.getInteger(THRESHOLD_PROPERTY,
+            Runtime.getRuntime().availableProcessors() > 1 ? 50_000 : Integer.MAX_VALUE);
+
+    @FunctionalInterface
+    interface Segment<A> {
+        // Scans the rows from (inclusive) to (exclusive) into a new partial result
+        A scan(int from, int to);
+    }
+
+    private ParallelScan() {}
+
+    static int threshold() {
+        return threshold;
+    }
+
+    // Changes the threshold at runtime, used by the benchmarks and tests
+    static void setThreshold(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Parallel scan threshold must be a positive number.");
+        }
+        threshold = rows;
+    }
+
+    static boolean isParallel(int rows) {
+        return rows >= threshold;
+    }
+
+    // Scans the rows from (inclusive) to (exclusive), in parallel segments when there are enough of them
+    static <A> A fold(int from, int to, Segment<A> segment, BinaryOperator<A> merge) {
+        if (!isParallel(to - from)) {
+            return segment.scan(from, to);
+        }
+        int segments = ForkJoinPool.getCommonPoolParallelism() * SEGMENTS_PER_THREAD;
+        int segmentSize = Math.max(MINIMUM_SEGMENT_SIZE, (to - from) / segments + 1);
+        return ForkJoinPool.commonPool().invoke(new FoldTask<>(from, to, segmentSize, segment, merge));
+    }
+
+    // Merges partial lists in order, reusing the left one
+    static <T> List<T> concat(List<T> left, List<T> right) {
+        left.addAll(right);
+        return left;
+    }
+
+    private static final class FoldTask<A> extends RecursiveTask<A> {
+        private final int from;
+        private final int to;
+        private final int segmentSize;
+        private final Segment<A> segment;
+        private final BinaryOperator<A> merge;
+
+        FoldTask(int from, int to, int segmentSize, Segment<A> segment, BinaryOperator<A> merge) {
+            this.from = from;
+            this.to = to;
+            this.segmentSize = segmentSize;
+            this.segment = segment;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= segmentSize) {
+                return segment.scan(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            FoldTask<A> left = new FoldTask<>(from, middle, segmentSize, segment, merge);
+            left.fork();
+            A right = new FoldTask<>(middle, to, segmentSize, segment, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
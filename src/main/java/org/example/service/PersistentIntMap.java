@@ -0,0 +1,295 @@
+package org.example.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+// Immutable map keyed by primitive int, as a bitmap-compressed radix trie of 32-way nodes.
+// Every put or remove copies only the nodes on the path to the key (at most seven) and shares the rest with the
+// previous version, so old versions stay valid for readers holding them. Keys are laid out by their bits from the
+// top, which makes iteration run in ascending key order and lets paging start at any key.
+final class PersistentIntMap<V> {
+    private static final int BITS = 5;
+    private static final int LEVELS = 7;
+    // The root uses the top two bits, the six levels below five bits each
+    private static final int ROOT_SHIFT = 30;
+    // Nodes on this level hold at most 32768 keys, which are scanned as one segment by a parallel fold
+    private static final int SEGMENT_SHIFT = 10;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    @FunctionalInterface
+    interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    // Slots hold child nodes, or values on the last level. A bit set in the bitmap means the slot at its
+    // rank among the set bits is present, so sparse nodes stay small.
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int path = pathOf(key);
+        Node node = root;
+        for (int shift = ROOT_SHIFT; node != null; shift -= BITS) {
+            int bit = bitAt(path, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[rank(node.bitmap, bit)];
+            if (shift == 0) {
+                return (V) slot;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    // Null values are not allowed, a missing key reads as null
+    PersistentIntMap<V> put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        boolean replacing = containsKey(key);
+        return new PersistentIntMap<>(put(root, pathOf(key), ROOT_SHIFT, value), replacing ? size : size + 1);
+    }
+
+    PersistentIntMap<V> remove(int key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        return new PersistentIntMap<>(remove(root, pathOf(key), ROOT_SHIFT), size - 1);
+    }
+
+    Iterator<V> values() {
+        return new ValueIterator<>(root, 0, false);
+    }
+
+    // Values of the keys greater than the given key, in ascending key order
+    Iterator<V> valuesAfter(int key) {
+        return new ValueIterator<>(root, pathOf(key), true);
+    }
+
+    void forEach(EntryConsumer<? super V> consumer) {
+        forEach(root, 0, ROOT_SHIFT, consumer);
+    }
+
+    // Folds the values in ascending key order on the common fork-join pool. Every subtree of a segment is scanned
+    // into its own partial result, and the partial results are merged in key order.
+    <A> A parallelFold(Supplier<A> create, BiConsumer<A, ? super V> accumulate, BinaryOperator<A> merge) {
+        if (root == null) {
+            return create.get();
+        }
+        return ForkJoinPool.commonPool().invoke(new FoldTask<>(root, 0, ROOT_SHIFT, create, accumulate, merge));
+    }
+
+    private static Node put(Node node, int path, int shift, Object value) {
+        int bit = bitAt(path, shift);
+        if (node == null) {
+            return new Node(bit, new Object[]{shift == 0 ? value : put(null, path, shift - BITS, value)});
+        }
+        int index = rank(node.bitmap, bit);
+        if ((node.bitmap & bit) != 0) {
+            Object[] slots = node.slots.clone();
+            slots[index] = shift == 0 ? value : put((Node) slots[index], path, shift - BITS, value);
+            return new Node(node.bitmap, slots);
+        }
+        Object[] slots = new Object[node.slots.length + 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        slots[index] = shift == 0 ? value : put(null, path, shift - BITS, value);
+        System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+        return new Node(node.bitmap | bit, slots);
+    }
+
+    // Returns null when the node becomes empty, so the parent drops its slot
+    private static Node remove(Node node, int path, int shift) {
+        int bit = bitAt(path, shift);
+        int index = rank(node.bitmap, bit);
+        if (shift != 0) {
+            Node child = remove((Node) node.slots[index], path, shift - BITS);
+            if (child != null) {
+                Object[] slots = node.slots.clone();
+                slots[index] = child;
+                return new Node(node.bitmap, slots);
+            }
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Node node, int prefix, int shift, EntryConsumer<? super V> consumer) {
+        if (node == null) {
+            return;
+        }
+        int bitmap = node.bitmap;
+        for (int index = 0; bitmap != 0; index++, bitmap &= bitmap - 1) {
+            int path = prefix | Integer.numberOfTrailingZeros(bitmap) << shift;
+            if (shift == 0) {
+                consumer.accept(path ^ Integer.MIN_VALUE, (V) node.slots[index]);
+            } else {
+                forEach((Node) node.slots[index], path, shift - BITS, consumer);
+            }
+        }
+    }
+
+    private static final class FoldTask<V, A> extends RecursiveTask<A> {
+        private final Node node;
+        private final int prefix;
+        private final int shift;
+        private final Supplier<A> create;
+        private final BiConsumer<A, ? super V> accumulate;
+        private final BinaryOperator<A> merge;
+
+        FoldTask(Node node, int prefix, int shift, Supplier<A> create, BiConsumer<A, ? super V> accumulate, BinaryOperator<A> merge) {
+            this.node = node;
+            this.prefix = prefix;
+            this.shift = shift;
+            this.create = create;
+            this.accumulate = accumulate;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (shift <= SEGMENT_SHIFT) {
+                A result = create.get();
+                PersistentIntMap.<V>forEach(node, prefix, shift, (key, value) -> accumulate.accept(result, value));
+                return result;
+            }
+            List<FoldTask<V, A>> children = new ArrayList<>(node.slots.length);
+            int bitmap = node.bitmap;
+            for (int index = 0; bitmap != 0; index++, bitmap &= bitmap - 1) {
+                int path = prefix | Integer.numberOfTrailingZeros(bitmap) << shift;
+                children.add(new FoldTask<>((Node) node.slots[index], path, shift - BITS, create, accumulate, merge));
+            }
+            invokeAll(children);
+            A result = children.get(0).join();
+            for (int i = 1; i < children.size(); i++) {
+                result = merge.apply(result, children.get(i).join());
+            }
+            return result;
+        }
+    }
+
+    // Flipping the sign bit orders negative keys before positive ones when the bits are read as unsigned
+    private static int pathOf(int key) {
+        return key ^ Integer.MIN_VALUE;
+    }
+
+    private static int bitAt(int path, int shift) {
+        return 1 << ((path >>> shift) & 31);
+    }
+
+    private static int rank(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    // Depth-first walk keeping the node and the next slot to visit on every level
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Node[] nodes = new Node[LEVELS];
+        private final int[] nextSlots = new int[LEVELS];
+        private boolean hasNext;
+
+        ValueIterator(Node root, int path, boolean after) {
+            if (root == null) {
+                return;
+            }
+            Node node = root;
+            for (int level = 0, shift = ROOT_SHIFT; level < LEVELS; level++, shift -= BITS) {
+                int bit = bitAt(path, shift);
+                int index = rank(node.bitmap, bit);
+                nodes[level] = node;
+                if (!after || (node.bitmap & bit) == 0) {
+                    // Everything from this slot on is past the starting key
+                    nextSlots[level] = index;
+                    descend(level);
+                    return;
+                }
+                if (level == LEVELS - 1) {
+                    nextSlots[level] = index + 1;
+                    descend(level);
+                    return;
+                }
+                nextSlots[level] = index + 1;
+                node = (Node) node.slots[index];
+            }
+        }
+
+        // Moves to the leftmost value at or after the next slot of the given level, climbing when a level is used up
+        private void descend(int level) {
+            while (nextSlots[level] == nodes[level].slots.length) {
+                if (--level < 0) {
+                    hasNext = false;
+                    return;
+                }
+            }
+            while (level < LEVELS - 1) {
+                Node child = (Node) nodes[level].slots[nextSlots[level]++];
+                level++;
+                nodes[level] = child;
+                nextSlots[level] = 0;
+            }
+            hasNext = true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) nodes[LEVELS - 1].slots[nextSlots[LEVELS - 1]++];
+            descend(LEVELS - 1);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.example.service;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Immutable sorted set as an AVL tree. Inserting or removing copies the O(log n) nodes on the path from the root
+// and shares every other subtree with the previous version, so old versions stay valid for readers holding them.
+final class PersistentSortedSet<E> implements Iterable<E> {
+
+    private static final class Node<E> {
+        final E element;
+        final Node<E> left;
+        final Node<E> right;
+        final int height;
+        final int size;
+
+        Node(E element, Node<E> left, Node<E> right) {
+            this.element = element;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(heightOf(left), heightOf(right)) + 1;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+        }
+    }
+
+    private final Comparator<? super E> comparator;
+    private final Node<E> root;
+
+    PersistentSortedSet(Comparator<? super E> comparator) {
+        this(comparator, null);
+    }
+
+    private PersistentSortedSet(Comparator<? super E> comparator, Node<E> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    int size() {
+        return sizeOf(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    // An element comparing equal to one already in the set replaces it
+    PersistentSortedSet<E> add(E element) {
+        return new PersistentSortedSet<>(comparator, add(root, element));
+    }
+
+    PersistentSortedSet<E> remove(E element) {
+        Node<E> newRoot = remove(root, element);
+        return newRoot == root ? this : new PersistentSortedSet<>(comparator, newRoot);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new AscendingIterator<>(root, null, comparator, true);
+    }
+
+    // Elements from the given one on, in ascending order
+    Iterator<E> iteratorFrom(E from, boolean inclusive) {
+        return new AscendingIterator<>(root, from, comparator, inclusive);
+    }
+
+    // How many elements sort before the given one, found from the subtree sizes on one path
+    int countBefore(E element) {
+        int count = 0;
+        for (Node<E> node = root; node != null; ) {
+            if (comparator.compare(node.element, element) < 0) {
+                count += sizeOf(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private Node<E> add(Node<E> node, E element) {
+        if (node == null) {
+            return new Node<>(element, null, null);
+        }
+        int comparison = comparator.compare(element, node.element);
+        if (comparison < 0) {
+            return balance(node.element, add(node.left, element), node.right);
+        }
+        if (comparison > 0) {
+            return balance(node.element, node.left, add(node.right, element));
+        }
+        return new Node<>(element, node.left, node.right);
+    }
+
+    // Returns the same node when the element is not in its subtree, so nothing is copied
+    private Node<E> remove(Node<E> node, E element) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = comparator.compare(element, node.element);
+        if (comparison < 0) {
+            Node<E> left = remove(node.left, element);
+            return left == node.left ? node : balance(node.element, left, node.right);
+        }
+        if (comparison > 0) {
+            Node<E> right = remove(node.right, element);
+            return right == node.right ? node : balance(node.element, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<E> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.element, node.left, removeFirst(node.right));
+    }
+
+    private Node<E> removeFirst(Node<E> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.element, removeFirst(node.left), node.right);
+    }
+
+    // Builds a node whose subtrees differ in height by at most one, rotating when they differ by two
+    private static <E> Node<E> balance(E element, Node<E> left, Node<E> right) {
+        int difference = heightOf(left) - heightOf(right);
+        if (difference > 1) {
+            if (heightOf(left.left) < heightOf(left.right)) {
+                left = rotateLeft(left.element, left.left, left.right);
+            }
+            return rotateRight(element, left, right);
+        }
+        if (difference < -1) {
+            if (heightOf(right.right) < heightOf(right.left)) {
+                right = rotateRight(right.element, right.left, right.right);
+            }
+            return rotateLeft(element, left, right);
+        }
+        return new Node<>(element, left, right);
+    }
+
+    private static <E> Node<E> rotateRight(E element, Node<E> left, Node<E> right) {
+        return new Node<>(left.element, left.left, new Node<>(element, left.right, right));
+    }
+
+    private static <E> Node<E> rotateLeft(E element, Node<E> left, Node<E> right) {
+        return new Node<>(right.element, new Node<>(element, left, right.left), right.right);
+    }
+
+    private static int heightOf(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int sizeOf(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Keeps the path of nodes still to visit; an AVL tree of 2^31 elements is at most 45 levels deep
+    private static final class AscendingIterator<E> implements Iterator<E> {
+        private final Object[] stack = new Object[48];
+        private int depth;
+
+        AscendingIterator(Node<E> node, E from, Comparator<? super E> comparator, boolean inclusive) {
+            while (node != null) {
+                int comparison = from == null ? 1 : comparator.compare(node.element, from);
+                if (comparison > 0 || (comparison == 0 && inclusive)) {
+                    stack[depth++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            Node<E> node = (Node<E>) stack[--depth];
+            for (Node<E> next = node.right; next != null; next = next.left) {
+                stack[depth++] = next;
+            }
+            return node.element;
+        }
+    }
+}
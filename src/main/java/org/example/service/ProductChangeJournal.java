@@ -0,0 +1,110 @@
+package org.example.service;
+
+import org.example.entities.ProductChange;
+import org.example.entities.ProductRecord;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Bounded in-memory journal of product changes for clients that follow the catalog incrementally. Every change gets
+// the next sequence number, and the newest capacity changes are kept in a ring indexed by sequence, so appending never
+// allocates beyond the ring. A client whose position is older than the ring, or newer than the journal as after a
+// restart, has to load the catalog again.
+public final class ProductChangeJournal {
+    public static final String CAPACITY_PROPERTY = "warehouse.changes.capacity";
+    private static final int DEFAULT_CAPACITY = 100_000;
+
+    // Tells the histories of different journals apart, as sequences start over when a catalog kept in memory restarts
+    private final String id = UUID.randomUUID().toString();
+    private final ProductRecord[] changes;
+    private final boolean[] removals;
+    // Changes up to this sequence were made before the journal started, as before a restart
+    private long firstSequence;
+    private long lastSequence;
+    private boolean closed;
+
+    ProductChangeJournal() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    ProductChangeJournal(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Change journal capacity must be a positive number.");
+        }
+        this.changes = new ProductRecord[capacity];
+        this.removals = new boolean[capacity];
+    }
+
+    // Continues the numbering of the changes recovered from persistence or loaded from a primary's snapshot; changes
+    // appended before are dropped
+    synchronized void startAfter(long sequence) {
+        firstSequence = sequence;
+        lastSequence = sequence;
+        notifyAll();
+    }
+
+    // Must be called in the same order the changes were applied to the warehouse
+    synchronized long append(ProductRecord product) {
+        return append(product, false);
+    }
+
+    // Records the removal of a product with its last state
+    synchronized long appendRemoval(ProductRecord product) {
+        return append(product, true);
+    }
+
+    private long append(ProductRecord product, boolean removal) {
+        long sequence = ++lastSequence;
+        changes[(int) (sequence % changes.length)] = product;
+        removals[(int) (sequence % changes.length)] = removal;
+        notifyAll();
+        return sequence;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    // At most limit changes following the sequence, oldest first, or null when some of them are no longer kept or
+    // the sequence is ahead of the journal
+    public synchronized List<ProductChange> since(long sequence, int limit) {
+        ProductStore.validateLimit(limit);
+        if (sequence > lastSequence || sequence < Math.max(firstSequence, lastSequence - changes.length)) {
+            return null;
+        }
+        int count = (int) Math.min(limit, lastSequence - sequence);
+        List<ProductChange> list = new ArrayList<>(count);
+        for (long next = sequence + 1; next <= sequence + count; next++) {
+            list.add(new ProductChange(next, changes[(int) (next % changes.length)], removals[(int) (next % changes.length)]));
+        }
+        return list;
+    }
+
+    // Waits until a change follows the sequence, the timeout passed or the journal closed, and tells whether one does
+    public synchronized boolean await(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (lastSequence <= sequence && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return lastSequence > sequence;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // Releases the clients waiting for changes
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
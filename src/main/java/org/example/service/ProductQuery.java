@@ -0,0 +1,103 @@
+package org.example.service;
+
+import jakarta.json.bind.annotation.JsonbCreator;
+import jakarta.json.bind.annotation.JsonbProperty;
+import org.example.entities.Category;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+// A search over the catalog: every predicate that is set must hold, results come in sort order (ties by ID) and at
+// most limit of them. Null IDs or categories and null dates leave that predicate open; date ranges include their
+// start and exclude their end, and leave out products without that date. Text matches names having all its words.
+public record ProductQuery(
+        Set<Integer> ids,
+        Set<Category> categories,
+        int minRating,
+        int maxRating,
+        Instant createdFrom,
+        Instant createdTo,
+        Instant modifiedFrom,
+        Instant modifiedTo,
+        String namePrefix,
+        String text,
+        List<SortKey> sort,
+        int limit) {
+
+    public record SortKey(ProductField field, boolean descending) {
+        Comparator<ProductRecord> comparator() {
+            return descending ? field.comparator().reversed() : field.comparator();
+        }
+    }
+
+    public ProductQuery {
+        ProductStore.validateLimit(limit);
+        if (minRating < 1 || maxRating > ProductStore.MAX_RATING || minRating > maxRating) {
+            throw new IllegalArgumentException("Rating range must be within 1 to " + ProductStore.MAX_RATING + ".");
+        }
+        ids = ids == null ? null : Set.copyOf(ids);
+        categories = categories == null ? null : Set.copyOf(categories);
+        namePrefix = namePrefix == null || namePrefix.isEmpty() ? null : namePrefix;
+        if (text != null && NameIndex.words(text).isEmpty()) {
+            throw new IllegalArgumentException("Search text must contain a letter or digit.");
+        }
+        sort = sort == null ? List.of() : List.copyOf(sort);
+    }
+
+    // How JSON-B builds a query, as it would hand the canonical constructor collections of maps and numbers rather
+    // than of sort keys, categories and IDs
+    @JsonbCreator
+    public static ProductQuery fromJson(@JsonbProperty("ids") Integer[] ids, @JsonbProperty("categories") Category[] categories,
+                                        @JsonbProperty("minRating") int minRating, @JsonbProperty("maxRating") int maxRating,
+                                        @JsonbProperty("createdFrom") Instant createdFrom, @JsonbProperty("createdTo") Instant createdTo,
+                                        @JsonbProperty("modifiedFrom") Instant modifiedFrom, @JsonbProperty("modifiedTo") Instant modifiedTo,
+                                        @JsonbProperty("namePrefix") String namePrefix, @JsonbProperty("text") String text,
+                                        @JsonbProperty("sort") SortKey[] sort, @JsonbProperty("limit") int limit) {
+        return new ProductQuery(ids == null ? null : Set.of(ids), categories == null ? null : Set.of(categories), minRating, maxRating,
+                createdFrom, createdTo, modifiedFrom, modifiedTo, namePrefix, text, sort == null ? null : List.of(sort), limit);
+    }
+
+    // Any product, ordered by ID
+    public static ProductQuery all(int limit) {
+        return new ProductQuery(null, null, 1, ProductStore.MAX_RATING, null, null, null, null, null, null, List.of(), limit);
+    }
+
+    public boolean matches(ProductRecord product) {
+        return (ids == null || ids.contains(product.id()))
+                && (categories == null || categories.contains(product.category()))
+                && product.rating() >= minRating && product.rating() <= maxRating
+                && inRange(product.createdDate(), createdFrom, createdTo)
+                && inRange(product.modifiedDate(), modifiedFrom, modifiedTo)
+                && (namePrefix == null || product.name().startsWith(namePrefix))
+                && (text == null || NameIndex.words(product.name()).containsAll(NameIndex.words(text)));
+    }
+
+    private static boolean inRange(Instant date, Instant from, Instant to) {
+        if (from == null && to == null) {
+            return true;
+        }
+        return date != null && (from == null || !date.isBefore(from)) && (to == null || date.isBefore(to));
+    }
+
+    // The sort keys with the ID added as the last one, which makes the order total
+    List<SortKey> sortKeys() {
+        if (sort.stream().anyMatch(key -> key.field() == ProductField.ID)) {
+            return sort;
+        }
+        List<SortKey> keys = new ArrayList<>(sort);
+        keys.add(new SortKey(ProductField.ID, false));
+        return keys;
+    }
+
+    Comparator<ProductRecord> comparator() {
+        Comparator<ProductRecord> comparator = null;
+        for (SortKey key : sortKeys()) {
+            comparator = comparator == null ? key.comparator() : comparator.thenComparing(key.comparator());
+        }
+        return comparator;
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+// Plans and runs a ProductQuery on a store. The planner estimates how many products each access path would read from
+// the counts the store keeps, and takes the smallest: the requested IDs, the products having the rarest word of the
+// text, the name-ordered partitions of the requested categories starting at the name prefix, the range of creation
+// dates, or every product by ID. Each product the path reads is checked against the whole query. When the path already
+// reads in the requested order the search stops after limit matches; otherwise the best limit matches are kept in a
+// bounded heap rather than sorting every match.
+public final class ProductSearch {
+    private static final List<ProductQuery.SortKey> BY_ID = List.of(new ProductQuery.SortKey(ProductField.ID, false));
+    private static final List<ProductQuery.SortKey> BY_NAME = List.of(new ProductQuery.SortKey(ProductField.NAME, false), BY_ID.get(0));
+    private static final List<ProductQuery.SortKey> BY_CREATED_DATE = List.of(new ProductQuery.SortKey(ProductField.CREATED_DATE, false), BY_ID.get(0));
+    private static final Instant EARLIEST = Instant.ofEpochMilli(Long.MIN_VALUE);
+    private static final Instant LATEST = Instant.ofEpochMilli(Long.MAX_VALUE);
+
+    public enum AccessPath {
+        ID_LOOKUP,
+        TEXT,
+        CATEGORY,
+        CREATED_DATE,
+        FULL_SCAN
+    }
+
+    // The access path taken, how many products it was estimated to read, and whether it reads in the requested order
+    public record Plan(AccessPath accessPath, long estimatedProducts, boolean ordered) {
+    }
+
+    public record Result(List<ProductRecord> products, Plan plan) {
+    }
+
+    private ProductSearch() {}
+
+    static Plan plan(ProductStore store, ProductQuery query) {
+        List<ProductQuery.SortKey> sortKeys = query.sortKeys();
+        Plan best = new Plan(AccessPath.FULL_SCAN, store.size(), sortKeys.equals(BY_ID));
+        if (query.ids() != null) {
+            best = cheaper(best, new Plan(AccessPath.ID_LOOKUP, query.ids().size(), sortKeys.equals(BY_ID)));
+        }
+        if (query.text() != null) {
+            NameIndex nameIndex = store.nameIndex();
+            String word = rarestWord(nameIndex, query.text());
+            best = cheaper(best, new Plan(AccessPath.TEXT, nameIndex.count(word), sortKeys.equals(BY_ID)));
+        }
+        if (query.categories() != null || query.namePrefix() != null) {
+            Set<Category> categories = categories(query);
+            long products = 0;
+            for (Category category : categories) {
+                products += store.getNumberOfProductsInCategory(category);
+            }
+            // Assumes first letters are spread evenly over the categories
+            if (query.namePrefix() != null && store.size() > 0) {
+                Map<Character, Long> letters = store.getNumberOfProductsStartingWithEachLetter();
+                products = products * letters.getOrDefault(query.namePrefix().charAt(0), 0L) / store.size();
+            }
+            best = cheaper(best, new Plan(AccessPath.CATEGORY, products, categories.size() == 1 && sortKeys.equals(BY_NAME)));
+        }
+        if (query.createdFrom() != null || query.createdTo() != null) {
+            int products = store.countProductsCreatedBetween(orElse(query.createdFrom(), EARLIEST), orElse(query.createdTo(), LATEST));
+            best = cheaper(best, new Plan(AccessPath.CREATED_DATE, products, sortKeys.equals(BY_CREATED_DATE)));
+        }
+        return best;
+    }
+
+    // Of two equally cheap plans the one that needs no sorting wins
+    private static Plan cheaper(Plan plan, Plan other) {
+        if (other.estimatedProducts() != plan.estimatedProducts()) {
+            return other.estimatedProducts() < plan.estimatedProducts() ? other : plan;
+        }
+        return other.ordered() && !plan.ordered() ? other : plan;
+    }
+
+    static Result run(ProductStore store, ProductQuery query) {
+        Plan plan = plan(store, query);
+        Matches matches = plan.ordered() ? new Matches(query.limit()) : new TopMatches(query.limit(), query.comparator());
+        switch (plan.accessPath()) {
+            case ID_LOOKUP:
+                List<Integer> ids = new ArrayList<>(query.ids());
+                Collections.sort(ids);
+                for (int id : ids) {
+                    ProductRecord product = store.getProductById(id).orElse(null);
+                    if (product != null && query.matches(product) && !matches.add(product)) {
+                        break;
+                    }
+                }
+                break;
+            case TEXT:
+                NameIndex nameIndex = store.nameIndex();
+                for (PrimitiveIterator.OfInt named = nameIndex.productIds(rarestWord(nameIndex, query.text())); named.hasNext(); ) {
+                    ProductRecord product = store.getProductById(named.nextInt()).orElseThrow();
+                    if (query.matches(product) && !matches.add(product)) {
+                        break;
+                    }
+                }
+                break;
+            case CATEGORY:
+                String prefix = orElse(query.namePrefix(), "");
+                for (Category category : categories(query)) {
+                    for (Iterator<ProductRecord> products = store.productsInCategoryFromName(category, prefix); products.hasNext(); ) {
+                        ProductRecord product = products.next();
+                        // Names with the prefix are next to each other in name order
+                        if (!product.name().startsWith(prefix) || (query.matches(product) && !matches.add(product))) {
+                            break;
+                        }
+                    }
+                }
+                break;
+            case CREATED_DATE:
+                Instant to = orElse(query.createdTo(), LATEST);
+                for (Iterator<ProductRecord> products = store.productsCreatedFrom(orElse(query.createdFrom(), EARLIEST)); products.hasNext(); ) {
+                    ProductRecord product = products.next();
+                    if (!product.createdDate().isBefore(to) || (query.matches(product) && !matches.add(product))) {
+                        break;
+                    }
+                }
+                break;
+            default:
+                for (Iterator<ProductRecord> products = store.productsById(); products.hasNext(); ) {
+                    ProductRecord product = products.next();
+                    if (query.matches(product) && !matches.add(product)) {
+                        break;
+                    }
+                }
+        }
+        return new Result(matches.products(), plan);
+    }
+
+    private static String rarestWord(NameIndex nameIndex, String text) {
+        return NameIndex.words(text).stream().min(Comparator.comparingInt(nameIndex::count)).orElseThrow();
+    }
+
+    private static Set<Category> categories(ProductQuery query) {
+        return query.categories() == null ? EnumSet.allOf(Category.class) : EnumSet.copyOf(query.categories());
+    }
+
+    private static <T> T orElse(T value, T otherwise) {
+        return value != null ? value : otherwise;
+    }
+
+    // Matches arriving in the requested order, of which the first limit are kept
+    private static class Matches {
+        final int limit;
+        final List<ProductRecord> products = new ArrayList<>();
+
+        Matches(int limit) {
+            this.limit = limit;
+        }
+
+        // Returns false once no more matches are wanted
+        boolean add(ProductRecord product) {
+            products.add(product);
+            return products.size() < limit;
+        }
+
+        List<ProductRecord> products() {
+            return Collections.unmodifiableList(products);
+        }
+    }
+
+    // Matches arriving in any order, of which the limit first in the requested order are kept in a heap whose head
+    // is the worst one kept
+    private static final class TopMatches extends Matches {
+        private final Comparator<ProductRecord> comparator;
+        private final PriorityQueue<ProductRecord> heap;
+
+        TopMatches(int limit, Comparator<ProductRecord> comparator) {
+            super(limit);
+            this.comparator = comparator;
+            this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, comparator.reversed());
+        }
+
+        @Override
+        boolean add(ProductRecord product) {
+            if (heap.size() < limit) {
+                heap.add(product);
+            } else if (comparator.compare(product, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(product);
+            }
+            return true;
+        }
+
+        @Override
+        List<ProductRecord> products() {
+            List<ProductRecord> products = new ArrayList<>(heap);
+            products.sort(comparator);
+            return Collections.unmodifiableList(products);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductImportError;
+import org.example.entities.ProductRecord;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// The catalog operations a shard answers, whether it is a WarehouseService in this JVM or one on another node.
+// ShardedWarehouse sends the operations on one product to the shard owning its ID and the others to every shard.
+// Lists come in the same order as from WarehouseService, so the results of several shards can be merged.
+public interface ProductShard extends AutoCloseable {
+
+    void addProduct(int id, String name, Category category, int rating, Instant createdDate);
+
+    // Returns the products that were rejected with their position in the batch
+    List<ProductImportError> addProducts(List<ProductRecord> products);
+
+    boolean updateProduct(int id, String newName, Category newCategory, int newRating);
+
+    // Null fields are left as they are; a non-null ifMatch must hold the current version of the product
+    boolean patchProduct(int id, String newName, Category newCategory, Integer newRating, Set<Long> ifMatch);
+
+    boolean deleteProduct(int id, Set<Long> ifMatch);
+
+    Optional<ProductRecord> getProductById(int id);
+
+    long getProductVersion(int id);
+
+    // Grows with every change to the catalog, so answers can be cached under it
+    long getVersion();
+
+    // Grows with every change to the products of a category
+    long getCategoryVersion(Category category);
+
+    // All products ordered by ID
+    List<ProductRecord> getAllProducts();
+
+    // At most limit products with an ID greater than afterId, ordered by ID
+    List<ProductRecord> getProductsAfterId(int afterId, int limit);
+
+    List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category);
+
+    // At most limit products in a category sorted by name, continuing after where afterName and afterId sort
+    List<ProductRecord> getProductsByCategorySortedByProductNameAfter(Category category, String afterName, int afterId, int limit);
+
+    // Products created after the date, oldest first
+    List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date);
+
+    // Ordered by ID
+    List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation();
+
+    Set<Category> getAllCategoriesThatHasAtLeastOneProduct();
+
+    long getNumberOfProductsInCategory(Category category);
+
+    Map<Character, Long> getNumberOfProductsStartingWithEachLetter();
+
+    // Products with max rating created in a month of the shard's time zone, latest first
+    List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month);
+
+    // The same for the current month of whoever answers
+    List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate();
+
+    ProductSearch.Result search(ProductQuery query);
+
+    // The most common words of product names starting with a prefix, most common first
+    List<NameSuggestion> suggest(String prefix, int limit);
+
+    @Override
+    void close();
+}
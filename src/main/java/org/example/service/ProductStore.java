@@ -0,0 +1,103 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// A storage engine for the catalog. Warehouse validates every change and hands the store already valid products,
+// so a store only keeps them and its indexes. Which engine is used is chosen with StoreType.
+public interface ProductStore extends AutoCloseable {
+    int MAX_RATING = 10;
+
+    // Releases files or memory held outside the heap; stores living on the heap have nothing to release
+    @Override
+    default void close() {
+    }
+
+    // Whether a change returns a new store and leaves this one untouched, so it can be read without locking
+    boolean isImmutable();
+
+    // Applies a change, replacing the previous version of a product (null for a new product) with the new version
+    // (null to remove the product). Returns the store holding the change: a new one for immutable stores, this one otherwise.
+    ProductStore replace(ProductRecord previous, ProductRecord product);
+
+    boolean containsProductId(int id);
+
+    int size();
+
+    // All products ordered by ID
+    List<ProductRecord> getAllProducts();
+
+    // At most limit products with an ID greater than afterId, ordered by ID
+    List<ProductRecord> getProductsAfterId(int afterId, int limit);
+
+    Optional<ProductRecord> getProductById(int id);
+
+    List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category);
+
+    // At most limit products in a category sorted by name, continuing after the product with ID afterId (0 starts from the beginning)
+    List<ProductRecord> getProductsByCategorySortedByProductNameAfterId(Category category, int afterId, int limit);
+
+    // At most limit products in a category sorted by name, continuing after where a product named afterName with ID
+    // afterId sorts, whether or not that product is in this store. Shards page with it, as the product a merged page
+    // ended at lives on one shard only.
+    default List<ProductRecord> getProductsByCategorySortedByProductNameAfter(Category category, String afterName, int afterId, int limit) {
+        validateLimit(limit);
+        List<ProductRecord> products = new ArrayList<>();
+        for (Iterator<ProductRecord> iterator = productsInCategoryFromName(category, afterName); iterator.hasNext() && products.size() < limit; ) {
+            ProductRecord product = iterator.next();
+            if (!product.name().equals(afterName) || product.id() > afterId) {
+                products.add(product);
+            }
+        }
+        return Collections.unmodifiableList(products);
+    }
+
+    // Products created after the date, oldest first
+    List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date);
+
+    List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation();
+
+    Set<Category> getAllCategoriesThatHasAtLeastOneProduct();
+
+    long getNumberOfProductsInCategory(Category category);
+
+    Map<Character, Long> getNumberOfProductsStartingWithEachLetter();
+
+    List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate();
+
+    // Products with max rating created in a month of the store's time zone, latest first
+    List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month);
+
+    // Access paths for ProductSearch. The iterators build records as they go, so a search stopping early reads only
+    // what it returns; on a mutable store they must be used up before writers are let in.
+
+    // All products ordered by ID
+    Iterator<ProductRecord> productsById();
+
+    // Products in a category ordered by name, from the first whose name is not before the given one
+    Iterator<ProductRecord> productsInCategoryFromName(Category category, String name);
+
+    // Products created at or after the date, oldest first
+    Iterator<ProductRecord> productsCreatedFrom(Instant date);
+
+    // How many products were created at or after from and before to
+    int countProductsCreatedBetween(Instant from, Instant to);
+
+    // The words of the product names, kept in step with every change
+    NameIndex nameIndex();
+
+    static void validateLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be a positive number.");
+        }
+    }
+}
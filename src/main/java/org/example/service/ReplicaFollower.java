@@ -0,0 +1,191 @@
+package org.example.service;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import org.example.entities.ProductChange;
+import org.example.metrics.PrometheusWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Keeps a replica's catalog in step with its primary by log shipping. The follower loads a snapshot of the primary's
+// catalog, then long-polls the primary's /replication/changes for the changes after the last one it applied and
+// applies them in order under the primary's sequence numbers, so sequences and entity tags mean the same on every
+// node. It loads a new snapshot when the primary no longer keeps the changes it needs, when the changes come from
+// another journal, as after a restart of the primary, or when they do not follow on. While the primary cannot be
+// reached the replica keeps serving what it applied and the follower retries with growing pauses.
+public final class ReplicaFollower implements AutoCloseable {
+    public static final String PRIMARY_PROPERTY = "warehouse.replication.primary";
+    // The last change sequence of the catalog a response was served from
+    public static final String SEQUENCE_HEADER = "X-Warehouse-Sequence";
+    // The ID of the journal the sequences belong to
+    public static final String JOURNAL_HEADER = "X-Warehouse-Journal";
+    static final long POLL_MILLIS = 5_000;
+    static final int BATCH_SIZE = 1000;
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaFollower.class);
+    private static final Jsonb jsonb = JsonbBuilder.create();
+
+    private final URI primary;
+    private final URI replication;
+    private final WarehouseService replica;
+    private final long pollMillis;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final Thread thread;
+    private final LongAdder snapshotsLoaded = new LongAdder();
+    private final LongAdder changesApplied = new LongAdder();
+    private volatile boolean closed;
+    // The primary's journal the replica follows, null until a snapshot of it is loaded
+    private String journal;
+    private volatile long primarySequence;
+    private volatile long lastContactNanos = System.nanoTime();
+
+    private ReplicaFollower(URI primary, WarehouseService replica, long pollMillis) {
+        String base = primary.toString();
+        this.primary = URI.create(base.endsWith("/") ? base : base + "/");
+        this.replication = this.primary.resolve("replication/");
+        this.replica = replica;
+        this.pollMillis = pollMillis;
+        this.thread = Thread.ofPlatform().name("warehouse-replica").daemon().unstarted(this::run);
+    }
+
+    static ReplicaFollower start(URI primary, WarehouseService replica, long pollMillis) {
+        ReplicaFollower follower = new ReplicaFollower(primary, replica, pollMillis);
+        follower.thread.start();
+        return follower;
+    }
+
+    // The base URI of the primary's REST API, where changes are to be made
+    public URI primary() {
+        return primary;
+    }
+
+    // How many changes the primary had made beyond the replica when they last spoke
+    public long lag() {
+        return Math.max(0, primarySequence - replica.getChangeJournal().lastSequence());
+    }
+
+    // Seconds since the primary last answered; with no changes to ship it answers every poll interval
+    public double secondsSinceContact() {
+        return (System.nanoTime() - lastContactNanos) / 1e9;
+    }
+
+    public void writePrometheus(PrometheusWriter writer) {
+        writer.gauge("warehouse_replication_lag_changes", "Changes made on the primary that this replica has not applied yet.", lag());
+        writer.gauge("warehouse_replication_last_contact_seconds", "Seconds since the primary last answered this replica.", secondsSinceContact());
+        writer.counter("warehouse_replication_changes_applied_total", "Changes shipped from the primary and applied.", changesApplied.sum());
+        writer.counter("warehouse_replication_snapshots_loaded_total", "Snapshots of the primary's catalog loaded.", snapshotsLoaded.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        client.shutdownNow();
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        int failures = 0;
+        while (!closed) {
+            try {
+                if (journal == null) {
+                    loadSnapshot();
+                }
+                poll();
+                failures = 0;
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                if (closed) {
+                    break;
+                }
+                failures++;
+                logger.warn("Replicating from {} failed, retrying: {}", primary, e.toString());
+                try {
+                    Thread.sleep(Math.min(MAX_RETRY_MILLIS, MIN_RETRY_MILLIS << Math.min(failures, 6)));
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // Reads the snapshot line by line as the primary writes it: the sequence and base version first, then the entries
+    private void loadSnapshot() throws IOException, InterruptedException {
+        HttpResponse<Stream<String>> response = client.send(HttpRequest.newBuilder(replication.resolve("snapshot")).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Primary " + primary + " answered the snapshot request with " + response.statusCode());
+            }
+            Iterator<String> iterator = lines.iterator();
+            if (!iterator.hasNext()) {
+                throw new IOException("Primary " + primary + " sent an empty snapshot");
+            }
+            JsonObject header;
+            try (JsonReader reader = Json.createReader(new StringReader(iterator.next()))) {
+                header = reader.readObject();
+            }
+            List<ProductChange> entries = new ArrayList<>();
+            while (iterator.hasNext()) {
+                entries.add(jsonb.fromJson(iterator.next(), ProductChange.class));
+            }
+            long sequence = header.getJsonNumber("sequence").longValue();
+            replica.loadReplica(new ReplicationSnapshot(sequence, header.getJsonNumber("baseVersion").longValue(), entries));
+            journal = response.headers().firstValue(JOURNAL_HEADER).orElse(null);
+            primarySequence = sequence;
+            lastContactNanos = System.nanoTime();
+            snapshotsLoaded.increment();
+            logger.info("Loaded {} products from primary {} at sequence {}", entries.size(), primary, sequence);
+        }
+    }
+
+    // Waits up to the poll interval for changes after the last one applied and applies those that come
+    private void poll() throws IOException, InterruptedException {
+        long after = replica.getChangeJournal().lastSequence();
+        URI uri = replication.resolve("changes?after=" + after + "&limit=" + BATCH_SIZE + "&waitMillis=" + pollMillis);
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).timeout(Duration.ofMillis(pollMillis).plusSeconds(30)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200 && response.statusCode() != 410) {
+            throw new IOException("Primary " + primary + " answered " + uri + " with " + response.statusCode() + ": " + response.body());
+        }
+        lastContactNanos = System.nanoTime();
+        if (response.statusCode() == 410 || !response.headers().firstValue(JOURNAL_HEADER).equals(Optional.ofNullable(journal))) {
+            logger.info("Primary {} no longer has the changes after sequence {}, loading its catalog again", primary, after);
+            journal = null;
+            return;
+        }
+        response.headers().firstValue(SEQUENCE_HEADER).ifPresent(sequence -> primarySequence = Long.parseLong(sequence));
+        List<ProductChange> changes = List.of(jsonb.fromJson(response.body(), ProductChange[].class));
+        try {
+            replica.applyReplicated(changes);
+        } catch (IllegalStateException e) {
+            logger.warn("Changes from primary {} do not follow on, loading its catalog again: {}", primary, e.getMessage());
+            journal = null;
+            return;
+        }
+        changesApplied.add(changes.size());
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.service;
+
+import org.example.entities.ProductChange;
+import java.util.List;
+
+// The catalog a replica starts from, as it was after the change with the sequence. Each entry is a product with its
+// version as the change sequence; entries marked removed keep the versions of removed products, which decide how the
+// product is versioned if it comes back. Products not in the versions share baseVersion.
+public record ReplicationSnapshot(long sequence, long baseVersion, List<ProductChange> entries) {
+}
@@ -0,0 +1,582 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+// Queries and indexes shared by the stores that keep products as numbered rows of primitive fields.
+// Subclasses only decide where the rows live. Orderings (by ID, by creation date, by name per category) are sorted
+// row arrays built on the first read that needs them and from then on kept sorted through every change, so a write
+// costs a binary search and an array shift per ordering rather than a sort on the next read.
+// The rows change in place, so readers must be kept apart from writers; reads that build an ordering may run
+// concurrently with each other.
+abstract class RowProductStore implements ProductStore {
+    static final Category[] CATEGORIES = Category.values();
+    static final long NO_DATE = Long.MIN_VALUE;
+    static final int MISSING = -1;
+
+    @FunctionalInterface
+    interface RowComparator {
+        int compare(int row, int otherRow);
+    }
+
+    private final Clock clock;
+    private final int[] productsInCategory = new int[CATEGORIES.length];
+    private final Map<Character, Long> productsStartingWithEachLetter = new HashMap<>();
+    // Rows in each order, null until first read
+    private volatile RowOrder rowsInIdOrder;
+    private volatile RowOrder rowsInCreatedOrder;
+    private final RowOrder[] rowsInNameOrder = new RowOrder[CATEGORIES.length];
+    private NameIndex nameIndex = NameIndex.EMPTY;
+
+    RowProductStore(Clock clock) {
+        this.clock = clock;
+    }
+
+    abstract int rowCount();
+
+    // The row of the product with the ID, or MISSING
+    abstract int rowOf(int id);
+
+    abstract int idAt(int row);
+
+    abstract int categoryAt(int row);
+
+    abstract int ratingAt(int row);
+
+    abstract long createdDateAt(int row);
+
+    abstract long modifiedDateAt(int row);
+
+    abstract String nameAt(int row);
+
+    abstract char firstLetterAt(int row);
+
+    // Compares names as ProductField.compareNames does
+    abstract int compareNames(int row, int otherRow);
+
+    abstract boolean nameEquals(int row, String name);
+
+    // Stores a new product in the next row
+    abstract void appendRow(ProductRecord product);
+
+    // Overwrites a row with a new version of its product, storing the name again only when it changed
+    abstract void updateRow(int row, ProductRecord product, boolean nameChanged);
+
+    // Removes a row by moving the last row into its place, so removal costs the same wherever the row is
+    abstract void removeRow(int row);
+
+    @Override
+    public boolean isImmutable() {
+        return false;
+    }
+
+    @Override
+    public RowProductStore replace(ProductRecord previous, ProductRecord product) {
+        if (previous == null) {
+            appendRow(product);
+            int row = rowCount() - 1;
+            count(row);
+            addToOrders(row, true, true, true);
+            nameIndex = nameIndex.replace(null, product);
+            return this;
+        }
+        if (product == null) {
+            int row = rowOf(previous.id());
+            int last = rowCount() - 1;
+            uncount(row);
+            // Orderings find rows by their fields, so the row leaves them before the last row moves into its number
+            removeFromOrders(row, true, true, true);
+            if (last != row) {
+                renumberInOrders(last, row);
+            }
+            removeRow(row);
+            nameIndex = nameIndex.replace(previous, null);
+            return this;
+        }
+        int row = rowOf(product.id());
+        boolean nameChanged = !nameEquals(row, product.name());
+        boolean nameOrderChanged = nameChanged || categoryAt(row) != product.category().ordinal();
+        boolean createdOrderChanged = createdDateAt(row) != millisOf(product.createdDate());
+        // The row is found in the orderings it moves in while it still has its old fields, and only taken out of them
+        // once the new ones are written, so a write that fails leaves the orderings and counts as they were
+        RowOrder createdOrder = createdOrderChanged && createdDateAt(row) != NO_DATE ? rowsInCreatedOrder : null;
+        RowOrder nameOrder = nameOrderChanged ? builtNameOrder(categoryAt(row)) : null;
+        int createdIndex = createdOrder == null ? MISSING : createdOrder.indexOf(row);
+        int nameIndexInOrder = nameOrder == null ? MISSING : nameOrder.indexOf(row);
+        updateRow(row, product, nameChanged);
+        if (createdOrder != null) {
+            createdOrder.removeAt(createdIndex);
+        }
+        if (nameOrder != null) {
+            nameOrder.removeAt(nameIndexInOrder);
+        }
+        uncount(previous.category().ordinal(), previous.name().charAt(0));
+        count(row);
+        addToOrders(row, false, createdOrderChanged, nameOrderChanged);
+        if (nameChanged) {
+            nameIndex = nameIndex.replace(previous, product);
+        }
+        return this;
+    }
+
+    // Adds the row to those of the given orderings already built
+    private void addToOrders(int row, boolean byId, boolean byCreated, boolean byName) {
+        if (byId && rowsInIdOrder != null) {
+            rowsInIdOrder.add(row);
+        }
+        if (byCreated && rowsInCreatedOrder != null && createdDateAt(row) != NO_DATE) {
+            rowsInCreatedOrder.add(row);
+        }
+        RowOrder nameOrder = byName ? builtNameOrder(categoryAt(row)) : null;
+        if (nameOrder != null) {
+            nameOrder.add(row);
+        }
+    }
+
+    private void removeFromOrders(int row, boolean byId, boolean byCreated, boolean byName) {
+        if (byId && rowsInIdOrder != null) {
+            rowsInIdOrder.remove(row);
+        }
+        if (byCreated && rowsInCreatedOrder != null && createdDateAt(row) != NO_DATE) {
+            rowsInCreatedOrder.remove(row);
+        }
+        RowOrder nameOrder = byName ? builtNameOrder(categoryAt(row)) : null;
+        if (nameOrder != null) {
+            nameOrder.remove(row);
+        }
+    }
+
+    // The row keeps its place in every ordering under its new number
+    private void renumberInOrders(int row, int newRow) {
+        if (rowsInIdOrder != null) {
+            rowsInIdOrder.renumber(row, newRow);
+        }
+        if (rowsInCreatedOrder != null && createdDateAt(row) != NO_DATE) {
+            rowsInCreatedOrder.renumber(row, newRow);
+        }
+        RowOrder nameOrder = builtNameOrder(categoryAt(row));
+        if (nameOrder != null) {
+            nameOrder.renumber(row, newRow);
+        }
+    }
+
+    // Counts rows that were already stored when the store was opened, each segment of a parallel scan into its own counts
+    void countRows() {
+        RowCounts counts = ParallelScan.fold(0, rowCount(), this::countRows, RowCounts::merge);
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            productsInCategory[category] += counts.productsInCategory[category];
+        }
+        counts.productsStartingWithEachLetter.forEach((letter, count) -> productsStartingWithEachLetter.merge(letter, count, Long::sum));
+        nameIndex = NameIndex.build(productsByRow());
+    }
+
+    private RowCounts countRows(int from, int to) {
+        RowCounts counts = new RowCounts();
+        for (int row = from; row < to; row++) {
+            counts.productsInCategory[categoryAt(row)]++;
+            counts.productsStartingWithEachLetter.merge(firstLetterAt(row), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    private static final class RowCounts {
+        final int[] productsInCategory = new int[CATEGORIES.length];
+        final Map<Character, Long> productsStartingWithEachLetter = new HashMap<>();
+
+        RowCounts merge(RowCounts other) {
+            for (int category = 0; category < CATEGORIES.length; category++) {
+                productsInCategory[category] += other.productsInCategory[category];
+            }
+            other.productsStartingWithEachLetter.forEach((letter, count) -> productsStartingWithEachLetter.merge(letter, count, Long::sum));
+            return this;
+        }
+    }
+
+    private void count(int row) {
+        productsInCategory[categoryAt(row)]++;
+        productsStartingWithEachLetter.merge(firstLetterAt(row), 1L, Long::sum);
+    }
+
+    private void uncount(int row) {
+        uncount(categoryAt(row), firstLetterAt(row));
+    }
+
+    private void uncount(int category, char firstLetter) {
+        productsInCategory[category]--;
+        productsStartingWithEachLetter.computeIfPresent(firstLetter, (letter, count) -> count == 1 ? null : count - 1);
+    }
+
+    private RowOrder builtNameOrder(int category) {
+        synchronized (rowsInNameOrder) {
+            return rowsInNameOrder[category];
+        }
+    }
+
+    ProductRecord productAt(int row) {
+        long createdDate = createdDateAt(row);
+        long modifiedDate = modifiedDateAt(row);
+        // A product never updated shares one instant for both dates
+        Instant created = instantOf(createdDate);
+        return new ProductRecord(idAt(row), nameAt(row), CATEGORIES[categoryAt(row)], ratingAt(row),
+                created, modifiedDate == createdDate ? created : instantOf(modifiedDate));
+    }
+
+    static long millisOf(Instant instant) {
+        return instant == null ? NO_DATE : instant.toEpochMilli();
+    }
+
+    static Instant instantOf(long millis) {
+        return millis == NO_DATE ? null : Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public boolean containsProductId(int id) {
+        return rowOf(id) != MISSING;
+    }
+
+    @Override
+    public int size() {
+        return rowCount();
+    }
+
+    @Override
+    public List<ProductRecord> getAllProducts() {
+        RowOrder order = idOrder();
+        return products(order, 0, order.size());
+    }
+
+    @Override
+    public List<ProductRecord> getProductsAfterId(int afterId, int limit) {
+        ProductStore.validateLimit(limit);
+        RowOrder order = idOrder();
+        int from = order.firstIndex(row -> idAt(row) > afterId);
+        return products(order, from, (int) Math.min((long) from + limit, order.size()));
+    }
+
+    @Override
+    public Optional<ProductRecord> getProductById(int id) {
+        int row = rowOf(id);
+        return row == MISSING ? Optional.empty() : Optional.of(productAt(row));
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
+        RowOrder order = nameOrder(category.ordinal());
+        return products(order, 0, order.size());
+    }
+
+    @Override
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfterId(Category category, int afterId, int limit) {
+        ProductStore.validateLimit(limit);
+        RowOrder order = nameOrder(category.ordinal());
+        int from = 0;
+        if (afterId != 0) {
+            int after = rowOf(afterId);
+            if (after == MISSING) {
+                throw new IllegalArgumentException("Product ID " + afterId + " to continue after does not exist.");
+            }
+            from = order.firstIndex(row -> compareByName(row, after) > 0);
+        }
+        return products(order, from, (int) Math.min((long) from + limit, order.size()));
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date) {
+        RowOrder order = createdOrder();
+        long millis = date.toEpochMilli();
+        return products(order, order.firstIndex(row -> createdDateAt(row) > millis), order.size());
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        RowOrder order = idOrder();
+        return Collections.unmodifiableList(ParallelScan.fold(0, order.size(), (from, to) -> {
+            List<ProductRecord> products = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                int row = order.rowAt(i);
+                if (modifiedDateAt(row) > createdDateAt(row)) {
+                    products.add(productAt(row));
+                }
+            }
+            return products;
+        }, ParallelScan::concat));
+    }
+
+    @Override
+    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
+        Set<Category> categorySet = EnumSet.noneOf(Category.class);
+        for (Category category : CATEGORIES) {
+            if (productsInCategory[category.ordinal()] > 0) {
+                categorySet.add(category);
+            }
+        }
+        return Collections.unmodifiableSet(categorySet);
+    }
+
+    @Override
+    public long getNumberOfProductsInCategory(Category category) {
+        return productsInCategory[category.ordinal()];
+    }
+
+    @Override
+    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
+        return Collections.unmodifiableMap(new HashMap<>(productsStartingWithEachLetter));
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
+        return getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth.now(clock));
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month) {
+        ZonedDateTime startOfMonth = month.atDay(1).atStartOfDay(clock.getZone());
+        long from = startOfMonth.toInstant().toEpochMilli();
+        long to = startOfMonth.plusMonths(1).toInstant().toEpochMilli();
+        RowOrder order = createdOrder();
+        List<ProductRecord> products = new ArrayList<>();
+        for (int i = order.firstIndex(row -> createdDateAt(row) >= from); i < order.size() && createdDateAt(order.rowAt(i)) < to; i++) {
+            if (ratingAt(order.rowAt(i)) == MAX_RATING) {
+                products.add(productAt(order.rowAt(i)));
+            }
+        }
+        Collections.reverse(products);
+        return Collections.unmodifiableList(products);
+    }
+
+    // Builds the records of a range of an ordering, large ranges in parallel segments each filling its own part
+    @Override
+    public Iterator<ProductRecord> productsById() {
+        return iterator(idOrder(), 0);
+    }
+
+    @Override
+    public Iterator<ProductRecord> productsInCategoryFromName(Category category, String name) {
+        RowOrder order = nameOrder(category.ordinal());
+        return iterator(order, order.firstIndex(row -> ProductField.compareNames(nameAt(row), name) >= 0));
+    }
+
+    @Override
+    public Iterator<ProductRecord> productsCreatedFrom(Instant date) {
+        RowOrder order = createdOrder();
+        long millis = date.toEpochMilli();
+        return iterator(order, order.firstIndex(row -> createdDateAt(row) >= millis));
+    }
+
+    @Override
+    public int countProductsCreatedBetween(Instant from, Instant to) {
+        RowOrder order = createdOrder();
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        return Math.max(order.firstIndex(row -> createdDateAt(row) >= toMillis) - order.firstIndex(row -> createdDateAt(row) >= fromMillis), 0);
+    }
+
+    @Override
+    public NameIndex nameIndex() {
+        return nameIndex;
+    }
+
+    // All products in the order of their rows
+    private Iterator<ProductRecord> productsByRow() {
+        int[] rows = new int[rowCount()];
+        Arrays.setAll(rows, row -> row);
+        return iterator(new RowOrder(rows), 0);
+    }
+
+    private Iterator<ProductRecord> iterator(RowOrder order, int from) {
+        return new Iterator<>() {
+            private int next = from;
+
+            @Override
+            public boolean hasNext() {
+                return next < order.size();
+            }
+
+            @Override
+            public ProductRecord next() {
+                if (next >= order.size()) {
+                    throw new NoSuchElementException();
+                }
+                return productAt(order.rowAt(next++));
+            }
+        };
+    }
+
+    private List<ProductRecord> products(RowOrder order, int from, int to) {
+        ProductRecord[] products = new ProductRecord[Math.max(to - from, 0)];
+        ParallelScan.fold(from, Math.max(from, to), (segmentFrom, segmentTo) -> {
+            for (int i = segmentFrom; i < segmentTo; i++) {
+                products[i - from] = productAt(order.rowAt(i));
+            }
+            return null;
+        }, (left, right) -> null);
+        return Collections.unmodifiableList(Arrays.asList(products));
+    }
+
+    private RowOrder idOrder() {
+        RowOrder order = rowsInIdOrder;
+        if (order == null) {
+            int[] rows = new int[rowCount()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+            order = new RowOrder(rows, (row, other) -> Integer.compare(idAt(row), idAt(other)));
+            rowsInIdOrder = order;
+        }
+        return order;
+    }
+
+    // Only products with a creation date, ordered by it and then by ID
+    private RowOrder createdOrder() {
+        RowOrder order = rowsInCreatedOrder;
+        if (order == null) {
+            int[] rows = new int[rowCount()];
+            int count = 0;
+            for (int row = 0; row < rows.length; row++) {
+                if (createdDateAt(row) != NO_DATE) {
+                    rows[count++] = row;
+                }
+            }
+            order = new RowOrder(Arrays.copyOf(rows, count), (row, other) -> {
+                int comparison = Long.compare(createdDateAt(row), createdDateAt(other));
+                return comparison != 0 ? comparison : Integer.compare(idAt(row), idAt(other));
+            });
+            rowsInCreatedOrder = order;
+        }
+        return order;
+    }
+
+    private RowOrder nameOrder(int category) {
+        RowOrder built = builtNameOrder(category);
+        if (built != null) {
+            return built;
+        }
+        int[] rows = new int[productsInCategory[category]];
+        int count = 0;
+        for (int row = 0, rowCount = rowCount(); row < rowCount; row++) {
+            if (categoryAt(row) == category) {
+                rows[count++] = row;
+            }
+        }
+        RowOrder order = new RowOrder(rows, this::compareByName);
+        synchronized (rowsInNameOrder) {
+            rowsInNameOrder[category] = order;
+        }
+        return order;
+    }
+
+    private int compareByName(int row, int other) {
+        int comparison = compareNames(row, other);
+        return comparison != 0 ? comparison : Integer.compare(idAt(row), idAt(other));
+    }
+
+    // Row numbers sorted by a comparator of their fields. A change finds its place by binary search and shifts the rows
+    // after it, which for a million rows is a copy of a few megabytes at most and nothing when appending in order.
+    // Rows are found by their fields, so a row must be removed, or at least found, before its fields change and added
+    // back after.
+    private static final class RowOrder {
+        private final RowComparator comparator;
+        private int[] rows;
+        private int size;
+
+        // Rows in no particular order that never change
+        RowOrder(int[] rows) {
+            this.comparator = null;
+            this.rows = rows;
+            this.size = rows.length;
+        }
+
+        RowOrder(int[] rows, RowComparator comparator) {
+            this.comparator = comparator;
+            this.rows = sortedRows(rows, comparator);
+            this.size = rows.length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int rowAt(int index) {
+            return rows[index];
+        }
+
+        void add(int row) {
+            int index = indexOf(row);
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(16, size + (size >> 1)));
+            }
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            rows[index] = row;
+            size++;
+        }
+
+        void remove(int row) {
+            removeAt(indexOf(row));
+        }
+
+        void removeAt(int index) {
+            System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+            size--;
+        }
+
+        void renumber(int row, int newRow) {
+            rows[indexOf(row)] = newRow;
+        }
+
+        // Where the row is, or would be, in the order
+        int indexOf(int row) {
+            return firstIndex(other -> comparator.compare(other, row) >= 0);
+        }
+
+        // The first index whose row passes the test, which every later row also passes
+        int firstIndex(IntPredicate test) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (test.test(rows[middle])) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    // Merge sort of row numbers, returning early when they are already in order as appends usually leave them
+    private static int[] sortedRows(int[] rows, RowComparator comparator) {
+        boolean sorted = true;
+        for (int i = 1; i < rows.length && sorted; i++) {
+            sorted = comparator.compare(rows[i - 1], rows[i]) <= 0;
+        }
+        if (!sorted) {
+            mergeSort(rows, rows.clone(), 0, rows.length, comparator);
+        }
+        return rows;
+    }
+
+    // Sorts source[from, to) into target, using target's copy of the same range as scratch space
+    private static void mergeSort(int[] target, int[] source, int from, int to, RowComparator comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(source, target, from, middle, comparator);
+        mergeSort(source, target, middle, to, comparator);
+        for (int i = from, left = from, right = middle; i < to; i++) {
+            if (right >= to || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+// Consistent hashing of product IDs onto named shards. Every shard owns VIRTUAL_NODES points on a ring of 64-bit
+// hashes of its name, and an ID belongs to the shard owning the first point at or after the hash of the ID, wrapping
+// around. With many points per shard the IDs spread evenly, and adding or removing a shard only moves the IDs of
+// the ring segments it gains or loses, about 1/N of them, all to or from that shard.
+public final class ShardRing {
+    static final int VIRTUAL_NODES = 256;
+    private final List<String> shards;
+    // Ring points in ascending order and the index of the shard owning each
+    private final long[] points;
+    private final int[] owners;
+
+    public ShardRing(List<String> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard.");
+        }
+        if (new HashSet<>(shards).size() != shards.size()) {
+            throw new IllegalArgumentException("Shard names must be unique.");
+        }
+        this.shards = List.copyOf(shards);
+        // Point and owner packed side by side so one sort orders both, ties by owner to stay deterministic
+        long[][] ring = new long[shards.size() * VIRTUAL_NODES][];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            long nameHash = hash(shards.get(shard));
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring[shard * VIRTUAL_NODES + node] = new long[]{mix(nameHash + node * 0x9e3779b97f4a7c15L), shard};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        points = new long[ring.length];
+        owners = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = (int) ring[i][1];
+        }
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    // The index in shards() of the shard owning the ID
+    public int shardOf(int id) {
+        long hash = mix(id);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // FNV-1a over the UTF-8 bytes, spread by mix
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Murmur3 64-bit finalizer, so sequential IDs land all over the ring
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe53a4eb9L;
+        return key ^ (key >>> 33);
+    }
+}
@@ -0,0 +1,348 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductField;
+import org.example.entities.ProductImportError;
+import org.example.entities.ProductRecord;
+import org.example.persistence.WarehousePersistence;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// A catalog partitioned by product ID over several shards with consistent hashing. Changes and lookups of one
+// product go to the shard owning its ID; every other query is sent to all shards at once on virtual threads and the
+// answers are gathered: lists merge-sorted in their order, counts summed, categories and letters combined.
+// Shards may be WarehouseServices in this JVM, spreading writes over cores since each shard has its own write lock,
+// or other nodes reached through HttpProductShard. Product versions are per shard, which is enough for conditional
+// requests since a product never leaves its shard while the ring stays the same.
+public final class ShardedWarehouse implements ProductShard {
+    public static final String SHARDS_PROPERTY = "warehouse.shards";
+    public static final String NODES_PROPERTY = "warehouse.shard.nodes";
+    private static final Comparator<ProductRecord> BY_ID = Comparator.comparingInt(ProductRecord::id);
+    private static final Comparator<ProductRecord> BY_NAME = ProductField.NAME.comparator().thenComparing(BY_ID);
+    private static final Comparator<ProductRecord> BY_CREATED_DATE = Comparator.comparing(ProductRecord::createdDate).thenComparing(BY_ID);
+    private final ShardRing ring;
+    private final List<ProductShard> shards;
+    private final Clock clock;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // The shards in the order of the ring's shard names; the clock decides what "this month" is
+    public ShardedWarehouse(ShardRing ring, List<? extends ProductShard> shards, Clock clock) {
+        if (ring.shards().size() != shards.size()) {
+            throw new IllegalArgumentException("Expected " + ring.shards().size() + " shards, got " + shards.size() + ".");
+        }
+        this.ring = ring;
+        this.shards = List.copyOf(shards);
+        this.clock = clock;
+    }
+
+    // Shards in this JVM, named shard-0 to shard-(count-1)
+    public static ShardedWarehouse inProcess(int count, IntFunction<? extends ProductShard> shardFactory) {
+        List<String> names = new ArrayList<>();
+        List<ProductShard> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add("shard-" + i);
+            shards.add(shardFactory.apply(i));
+        }
+        return new ShardedWarehouse(new ShardRing(names), shards, WarehouseService.clockFromSystemProperty());
+    }
+
+    // Shards on other nodes, each the base URI of a node's REST API and named by it
+    public static ShardedWarehouse overHttp(List<URI> nodes) {
+        List<String> names = new ArrayList<>();
+        List<ProductShard> shards = new ArrayList<>();
+        for (URI node : nodes) {
+            names.add(node.toString());
+            shards.add(new HttpProductShard(node));
+        }
+        return new ShardedWarehouse(new ShardRing(names), shards, WarehouseService.clockFromSystemProperty());
+    }
+
+    // The catalog configured with -Dwarehouse.shards=<count> for shards in this JVM, or with
+    // -Dwarehouse.shard.nodes=<uri>,<uri>,... for the nodes at those base URIs, or null when neither is set.
+    // In-process shards are WarehouseServices configured like this node's except that they keep to memory.
+    public static ShardedWarehouse fromSystemProperties() {
+        String count = System.getProperty(SHARDS_PROPERTY);
+        String nodes = System.getProperty(NODES_PROPERTY);
+        if (count != null && nodes != null) {
+            throw new IllegalStateException("Shards are either in this JVM or on other nodes, set either -D" + SHARDS_PROPERTY
+                    + " or -D" + NODES_PROPERTY + ".");
+        }
+        if (count != null) {
+            if (System.getProperty(WarehousePersistence.DATA_DIRECTORY_PROPERTY) != null || StoreType.fromSystemProperty() == StoreType.MAPPED) {
+                throw new IllegalStateException("Shards in this JVM keep the catalog in memory only, -D" + SHARDS_PROPERTY
+                        + " does not combine with -D" + WarehousePersistence.DATA_DIRECTORY_PROPERTY + " or a MAPPED store.");
+            }
+            int shards = Integer.parseInt(count.trim());
+            if (shards < 1) {
+                throw new IllegalStateException("Expected at least one shard, got " + shards + ".");
+            }
+            return inProcess(shards, shard -> new WarehouseService());
+        }
+        if (nodes != null) {
+            return overHttp(Arrays.stream(nodes.split(",")).map(String::trim).filter(node -> !node.isEmpty()).map(URI::create).toList());
+        }
+        return null;
+    }
+
+    public ShardRing ring() {
+        return ring;
+    }
+
+    // The shard owning a product ID
+    public ProductShard shardOf(int id) {
+        return shards.get(ring.shardOf(id));
+    }
+
+    @Override
+    public void addProduct(int id, String name, Category category, int rating, Instant createdDate) {
+        shardOf(id).addProduct(id, name, category, rating, createdDate);
+    }
+
+    // Splits the batch by shard, keeping the order within each so duplicates are caught as on one warehouse, and
+    // maps the positions of rejected products back to the whole batch
+    @Override
+    public List<ProductImportError> addProducts(List<ProductRecord> products) {
+        List<List<Integer>> positions = new ArrayList<>();
+        List<List<ProductRecord>> batches = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            positions.add(new ArrayList<>());
+            batches.add(new ArrayList<>());
+        }
+        for (int i = 0; i < products.size(); i++) {
+            int shard = ring.shardOf(products.get(i).id());
+            positions.get(shard).add(i);
+            batches.get(shard).add(products.get(i));
+        }
+        List<List<ProductImportError>> shardErrors = scatter(shard -> batches.get(shard).isEmpty()
+                ? List.of() : shards.get(shard).addProducts(batches.get(shard)));
+        List<ProductImportError> errors = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (ProductImportError error : shardErrors.get(shard)) {
+                errors.add(new ProductImportError(positions.get(shard).get(error.index()), error.id(), error.message()));
+            }
+        }
+        errors.sort(Comparator.comparingInt(ProductImportError::index));
+        return errors;
+    }
+
+    @Override
+    public boolean updateProduct(int id, String newName, Category newCategory, int newRating) {
+        return shardOf(id).updateProduct(id, newName, newCategory, newRating);
+    }
+
+    @Override
+    public boolean patchProduct(int id, String newName, Category newCategory, Integer newRating, Set<Long> ifMatch) {
+        return shardOf(id).patchProduct(id, newName, newCategory, newRating, ifMatch);
+    }
+
+    @Override
+    public boolean deleteProduct(int id, Set<Long> ifMatch) {
+        return shardOf(id).deleteProduct(id, ifMatch);
+    }
+
+    @Override
+    public Optional<ProductRecord> getProductById(int id) {
+        return shardOf(id).getProductById(id);
+    }
+
+    @Override
+    public long getProductVersion(int id) {
+        return shardOf(id).getProductVersion(id);
+    }
+
+    // The sum of the shards' versions grows whenever one of them does, so it versions the whole catalog
+    @Override
+    public long getVersion() {
+        return gather(ProductShard::getVersion).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public long getCategoryVersion(Category category) {
+        return gather(shard -> shard.getCategoryVersion(category)).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public List<ProductRecord> getAllProducts() {
+        return merge(gather(ProductShard::getAllProducts), BY_ID, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ProductRecord> getProductsAfterId(int afterId, int limit) {
+        return merge(gather(shard -> shard.getProductsAfterId(afterId, limit)), BY_ID, limit);
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
+        return merge(gather(shard -> shard.getAllProductsByCategorySortedByProductName(category)), BY_NAME, Integer.MAX_VALUE);
+    }
+
+    // Continues after the product with ID afterId (0 starts from the beginning), looked up on its own shard first
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfterId(Category category, int afterId, int limit) {
+        if (afterId == 0) {
+            return getProductsByCategorySortedByProductNameAfter(category, "", 0, limit);
+        }
+        ProductRecord after = getProductById(afterId).orElseThrow(() ->
+                new IllegalArgumentException("Product ID " + afterId + " to continue after does not exist."));
+        return getProductsByCategorySortedByProductNameAfter(category, after.name(), after.id(), limit);
+    }
+
+    @Override
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfter(Category category, String afterName, int afterId, int limit) {
+        return merge(gather(shard -> shard.getProductsByCategorySortedByProductNameAfter(category, afterName, afterId, limit)), BY_NAME, limit);
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date) {
+        return merge(gather(shard -> shard.getAllProductsCreatedAfterASpecificDate(date)), BY_CREATED_DATE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        return merge(gather(ProductShard::getAllProductsThatHasBeenModifiedSinceCreation), BY_ID, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
+        Set<Category> categories = EnumSet.noneOf(Category.class);
+        gather(ProductShard::getAllCategoriesThatHasAtLeastOneProduct).forEach(categories::addAll);
+        return Collections.unmodifiableSet(categories);
+    }
+
+    @Override
+    public long getNumberOfProductsInCategory(Category category) {
+        return gather(shard -> shard.getNumberOfProductsInCategory(category)).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
+        Map<Character, Long> letters = new HashMap<>();
+        gather(ProductShard::getNumberOfProductsStartingWithEachLetter).forEach(counts -> counts.forEach((letter, count) -> letters.merge(letter, count, Long::sum)));
+        return Collections.unmodifiableMap(letters);
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
+        return getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth.now(clock));
+    }
+
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month) {
+        return merge(gather(shard -> shard.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(month)), BY_CREATED_DATE.reversed(), Integer.MAX_VALUE);
+    }
+
+    // Every shard returns its first limit matches in the query's order, so the first limit of the merge are the
+    // answer. The plan shown is the first shard's, with the products it estimates summed over all shards.
+    @Override
+    public ProductSearch.Result search(ProductQuery query) {
+        List<ProductSearch.Result> results = gather(shard -> shard.search(query));
+        long estimatedProducts = results.stream().mapToLong(result -> result.plan().estimatedProducts()).sum();
+        ProductSearch.Plan plan = results.get(0).plan();
+        return new ProductSearch.Result(merge(results.stream().map(ProductSearch.Result::products).toList(), query.comparator(), query.limit()),
+                new ProductSearch.Plan(plan.accessPath(), estimatedProducts, plan.ordered()));
+    }
+
+    // The most common words of every shard with their counts summed. A word is only counted on the shards listing it,
+    // so one just below the top words of each shard can come out low or be missed, which suggestions can live with.
+    @Override
+    public List<NameSuggestion> suggest(String prefix, int limit) {
+        Map<String, Integer> counts = new HashMap<>();
+        gather(shard -> shard.suggest(prefix, limit)).forEach(suggestions ->
+                suggestions.forEach(suggestion -> counts.merge(suggestion.word(), suggestion.products(), Integer::sum)));
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey(ProductField::compareNames)))
+                .limit(limit)
+                .map(entry -> new NameSuggestion(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        shards.forEach(ProductShard::close);
+    }
+
+    private <T> List<T> gather(Function<ProductShard, T> query) {
+        return scatter(shard -> query.apply(shards.get(shard)));
+    }
+
+    // Runs the call for every shard index at once and waits for all of them, rethrowing the first failure as it was
+    // thrown on the shard. The last shard is called on this thread, which would otherwise only wait.
+    private <T> List<T> scatter(IntFunction<T> call) {
+        int last = shards.size() - 1;
+        List<Future<T>> futures = new ArrayList<>(last);
+        for (int shard = 0; shard < last; shard++) {
+            int index = shard;
+            futures.add(executor.submit(() -> call.apply(index)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        try {
+            T lastResult = call.apply(last);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            results.add(lastResult);
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    // The smallest product left in each list is kept in a heap, so merging k lists of n products in all costs n log k
+    static List<ProductRecord> merge(List<List<ProductRecord>> lists, Comparator<ProductRecord> order, int limit) {
+        record Head(ProductRecord product, Iterator<ProductRecord> rest) {
+        }
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(lists.size(), 1), (a, b) -> order.compare(a.product(), b.product()));
+        int total = 0;
+        for (List<ProductRecord> list : lists) {
+            total += list.size();
+            Iterator<ProductRecord> iterator = list.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), iterator));
+            }
+        }
+        List<ProductRecord> products = new ArrayList<>(Math.min(total, limit));
+        while (!heads.isEmpty() && products.size() < limit) {
+            Head head = heads.poll();
+            products.add(head.product());
+            if (head.rest().hasNext()) {
+                heads.add(new Head(head.rest().next(), head.rest()));
+            }
+        }
+        return Collections.unmodifiableList(products);
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
+
+// Which storage engine keeps the catalog, selectable with -Dwarehouse.store
+public enum StoreType {
+    // Immutable snapshots in persistent collections, readable without locking
+    PERSISTENT,
+    // Primitive arrays per field and a byte arena for names, the smallest heap footprint
+    COLUMNAR,
+    // Rows in memory-mapped files outside the heap, in the directory given by -Dwarehouse.store.dir
+    MAPPED;
+
+    public static final String PROPERTY = "warehouse.store";
+    public static final String DIRECTORY_PROPERTY = "warehouse.store.dir";
+
+    public static StoreType fromSystemProperty() {
+        String store = System.getProperty(PROPERTY);
+        return store == null ? PERSISTENT : valueOf(store.trim().toUpperCase());
+    }
+
+    // The clock decides what "this month" is and in which time zone
+    ProductStore createStore(Clock clock) {
+        switch (this) {
+            case COLUMNAR:
+                return new ColumnarProductStore(clock);
+            case MAPPED:
+                return openMapped(clock);
+            default:
+                return WarehouseSnapshot.empty(clock);
+        }
+    }
+
+    private static ProductStore openMapped(Clock clock) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isBlank()) {
+            throw new IllegalStateException("The MAPPED store needs a directory set with -D" + DIRECTORY_PROPERTY + ".");
+        }
+        try {
+            return MappedProductStore.open(Path.of(directory.trim()), clock);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open product store in " + directory, e);
+        }
+    }
+}
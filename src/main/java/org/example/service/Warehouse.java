@@ -1,25 +1,103 @@
 package org.example.service;
 
 import org.example.entities.Category;
-import org.example.entities.Product;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductImportError;
 import org.example.entities.ProductRecord;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
 import java.util.*;
-import java.util.stream.Collectors;
 
 
+// Validates changes and applies them to the product store. With an immutable store every change builds a new one
+// that is published with a single volatile write, so readers never lock and never see a change half applied.
+// Writes must be serialized by the caller.
 public class Warehouse {
-    private final List<Product> products = new ArrayList<>();
+    private final Clock clock;
+    private volatile ProductStore current;
+
+    public Warehouse() {
+        this(Clock.systemDefaultZone());
+    }
+
+    // The clock decides what "this month" is and in which time zone, and stamps the modified date of updates
+    public Warehouse(Clock clock) {
+        this(StoreType.PERSISTENT, clock);
+    }
+
+    public Warehouse(StoreType storeType, Clock clock) {
+        this(storeType.createStore(clock), clock);
+    }
+
+    public Warehouse(ProductStore store) {
+        this(store, Clock.systemDefaultZone());
+    }
+
+    public Warehouse(ProductStore store, Clock clock) {
+        this.current = store;
+        this.clock = clock;
+    }
+
+    // Method to release the files a store may keep open
+    public void close() {
+        current.close();
+    }
+
+    // The current store. An immutable one is a snapshot, consistent across every query made on it;
+    // a mutable one must be read while writers are held off.
+    public ProductStore snapshot() {
+        return current;
+    }
 
     // Method to validate a product
     public void validateProduct(String name, int rating) {
+        validateName(name);
+        validateRating(rating);
+    }
+
+    // Method to validate a product name. Its length is checked here rather than by the store, which is already
+    // changing by the time it writes the name. A char takes at most three bytes of UTF-8, so only long names are encoded.
+    public void validateName(String name) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Product name cannot be empty.");
         }
+        if (name.length() > MappedProductStore.MAX_NAME_LENGTH / 3
+                && name.getBytes(StandardCharsets.UTF_8).length > MappedProductStore.MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Product name cannot be longer than " + MappedProductStore.MAX_NAME_LENGTH + " bytes.");
+        }
+    }
+
+    // Method to validate a product rating
+    public void validateRating(int rating) {
         if (rating < 1 || rating > 10) {
             throw new IllegalArgumentException("Product rating must be between 1 and 10.");
         }
     }
 
+    // Method to validate a product category
+    public void validateCategory(Category category) {
+        if (category == null) {
+            throw new IllegalArgumentException("Product category cannot be null.");
+        }
+    }
+
+    // Method to validate a product creation date
+    public void validateCreatedDate(Instant createdDate) {
+        if (createdDate != null && createdDate.isAfter(clock.instant())) {
+            throw new IllegalArgumentException("Product creation date cannot be in the future.");
+        }
+    }
+
+    private static long millisOf(Instant date) {
+        try {
+            return date.toEpochMilli();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Product creation date is out of range.");
+        }
+    }
+
     // Method to validate product ID
     public void validateProductId(int id) {
         if (id <= 0) {
@@ -27,129 +105,232 @@ public class Warehouse {
         }
     }
 
+    // Method to validate a page size
+    public void validateLimit(int limit) {
+        ProductStore.validateLimit(limit);
+    }
+
     // Method to check if product ID already exists
     public void checkIfProductIdExists(int id) {
-        if (products.stream().anyMatch(p -> p.getId() == id)) {
+        checkIfProductIdExists(current, id);
+    }
+
+    private static void checkIfProductIdExists(ProductStore snapshot, int id) {
+        if (snapshot.containsProductId(id)) {
             throw new IllegalArgumentException("Product ID already exists.");
         }
     }
 
     // Method to add a product
-    public void addProduct(int id, String name, Category category, int rating, Date createdDate) {
+    public void addProduct(int id, String name, Category category, int rating, Instant createdDate) {
+        current = add(current, id, name, category, rating, createdDate);
+    }
+
+    private ProductStore add(ProductStore snapshot, int id, String name, Category category, int rating, Instant createdDate) {
         validateProductId(id);
         validateProduct(name, rating);
-        checkIfProductIdExists(id);
-        Product product = new Product(id, name, category, rating, createdDate);
-        products.add(product);
+        validateCategory(category);
+        checkIfProductIdExists(snapshot, id);
+        // Stores keep dates in epoch millis, so every store type holds the same instant
+        Instant created = createdDate == null ? null : Instant.ofEpochMilli(millisOf(createdDate));
+        return snapshot.replace(null, new ProductRecord(id, name, category, rating, created, created));
+    }
+
+    // Method to add many products, skipping and reporting the ones that are invalid or whose ID already exists.
+    // An immutable store publishes the batch as one snapshot, so readers see all of it or none of it.
+    public List<ProductImportError> addProducts(List<ProductRecord> productRecords) {
+        List<ProductImportError> errors = new ArrayList<>();
+        ProductStore snapshot = current;
+        for (int i = 0; i < productRecords.size(); i++) {
+            ProductRecord productRecord = productRecords.get(i);
+            try {
+                validateCreatedDate(productRecord.createdDate());
+                snapshot = add(snapshot, productRecord.id(), productRecord.name(), productRecord.category(), productRecord.rating(), productRecord.createdDate());
+            } catch (IllegalArgumentException e) {
+                errors.add(new ProductImportError(i, productRecord.id(), e.getMessage()));
+            }
+        }
+        current = snapshot;
+        return errors;
+    }
+
+    // Method to put back a product state recovered from persistence, keeping its dates as they were
+    public void restoreProduct(ProductRecord productRecord) {
+        current = current.replace(current.getProductById(productRecord.id()).orElse(null), productRecord);
+    }
+
+    // Method to take out a product whose removal was recovered from persistence
+    public void restoreRemoval(int id) {
+        current.getProductById(id).ifPresent(previous -> current = current.replace(previous, null));
     }
 
-    // Method to get all products
+    // Method to get all products, ordered by ID
     public List<ProductRecord> getAllProducts() {
-        List<ProductRecord> productRecords = products.stream()
-                .map(p -> new ProductRecord(p.getId(), p.getName(), p.getCategory(), p.getRating(), p.getCreatedDate(), p.getModifiedDate()))
-                .collect(Collectors.toList());
-        return Collections.unmodifiableList(productRecords);
+        return current.getAllProducts();
+    }
+
+    // Method to get at most limit products with an ID greater than afterId, ordered by ID
+    public List<ProductRecord> getProductsAfterId(int afterId, int limit) {
+        return current.getProductsAfterId(afterId, limit);
     }
 
     // Method to get a product by ID
     public Optional<ProductRecord> getProductById(int id) {
-        return products.stream()
-                .filter(p -> p.getId() == id)
-                .map(p -> new ProductRecord(p.getId(), p.getName(), p.getCategory(), p.getRating(), p.getCreatedDate(), p.getModifiedDate()))
-                .findFirst();
+        return current.getProductById(id);
     }
 
     // Method to update a product
     public boolean updateProduct(int id, String newName, Category newCategory, int newRating) {
         validateProductId(id);
         validateProduct(newName, newRating);
-        Optional<Product> productOpt = products.stream()
-                .filter(p -> p.getId() == id)
-                .findFirst();
-
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            product.setName(newName);
-            product.setCategory(newCategory);
-            product.setRating(newRating);
+        validateCategory(newCategory);
+        ProductStore snapshot = current;
+        Optional<ProductRecord> product = snapshot.getProductById(id);
+
+        if (product.isPresent()) {
+            ProductRecord previous = product.get();
+            current = snapshot.replace(previous, new ProductRecord(id, newName, newCategory, newRating, previous.createdDate(), now()));
             return true;
         } else {
             return false;
         }
     }
 
+    // Method to change only the given fields of a product, null leaving a field as it is. Only the given fields are
+    // validated, and a patch that changes nothing leaves the product and its modified date alone.
+    // Returns the product as it is afterwards, or empty when it does not exist.
+    public Optional<ProductRecord> patchProduct(int id, String newName, Category newCategory, Integer newRating) {
+        if (newName != null) {
+            validateName(newName);
+        }
+        if (newRating != null) {
+            validateRating(newRating);
+        }
+        ProductStore snapshot = current;
+        ProductRecord previous = snapshot.getProductById(id).orElse(null);
+        if (previous == null) {
+            return Optional.empty();
+        }
+        String name = newName != null ? newName : previous.name();
+        Category category = newCategory != null ? newCategory : previous.category();
+        int rating = newRating != null ? newRating : previous.rating();
+        if (name.equals(previous.name()) && category == previous.category() && rating == previous.rating()) {
+            return Optional.of(previous);
+        }
+        ProductRecord product = new ProductRecord(id, name, category, rating, previous.createdDate(), now());
+        current = snapshot.replace(previous, product);
+        return Optional.of(product);
+    }
+
+    // Method to remove a product, returning its last state, or empty when it does not exist
+    public Optional<ProductRecord> removeProduct(int id) {
+        ProductStore snapshot = current;
+        Optional<ProductRecord> previous = snapshot.getProductById(id);
+        previous.ifPresent(product -> current = snapshot.replace(product, null));
+        return previous;
+    }
+
+    // The modified date of an update, in whole millis like the stored dates
+    private Instant now() {
+        return Instant.ofEpochMilli(clock.millis());
+    }
+
+    // Starts a batch of changes made on a working store and published together, so readers of an immutable store see
+    // all of them or none. Like every change, a batch must be made and published by one writer at a time.
+    Batch batch() {
+        return new Batch(current);
+    }
+
+    final class Batch {
+        private ProductStore snapshot;
+
+        private Batch(ProductStore snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        void addProduct(int id, String name, Category category, int rating, Instant createdDate) {
+            snapshot = add(snapshot, id, name, category, rating, createdDate);
+        }
+
+        boolean updateProduct(int id, String newName, Category newCategory, int newRating) {
+            validateProductId(id);
+            validateProduct(newName, newRating);
+            validateCategory(newCategory);
+            ProductRecord previous = snapshot.getProductById(id).orElse(null);
+            if (previous == null) {
+                return false;
+            }
+            snapshot = snapshot.replace(previous, new ProductRecord(id, newName, newCategory, newRating, previous.createdDate(), now()));
+            return true;
+        }
+
+        // Sees the changes made so far in the batch
+        Optional<ProductRecord> getProductById(int id) {
+            return snapshot.getProductById(id);
+        }
+
+        void publish() {
+            current = snapshot;
+        }
+    }
+
+    // Method to search products with a query, planned on the store's indexes
+    public ProductSearch.Result search(ProductQuery query) {
+        return ProductSearch.run(current, query);
+    }
+
+    // Method to get the most common words of product names starting with the last word of the prefix
+    public List<NameSuggestion> suggest(String prefix, int limit) {
+        return current.nameIndex().suggest(prefix, limit);
+    }
+
     // Method to get all products by category sorted by product name
     public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
-        List<ProductRecord> productRecords = products.stream()
-                .filter(p -> p.getCategory().equals(category))
-                .sorted(Comparator.comparing(Product::getName))
-                .map(p -> new ProductRecord(p.getId(), p.getName(), p.getCategory(), p.getRating(), p.getCreatedDate(), p.getModifiedDate()))
-                .collect(Collectors.toList());
-        return Collections.unmodifiableList(productRecords);
+        return current.getAllProductsByCategorySortedByProductName(category);
+    }
+
+    // Method to get at most limit products in a category sorted by name, continuing after the product with ID afterId (0 starts from the beginning)
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfterId(Category category, int afterId, int limit) {
+        return current.getProductsByCategorySortedByProductNameAfterId(category, afterId, limit);
+    }
+
+    // Method to get at most limit products in a category sorted by name, continuing after a name and ID
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfter(Category category, String afterName, int afterId, int limit) {
+        return current.getProductsByCategorySortedByProductNameAfter(category, afterName, afterId, limit);
     }
 
     // Method to get all products created after a specific date
-    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Date date) {
-        List<ProductRecord> productRecords = products.stream()
-                .filter(p -> p.getCreatedDate().after(date))
-                .map(p -> new ProductRecord(p.getId(), p.getName(), p.getCategory(), p.getRating(), p.getCreatedDate(), p.getModifiedDate()))
-                .collect(Collectors.toList());
-        return Collections.unmodifiableList(productRecords);
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date) {
+        return current.getAllProductsCreatedAfterASpecificDate(date);
     }
 
     // Method to get all products that have been modified since creation
     public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
-        List<ProductRecord> productRecords = products.stream()
-                .filter(p -> p.getModifiedDate().after(p.getCreatedDate()))
-                .map(p -> new ProductRecord(p.getId(), p.getName(), p.getCategory(), p.getRating(), p.getCreatedDate(), p.getModifiedDate()))
-                .collect(Collectors.toList());
-        return Collections.unmodifiableList(productRecords);
+        return current.getAllProductsThatHasBeenModifiedSinceCreation();
     }
 
     // Method to get all Categories that has at least one product
     public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
-        Set<Category> categories = products.stream()
-                .map(Product::getCategory)
-                .collect(Collectors.toSet());
-        return Collections.unmodifiableSet(categories);
+        return current.getAllCategoriesThatHasAtLeastOneProduct();
     }
 
     // Method to get how many products there are in given category
     public long getNumberOfProductsInCategory(Category category) {
-        return products.stream()
-                .filter(p -> p.getCategory().equals(category))
-                .count();
+        return current.getNumberOfProductsInCategory(category);
     }
 
     // Method to get a Map that contains all the letters that product name start with as key and the number of products that start with that letter as value
     public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
-        Map<Character, Long> productsStartingWithEachLetter = products.stream()
-                .collect(Collectors.groupingBy(p -> p.getName().charAt(0), Collectors.counting()));
-        return Collections.unmodifiableMap(productsStartingWithEachLetter);
+        return current.getNumberOfProductsStartingWithEachLetter();
     }
 
     // Method to get all products with max rating, created this month and sorted by date with the latest first
     public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
-        Calendar now = Calendar.getInstance();
-        now.set(Calendar.DAY_OF_MONTH, 1);
-        now.set(Calendar.HOUR_OF_DAY, 0);
-        now.set(Calendar.MINUTE, 0);
-        now.set(Calendar.SECOND, 0);
-        now.set(Calendar.MILLISECOND, 0);
-        Date startOfMonth = now.getTime();
-
-        now.set(Calendar.DAY_OF_MONTH, now.getActualMaximum(Calendar.DAY_OF_MONTH));
-        now.set(Calendar.HOUR_OF_DAY, 23);
-        now.set(Calendar.MINUTE, 59);
-        now.set(Calendar.SECOND, 59);
-        now.set(Calendar.MILLISECOND, 999);
-        Date endOfMonth = now.getTime();
-
-        List<ProductRecord> productRecords = products.stream()
-                .filter(p -> p.getRating() == 10 && p.getCreatedDate().after(startOfMonth) && p.getCreatedDate().before(endOfMonth))
-                .sorted(Comparator.comparing(Product::getCreatedDate).reversed())
-                .map(p -> new ProductRecord(p.getId(), p.getName(), p.getCategory(), p.getRating(), p.getCreatedDate(), p.getModifiedDate()))
-                .collect(Collectors.toList());
-        return Collections.unmodifiableList(productRecords);
-    }
-}
\ No newline at end of file
+        return current.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate();
+    }
+
+    // Method to get all products with max rating created in a month of the clock's time zone, latest first
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month) {
+        return current.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(month);
+    }
+}
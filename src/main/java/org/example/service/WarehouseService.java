@@ -1,143 +1,721 @@
 package org.example.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.example.entities.Category;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductChange;
+import org.example.entities.ProductImportError;
 import org.example.entities.ProductRecord;
-import java.util.Date;
+import org.example.exceptionmapper.ProductVersionConflictException;
+import org.example.metrics.LockMetrics;
+import org.example.metrics.TimedLock;
+import org.example.persistence.WarehousePersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Function;
 
 
 @ApplicationScoped
-public class WarehouseService {
-    private final Warehouse warehouse = new Warehouse();
-    private final Lock lock = new ReentrantLock();
+public class WarehouseService implements ProductShard {
+    private static final Logger logger = LoggerFactory.getLogger(WarehouseService.class);
+    public static final String ZONE_PROPERTY = "warehouse.zone";
+    private static final int WRITE_QUEUE_CAPACITY = 4096;
+    private static final int MAX_WRITE_BATCH = 1024;
+    private final Warehouse warehouse;
+    private final TimedLock readLock;
+    private final boolean locksReads;
+    private final TimedLock writeLock;
+    private final LockMetrics lockMetrics = new LockMetrics();
+    // Null while the catalog is kept in memory only
+    private WarehousePersistence persistence;
+    private ExecutorService snapshotExecutor;
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    // Bumped under the write lock after every change, so a reader that saw a version reads data at least that new
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLongArray categoryVersions = new AtomicLongArray(Category.values().length);
+    private final ProductChangeJournal changeJournal = new ProductChangeJournal();
+    // The version of a product is the journal sequence of its last change, published after the change like version.
+    // Products recovered at startup and not changed since share baseVersion, the last sequence recovered, so a
+    // recovered catalog costs no entries here; so do IDs that never had a product. With a data directory a version is
+    // never reused for another state, as changes before a restart are at most baseVersion and changes after it above.
+    // A node keeping its catalog in memory only starts over from 0 with an empty catalog and a new journal ID.
+    private volatile PersistentIntMap<Long> productVersions = PersistentIntMap.empty();
+    private volatile long baseVersion;
+    // Null in LOCKED write mode
+    private final CommandQueue<WriteCommand> writeQueue;
+    // Null unless this node is a replica following a primary
+    private volatile ReplicaFollower replica;
 
-    public WarehouseService() {}
+    // A product change queued for the writer thread, completed with whether it changed a product
+    private record WriteCommand(int id, String name, Category category, int rating, Instant createdDate, boolean update,
+                                CompletableFuture<Boolean> result) {
+    }
+
+    public WarehouseService() {
+        this(LockMode.fromSystemProperty());
+    }
+
+    public WarehouseService(LockMode lockMode) {
+        this(lockMode, StoreType.fromSystemProperty());
+    }
+
+    public WarehouseService(LockMode lockMode, StoreType storeType) {
+        this(lockMode, storeType, WriteMode.fromSystemProperty());
+    }
+
+    public WarehouseService(LockMode lockMode, StoreType storeType, WriteMode writeMode) {
+        this(lockMode, storeType, writeMode, clockFromSystemProperty());
+    }
+
+    // The clock stamps modified dates, rejects creation dates in the future and decides what "this month" is
+    public WarehouseService(LockMode lockMode, StoreType storeType, WriteMode writeMode, Clock clock) {
+        this.warehouse = new Warehouse(storeType, clock);
+        ReadWriteLock lock = lockMode.createLock();
+        this.readLock = lockMetrics.timeReads(lock.readLock());
+        this.locksReads = lockMode.locksReads();
+        this.writeLock = lockMetrics.timeWrites(lock.writeLock());
+        this.writeQueue = writeMode == WriteMode.QUEUED
+                ? new CommandQueue<>("warehouse-writer", WRITE_QUEUE_CAPACITY, MAX_WRITE_BATCH, this::applyBatch)
+                : null;
+    }
 
-    public void addProduct(int id, String name, Category category, int rating, Date createdDate) {
-        lock.lock();
+    // Recovers the catalog from the data directory and keeps it durable there
+    public WarehouseService(LockMode lockMode, Path dataDirectory) {
+        this(lockMode);
+        openPersistence(dataDirectory);
+    }
+
+    // Persistence is opened here rather than in the constructor so the CDI client proxy never opens the files
+    @PostConstruct
+    void init() {
+        String dataDirectory = System.getProperty(WarehousePersistence.DATA_DIRECTORY_PROPERTY);
+        String primary = System.getProperty(ReplicaFollower.PRIMARY_PROPERTY);
+        if (dataDirectory != null && primary != null) {
+            throw new IllegalStateException("A replica keeps its catalog in memory only, set either -D"
+                    + WarehousePersistence.DATA_DIRECTORY_PROPERTY + " or -D" + ReplicaFollower.PRIMARY_PROPERTY + ".");
+        }
+        if (dataDirectory != null) {
+            openPersistence(Path.of(dataDirectory));
+        }
+        if (primary != null) {
+            followPrimary(URI.create(primary));
+        }
+    }
+
+    // Makes this node a replica of the primary at the base URI of its REST API, loading its catalog in the background
+    public void followPrimary(URI primary) {
+        followPrimary(primary, ReplicaFollower.POLL_MILLIS);
+    }
+
+    synchronized void followPrimary(URI primary, long pollMillis) {
+        if (persistence != null) {
+            throw new IllegalStateException("A replica keeps its catalog in memory only.");
+        }
+        if (replica != null) {
+            replica.close();
+        }
+        replica = ReplicaFollower.start(primary, this, pollMillis);
+    }
+
+    private void openPersistence(Path dataDirectory) {
+        long acquiredAt = writeLock.lock();
         try {
-            warehouse.addProduct(id, name, category, rating, createdDate);
-            Optional<ProductRecord> productRecord = warehouse.getProductById(id);
-            if (productRecord.isPresent()) {
-                ProductRecord record = productRecord.get();
+            persistence = WarehousePersistence.open(dataDirectory, warehouse::restoreProduct, warehouse::restoreRemoval);
+            changeJournal.startAfter(persistence.lastSequence());
+            baseVersion = persistence.lastSequence();
+            snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "warehouse-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover warehouse from " + dataDirectory, e);
+        } finally {
+            writeLock.unlock(acquiredAt);
+        }
+    }
+
+    // The system clock in -Dwarehouse.zone, or in the JVM's default zone when not set
+    static Clock clockFromSystemProperty() {
+        String zone = System.getProperty(ZONE_PROPERTY);
+        return zone == null ? Clock.systemDefaultZone() : Clock.system(ZoneId.of(zone));
+    }
+
+    // The follower keeping this replica in step with its primary, null on a primary
+    public ReplicaFollower getReplica() {
+        return replica;
+    }
+
+    public LockMetrics getLockMetrics() {
+        return lockMetrics;
+    }
+
+    // Every added, updated or removed product in the order the changes were applied
+    public ProductChangeJournal getChangeJournal() {
+        return changeJournal;
+    }
+
+    // Changes whenever any product is added or updated
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Changes whenever a product in the category is added, updated, or moved in or out of it
+    public long getCategoryVersion(Category category) {
+        return categoryVersions.get(category.ordinal());
+    }
+
+    // Changes whenever the product is added, updated or removed; stays the same across changes to other products
+    public long getProductVersion(int id) {
+        Long productVersion = productVersions.get(id);
+        return productVersion != null ? productVersion : baseVersion;
+    }
+
+    // The versions after a change of a product, recorded last in the journal; must be called holding the write lock
+    private PersistentIntMap<Long> stampVersion(PersistentIntMap<Long> versions, int id) {
+        return stampVersion(versions, id, changeJournal.lastSequence());
+    }
+
+    // The versions after a change of a product that will be recorded in the journal under the sequence
+    private PersistentIntMap<Long> stampVersion(PersistentIntMap<Long> versions, int id, long sequence) {
+        return versions.put(id, sequence);
+    }
+
+    private void bumpVersion(Category category) {
+        if (category != null) {
+            categoryVersions.incrementAndGet(category.ordinal());
+        }
+        version.incrementAndGet();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (replica != null) {
+            replica.close();
+        }
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
+        changeJournal.close();
+        if (persistence != null) {
+            snapshotExecutor.shutdown();
+            try {
+                persistence.close();
+            } catch (IOException e) {
+                logger.error("Failed to close warehouse persistence", e);
             }
+        }
+        long acquiredAt = writeLock.lock();
+        try {
+            warehouse.close();
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
     }
 
-    public List<ProductRecord> getAllProducts() {
-        lock.lock();
+    public void addProduct(int id, String name, Category category, int rating, Instant createdDate) {
+        if (writeQueue != null) {
+            join(addProductAsync(id, name, category, rating, createdDate));
+            return;
+        }
+        long sequence;
+        long acquiredAt = writeLock.lock();
         try {
-            List<ProductRecord> products = warehouse.getAllProducts();
-            return products;
+            warehouse.addProduct(id, name, category, rating, createdDate);
+            bumpVersion(category);
+            sequence = record(id);
+            productVersions = stampVersion(productVersions, id);
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
+        awaitDurable(sequence);
     }
 
-    public Optional<ProductRecord> getProductById(int id) {
-        lock.lock();
+    // Adds a batch of products under a single write lock acquisition and a single log fsync,
+    // returning the products that were rejected with their position in the batch
+    public List<ProductImportError> addProducts(List<ProductRecord> products) {
+        long sequence = 0;
+        List<ProductImportError> errors;
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.getProductById(id);
+            errors = warehouse.addProducts(products);
+            int nextError = 0;
+            for (int i = 0; i < products.size(); i++) {
+                if (nextError < errors.size() && errors.get(nextError).index() == i) {
+                    nextError++;
+                } else {
+                    bumpVersion(products.get(i).category());
+                    sequence = record(products.get(i).id());
+                    productVersions = stampVersion(productVersions, products.get(i).id());
+                }
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
+        awaitDurable(sequence);
+        return errors;
+    }
+
+    public List<ProductRecord> getAllProducts() {
+        return read(snapshot -> snapshot.getAllProducts());
+    }
+
+    public List<ProductRecord> getProductsAfterId(int afterId, int limit) {
+        return read(snapshot -> snapshot.getProductsAfterId(afterId, limit));
+    }
+
+    public Optional<ProductRecord> getProductById(int id) {
+        return read(snapshot -> snapshot.getProductById(id));
     }
 
     public boolean updateProduct(int id, String newName, Category newCategory, int newRating) {
-        lock.lock();
+        if (writeQueue != null) {
+            return join(updateProductAsync(id, newName, newCategory, newRating));
+        }
+        long sequence = 0;
+        boolean updated;
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.updateProduct(id, newName, newCategory, newRating);
+            Category oldCategory = warehouse.getProductById(id).map(ProductRecord::category).orElse(null);
+            updated = warehouse.updateProduct(id, newName, newCategory, newRating);
+            if (updated) {
+                bumpVersion(oldCategory);
+                bumpVersion(newCategory);
+                sequence = record(id);
+                productVersions = stampVersion(productVersions, id);
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
+        awaitDurable(sequence);
+        return updated;
     }
 
-    public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
-        lock.lock();
+    // Changes only the given fields of a product, null leaving a field as it is, and returns whether the product
+    // exists. With ifMatch the change is only made when the product's version is one of them, otherwise a
+    // ProductVersionConflictException is thrown. Checked and applied under the write lock in every write mode.
+    public boolean patchProduct(int id, String newName, Category newCategory, Integer newRating, Set<Long> ifMatch) {
+        long sequence = 0;
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.getAllProductsByCategorySortedByProductName(category);
+            ProductRecord previous = warehouse.getProductById(id).orElse(null);
+            if (previous == null) {
+                return false;
+            }
+            checkVersion(id, ifMatch);
+            ProductRecord product = warehouse.patchProduct(id, newName, newCategory, newRating).orElseThrow();
+            if (!product.equals(previous)) {
+                bumpVersion(previous.category());
+                bumpVersion(product.category());
+                sequence = record(product);
+                productVersions = stampVersion(productVersions, id);
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
+        awaitDurable(sequence);
+        return true;
     }
 
-    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Date date) {
-        lock.lock();
+    // Removes a product and returns whether it existed, with ifMatch checked like patchProduct
+    public boolean deleteProduct(int id, Set<Long> ifMatch) {
+        long sequence;
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.getAllProductsCreatedAfterASpecificDate(date);
+            if (!warehouse.getProductById(id).isPresent()) {
+                return false;
+            }
+            checkVersion(id, ifMatch);
+            ProductRecord removed = warehouse.removeProduct(id).orElseThrow();
+            bumpVersion(removed.category());
+            changeJournal.appendRemoval(removed);
+            sequence = persistence == null ? 0 : persistence.appendRemoval(id);
+            productVersions = stampVersion(productVersions, id);
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
+        awaitDurable(sequence);
+        return true;
     }
 
-    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
-        lock.lock();
+    private void checkVersion(int id, Set<Long> ifMatch) {
+        long current = getProductVersion(id);
+        if (ifMatch != null && !ifMatch.contains(current)) {
+            throw new ProductVersionConflictException("Product with ID " + id + " has changed, it is at version " + current, current);
+        }
+    }
+
+    // Completes once the product is added and durable, or exceptionally with the IllegalArgumentException rejecting it.
+    // Queued in QUEUED write mode, otherwise added before returning.
+    public CompletableFuture<Void> addProductAsync(int id, String name, Category category, int rating, Instant createdDate) {
+        if (writeQueue == null) {
+            try {
+                addProduct(id, name, category, rating, createdDate);
+                return CompletableFuture.completedFuture(null);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        writeQueue.submit(new WriteCommand(id, name, category, rating, createdDate, false, result));
+        return result.thenApply(added -> null);
+    }
+
+    // Completes with whether the product existed once it is updated and durable
+    public CompletableFuture<Boolean> updateProductAsync(int id, String newName, Category newCategory, int newRating) {
+        if (writeQueue == null) {
+            try {
+                return CompletableFuture.completedFuture(updateProduct(id, newName, newCategory, newRating));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        writeQueue.submit(new WriteCommand(id, newName, newCategory, newRating, null, true, result));
+        return result;
+    }
+
+    // Runs on the writer thread: applies the queued changes under one write lock acquisition and publishes them as one
+    // snapshot, then waits once for the log to cover all of them before completing their callers
+    private void applyBatch(List<WriteCommand> commands) {
+        Object[] outcomes = new Object[commands.size()];
+        Category[] previousCategories = new Category[commands.size()];
+        List<ProductRecord> changes = new ArrayList<>(commands.size());
+        long sequence = 0;
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.getAllProductsThatHasBeenModifiedSinceCreation();
+            PersistentIntMap<Long> versions = productVersions;
+            Warehouse.Batch batch = warehouse.batch();
+            for (int i = 0; i < commands.size(); i++) {
+                WriteCommand command = commands.get(i);
+                try {
+                    boolean changed;
+                    if (command.update()) {
+                        previousCategories[i] = batch.getProductById(command.id()).map(ProductRecord::category).orElse(null);
+                        changed = batch.updateProduct(command.id(), command.name(), command.category(), command.rating());
+                    } else {
+                        batch.addProduct(command.id(), command.name(), command.category(), command.rating(), command.createdDate());
+                        changed = true;
+                    }
+                    if (changed) {
+                        ProductRecord product = batch.getProductById(command.id()).orElseThrow();
+                        changes.add(product);
+                        sequence = log(product);
+                        versions = stampVersion(versions, command.id(), changeJournal.lastSequence() + changes.size());
+                    }
+                    outcomes[i] = changed;
+                } catch (RuntimeException e) {
+                    outcomes[i] = e;
+                }
+            }
+            batch.publish();
+            // Only after publishing, so a reader that saw a version reads data at least that new
+            productVersions = versions;
+            for (int i = 0; i < commands.size(); i++) {
+                if (Boolean.TRUE.equals(outcomes[i])) {
+                    if (commands.get(i).update()) {
+                        bumpVersion(previousCategories[i]);
+                    }
+                    bumpVersion(commands.get(i).category());
+                }
+            }
+            // Last, so a reader woken by the journal finds the changes and their versions in place
+            for (ProductRecord change : changes) {
+                changeJournal.append(change);
+            }
+        } catch (RuntimeException | Error e) {
+            for (WriteCommand command : commands) {
+                command.result().completeExceptionally(e);
+            }
+            throw e;
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
+        }
+        try {
+            awaitDurable(sequence);
+        } catch (RuntimeException e) {
+            for (WriteCommand command : commands) {
+                command.result().completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            if (outcomes[i] instanceof RuntimeException e) {
+                commands.get(i).result().completeExceptionally(e);
+            } else {
+                commands.get(i).result().complete((Boolean) outcomes[i]);
+            }
         }
     }
 
-    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
-        lock.lock();
+    // Waits for a queued change, rethrowing what rejected it as if the change had been made on this thread
+    private static <T> T join(CompletableFuture<T> result) {
         try {
-            return warehouse.getAllCategoriesThatHasAtLeastOneProduct();
-        } finally {
-            lock.unlock();
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
     }
 
+    public ProductSearch.Result search(ProductQuery query) {
+        return read(snapshot -> ProductSearch.run(snapshot, query));
+    }
+
+    public List<NameSuggestion> suggest(String prefix, int limit) {
+        return read(snapshot -> snapshot.nameIndex().suggest(prefix, limit));
+    }
+
+    public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
+        return read(snapshot -> snapshot.getAllProductsByCategorySortedByProductName(category));
+    }
+
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfterId(Category category, int afterId, int limit) {
+        return read(snapshot -> snapshot.getProductsByCategorySortedByProductNameAfterId(category, afterId, limit));
+    }
+
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfter(Category category, String afterName, int afterId, int limit) {
+        return read(snapshot -> snapshot.getProductsByCategorySortedByProductNameAfter(category, afterName, afterId, limit));
+    }
+
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date) {
+        return read(snapshot -> snapshot.getAllProductsCreatedAfterASpecificDate(date));
+    }
+
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        return read(snapshot -> snapshot.getAllProductsThatHasBeenModifiedSinceCreation());
+    }
+
+    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
+        return read(snapshot -> snapshot.getAllCategoriesThatHasAtLeastOneProduct());
+    }
+
     public long getNumberOfProductsInCategory(Category category) {
-        lock.lock();
+        return read(snapshot -> snapshot.getNumberOfProductsInCategory(category));
+    }
+
+    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
+        return read(snapshot -> snapshot.getNumberOfProductsStartingWithEachLetter());
+    }
+
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
+        return read(snapshot -> snapshot.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate());
+    }
+
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month) {
+        return read(snapshot -> snapshot.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(month));
+    }
+
+    public void validateProductId(int id) {
+        warehouse.validateProductId(id);
+    }
+
+    public void checkIfProductIdExists(int id) {
+        read(store -> {
+            warehouse.checkIfProductIdExists(id);
+            return null;
+        });
+    }
+
+    // Waits until the catalog includes the change with the sequence, and tells whether it does; lets a client read
+    // its own writes from a replica
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        return changeJournal.await(sequence - 1, timeoutMillis);
+    }
+
+    // The catalog for a replica to start from, captured with its sequence and versions while writers are held off
+    public ReplicationSnapshot replicationSnapshot() {
+        long sequence;
+        long base;
+        PersistentIntMap<Long> versions;
+        ProductStore catalog;
+        List<ProductRecord> products = null;
+        long acquiredAt = readLock.lock();
         try {
-            return warehouse.getNumberOfProductsInCategory(category);
+            sequence = changeJournal.lastSequence();
+            base = baseVersion;
+            versions = productVersions;
+            catalog = warehouse.snapshot();
+            if (!catalog.isImmutable()) {
+                products = catalog.getAllProducts();
+            }
         } finally {
-            lock.unlock();
+            readLock.unlock(acquiredAt);
+        }
+        List<ProductRecord> all = products != null ? products : catalog.getAllProducts();
+        List<ProductChange> entries = new ArrayList<>(all.size());
+        for (ProductRecord product : all) {
+            Long version = versions.get(product.id());
+            entries.add(new ProductChange(version != null ? version : base, product));
         }
+        // Both in ID order, so the versions of removed products are those not met among the products
+        int[] next = {0};
+        versions.forEach((id, version) -> {
+            while (next[0] < all.size() && all.get(next[0]).id() < id) {
+                next[0]++;
+            }
+            if (next[0] == all.size() || all.get(next[0]).id() != id) {
+                entries.add(new ProductChange(version, new ProductRecord(id, null, null, 0, null, null), true));
+            }
+        });
+        return new ReplicationSnapshot(sequence, base, entries);
     }
 
-    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
-        lock.lock();
+    // Replaces the catalog of a replica with a snapshot of its primary and numbers the changes from there on
+    void loadReplica(ReplicationSnapshot snapshot) {
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.getNumberOfProductsStartingWithEachLetter();
+            for (ProductRecord product : warehouse.getAllProducts()) {
+                warehouse.restoreRemoval(product.id());
+            }
+            PersistentIntMap<Long> versions = PersistentIntMap.empty();
+            for (ProductChange entry : snapshot.entries()) {
+                if (!entry.removed()) {
+                    warehouse.restoreProduct(entry.product());
+                }
+                if (entry.sequence() != snapshot.baseVersion()) {
+                    versions = versions.put(entry.product().id(), entry.sequence());
+                }
+            }
+            baseVersion = snapshot.baseVersion();
+            productVersions = versions;
+            for (Category category : Category.values()) {
+                bumpVersion(category);
+            }
+            changeJournal.startAfter(snapshot.sequence());
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
     }
 
-    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
-        lock.lock();
+    // Applies changes shipped from the primary as they were made there, dates included, under the primary's sequence
+    // numbers. Changes must follow the last one applied without a gap, otherwise none is applied.
+    void applyReplicated(List<ProductChange> changes) {
+        long acquiredAt = writeLock.lock();
         try {
-            return warehouse.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate();
+            long expected = changeJournal.lastSequence();
+            for (ProductChange change : changes) {
+                if (change.sequence() != ++expected) {
+                    throw new IllegalStateException("Replicated change " + change.sequence() + " does not follow change " + (expected - 1) + ".");
+                }
+            }
+            PersistentIntMap<Long> versions = productVersions;
+            for (ProductChange change : changes) {
+                ProductRecord product = change.product();
+                ProductRecord previous = warehouse.getProductById(product.id()).orElse(null);
+                if (change.removed()) {
+                    warehouse.restoreRemoval(product.id());
+                } else {
+                    warehouse.restoreProduct(product);
+                }
+                bumpVersion(previous != null ? previous.category() : null);
+                bumpVersion(product.category());
+                // Stamped as the primary stamps them, so a product has the same entity tag on every node
+                versions = stampVersion(versions, product.id(), change.sequence());
+            }
+            productVersions = versions;
+            // Last, so a reader woken by the journal finds the changes and their versions in place
+            for (ProductChange change : changes) {
+                if (change.removed()) {
+                    changeJournal.appendRemoval(change.product());
+                } else {
+                    changeJournal.append(change.product());
+                }
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock(acquiredAt);
         }
     }
 
-    public void validateProductId(int id) {
-        lock.lock();
+    // Runs queries on one consistent state of the catalog, for callers that need several queries to agree.
+    // An immutable store is read without the lock when the lock mode allows it, any other under the read lock.
+    public <T> T read(Function<ProductStore, T> queries) {
+        ProductStore store = warehouse.snapshot();
+        if (!locksReads && store.isImmutable()) {
+            return queries.apply(store);
+        }
+        long acquiredAt = readLock.lock();
         try {
-            warehouse.validateProductId(id);
+            return queries.apply(warehouse.snapshot());
         } finally {
-            lock.unlock();
+            readLock.unlock(acquiredAt);
         }
     }
 
-    public void checkIfProductIdExists(int id) {
-        lock.lock();
+    // Appends the product's new state to the change journal and the write-ahead log, must be called holding the write
+    // lock; returns the log sequence to wait for
+    private long record(int id) {
+        return record(warehouse.getProductById(id).orElseThrow());
+    }
+
+    private long record(ProductRecord product) {
+        changeJournal.append(product);
+        return log(product);
+    }
+
+    // Appends the product's new state to the write-ahead log alone, for callers that journal it once it is published
+    private long log(ProductRecord product) {
+        return persistence == null ? 0 : persistence.append(product);
+    }
+
+    // Waits for the log to be fsynced outside the lock, so concurrent writers share a group commit
+    private void awaitDurable(long sequence) {
+        if (persistence == null || sequence == 0) {
+            return;
+        }
+        persistence.awaitDurable(sequence);
+        if (persistence.isSnapshotDue() && snapshotRunning.compareAndSet(false, true)) {
+            snapshotExecutor.execute(this::persistSnapshot);
+        }
+    }
+
+    // Captures the catalog and the log position together while writers are held off, then writes the snapshot without
+    // holding them off; only a mutable store has to be copied before letting them go
+    private void persistSnapshot() {
         try {
-            warehouse.checkIfProductIdExists(id);
+            long sequence;
+            ProductStore catalog;
+            List<ProductRecord> products = null;
+            long acquiredAt = readLock.lock();
+            try {
+                sequence = persistence.beginSnapshot();
+                catalog = warehouse.snapshot();
+                if (!catalog.isImmutable()) {
+                    products = catalog.getAllProducts();
+                }
+            } finally {
+                readLock.unlock(acquiredAt);
+            }
+            persistence.writeSnapshot(sequence, products != null ? products : catalog.getAllProducts());
+        } catch (IOException e) {
+            logger.error("Failed to write warehouse snapshot", e);
         } finally {
-            lock.unlock();
+            snapshotRunning.set(false);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+// An immutable point-in-time view of the catalog. Products are immutable ProductRecord versions held in persistent
+// collections, so a snapshot can be read from any thread without locking, and every query on one snapshot sees the
+// same state. A change produces a new snapshot sharing all untouched structure with the previous one.
+public final class WarehouseSnapshot implements ProductStore {
+    private static final Comparator<ProductRecord> BY_NAME = ProductField.NAME.comparator().thenComparingInt(ProductRecord::id);
+    private static final Comparator<ProductRecord> BY_CREATED_DATE = Comparator.comparing(ProductRecord::createdDate).thenComparingInt(ProductRecord::id);
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final Clock clock;
+    private final PersistentIntMap<ProductRecord> productsById;
+    // Secondary indexes, indexed by category ordinal; the array is copied, never changed, when one of them changes
+    private final PersistentSortedSet<ProductRecord>[] productsByCategory;
+    private final PersistentSortedSet<ProductRecord> productsByCreatedDate;
+    private final PersistentIntMap<Long> productsStartingWithEachLetter;
+    // Materialized view of products with max rating ordered by creation date, any month is a range of it
+    private final PersistentSortedSet<ProductRecord> productsWithMaxRating;
+    private final NameIndex nameIndex;
+
+    @SuppressWarnings("unchecked")
+    static WarehouseSnapshot empty(Clock clock) {
+        PersistentSortedSet<ProductRecord>[] productsByCategory = (PersistentSortedSet<ProductRecord>[]) new PersistentSortedSet<?>[CATEGORIES.length];
+        Arrays.fill(productsByCategory, new PersistentSortedSet<>(BY_NAME));
+        return new WarehouseSnapshot(clock, PersistentIntMap.empty(), productsByCategory, new PersistentSortedSet<>(BY_CREATED_DATE),
+                PersistentIntMap.empty(), new PersistentSortedSet<>(BY_CREATED_DATE), NameIndex.EMPTY);
+    }
+
+    private WarehouseSnapshot(Clock clock, PersistentIntMap<ProductRecord> productsById, PersistentSortedSet<ProductRecord>[] productsByCategory,
+                              PersistentSortedSet<ProductRecord> productsByCreatedDate, PersistentIntMap<Long> productsStartingWithEachLetter,
+                              PersistentSortedSet<ProductRecord> productsWithMaxRating, NameIndex nameIndex) {
+        this.clock = clock;
+        this.productsById = productsById;
+        this.productsByCategory = productsByCategory;
+        this.productsByCreatedDate = productsByCreatedDate;
+        this.productsStartingWithEachLetter = productsStartingWithEachLetter;
+        this.productsWithMaxRating = productsWithMaxRating;
+        this.nameIndex = nameIndex;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return true;
+    }
+
+    // Returns a snapshot where the previous version of a product (null for a new one) is replaced by the new version,
+    // or removed when the new version is null
+    @Override
+    public WarehouseSnapshot replace(ProductRecord previous, ProductRecord product) {
+        PersistentSortedSet<ProductRecord>[] byCategory = productsByCategory.clone();
+        PersistentSortedSet<ProductRecord> byCreatedDate = productsByCreatedDate;
+        PersistentIntMap<Long> letters = productsStartingWithEachLetter;
+        PersistentSortedSet<ProductRecord> withMaxRating = productsWithMaxRating;
+        if (previous != null) {
+            byCategory[previous.category().ordinal()] = byCategory[previous.category().ordinal()].remove(previous);
+            letters = countLetter(letters, previous.name().charAt(0), -1);
+            if (previous.createdDate() != null) {
+                byCreatedDate = byCreatedDate.remove(previous);
+                if (previous.rating() == MAX_RATING) {
+                    withMaxRating = withMaxRating.remove(previous);
+                }
+            }
+        }
+        if (product == null) {
+            return new WarehouseSnapshot(clock, productsById.remove(previous.id()), byCategory, byCreatedDate, letters, withMaxRating,
+                    nameIndex.replace(previous, null));
+        }
+        byCategory[product.category().ordinal()] = byCategory[product.category().ordinal()].add(product);
+        letters = countLetter(letters, product.name().charAt(0), 1);
+        if (product.createdDate() != null) {
+            byCreatedDate = byCreatedDate.add(product);
+            if (product.rating() == MAX_RATING) {
+                withMaxRating = withMaxRating.add(product);
+            }
+        }
+        return new WarehouseSnapshot(clock, productsById.put(product.id(), product), byCategory, byCreatedDate, letters, withMaxRating,
+                nameIndex.replace(previous, product));
+    }
+
+    private static PersistentIntMap<Long> countLetter(PersistentIntMap<Long> letters, char letter, int change) {
+        Long count = letters.get(letter);
+        long newCount = (count == null ? 0 : count) + change;
+        return newCount == 0 ? letters.remove(letter) : letters.put(letter, newCount);
+    }
+
+    // Method to check if a product ID exists
+    @Override
+    public boolean containsProductId(int id) {
+        return productsById.containsKey(id);
+    }
+
+    // Method to get the number of products
+    @Override
+    public int size() {
+        return productsById.size();
+    }
+
+    // Method to get all products, ordered by ID
+    @Override
+    public List<ProductRecord> getAllProducts() {
+        List<ProductRecord> products = new ArrayList<>(productsById.size());
+        productsById.values().forEachRemaining(products::add);
+        return Collections.unmodifiableList(products);
+    }
+
+    // Method to get at most limit products with an ID greater than afterId, ordered by ID
+    @Override
+    public List<ProductRecord> getProductsAfterId(int afterId, int limit) {
+        ProductStore.validateLimit(limit);
+        return Collections.unmodifiableList(take(productsById.valuesAfter(afterId), limit));
+    }
+
+    // Method to get a product by ID
+    @Override
+    public Optional<ProductRecord> getProductById(int id) {
+        return Optional.ofNullable(productsById.get(id));
+    }
+
+    // Method to get all products by category sorted by product name
+    @Override
+    public List<ProductRecord> getAllProductsByCategorySortedByProductName(Category category) {
+        return Collections.unmodifiableList(take(productsByCategory[category.ordinal()].iterator(), Integer.MAX_VALUE));
+    }
+
+    // Method to get at most limit products in a category sorted by name, continuing after the product with ID afterId (0 starts from the beginning)
+    @Override
+    public List<ProductRecord> getProductsByCategorySortedByProductNameAfterId(Category category, int afterId, int limit) {
+        ProductStore.validateLimit(limit);
+        PersistentSortedSet<ProductRecord> productsInCategory = productsByCategory[category.ordinal()];
+        if (afterId == 0) {
+            return Collections.unmodifiableList(take(productsInCategory.iterator(), limit));
+        }
+        ProductRecord after = productsById.get(afterId);
+        if (after == null) {
+            throw new IllegalArgumentException("Product ID " + afterId + " to continue after does not exist.");
+        }
+        return Collections.unmodifiableList(take(productsInCategory.iteratorFrom(after, false), limit));
+    }
+
+    // Method to get all products created after a specific date, oldest first
+    @Override
+    public List<ProductRecord> getAllProductsCreatedAfterASpecificDate(Instant date) {
+        // Sorts after every real product created at that instant
+        ProductRecord after = new ProductRecord(Integer.MAX_VALUE, "", null, 0, date, null);
+        return Collections.unmodifiableList(take(productsByCreatedDate.iteratorFrom(after, false), Integer.MAX_VALUE));
+    }
+
+    // Method to get all products that have been modified since creation
+    @Override
+    public List<ProductRecord> getAllProductsThatHasBeenModifiedSinceCreation() {
+        if (ParallelScan.isParallel(size())) {
+            return Collections.unmodifiableList(productsById.<List<ProductRecord>>parallelFold(ArrayList::new, WarehouseSnapshot::addIfModified, ParallelScan::concat));
+        }
+        List<ProductRecord> products = new ArrayList<>();
+        for (Iterator<ProductRecord> iterator = productsById.values(); iterator.hasNext(); ) {
+            addIfModified(products, iterator.next());
+        }
+        return Collections.unmodifiableList(products);
+    }
+
+    private static void addIfModified(List<ProductRecord> products, ProductRecord product) {
+        if (product.modifiedDate().isAfter(product.createdDate())) {
+            products.add(product);
+        }
+    }
+
+    // Method to get all Categories that has at least one product
+    @Override
+    public Set<Category> getAllCategoriesThatHasAtLeastOneProduct() {
+        Set<Category> categories = EnumSet.noneOf(Category.class);
+        for (Category category : CATEGORIES) {
+            if (!productsByCategory[category.ordinal()].isEmpty()) {
+                categories.add(category);
+            }
+        }
+        return Collections.unmodifiableSet(categories);
+    }
+
+    // Method to get how many products there are in given category
+    @Override
+    public long getNumberOfProductsInCategory(Category category) {
+        return productsByCategory[category.ordinal()].size();
+    }
+
+    // Method to get a Map that contains all the letters that product name start with as key and the number of products that start with that letter as value
+    @Override
+    public Map<Character, Long> getNumberOfProductsStartingWithEachLetter() {
+        Map<Character, Long> letters = new HashMap<>();
+        productsStartingWithEachLetter.forEach((letter, count) -> letters.put((char) letter, count));
+        return Collections.unmodifiableMap(letters);
+    }
+
+    // Method to get all products with max rating, created this month and sorted by date with the latest first
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedThisMonthSortedByDate() {
+        return getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth.now(clock));
+    }
+
+    // Method to get all products with max rating created in a month of the clock's time zone, latest first
+    @Override
+    public List<ProductRecord> getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth month) {
+        ZonedDateTime startOfMonth = month.atDay(1).atStartOfDay(clock.getZone());
+        ProductRecord to = probe(startOfMonth.plusMonths(1));
+        List<ProductRecord> products = new ArrayList<>();
+        for (Iterator<ProductRecord> iterator = productsWithMaxRating.iteratorFrom(probe(startOfMonth), true); iterator.hasNext(); ) {
+            ProductRecord product = iterator.next();
+            if (BY_CREATED_DATE.compare(product, to) >= 0) {
+                break;
+            }
+            products.add(product);
+        }
+        Collections.reverse(products);
+        return Collections.unmodifiableList(products);
+    }
+
+    @Override
+    public Iterator<ProductRecord> productsById() {
+        return productsById.values();
+    }
+
+    @Override
+    public Iterator<ProductRecord> productsInCategoryFromName(Category category, String name) {
+        return productsByCategory[category.ordinal()].iteratorFrom(new ProductRecord(Integer.MIN_VALUE, name, null, 0, null, null), true);
+    }
+
+    @Override
+    public Iterator<ProductRecord> productsCreatedFrom(Instant date) {
+        return productsByCreatedDate.iteratorFrom(probe(date), true);
+    }
+
+    @Override
+    public int countProductsCreatedBetween(Instant from, Instant to) {
+        return Math.max(productsByCreatedDate.countBefore(probe(to)) - productsByCreatedDate.countBefore(probe(from)), 0);
+    }
+
+    @Override
+    public NameIndex nameIndex() {
+        return nameIndex;
+    }
+
+    // Sorts before every real product created at the same instant
+    private static ProductRecord probe(ZonedDateTime createdDate) {
+        return probe(createdDate.toInstant());
+    }
+
+    private static ProductRecord probe(Instant createdDate) {
+        return new ProductRecord(Integer.MIN_VALUE, "", null, 0, createdDate, null);
+    }
+
+    private static List<ProductRecord> take(Iterator<ProductRecord> iterator, int limit) {
+        List<ProductRecord> products = new ArrayList<>();
+        while (products.size() < limit && iterator.hasNext()) {
+            products.add(iterator.next());
+        }
+        return products;
+    }
+}
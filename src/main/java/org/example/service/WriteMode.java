@@ -0,0 +1,16 @@
+package org.example.service;
+
+// How WarehouseService applies single product changes, selectable with -Dwarehouse.write.mode
+public enum WriteMode {
+    // Each writer takes the write lock itself
+    LOCKED,
+    // Writers queue their changes for one writer thread, which applies whatever has queued up as one batch
+    QUEUED;
+
+    public static final String PROPERTY = "warehouse.write.mode";
+
+    public static WriteMode fromSystemProperty() {
+        String mode = System.getProperty(PROPERTY);
+        return mode == null ? LOCKED : valueOf(mode.trim().toUpperCase());
+    }
+}
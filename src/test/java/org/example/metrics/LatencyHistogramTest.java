@@ -0,0 +1,44 @@
+package org.example.metrics;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class LatencyHistogramTest {
+
+    @Test
+    void whenRecordingUniformValuesThenQuantilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos * 1_000);
+        }
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000_000, histogram.max());
+        assertEquals(50_000_000, histogram.valueAtQuantile(0.5), 50_000_000 * 0.016);
+        assertEquals(99_000_000, histogram.valueAtQuantile(0.99), 99_000_000 * 0.016);
+        assertEquals(99_900_000, histogram.valueAtQuantile(0.999), 99_900_000 * 0.016);
+    }
+
+    @Test
+    void whenNothingIsRecordedThenQuantilesAreZero() {
+        assertEquals(0, new LatencyHistogram().valueAtQuantile(0.99));
+    }
+
+    @Test
+    void whenValueIsAboveRangeThenItIsCountedInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1, histogram.count());
+        assertEquals(Long.MAX_VALUE, histogram.max());
+    }
+
+    @Test
+    void everyBucketUpperBoundMapsBackToItsBucket() {
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf(1L << 40); bucket++) {
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket)));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket) + 1));
+        }
+    }
+}
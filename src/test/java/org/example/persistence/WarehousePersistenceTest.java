@@ -0,0 +1,146 @@
+package org.example.persistence;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.example.service.LockMode;
+import org.example.service.WarehouseService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class WarehousePersistenceTest {
+
+    @TempDir
+    Path dataDirectory;
+
+    @Test
+    void whenRestartingThenAddedAndUpdatedProductsAreRecovered() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.ofEpochMilli(1_000));
+        warehouseService.addProduct(2, "Robot", Category.TOYS, 7, Instant.ofEpochMilli(2_000));
+        warehouseService.updateProduct(1, "Better book", Category.BOOKS, 9);
+        ProductRecord updated = warehouseService.getProductById(1).orElseThrow();
+        warehouseService.close();
+
+        WarehouseService recovered = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+
+        assertEquals(updated, recovered.getProductById(1).orElseThrow());
+        assertEquals("Robot", recovered.getProductById(2).orElseThrow().name());
+        assertEquals(2, recovered.getAllProducts().size());
+        recovered.close();
+    }
+
+    @Test
+    void whenRestartingThenDeletedProductsStayDeletedAndVersionsAreNotReused() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.ofEpochMilli(1_000));
+        warehouseService.addProduct(2, "Robot", Category.TOYS, 7, Instant.ofEpochMilli(2_000));
+        warehouseService.deleteProduct(1, null);
+        warehouseService.patchProduct(2, "Better robot", null, null, null);
+        ProductRecord patched = warehouseService.getProductById(2).orElseThrow();
+        long version = warehouseService.getProductVersion(2);
+        warehouseService.close();
+
+        WarehouseService recovered = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+
+        assertTrue(recovered.getProductById(1).isEmpty());
+        assertEquals(patched, recovered.getProductById(2).orElseThrow());
+        assertEquals(List.of(patched), recovered.getAllProducts());
+        // Unchanged since the last logged change, so the same version still names the same state
+        assertEquals(version, recovered.getProductVersion(2));
+        assertEquals(4, recovered.getChangeJournal().lastSequence());
+        assertNull(recovered.getChangeJournal().since(0, 10));
+        recovered.addProduct(1, "Book again", Category.BOOKS, 5, Instant.ofEpochMilli(3_000));
+        recovered.patchProduct(2, null, null, 8, Set.of(version));
+        assertTrue(recovered.getProductVersion(2) > version);
+        recovered.close();
+
+        WarehouseService again = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+        assertEquals("Book again", again.getProductById(1).orElseThrow().name());
+        again.close();
+    }
+
+    @Test
+    void whenLogEndsWithTornEntryThenEarlierEntriesAreRecovered() throws IOException {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        warehouseService.addProduct(2, "Robot", Category.TOYS, 7, Instant.now());
+        warehouseService.close();
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        WarehouseService recovered = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+
+        assertTrue(recovered.getProductById(1).isPresent());
+        assertTrue(recovered.getProductById(2).isEmpty());
+        recovered.close();
+    }
+
+    @Test
+    void whenSnapshotIsWrittenThenLogSegmentsBeforeItAreRemoved() throws IOException {
+        List<ProductRecord> products = new ArrayList<>();
+        WarehousePersistence persistence = WarehousePersistence.open(dataDirectory, 2, product -> {}, id -> {});
+        for (int id = 1; id <= 3; id++) {
+            Instant now = Instant.ofEpochMilli(System.currentTimeMillis());
+            ProductRecord product = new ProductRecord(id, "Product " + id, Category.BOOKS, 5, now, now);
+            products.add(product);
+            persistence.awaitDurable(persistence.append(product));
+        }
+        assertTrue(persistence.isSnapshotDue());
+
+        long sequence = persistence.beginSnapshot();
+        persistence.writeSnapshot(sequence, products);
+        persistence.close();
+
+        assertEquals(3, sequence);
+        assertFalse(segments().stream().anyMatch(s -> s.getFileName().toString().equals("wal-00000000000000000001.log")));
+        List<ProductRecord> recovered = new ArrayList<>();
+        WarehousePersistence.open(dataDirectory, recovered::add, id -> {}).close();
+        assertEquals(products, recovered);
+    }
+
+    // RecoveryBenchmark times the same recovery with a million products
+    @Test
+    void whenRecoveringFromSnapshotAndLogTailThenEveryProductIsRecovered() throws IOException {
+        int snapshotProducts = 900;
+        int loggedProducts = 100;
+        List<ProductRecord> products = new ArrayList<>(snapshotProducts);
+        for (int id = 1; id <= snapshotProducts; id++) {
+            products.add(new ProductRecord(id, "Product " + id, Category.values()[id % 4], 1 + id % 10, Instant.ofEpochMilli(id), Instant.ofEpochMilli(id)));
+        }
+        ProductSnapshot.write(dataDirectory.resolve(String.format("snapshot-%020d.bin", snapshotProducts)), snapshotProducts, products);
+        try (ProductLog log = new ProductLog(dataDirectory.resolve(String.format("wal-%020d.log", snapshotProducts + 1)), snapshotProducts)) {
+            long sequence = 0;
+            for (int id = snapshotProducts + 1; id <= snapshotProducts + loggedProducts; id++) {
+                sequence = log.append(new ProductRecord(id, "Product " + id, Category.BOOKS, 5, Instant.ofEpochMilli(id), Instant.ofEpochMilli(id)));
+            }
+            log.awaitDurable(sequence);
+        }
+
+        WarehouseService recovered = new WarehouseService(LockMode.READ_WRITE, dataDirectory);
+
+        assertEquals(snapshotProducts + loggedProducts, recovered.getAllProducts().size());
+        assertEquals(products.get(0), recovered.getProductById(1).orElseThrow());
+        assertEquals("Product 1000", recovered.getProductById(1_000).orElseThrow().name());
+        recovered.close();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("wal-")).sorted().toList();
+        }
+    }
+}
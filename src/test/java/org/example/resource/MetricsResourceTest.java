@@ -0,0 +1,73 @@
+package org.example.resource;
+
+import jakarta.ws.rs.core.Request;
+import org.example.entities.Category;
+import org.example.metrics.RequestMetrics;
+import org.example.service.LockMode;
+import org.example.service.ShardedWarehouse;
+import org.example.service.WarehouseService;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.spi.Dispatcher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class MetricsResourceTest {
+
+    Dispatcher dispatcher;
+    WarehouseService warehouseService;
+    RequestMetrics requestMetrics;
+
+    @BeforeEach
+    public void setUp() {
+        warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        requestMetrics = new RequestMetrics();
+        dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getRegistry().addSingletonResource(new MetricsResource(warehouseService, requestMetrics, new ResponseCache(), new RequestExecutor()));
+    }
+
+    @Test
+    void whenGetMetricsThenShouldExposeRequestLockAndCatalogMetrics() throws URISyntaxException, NoSuchMethodException, UnsupportedEncodingException {
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        requestMetrics.record(ProductResource.class.getMethod("getProductById", int.class, Long.class, Request.class), 2_000_000);
+
+        MockHttpRequest request = MockHttpRequest.get("/metrics");
+        MockHttpResponse response = new MockHttpResponse();
+        dispatcher.invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        String metrics = response.getContentAsString();
+        assertTrue(metrics.contains("http_request_duration_seconds_count{endpoint=\"GET /products/{id}\"} 1"), metrics);
+        assertTrue(metrics.contains("warehouse_lock_hold_seconds_count{mode=\"write\"} 1"), metrics);
+        assertTrue(metrics.contains("warehouse_products{category=\"BOOKS\"} 1"), metrics);
+        assertTrue(metrics.contains("warehouse_products{category=\"TOYS\"} 0"), metrics);
+        assertTrue(metrics.contains("warehouse_response_cache_hits_total 0"), metrics);
+        assertTrue(metrics.contains("warehouse_requests_shed_total 0"), metrics);
+        assertTrue(metrics.contains("warehouse_change_sequence 1"), metrics);
+        assertFalse(metrics.contains("warehouse_replication_lag_changes"), metrics);
+    }
+
+    @Test
+    void whenCatalogIsShardedThenProductsAreCountedAcrossTheShards() throws URISyntaxException, UnsupportedEncodingException {
+        ShardedWarehouse sharded = ShardedWarehouse.inProcess(3, shard -> new WarehouseService());
+        for (int id = 1; id <= 10; id++) {
+            sharded.addProduct(id, "Book " + id, Category.BOOKS, 5, Instant.now());
+        }
+        dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getRegistry().addSingletonResource(new MetricsResource(new CatalogRouter(warehouseService, sharded), requestMetrics,
+                new ResponseCache(), new RequestExecutor()));
+
+        MockHttpResponse response = new MockHttpResponse();
+        dispatcher.invoke(MockHttpRequest.get("/metrics"), response);
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentAsString().contains("warehouse_products{category=\"BOOKS\"} 10"), response.getContentAsString());
+        sharded.close();
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.resource;
+
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.example.entities.Category;
+import org.example.service.LockMode;
+import org.example.service.WarehouseService;
+import org.jboss.resteasy.plugins.providers.sse.SseImpl;
+import org.junit.jupiter.api.Test;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ProductChangeStreamTest {
+
+    @Test
+    void whenStreamingChangesThenTheyArriveInBatchesWithLastSequenceAsId() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        for (int id = 1; id <= 5; id++) {
+            warehouseService.addProduct(id, "Product " + id, Category.BOOKS, 5, Instant.ofEpochMilli(0));
+        }
+        // Closing releases the stream once it sent everything journaled
+        warehouseService.close();
+        RecordingSink sink = new RecordingSink();
+
+        new ProductChangeStream(warehouseService.getChangeJournal(), 1, 3, sink, new SseImpl()).run();
+
+        assertEquals(List.of("4", "5"), sink.events.stream().map(OutboundSseEvent::getId).toList());
+        assertTrue(((String) sink.events.get(0).getData()).startsWith("[{\"product\":{\"category\":\"BOOKS\",\"createdDate\""));
+        assertTrue(((String) sink.events.get(0).getData()).contains("\"sequence\":4}]"));
+        assertTrue(sink.closed);
+    }
+
+    @Test
+    void whenResumingFromSequenceNoLongerKeptThenResetEventGivesLatestSequence() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        warehouseService.addProduct(1, "Product 1", Category.BOOKS, 5, Instant.ofEpochMilli(0));
+        warehouseService.close();
+        RecordingSink sink = new RecordingSink();
+
+        new ProductChangeStream(warehouseService.getChangeJournal(), 7, 10, sink, new SseImpl()).run();
+
+        assertEquals(1, sink.events.size());
+        assertEquals("reset", sink.events.get(0).getName());
+        assertEquals("1", sink.events.get(0).getData());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ProductChangeStream(warehouseService.getChangeJournal(), 0, 0, sink, new SseImpl()));
+    }
+
+    private static final class RecordingSink implements SseEventSink {
+        final List<OutboundSseEvent> events = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public CompletionStage<?> send(OutboundSseEvent event) {
+            events.add(event);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.resource;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ProductFormatTest {
+    private static final String[] NAMES = {"Robot", "Quote \" and \\ back", "Tab\tnew\nline\u0001", "Ärmel €", "😀 emoji", ""};
+
+    @Test
+    void whenWritingJsonThenOutputIsWhatJsonbWrites() {
+        List<ProductRecord> products = randomProducts(new Random(1), 500);
+
+        assertEquals(ProductStreamingOutput.jsonb.toJson(products), new String(ProductFormat.JSON.render(products), StandardCharsets.UTF_8));
+        for (ProductRecord product : products.subList(0, 50)) {
+            assertEquals(ProductStreamingOutput.jsonb.toJson(product), new String(ProductFormat.JSON.render(product), StandardCharsets.UTF_8));
+        }
+        assertEquals("[]", new String(ProductFormat.JSON.render(List.of()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void whenWritingNdjsonThenEachLineIsOneJsonbProduct() {
+        List<ProductRecord> products = randomProducts(new Random(2), 100);
+
+        String[] lines = new String(ProductFormat.NDJSON.render(products), StandardCharsets.UTF_8).split("\n");
+
+        assertEquals(products.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(ProductStreamingOutput.jsonb.toJson(products.get(i)), lines[i]);
+        }
+    }
+
+    @Test
+    void whenReadingBinaryRowsBackThenProductsAreTheSame() throws IOException {
+        List<ProductRecord> products = randomProducts(new Random(3), 2000);
+        products.add(new ProductRecord(Integer.MAX_VALUE, "Max", Category.TOYS, 10, Instant.ofEpochMilli(Long.MAX_VALUE), Instant.ofEpochMilli(Long.MIN_VALUE)));
+
+        InputStream input = new ByteArrayInputStream(ProductFormat.BINARY.render(products));
+        List<ProductRecord> read = new ArrayList<>();
+        for (ProductRecord product = ProductFormat.readRow(input); product != null; product = ProductFormat.readRow(input)) {
+            read.add(product);
+        }
+
+        assertEquals(products, read);
+        assertThrows(IllegalArgumentException.class, () -> ProductFormat.BINARY.render(List.of("not a product")));
+    }
+
+    @Test
+    void whenReadingMalformedBinaryRowsThenTheyAreRejected() {
+        byte[] row = ProductFormat.BINARY.render(new ProductRecord(7, "Robot", Category.TOYS, 9, Instant.ofEpochMilli(0), null));
+
+        // Cut short, a length longer than its fields, and an unknown category
+        assertThrows(IllegalArgumentException.class, () -> ProductFormat.readRow(new ByteArrayInputStream(Arrays.copyOf(row, row.length - 1))));
+        byte[] longer = Arrays.copyOf(row, row.length + 1);
+        longer[0]++;
+        assertThrows(IllegalArgumentException.class, () -> ProductFormat.readRow(new ByteArrayInputStream(longer)));
+        byte[] category = row.clone();
+        category[2] = 100;
+        assertThrows(IllegalArgumentException.class, () -> ProductFormat.readRow(new ByteArrayInputStream(category)));
+    }
+
+    private static List<ProductRecord> randomProducts(Random random, int size) {
+        Category[] categories = Category.values();
+        List<ProductRecord> products = new ArrayList<>();
+        for (int id = 1; id <= size; id++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            Category category = random.nextInt(10) == 0 ? null : categories[random.nextInt(categories.length)];
+            Instant created = random.nextInt(10) == 0 ? null : Instant.ofEpochMilli(random.nextLong(4_000_000_000_000L) - 1_000_000_000_000L);
+            Instant modified = random.nextBoolean() ? null : Instant.ofEpochMilli(random.nextLong(4_000_000_000_000L) / (random.nextBoolean() ? 1000 : 1) * 1000);
+            products.add(new ProductRecord(id * 7919, name.isEmpty() ? null : name + " " + id, category, 1 + random.nextInt(10), created, modified));
+        }
+        return products;
+    }
+}
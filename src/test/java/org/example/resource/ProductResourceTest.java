@@ -1,26 +1,52 @@
 package org.example.resource;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.ws.rs.core.Link;
 import jakarta.ws.rs.core.MediaType;
 import org.example.entities.Category;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductImportError;
 import org.example.entities.ProductRecord;
+import org.example.entities.ProductField;
+import org.example.exceptionmapper.IllegalArgumentExceptionMapper;
 import org.example.exceptionmapper.ProductNotFoundExceptionMapper;
+import org.example.exceptionmapper.ProductVersionConflictException;
+import org.example.exceptionmapper.ProductVersionConflictExceptionMapper;
+import org.example.service.ProductQuery;
+import org.example.service.ProductSearch;
+import org.example.service.ShardedWarehouse;
 import org.example.service.WarehouseService;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.jboss.resteasy.core.SynchronousExecutionContext;
 import org.jboss.resteasy.mock.MockDispatcherFactory;
 import org.jboss.resteasy.mock.MockHttpRequest;
 import org.jboss.resteasy.mock.MockHttpResponse;
 import org.jboss.resteasy.spi.Dispatcher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Date;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -33,59 +59,89 @@ class ProductResourceTest {
     @BeforeEach
     public void setUp() {
         warehouseService = Mockito.mock(WarehouseService.class);
-        ProductResource productResource = new ProductResource(warehouseService);
-        dispatcher = MockDispatcherFactory.createDispatcher();
-        dispatcher.getRegistry().addSingletonResource(productResource);
         objectMapper = new ObjectMapper();
+        serve(warehouseService);
+    }
+
+    private void serve(WarehouseService service) {
+        serve(new ProductResource(service));
+    }
+
+    private void serve(ProductResource resource) {
+        dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getRegistry().addSingletonResource(resource);
         dispatcher.getProviderFactory().register(ProductNotFoundExceptionMapper.class);
+        dispatcher.getProviderFactory().register(IllegalArgumentExceptionMapper.class);
+        dispatcher.getProviderFactory().register(ProductVersionConflictExceptionMapper.class);
+        dispatcher.getProviderFactory().register(ProductFormatProvider.class);
     }
 
     @Test
-    void whenPostingJsonRepresentingProductThenShouldGet201Created() throws URISyntaxException, JsonProcessingException, UnsupportedEncodingException {
-        ProductRecord expectedProduct = new ProductRecord(66, "asd", Category.BOOKS, 10, new Date(), new Date());
+    void whenPostingJsonRepresentingProductThenShouldGet201Created() throws URISyntaxException, UnsupportedEncodingException {
+        Instant now = Instant.ofEpochMilli(System.currentTimeMillis());
+        ProductRecord expectedProduct = new ProductRecord(66, "asd", Category.BOOKS, 10, now, now);
         when(warehouseService.getProductById(anyInt())).thenReturn(Optional.of(expectedProduct));
 
         MockHttpRequest request = MockHttpRequest.post("/products");
-        String json = objectMapper.writeValueAsString(expectedProduct);
+        String json = ProductStreamingOutput.jsonb.toJson(expectedProduct);
         request.content(json.getBytes());
         request.contentType(MediaType.APPLICATION_JSON);
         MockHttpResponse response = new MockHttpResponse();
-        dispatcher.invoke(request, response);
+        invoke(request, response);
 
         assertEquals(201, response.getStatus());
-        ProductRecord actualProduct = objectMapper.readValue(response.getContentAsString(), ProductRecord.class);
+        ProductRecord actualProduct = ProductStreamingOutput.jsonb.fromJson(response.getContentAsString(), ProductRecord.class);
         assertEquals(expectedProduct, actualProduct);
     }
 
+    @Test
+    void whenPostingDatesAsClientsAlwaysHaveThenTheyAreReadAndWrittenUnchanged() throws URISyntaxException, UnsupportedEncodingException {
+        Instant created = Instant.parse("2023-11-14T22:13:20.120Z");
+        when(warehouseService.getProductById(66)).thenReturn(Optional.of(new ProductRecord(66, "asd", Category.BOOKS, 10, created, created)));
+
+        for (String date : new String[]{"2023-11-14T22:13:20.12Z[UTC]", "2023-11-14T23:13:20.120+01:00", "2023-11-14T22:13:20.12"}) {
+            MockHttpRequest request = MockHttpRequest.post("/products");
+            request.content(("{\"id\":66,\"name\":\"asd\",\"category\":\"BOOKS\",\"rating\":10,\"createdDate\":\"" + date + "\"}").getBytes());
+            request.contentType(MediaType.APPLICATION_JSON);
+            MockHttpResponse response = new MockHttpResponse();
+            invoke(request, response);
+
+            assertEquals(201, response.getStatus());
+            assertEquals("{\"category\":\"BOOKS\",\"createdDate\":\"2023-11-14T22:13:20.12Z[UTC]\",\"id\":66,"
+                    + "\"modifiedDate\":\"2023-11-14T22:13:20.12Z[UTC]\",\"name\":\"asd\",\"rating\":10}", response.getContentAsString());
+        }
+        verify(warehouseService, times(3)).addProduct(66, "asd", Category.BOOKS, 10, created);
+    }
+
     @Test
     void whenGetAllProductsThenShouldGet200Ok() throws URISyntaxException {
         MockHttpRequest request = MockHttpRequest.get("/products");
         MockHttpResponse response = new MockHttpResponse();
-        dispatcher.invoke(request, response);
+        invoke(request, response);
         assertEquals(200, response.getStatus());
     }
 
     @Test
     void whenGetProductByIdThenShouldGet200Ok() throws URISyntaxException {
         when(warehouseService.getProductById(anyInt())).thenReturn(Optional.of(
-                new ProductRecord(66, "asd", Category.BOOKS, 10, new Date(), new Date())
+                new ProductRecord(66, "asd", Category.BOOKS, 10, Instant.now(), Instant.now())
         ));
 
         MockHttpRequest request = MockHttpRequest.get("/products/66");
         MockHttpResponse response = new MockHttpResponse();
-        dispatcher.invoke(request, response);
+        invoke(request, response);
         assertEquals(200, response.getStatus());
     }
 
     @Test
     void whenGetProductsByCategoryThenShouldGet200Ok() throws URISyntaxException {
         when(warehouseService.getAllProductsByCategorySortedByProductName(Category.BOOKS)).thenReturn(
-                List.of(new ProductRecord(66, "asd", Category.BOOKS, 10, new Date(), new Date()))
+                List.of(new ProductRecord(66, "asd", Category.BOOKS, 10, Instant.now(), Instant.now()))
         );
 
         MockHttpRequest request = MockHttpRequest.get("/products/category/BOOKS");
         MockHttpResponse response = new MockHttpResponse();
-        dispatcher.invoke(request, response);
+        invoke(request, response);
         assertEquals(200, response.getStatus());
     }
 
@@ -95,9 +151,64 @@ class ProductResourceTest {
 
         MockHttpRequest request = MockHttpRequest.get("/products/999");
         MockHttpResponse response = new MockHttpResponse();
-        dispatcher.invoke(request, response);
+        invoke(request, response);
 
         assertEquals(404, response.getStatus());
+        // A missing ID has a version too, which must not make a tag the client sends look current
+        assertEquals(404, get("/products/999", "\"0\"").getStatus());
+    }
+
+    @Test
+    void whenPatchingProductThenOnlyGivenFieldsAreSentAndNewVersionIsTagged() throws URISyntaxException, UnsupportedEncodingException {
+        ProductRecord patched = new ProductRecord(7, "Robot", Category.TOYS, 9, Instant.ofEpochMilli(0), Instant.ofEpochMilli(1_000));
+        when(warehouseService.patchProduct(7, null, null, 9, Set.of(3L))).thenReturn(true);
+        when(warehouseService.getProductVersion(7)).thenReturn(4L);
+        when(warehouseService.getProductById(7)).thenReturn(Optional.of(patched));
+
+        MockHttpRequest request = MockHttpRequest.create("PATCH", "/products/7");
+        request.content("{\"rating\": 9}".getBytes());
+        request.contentType(ProductResource.APPLICATION_MERGE_PATCH_JSON);
+        // A tag of any format names the same version
+        request.header("If-Match", "\"3;ndjson\"");
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("\"4\"", response.getOutputHeaders().getFirst("ETag").toString());
+        assertEquals(patched, ProductStreamingOutput.jsonb.fromJson(response.getContentAsString(), ProductRecord.class));
+    }
+
+    @Test
+    void whenPatchingFieldsThatCannotChangeThenShouldGet400BadRequest() throws URISyntaxException {
+        for (String patch : new String[]{"{\"id\": 8}", "{\"name\": null}", "{\"category\": \"FOOD\"}", "[]"}) {
+            MockHttpRequest request = MockHttpRequest.create("PATCH", "/products/7");
+            request.content(patch.getBytes());
+            request.contentType(MediaType.APPLICATION_JSON);
+            MockHttpResponse response = new MockHttpResponse();
+            invoke(request, response);
+
+            assertEquals(400, response.getStatus(), patch);
+        }
+        verify(warehouseService, times(0)).patchProduct(anyInt(), any(), any(), any(), any());
+    }
+
+    @Test
+    void whenDeletingProductThenShouldGet204Or404Or412WithCurrentVersion() throws URISyntaxException {
+        when(warehouseService.deleteProduct(7, null)).thenReturn(true);
+        when(warehouseService.deleteProduct(8, null)).thenReturn(false);
+        when(warehouseService.deleteProduct(9, Set.of(2L))).thenThrow(new ProductVersionConflictException("Product with ID 9 has changed", 5));
+
+        MockHttpResponse deleted = new MockHttpResponse();
+        invoke(MockHttpRequest.delete("/products/7"), deleted);
+        MockHttpResponse missing = new MockHttpResponse();
+        invoke(MockHttpRequest.delete("/products/8"), missing);
+        MockHttpResponse conflict = new MockHttpResponse();
+        invoke(MockHttpRequest.delete("/products/9").header("If-Match", "\"2\""), conflict);
+
+        assertEquals(204, deleted.getStatus());
+        assertEquals(404, missing.getStatus());
+        assertEquals(412, conflict.getStatus());
+        assertEquals("\"5\"", conflict.getOutputHeaders().getFirst("ETag").toString());
     }
 
     @Test
@@ -106,9 +217,349 @@ class ProductResourceTest {
 
         MockHttpRequest request = MockHttpRequest.get("/products/category/TOYS");
         MockHttpResponse response = new MockHttpResponse();
-        dispatcher.invoke(request, response);
+        invoke(request, response);
 
         assertEquals(200, response.getStatus());
         assertEquals("[]", response.getContentAsString());
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenGettingCategoryRepeatedlyThenResponseIsCachedUntilItsVersionChanges() throws URISyntaxException, UnsupportedEncodingException {
+        when(warehouseService.getCategoryVersion(Category.BOOKS)).thenReturn(1L, 1L, 1L, 2L);
+        when(warehouseService.getAllProductsByCategorySortedByProductName(Category.BOOKS)).thenReturn(
+                List.of(new ProductRecord(66, "asd", Category.BOOKS, 10, Instant.now(), Instant.now()))
+        );
+
+        MockHttpResponse first = get("/products/category/BOOKS", null);
+        MockHttpResponse cached = get("/products/category/BOOKS", null);
+        MockHttpResponse notModified = get("/products/category/BOOKS", "\"1\"");
+        verify(warehouseService, times(1)).getAllProductsByCategorySortedByProductName(Category.BOOKS);
+        MockHttpResponse changed = get("/products/category/BOOKS", "\"1\"");
+
+        assertEquals(200, first.getStatus());
+        assertEquals("\"1\"", first.getOutputHeaders().getFirst("ETag").toString());
+        assertEquals(first.getContentAsString(), cached.getContentAsString());
+        assertEquals(304, notModified.getStatus());
+        assertEquals(200, changed.getStatus());
+        assertEquals("\"2\"", changed.getOutputHeaders().getFirst("ETag").toString());
+        verify(warehouseService, times(2)).getAllProductsByCategorySortedByProductName(Category.BOOKS);
+    }
+
+    @Test
+    void whenSearchingThenParametersBecomeQueryAndFieldsAreProjected() throws URISyntaxException, IOException {
+        ProductRecord product = new ProductRecord(7, "Robot", Category.TOYS, 9, Instant.ofEpochMilli(0), Instant.ofEpochMilli(0));
+        when(warehouseService.search(any())).thenReturn(new ProductSearch.Result(List.of(product),
+                new ProductSearch.Plan(ProductSearch.AccessPath.CATEGORY, 1, false)));
+
+        MockHttpResponse response = get("/products/search?category=toys,BOOKS&minRating=8&createdFrom=1970-01-01T00:00:00Z"
+                + "&name=Ro&q=robot&sort=-rating,name&limit=5&fields=id,name", null);
+
+        ArgumentCaptor<ProductQuery> query = ArgumentCaptor.forClass(ProductQuery.class);
+        verify(warehouseService).search(query.capture());
+        assertEquals(Set.of(Category.TOYS, Category.BOOKS), query.getValue().categories());
+        assertEquals(8, query.getValue().minRating());
+        assertEquals(Instant.ofEpochMilli(0), query.getValue().createdFrom());
+        assertEquals("Ro", query.getValue().namePrefix());
+        assertEquals("robot", query.getValue().text());
+        assertEquals(List.of(new ProductQuery.SortKey(ProductField.RATING, true), new ProductQuery.SortKey(ProductField.NAME, false)),
+                query.getValue().sort());
+        assertEquals(5, query.getValue().limit());
+        assertEquals(200, response.getStatus());
+        assertEquals("[{\"id\":7,\"name\":\"Robot\"}]", response.getContentAsString());
+    }
+
+    @Test
+    void whenSearchingWithUnknownSortFieldThenShouldGet400BadRequest() throws URISyntaxException {
+        MockHttpResponse response = get("/products/search?sort=price", null);
+
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    void whenSuggestingThenWordsCompletingPrefixAreReturned() throws URISyntaxException, IOException {
+        when(warehouseService.suggest("harry po", 5)).thenReturn(List.of(new NameSuggestion("potter", 7)));
+
+        MockHttpResponse response = get("/products/suggest?prefix=harry%20po&limit=5", null);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("[{\"word\":\"potter\",\"products\":7}]", response.getContentAsString());
+    }
+
+    @Test
+    void whenAcceptingNdjsonOrBinaryThenCategoryIsSentInThatFormatAndCachedApart() throws URISyntaxException, IOException {
+        ProductRecord product = new ProductRecord(66, "asd", Category.BOOKS, 10, Instant.ofEpochMilli(0), null);
+        when(warehouseService.getCategoryVersion(Category.BOOKS)).thenReturn(1L);
+        when(warehouseService.getAllProductsByCategorySortedByProductName(Category.BOOKS)).thenReturn(List.of(product));
+
+        MockHttpRequest ndjson = MockHttpRequest.get("/products/category/BOOKS").accept(ProductResource.APPLICATION_NDJSON);
+        MockHttpResponse ndjsonResponse = new MockHttpResponse();
+        invoke(ndjson, ndjsonResponse);
+        MockHttpRequest binary = MockHttpRequest.get("/products/category/BOOKS").accept(ProductResource.APPLICATION_PRODUCT_BINARY);
+        MockHttpResponse binaryResponse = new MockHttpResponse();
+        invoke(binary, binaryResponse);
+
+        assertEquals(200, ndjsonResponse.getStatus());
+        assertEquals(ProductResource.APPLICATION_NDJSON, ndjsonResponse.getOutputHeaders().getFirst("Content-Type").toString());
+        assertEquals("{\"category\":\"BOOKS\",\"createdDate\":\"1970-01-01T00:00:00Z[UTC]\",\"id\":66,\"name\":\"asd\",\"rating\":10}\n",
+                ndjsonResponse.getContentAsString());
+        assertEquals("\"1;ndjson\"", ndjsonResponse.getOutputHeaders().getFirst("ETag").toString());
+        assertEquals(200, binaryResponse.getStatus());
+        assertEquals(product, ProductFormat.readRow(new ByteArrayInputStream(binaryResponse.getOutput())));
+        verify(warehouseService, times(2)).getAllProductsByCategorySortedByProductName(Category.BOOKS);
+    }
+
+    @Test
+    void whenPostingBinaryRowsThenProductsAreImported() throws URISyntaxException, IOException {
+        List<ProductRecord> products = List.of(new ProductRecord(1, "One", Category.BOOKS, 5, Instant.ofEpochMilli(0), null),
+                new ProductRecord(2, "Two", Category.TOYS, 6, Instant.ofEpochMilli(1000), null));
+        when(warehouseService.addProducts(anyList())).thenAnswer(invocation -> {
+            assertEquals(products, invocation.getArgument(0));
+            return List.of();
+        });
+
+        MockHttpRequest request = MockHttpRequest.post("/products/batch");
+        request.content(ProductFormat.BINARY.render(products));
+        request.contentType(ProductResource.APPLICATION_PRODUCT_BINARY);
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(2, objectMapper.readTree(response.getContentAsString()).get("added").asInt());
+    }
+
+    // Resource methods answer with a CompletionStage, which the mock dispatcher only waits for given an execution context
+    private void invoke(MockHttpRequest request, MockHttpResponse response) {
+        request.setAsynchronousContext(new SynchronousExecutionContext((SynchronousDispatcher) dispatcher, request, response));
+        dispatcher.invoke(request, response);
+    }
+
+    private MockHttpResponse get(String uri, String ifNoneMatch) throws URISyntaxException {
+        MockHttpRequest request = MockHttpRequest.get(uri);
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+        return response;
+    }
+
+    @Test
+    void whenGetFullPageOfProductsThenShouldLinkToNextPage() throws URISyntaxException {
+        when(warehouseService.getProductsAfterId(10, 2)).thenReturn(List.of(
+                new ProductRecord(11, "a", Category.BOOKS, 5, Instant.now(), Instant.now()),
+                new ProductRecord(12, "b", Category.BOOKS, 5, Instant.now(), Instant.now())
+        ));
+
+        MockHttpRequest request = MockHttpRequest.get("/products?after=10&limit=2");
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("12", response.getOutputHeaders().getFirst("X-Next-After").toString());
+    }
+
+    @Test
+    void whenStreamingProductsThenShouldWriteEveryPageAsOneJsonArray() throws URISyntaxException, IOException {
+        List<ProductRecord> firstPage = new ArrayList<>();
+        for (int id = 1; id <= ProductStreamingOutput.PAGE_SIZE; id++) {
+            firstPage.add(new ProductRecord(id, "p" + id, Category.BOOKS, 5, Instant.now(), Instant.now()));
+        }
+        when(warehouseService.getProductsAfterId(0, ProductStreamingOutput.PAGE_SIZE)).thenReturn(firstPage);
+        when(warehouseService.getProductsAfterId(ProductStreamingOutput.PAGE_SIZE, ProductStreamingOutput.PAGE_SIZE)).thenReturn(List.of(
+                new ProductRecord(ProductStreamingOutput.PAGE_SIZE + 1, "last", Category.TOYS, 5, Instant.now(), Instant.now())
+        ));
+
+        MockHttpRequest request = MockHttpRequest.get("/products?stream=true");
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        JsonNode products = objectMapper.readTree(response.getContentAsString());
+        assertEquals(ProductStreamingOutput.PAGE_SIZE + 1, products.size());
+        assertEquals("last", products.get(ProductStreamingOutput.PAGE_SIZE).get("name").asText());
+    }
+
+    @Test
+    void whenCursorProductIsDeletedBetweenCategoryPagesThenNextPageContinuesAfterIt() throws URISyntaxException, IOException {
+        WarehouseService service = new WarehouseService();
+        for (String name : List.of("a", "b", "c", "d", "e")) {
+            service.addProduct(name.charAt(0) - 'a' + 1, name, Category.BOOKS, 5, Instant.now());
+        }
+        serve(service);
+
+        MockHttpResponse first = get("/products/category/BOOKS?limit=2", null);
+        assertEquals(List.of("a", "b"), names(first));
+        service.deleteProduct(2, null);
+        URI next = ((Link) first.getOutputHeaders().getFirst("Link")).getUri();
+        MockHttpResponse second = get(next.getRawPath() + "?" + next.getRawQuery(), null);
+
+        assertEquals(200, second.getStatus());
+        assertEquals(List.of("c", "d"), names(second));
+    }
+
+    @Test
+    void whenCursorProductIsDeletedWhileStreamingCategoryThenStreamCompletes() throws URISyntaxException, IOException {
+        WarehouseService service = Mockito.spy(new WarehouseService());
+        int count = ProductStreamingOutput.PAGE_SIZE + 2;
+        for (int id = 1; id <= count; id++) {
+            service.addProduct(id, String.format("p%05d", id), Category.BOOKS, 5, Instant.now());
+        }
+        List<Integer> deleted = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<ProductRecord> page = (List<ProductRecord>) invocation.callRealMethod();
+            if (deleted.isEmpty()) {
+                deleted.add(page.get(page.size() - 1).id());
+                service.deleteProduct(deleted.get(0), null);
+            }
+            return page;
+        }).when(service).getProductsByCategorySortedByProductNameAfter(any(), any(), anyInt(), anyInt());
+        serve(service);
+
+        MockHttpResponse response = get("/products/category/BOOKS?stream=true", null);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(List.of(ProductStreamingOutput.PAGE_SIZE), deleted);
+        assertEquals(count, objectMapper.readTree(response.getContentAsString()).size());
+    }
+
+    @Test
+    void whenCatalogIsShardedThenProductsAreWrittenToAndReadFromEveryShard() throws URISyntaxException, IOException {
+        WarehouseService local = new WarehouseService();
+        ShardedWarehouse sharded = ShardedWarehouse.inProcess(3, shard -> new WarehouseService());
+        CatalogRouter router = new CatalogRouter(local, sharded);
+        serve(new ProductResource(router, new ResponseCache(), new RequestExecutor(RequestExecutor.Mode.SYNCHRONOUS, 64, 0, 0)));
+        List<String> expected = new ArrayList<>();
+        for (int id = 1; id <= 30; id++) {
+            MockHttpRequest request = MockHttpRequest.post("/products");
+            request.content(("{\"id\":" + id + ",\"name\":\"p" + (100 + id) + "\",\"category\":\"BOOKS\",\"rating\":5}").getBytes());
+            request.contentType(MediaType.APPLICATION_JSON);
+            MockHttpResponse response = new MockHttpResponse();
+            invoke(request, response);
+            assertEquals(201, response.getStatus());
+            expected.add("p" + (100 + id));
+        }
+
+        List<String> paged = new ArrayList<>();
+        for (String uri = "/products/category/BOOKS?limit=7"; uri != null; ) {
+            MockHttpResponse page = get(uri, null);
+            paged.addAll(names(page));
+            Link next = (Link) page.getOutputHeaders().getFirst("Link");
+            uri = next == null ? null : next.getUri().getRawPath() + "?" + next.getUri().getRawQuery();
+        }
+        MockHttpResponse all = get("/products", null);
+        String etag = all.getOutputHeaders().getFirst("ETag").toString();
+        MockHttpResponse notModified = get("/products", etag);
+        sharded.addProduct(31, "p131", Category.BOOKS, 5, Instant.now());
+        MockHttpResponse changed = get("/products", etag);
+
+        assertEquals(expected, paged);
+        assertEquals(30, names(all).size());
+        assertEquals(304, notModified.getStatus());
+        assertEquals(200, changed.getStatus());
+        assertEquals(31, names(changed).size());
+        assertEquals(List.of(), local.getAllProducts());
+        assertEquals(3, IntStream.rangeClosed(1, 31).mapToObj(sharded::shardOf).distinct().count());
+        router.close();
+    }
+
+    @Test
+    void whenShardCountIsSetThenRouterServesThatManyShardsInProcess() {
+        System.setProperty(ShardedWarehouse.SHARDS_PROPERTY, "4");
+        try {
+            CatalogRouter router = new CatalogRouter(new WarehouseService());
+            assertTrue(router.isSharded());
+            assertEquals(4, ((ShardedWarehouse) router.catalog()).ring().shards().size());
+            router.close();
+
+            System.setProperty(ShardedWarehouse.NODES_PROPERTY, "http://node-1:8080/warehouse/api/");
+            assertThrows(IllegalStateException.class, () -> new CatalogRouter(new WarehouseService()));
+        } finally {
+            System.clearProperty(ShardedWarehouse.SHARDS_PROPERTY);
+            System.clearProperty(ShardedWarehouse.NODES_PROPERTY);
+        }
+        assertFalse(new CatalogRouter(new WarehouseService()).isSharded());
+    }
+
+    private List<String> names(MockHttpResponse response) throws IOException {
+        List<String> names = new ArrayList<>();
+        objectMapper.readTree(response.getContentAsString()).forEach(product -> names.add(product.get("name").asText()));
+        return names;
+    }
+
+    @Test
+    void whenPostingBatchThenInvalidItemsAreReportedWithTheirPosition() throws URISyntaxException, IOException {
+        when(warehouseService.addProducts(anyList())).thenAnswer(invocation -> {
+            List<ProductRecord> batch = invocation.getArgument(0);
+            assertEquals(List.of(1, 3), batch.stream().map(ProductRecord::id).toList());
+            return List.of(new ProductImportError(1, 3, "Product ID already exists."));
+        });
+
+        MockHttpRequest request = MockHttpRequest.post("/products/batch");
+        request.content("""
+                [{"id": 1, "name": "a", "category": "BOOKS", "rating": 5, "createdDate": "2023-10-01T12:00:00"},
+                 {"id": 2, "name": "b", "category": "FOOD", "rating": 5},
+                 {"id": 3, "name": "c", "category": "TOYS", "rating": 5}]""".getBytes());
+        request.contentType(MediaType.APPLICATION_JSON);
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        JsonNode report = objectMapper.readTree(response.getContentAsString());
+        assertEquals(3, report.get("received").asInt());
+        assertEquals(1, report.get("added").asInt());
+        assertEquals(1, report.get("errors").get(0).get("index").asInt());
+        assertEquals(2, report.get("errors").get(1).get("index").asInt());
+        assertEquals(3, report.get("errors").get(1).get("id").asInt());
+    }
+
+    @Test
+    void whenPostingNdjsonBatchThenMalformedLinesDoNotStopTheImport() throws URISyntaxException, IOException {
+        when(warehouseService.addProducts(anyList())).thenReturn(List.of());
+
+        MockHttpRequest request = MockHttpRequest.post("/products/batch");
+        request.content("""
+                {"id": 1, "name": "a", "category": "BOOKS", "rating": 5}
+                {"id": 2, "name":
+                {"id": 3, "name": "c", "category": "TOYS", "rating": 5}
+                """.getBytes());
+        request.contentType(ProductResource.APPLICATION_NDJSON);
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        JsonNode report = objectMapper.readTree(response.getContentAsString());
+        assertEquals(3, report.get("received").asInt());
+        assertEquals(2, report.get("added").asInt());
+        assertEquals(1, report.get("errors").get(0).get("index").asInt());
+    }
+
+    @Test
+    void whenPostingNdjsonBatchWithOutOfRangeNumbersThenOnlyThoseItemsAreRejected() throws URISyntaxException, IOException {
+        when(warehouseService.addProducts(anyList())).thenAnswer(invocation -> {
+            List<ProductRecord> batch = invocation.getArgument(0);
+            assertEquals(List.of(1), batch.stream().map(ProductRecord::id).toList());
+            return List.of();
+        });
+
+        MockHttpRequest request = MockHttpRequest.post("/products/batch");
+        request.content("""
+                {"id": 3000000000, "name": "a", "category": "BOOKS", "rating": 5}
+                {"id": 1, "name": "b", "category": "BOOKS", "rating": 5}
+                {"id": 2, "name": "c", "category": "TOYS", "rating": 2.5}
+                """.getBytes());
+        request.contentType(ProductResource.APPLICATION_NDJSON);
+        MockHttpResponse response = new MockHttpResponse();
+        invoke(request, response);
+
+        assertEquals(200, response.getStatus());
+        JsonNode report = objectMapper.readTree(response.getContentAsString());
+        assertEquals(3, report.get("received").asInt());
+        assertEquals(1, report.get("added").asInt());
+        assertEquals(0, report.get("errors").get(0).get("index").asInt());
+        assertEquals("Invalid product: Product ID must be a whole number, not 3000000000.", report.get("errors").get(0).get("message").asText());
+        assertEquals(2, report.get("errors").get(1).get("index").asInt());
+        assertEquals(2, report.get("errors").get(1).get("id").asInt());
+        assertEquals("Invalid product: Product rating must be a whole number, not 2.5.", report.get("errors").get(1).get("message").asText());
+    }
+}
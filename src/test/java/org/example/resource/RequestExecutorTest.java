@@ -0,0 +1,160 @@
+package org.example.resource;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import org.example.entities.Category;
+import org.example.exceptionmapper.IllegalArgumentExceptionMapper;
+import org.example.exceptionmapper.ServiceOverloadedException;
+import org.example.exceptionmapper.ServiceOverloadedExceptionMapper;
+import org.example.service.LockMode;
+import org.example.service.WarehouseService;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.jboss.resteasy.core.SynchronousExecutionContext;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.spi.Dispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class RequestExecutorTest {
+
+    RequestExecutor requestExecutor;
+
+    @AfterEach
+    public void tearDown() {
+        requestExecutor.close();
+    }
+
+    @Test
+    void whenRunningOnVirtualThreadsThenResultsAndExceptionsCompleteTheStage() {
+        requestExecutor = new RequestExecutor(RequestExecutor.Mode.VIRTUAL_THREADS, 2, 2, 1000);
+
+        assertTrue(requestExecutor.submit(() -> Thread.currentThread().isVirtual()).toCompletableFuture().join());
+        CompletionException thrown = assertThrows(CompletionException.class, () -> requestExecutor.submit(() -> {
+            throw new IllegalArgumentException("Bad request");
+        }).toCompletableFuture().join());
+        assertInstanceOf(IllegalArgumentException.class, thrown.getCause());
+    }
+
+    @Test
+    void whenSaturatedThenRequestsBeyondTheQueueAreShedAndQueuedOnesWaitTheirTurn() throws InterruptedException {
+        requestExecutor = new RequestExecutor(RequestExecutor.Mode.VIRTUAL_THREADS, 1, 1, 10_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = requestExecutor.submit(() -> {
+            started.countDown();
+            await(release);
+            return "running";
+        }).toCompletableFuture();
+        started.await();
+        CompletableFuture<String> queued = requestExecutor.submit(() -> "queued").toCompletableFuture();
+
+        CompletableFuture<String> shed = requestExecutor.submit(() -> "shed").toCompletableFuture();
+        release.countDown();
+
+        assertInstanceOf(ServiceOverloadedException.class, assertThrows(CompletionException.class, shed::join).getCause());
+        assertEquals("running", running.join());
+        assertEquals("queued", queued.join());
+    }
+
+    @Test
+    void whenTooManyStreamsAreOpenThenFurtherOnesAreShedUntilOneEnds() throws InterruptedException {
+        requestExecutor = new RequestExecutor(RequestExecutor.Mode.SYNCHRONOUS, 1, 0, 0, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(1);
+        requestExecutor.stream("test-stream", () -> {
+            await(release);
+            ended.countDown();
+        });
+
+        assertThrows(ServiceOverloadedException.class, () -> requestExecutor.stream("test-stream", () -> { }));
+        // Streams hold no request slot
+        assertEquals("request", requestExecutor.submit(() -> "request").toCompletableFuture().join());
+        release.countDown();
+        ended.await();
+        // The slot is given back just after the stream's last action
+        CountDownLatch next = new CountDownLatch(1);
+        boolean opened = false;
+        for (long deadline = System.nanoTime() + 10_000_000_000L; !opened && System.nanoTime() < deadline; ) {
+            try {
+                requestExecutor.stream("test-stream", next::countDown);
+                opened = true;
+            } catch (ServiceOverloadedException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(next.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void whenQueuedLongerThanAllowedThenRequestIsShed() {
+        requestExecutor = new RequestExecutor(RequestExecutor.Mode.VIRTUAL_THREADS, 1, 10, 20);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = requestExecutor.submit(() -> {
+            await(release);
+            return "running";
+        }).toCompletableFuture();
+
+        CompletableFuture<String> queued = requestExecutor.submit(() -> "queued").toCompletableFuture();
+
+        assertInstanceOf(ServiceOverloadedException.class, assertThrows(CompletionException.class, queued::join).getCause());
+        release.countDown();
+        assertEquals("running", running.join());
+    }
+
+    @Test
+    void whenResourceIsSaturatedThenItAnswers503WithRetryAfter() throws URISyntaxException, InterruptedException {
+        requestExecutor = new RequestExecutor(RequestExecutor.Mode.VIRTUAL_THREADS, 1, 0, 1000);
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        Dispatcher dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getRegistry().addSingletonResource(new ProductResource(warehouseService, new ResponseCache(), requestExecutor));
+        dispatcher.getProviderFactory().register(ServiceOverloadedExceptionMapper.class);
+        dispatcher.getProviderFactory().register(IllegalArgumentExceptionMapper.class);
+
+        assertEquals(200, invoke(dispatcher, "/products/1").getStatus());
+        assertEquals(400, invoke(dispatcher, "/products/top-rated?month=May").getStatus());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        requestExecutor.submit(() -> {
+            started.countDown();
+            await(release);
+            return null;
+        });
+        started.await();
+        MockHttpResponse response = invoke(dispatcher, "/products/suggest?prefix=bo");
+        // Cached responses are still served, since they need no request slot
+        MockHttpResponse cached = invoke(dispatcher, "/products/1");
+        release.countDown();
+
+        assertEquals(503, response.getStatus());
+        assertEquals(200, cached.getStatus());
+        assertEquals("1", response.getOutputHeaders().getFirst(HttpHeaders.RETRY_AFTER).toString());
+    }
+
+    // The mock dispatcher waits for a suspended request only when it has an execution context to wait on
+    private static MockHttpResponse invoke(Dispatcher dispatcher, String uri) throws URISyntaxException {
+        MockHttpRequest request = MockHttpRequest.get(uri);
+        MockHttpResponse response = new MockHttpResponse();
+        request.setAsynchronousContext(new SynchronousExecutionContext((SynchronousDispatcher) dispatcher, request, response));
+        dispatcher.invoke(request, response);
+        return response;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.resource;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ResponseCacheTest {
+
+    @Test
+    void whenAnOlderVersionIsPutAfterANewerOneThenTheNewerOneIsKept() {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        cache.put("products", 5, new byte[]{5});
+        cache.put("products", 4, new byte[]{4, 4});
+
+        assertArrayEquals(new byte[]{5}, cache.get("products", 5));
+        assertNull(cache.get("products", 4));
+        assertEquals(1, cache.bytes());
+
+        cache.put("products", 6, new byte[]{6, 6, 6});
+        assertArrayEquals(new byte[]{6, 6, 6}, cache.get("products", 6));
+        assertEquals(3, cache.bytes());
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class CommandQueueTest {
+
+    @Test
+    void whenClosingWhileProducersSubmitThenEveryAcceptedCommandIsApplied() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            Set<Integer> applied = ConcurrentHashMap.newKeySet();
+            Set<Integer> accepted = ConcurrentHashMap.newKeySet();
+            CommandQueue<Integer> queue = new CommandQueue<>("test-writer", 8, 4, applied::addAll);
+            AtomicInteger ids = new AtomicInteger();
+            CountDownLatch submitting = new CountDownLatch(4);
+            List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                producers.add(Thread.ofPlatform().start(() -> {
+                    submitting.countDown();
+                    while (true) {
+                        int id = ids.incrementAndGet();
+                        try {
+                            queue.submit(id);
+                        } catch (IllegalStateException e) {
+                            return;
+                        }
+                        accepted.add(id);
+                    }
+                }));
+            }
+            submitting.await();
+            queue.close();
+            for (Thread producer : producers) {
+                producer.join(10_000);
+                assertFalse(producer.isAlive());
+            }
+
+            assertEquals(accepted, applied);
+            assertThrows(IllegalStateException.class, () -> queue.submit(0));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.jboss.resteasy.core.SynchronousExecutionContext;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.spi.Dispatcher;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A node serving the given resources and providers over real HTTP on a loopback port under /api/, for tests of
+// nodes that talk to each other. Requests are handed to the RESTEasy mock dispatcher, each on a thread of its own as
+// long polls hold theirs, and the responses are sent once complete. The threads are platform threads because the
+// dispatcher waits for an asynchronous response holding a monitor, which would pin a virtual thread's carrier.
+final class EmbeddedNode implements AutoCloseable {
+    private final Dispatcher dispatcher = MockDispatcherFactory.createDispatcher();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    EmbeddedNode(List<Object> resources, List<Class<?>> providers, List<Object> providerInstances) throws IOException {
+        resources.forEach(dispatcher.getRegistry()::addSingletonResource);
+        providers.forEach(dispatcher.getProviderFactory()::register);
+        providerInstances.forEach(dispatcher.getProviderFactory()::register);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            URI uri = exchange.getRequestURI();
+            String path = uri.getRawPath().substring("/api".length()) + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+            MockHttpRequest request = MockHttpRequest.create(exchange.getRequestMethod(), path);
+            exchange.getRequestHeaders().forEach((name, values) -> values.forEach(value -> {
+                switch (name.toLowerCase()) {
+                    case "content-type" -> request.contentType(value);
+                    case "accept" -> request.accept(value);
+                    default -> request.header(name, value);
+                }
+            }));
+            request.content(exchange.getRequestBody().readAllBytes());
+            MockHttpResponse response = new MockHttpResponse();
+            request.setAsynchronousContext(new SynchronousExecutionContext((SynchronousDispatcher) dispatcher, request, response));
+            dispatcher.invoke(request, response);
+
+            response.getOutputHeaders().forEach((name, values) -> values.forEach(value -> exchange.getResponseHeaders().add(name, value.toString())));
+            byte[] body = response.getOutput();
+            exchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
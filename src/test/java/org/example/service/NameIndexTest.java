@@ -0,0 +1,103 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.NameSuggestion;
+import org.example.entities.ProductRecord;
+import org.junit.jupiter.api.Test;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class NameIndexTest {
+    private static final String[] WORDS = {"apple", "apricot", "app", "banana", "blue", "cotton", "ärm", "Ärmel", "42"};
+
+    @Test
+    void whenSplittingTextThenWordsAreLowerCaseLetterAndDigitRuns() {
+        assertEquals(List.of("harry", "potter", "2nd", "édition"), NameIndex.words("Harry-Potter, 2nd  ÉDITION harry"));
+        assertEquals(List.of(), NameIndex.words(" - "));
+    }
+
+    @Test
+    void whenRenamingRandomProductsThenIndexMatchesProductNames() {
+        Random random = new Random(3);
+        TreeMap<Integer, ProductRecord> products = new TreeMap<>();
+        for (int id = 1; id <= 3000; id++) {
+            products.put(id, product(id, randomName(random)));
+        }
+        NameIndex index = NameIndex.build(products.values().iterator());
+        assertMatches(products, index);
+
+        // Few enough changes to stay beside the built index, then enough to be merged into it
+        for (int changes : new int[]{500, 5000}) {
+            for (int i = 0; i < changes; i++) {
+                int id = 1 + random.nextInt(3100);
+                ProductRecord previous = products.get(id);
+                ProductRecord product = random.nextInt(10) == 0 ? null : product(id, randomName(random));
+                if (product != null) {
+                    products.put(id, product);
+                } else {
+                    products.remove(id);
+                }
+                if (previous != null || product != null) {
+                    index = index.replace(previous, product);
+                }
+            }
+            assertMatches(products, index);
+        }
+    }
+
+    @Test
+    void whenSuggestingThenLastWordOfPrefixIsCompletedMostCommonFirst() {
+        NameIndex index = NameIndex.build(List.of(product(1, "Apple pie"), product(2, "Apple juice"), product(3, "Apricot jam"),
+                product(4, "Banana")).iterator());
+
+        assertEquals(List.of(new NameSuggestion("apple", 2), new NameSuggestion("apricot", 1)), index.suggest("Ap", 10));
+        assertEquals(List.of(new NameSuggestion("jam", 1)), index.suggest("apricot JA", 1));
+        assertEquals(List.of(), index.suggest("", 10));
+        assertEquals(List.of(), index.suggest("kiwi", 10));
+    }
+
+    private static void assertMatches(Map<Integer, ProductRecord> products, NameIndex index) {
+        Map<String, List<Integer>> expected = new TreeMap<>();
+        for (ProductRecord product : products.values()) {
+            for (String word : NameIndex.words(product.name())) {
+                expected.computeIfAbsent(word, w -> new ArrayList<>()).add(product.id());
+            }
+        }
+        for (Map.Entry<String, List<Integer>> word : expected.entrySet()) {
+            assertEquals(word.getValue(), toList(index.productIds(word.getKey())), word.getKey());
+            assertEquals(word.getValue().size(), index.count(word.getKey()), word.getKey());
+        }
+        assertFalse(index.productIds("kiwi").hasNext());
+        for (String prefix : new String[]{"a", "ap", "b", "ä", "4", "z"}) {
+            assertEquals(expected.entrySet().stream()
+                    .filter(word -> word.getKey().startsWith(prefix))
+                    .map(word -> new NameSuggestion(word.getKey(), word.getValue().size()))
+                    .sorted(Comparator.comparingInt(NameSuggestion::products).reversed().thenComparing(NameSuggestion::word))
+                    .limit(3)
+                    .collect(Collectors.toList()), index.suggest(prefix, 3), prefix);
+        }
+    }
+
+    private static String randomName(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(50);
+    }
+
+    private static ProductRecord product(int id, String name) {
+        return new ProductRecord(id, name, Category.BOOKS, 5, Instant.ofEpochMilli(0), Instant.ofEpochMilli(0));
+    }
+
+    private static List<Integer> toList(PrimitiveIterator.OfInt ids) {
+        List<Integer> list = new ArrayList<>();
+        ids.forEachRemaining((int id) -> list.add(id));
+        return list;
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class PersistentIntMapTest {
+
+    @Test
+    void whenPuttingAndRemovingRandomKeysThenMapMatchesTreeMapInKeyOrder() {
+        Random random = new Random(42);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextBoolean() ? random.nextInt(2_000) : random.nextInt();
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.values()), toList(map.values()));
+        for (int key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Map<Integer, Integer> visited = new TreeMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+        for (int after : new int[]{Integer.MIN_VALUE, -1, 0, 999, expected.firstKey(), expected.lastKey()}) {
+            assertEquals(new ArrayList<>(expected.tailMap(after, false).values()), toList(map.valuesAfter(after)), "after " + after);
+        }
+    }
+
+    @Test
+    void whenChangingMapThenEarlierVersionsAreUnchanged() {
+        PersistentIntMap<String> first = PersistentIntMap.<String>empty().put(1, "a").put(2, "b");
+        PersistentIntMap<String> second = first.put(1, "changed").remove(2).put(3, "c");
+
+        assertEquals(List.of("a", "b"), toList(first.values()));
+        assertEquals(List.of("changed", "c"), toList(second.values()));
+        assertSame(second, second.remove(4));
+        assertTrue(PersistentIntMap.empty().remove(1).isEmpty());
+        assertFalse(PersistentIntMap.empty().values().hasNext());
+    }
+
+    private static <V> List<V> toList(Iterator<V> iterator) {
+        List<V> values = new ArrayList<>();
+        iterator.forEachRemaining(values::add);
+        return values;
+    }
+
+    @Test
+    void whenFoldingInParallelThenValuesArriveInKeyOrder() {
+        Random random = new Random(7);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int i = 0; i < 50_000; i++) {
+            int key = i % 2 == 0 ? i : random.nextInt();
+            expected.put(key, i);
+            map = map.put(key, i);
+        }
+
+        List<Integer> values = map.<List<Integer>>parallelFold(ArrayList::new, List::add, ParallelScan::concat);
+
+        assertEquals(new ArrayList<>(expected.values()), values);
+        assertEquals(List.of(), PersistentIntMap.<Integer>empty().<List<Integer>>parallelFold(ArrayList::new, List::add, ParallelScan::concat));
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class PersistentSortedSetTest {
+
+    @Test
+    void whenAddingAndRemovingRandomElementsThenSetMatchesTreeSet() {
+        Random random = new Random(42);
+        TreeSet<Integer> expected = new TreeSet<>();
+        PersistentSortedSet<Integer> set = new PersistentSortedSet<>(Comparator.naturalOrder());
+        for (int i = 0; i < 20_000; i++) {
+            int element = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(element);
+                set = set.remove(element);
+            } else {
+                expected.add(element);
+                set = set.add(element);
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), toList(set.iterator()));
+        for (int from : new int[]{-1, 0, 2_500, 4_999, 5_000}) {
+            assertEquals(new ArrayList<>(expected.tailSet(from, true)), toList(set.iteratorFrom(from, true)), "from " + from);
+            assertEquals(new ArrayList<>(expected.tailSet(from, false)), toList(set.iteratorFrom(from, false)), "after " + from);
+        }
+    }
+
+    @Test
+    void whenChangingSetThenEarlierVersionsAreUnchanged() {
+        PersistentSortedSet<String> first = new PersistentSortedSet<String>(Comparator.naturalOrder()).add("b").add("a");
+        PersistentSortedSet<String> second = first.remove("a").add("c");
+
+        assertEquals(List.of("a", "b"), toList(first.iterator()));
+        assertEquals(List.of("b", "c"), toList(second.iterator()));
+        assertSame(second, second.remove("x"));
+    }
+
+    private static <E> List<E> toList(Iterator<E> iterator) {
+        List<E> elements = new ArrayList<>();
+        iterator.forEachRemaining(elements::add);
+        return elements;
+    }
+}
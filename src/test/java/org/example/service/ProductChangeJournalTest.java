@@ -0,0 +1,59 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductChange;
+import org.example.entities.ProductRecord;
+import org.junit.jupiter.api.Test;
+import java.time.Instant;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ProductChangeJournalTest {
+
+    @Test
+    void whenReadingSinceSequenceThenFollowingChangesComeInOrderWhileKept() {
+        ProductChangeJournal journal = new ProductChangeJournal(3);
+        for (int id = 1; id <= 4; id++) {
+            assertEquals(id, journal.append(product(id)));
+        }
+
+        assertEquals(List.of(new ProductChange(2, product(2)), new ProductChange(3, product(3))), journal.since(1, 2));
+        assertEquals(List.of(new ProductChange(4, product(4))), journal.since(3, 10));
+        assertEquals(List.of(), journal.since(4, 10));
+        // Change 1 was overwritten, and sequence 5 is ahead of the journal
+        assertNull(journal.since(0, 10));
+        assertNull(journal.since(5, 10));
+        assertThrows(IllegalArgumentException.class, () -> journal.since(1, 0));
+    }
+
+    @Test
+    void whenAwaitingChangeThenAppendOrCloseReleasesWaiter() throws InterruptedException {
+        ProductChangeJournal journal = new ProductChangeJournal(10);
+        assertFalse(journal.await(0, 1));
+
+        Thread.ofVirtual().start(() -> journal.append(product(1)));
+        assertTrue(journal.await(0, 10_000));
+
+        Thread.ofVirtual().start(journal::close);
+        assertFalse(journal.await(1, 10_000));
+        assertTrue(journal.isClosed());
+    }
+
+    @Test
+    void whenChangingProductsThenServiceJournalsEveryNewState() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.ofEpochMilli(0));
+        warehouseService.updateProduct(1, "Better book", Category.BOOKS, 6);
+        warehouseService.addProducts(List.of(new ProductRecord(2, "Toy", Category.TOYS, 3, Instant.ofEpochMilli(0), null)));
+
+        List<ProductChange> changes = warehouseService.getChangeJournal().since(0, 10);
+
+        assertEquals(List.of(1L, 2L, 3L), changes.stream().map(ProductChange::sequence).toList());
+        assertEquals(List.of("Book", "Better book", "Toy"), changes.stream().map(change -> change.product().name()).toList());
+    }
+
+    private static ProductRecord product(int id) {
+        return new ProductRecord(id, "Product " + id, Category.BOOKS, 5, Instant.ofEpochMilli(0), Instant.ofEpochMilli(0));
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ProductSearchTest {
+    private static final String[] WORDS = {"Apple", "Apricot", "Banana", "Blue", "Cotton", "Ärm"};
+    private static final Category[] CATEGORIES = Category.values();
+    private static final ProductField[] FIELDS = ProductField.values();
+
+    Warehouse warehouse;
+
+    @TempDir
+    Path storeDirectory;
+
+    @AfterEach
+    public void tearDown() {
+        warehouse.close();
+    }
+
+    private void fill(StoreType storeType) throws IOException {
+        warehouse = storeType == StoreType.MAPPED
+                ? new Warehouse(MappedProductStore.open(storeDirectory, Clock.systemDefaultZone()))
+                : new Warehouse(storeType, Clock.systemDefaultZone());
+        Random random = new Random(1);
+        for (int id = 1; id <= 3000; id++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(100);
+            warehouse.addProduct(id, name, CATEGORIES[random.nextInt(CATEGORIES.length)], 1 + random.nextInt(10), Instant.ofEpochMilli(random.nextInt(1_000_000) * 1000L));
+        }
+        for (int id = 1; id <= 3000; id += 5) {
+            warehouse.updateProduct(id, WORDS[id % WORDS.length] + " " + id, CATEGORIES[id % CATEGORIES.length], 1 + id % 10);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenSearchingRandomQueriesThenResultsMatchFilteringAndSortingEveryProduct(StoreType storeType) throws IOException {
+        fill(storeType);
+        List<ProductRecord> products = warehouse.getAllProducts();
+        Random random = new Random(2);
+        for (int i = 0; i < 300; i++) {
+            ProductQuery query = randomQuery(random);
+
+            List<ProductRecord> expected = products.stream().filter(query::matches).sorted(query.comparator()).limit(query.limit()).toList();
+
+            assertEquals(expected, warehouse.search(query).products(), query::toString);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenPlanningThenMostSelectiveAccessPathIsChosen(StoreType storeType) throws IOException {
+        fill(storeType);
+
+        assertEquals(ProductSearch.AccessPath.ID_LOOKUP, plan(new ProductQuery(Set.of(5, 6), Set.of(Category.BOOKS), 1, 10, null, null, null, null, null, null, List.of(), 10)).accessPath());
+        assertEquals(new ProductSearch.Plan(ProductSearch.AccessPath.CATEGORY, warehouse.getNumberOfProductsInCategory(Category.TOYS), true),
+                plan(new ProductQuery(null, Set.of(Category.TOYS), 1, 10, null, null, null, null, null, null, List.of(new ProductQuery.SortKey(ProductField.NAME, false)), 10)));
+        assertEquals(ProductSearch.AccessPath.CATEGORY, plan(new ProductQuery(null, null, 1, 10, null, null, null, null, "Ban", null, List.of(), 10)).accessPath());
+        ProductSearch.Plan createdPlan = plan(new ProductQuery(null, Set.of(Category.TOYS), 1, 10, Instant.ofEpochMilli(0), Instant.ofEpochMilli(10_000_000), null, null, null, null, List.of(), 10));
+        assertEquals(ProductSearch.AccessPath.CREATED_DATE, createdPlan.accessPath());
+        assertEquals(warehouse.getAllProducts().stream().filter(product -> product.createdDate().toEpochMilli() < 10_000_000).count(), createdPlan.estimatedProducts());
+        assertEquals(new ProductSearch.Plan(ProductSearch.AccessPath.TEXT, 1, true),
+                plan(new ProductQuery(null, Set.of(Category.TOYS), 1, 10, null, null, null, null, null, "blue 2996", List.of(), 10)));
+        assertEquals(new ProductSearch.Plan(ProductSearch.AccessPath.FULL_SCAN, 3000, true), plan(ProductQuery.all(10)));
+    }
+
+    private ProductSearch.Plan plan(ProductQuery query) {
+        return warehouse.search(query).plan();
+    }
+
+    private static ProductQuery randomQuery(Random random) {
+        Set<Integer> ids = null;
+        if (random.nextInt(6) == 0) {
+            ids = new HashSet<>();
+            for (int i = random.nextInt(20); i >= 0; i--) {
+                ids.add(1 + random.nextInt(3100));
+            }
+        }
+        Set<Category> categories = null;
+        if (random.nextBoolean()) {
+            categories = EnumSet.noneOf(Category.class);
+            for (int i = random.nextInt(3); i >= 0; i--) {
+                categories.add(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            }
+        }
+        int minRating = random.nextInt(3) == 0 ? 1 + random.nextInt(10) : 1;
+        int maxRating = random.nextInt(3) == 0 ? minRating + random.nextInt(11 - minRating) : 10;
+        Instant createdFrom = random.nextInt(3) == 0 ? Instant.ofEpochMilli(random.nextInt(1_000_000) * 1000L) : null;
+        Instant createdTo = random.nextInt(3) == 0 ? Instant.ofEpochMilli(random.nextInt(1_000_000) * 1000L) : null;
+        Instant modifiedFrom = random.nextInt(8) == 0 ? Instant.ofEpochMilli(random.nextInt(1_000_000) * 1000L) : null;
+        String namePrefix = random.nextInt(3) == 0 ? WORDS[random.nextInt(WORDS.length)].substring(0, 1 + random.nextInt(3)) : null;
+        String text = switch (random.nextInt(6)) {
+            case 0 -> WORDS[random.nextInt(WORDS.length)].toLowerCase();
+            case 1 -> WORDS[random.nextInt(WORDS.length)].toUpperCase() + ", " + random.nextInt(100);
+            case 2 -> String.valueOf(random.nextInt(3000));
+            default -> null;
+        };
+        List<ProductQuery.SortKey> sort = new ArrayList<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            sort.add(new ProductQuery.SortKey(FIELDS[random.nextInt(FIELDS.length)], random.nextBoolean()));
+        }
+        int limit = random.nextBoolean() ? 1 + random.nextInt(20) : 5000;
+        return new ProductQuery(ids, categories, minRating, maxRating, createdFrom, createdTo, modifiedFrom, null, namePrefix, text, sort, limit);
+    }
+}
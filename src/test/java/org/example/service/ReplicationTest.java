@@ -0,0 +1,171 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductRecord;
+import org.example.exceptionmapper.IllegalArgumentExceptionMapper;
+import org.example.exceptionmapper.ProductNotFoundExceptionMapper;
+import org.example.exceptionmapper.ProductVersionConflictExceptionMapper;
+import org.example.exceptionmapper.ReplicaLagExceptionMapper;
+import org.example.exceptionmapper.ServiceOverloadedExceptionMapper;
+import org.example.filters.ReplicationFilter;
+import org.example.resource.CatalogRouter;
+import org.example.resource.ProductFormatProvider;
+import org.example.resource.ProductResource;
+import org.example.resource.ReplicationResource;
+import org.example.resource.RequestExecutor;
+import org.example.resource.ResponseCache;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ReplicationTest {
+    private static final Instant CREATED = Instant.parse("2024-06-15T12:00:00Z");
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void whenPrimaryChangesThenReplicasServeTheSameCatalogWithTheSameVersions() throws Exception {
+        WarehouseService primary = new WarehouseService(LockMode.READ_WRITE);
+        for (int id = 1; id <= 20; id++) {
+            primary.addProduct(id, "Product " + id, Category.values()[id % Category.values().length], 1 + id % 10, CREATED);
+        }
+        primary.updateProduct(3, "Renamed", Category.BOOKS, 7);
+        primary.deleteProduct(4, null);
+        primary.deleteProduct(5, null);
+        try (EmbeddedNode primaryNode = node(primary, 1000);
+             WarehouseService early = new WarehouseService(LockMode.READ_WRITE);
+             WarehouseService late = new WarehouseService(LockMode.READ_WRITE)) {
+            early.followPrimary(primaryNode.uri(), 100);
+            awaitCaughtUp(primary, early);
+
+            // Comes back under a removed ID, so its version follows the one the removal left
+            primary.addProduct(4, "Back again", Category.TOYS, 3, CREATED);
+            primary.patchProduct(6, "Patched", null, 9, null);
+            primary.deleteProduct(7, null);
+            primary.addProducts(List.of(new ProductRecord(21, "Batch", Category.TOYS, 2, CREATED, null)));
+            late.followPrimary(primaryNode.uri(), 100);
+
+            for (WarehouseService replica : List.of(early, late)) {
+                awaitCaughtUp(primary, replica);
+                assertEquals(primary.getAllProducts(), replica.getAllProducts());
+                for (int id = 1; id <= 22; id++) {
+                    assertEquals(primary.getProductVersion(id), replica.getProductVersion(id), "version of " + id);
+                }
+                assertEquals(primary.getChangeJournal().lastSequence(), replica.getChangeJournal().lastSequence());
+                assertEquals(0, replica.getReplica().lag());
+                assertEquals(primaryNode.uri(), replica.getReplica().primary());
+            }
+        }
+    }
+
+    @Test
+    void whenReadingFromReplicaWithMinSequenceThenWaitsForThatChangeAndWritesGoToPrimary() throws Exception {
+        WarehouseService primary = new WarehouseService(LockMode.READ_WRITE);
+        primary.addProduct(1, "Book", Category.BOOKS, 5, CREATED);
+        try (EmbeddedNode primaryNode = node(primary, 1000);
+             WarehouseService replica = new WarehouseService(LockMode.READ_WRITE)) {
+            replica.followPrimary(primaryNode.uri(), 100);
+            try (EmbeddedNode replicaNode = node(replica, 200)) {
+                awaitCaughtUp(primary, replica);
+                long ahead = primary.getChangeJournal().lastSequence() + 1;
+                HttpResponse<String> behind = get(replicaNode.uri().resolve("products/1?min-sequence=" + ahead));
+                assertEquals(503, behind.statusCode());
+                assertTrue(behind.headers().firstValue("Retry-After").isPresent());
+
+                primary.updateProduct(1, "Updated book", Category.BOOKS, 6);
+                HttpResponse<String> caughtUp = get(replicaNode.uri().resolve("products/1?min-sequence=" + ahead));
+                assertEquals(200, caughtUp.statusCode());
+                assertTrue(caughtUp.body().contains("Updated book"), caughtUp.body());
+                assertEquals(ahead, Long.parseLong(caughtUp.headers().firstValue(ReplicaFollower.SEQUENCE_HEADER).orElseThrow()));
+                assertEquals(400, get(replicaNode.uri().resolve("products/1?min-sequence=soon")).statusCode());
+
+                HttpResponse<String> write = client.send(HttpRequest.newBuilder(replicaNode.uri().resolve("products?source=import"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"id\":2,\"name\":\"Kite\",\"category\":\"TOYS\",\"rating\":4}"))
+                        .build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(307, write.statusCode());
+                assertEquals(primaryNode.uri().resolve("products?source=import").toString(), write.headers().firstValue("Location").orElseThrow());
+                assertTrue(replica.getProductById(2).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    void whenReadWaitsForMinSequenceThenItHoldsARequestSlotAndFurtherReadsAreShed() throws Exception {
+        WarehouseService primary = new WarehouseService(LockMode.READ_WRITE);
+        primary.addProduct(1, "Book", Category.BOOKS, 5, CREATED);
+        RequestExecutor requestExecutor = new RequestExecutor(RequestExecutor.Mode.VIRTUAL_THREADS, 1, 0, 0);
+        try (EmbeddedNode primaryNode = node(primary, 1000);
+             WarehouseService replica = new WarehouseService(LockMode.READ_WRITE)) {
+            replica.followPrimary(primaryNode.uri(), 100);
+            try (EmbeddedNode replicaNode = node(replica, requestExecutor, 10_000)) {
+                awaitCaughtUp(primary, replica);
+                long ahead = primary.getChangeJournal().lastSequence() + 1;
+                CompletableFuture<HttpResponse<String>> waiting = client.sendAsync(
+                        HttpRequest.newBuilder(replicaNode.uri().resolve("products/1?min-sequence=" + ahead)).build(), HttpResponse.BodyHandlers.ofString());
+
+                // Once the waiting read holds the only slot, other reads are turned away instead of queueing behind it.
+                // A page is read rather than the product, as a cached answer would not need a slot.
+                HttpResponse<String> shed = get(replicaNode.uri().resolve("products?limit=10"));
+                for (long deadline = System.nanoTime() + 10_000_000_000L; shed.statusCode() == 200 && System.nanoTime() < deadline; ) {
+                    Thread.sleep(10);
+                    shed = get(replicaNode.uri().resolve("products?limit=10"));
+                }
+                assertEquals(503, shed.statusCode());
+                assertTrue(shed.headers().firstValue("Retry-After").isPresent());
+                assertFalse(waiting.isDone());
+
+                primary.updateProduct(1, "Updated book", Category.BOOKS, 6);
+                HttpResponse<String> caughtUp = waiting.get(10, TimeUnit.SECONDS);
+                assertEquals(200, caughtUp.statusCode());
+                assertTrue(caughtUp.body().contains("Updated book"), caughtUp.body());
+            }
+        } finally {
+            requestExecutor.close();
+        }
+    }
+
+    @Test
+    void whenChangesAreNoLongerKeptThenPrimaryAnswersGone() throws Exception {
+        WarehouseService primary = new WarehouseService(LockMode.READ_WRITE);
+        primary.addProduct(1, "Book", Category.BOOKS, 5, CREATED);
+        try (EmbeddedNode primaryNode = node(primary, 1000)) {
+            HttpResponse<String> changes = get(primaryNode.uri().resolve("replication/changes?after=0"));
+            assertEquals(200, changes.statusCode());
+            assertEquals(primary.getChangeJournal().id(), changes.headers().firstValue(ReplicaFollower.JOURNAL_HEADER).orElseThrow());
+            assertEquals("1", changes.headers().firstValue(ReplicaFollower.SEQUENCE_HEADER).orElseThrow());
+
+            assertEquals(410, get(primaryNode.uri().resolve("replication/changes?after=5")).statusCode());
+            assertEquals(400, get(primaryNode.uri().resolve("replication/changes?after=0&limit=0")).statusCode());
+        }
+    }
+
+    private HttpResponse<String> get(URI uri) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void awaitCaughtUp(WarehouseService primary, WarehouseService replica) throws InterruptedException {
+        assertTrue(replica.awaitSequence(primary.getChangeJournal().lastSequence(), 10_000), "replica caught up");
+    }
+
+    // A node serving the catalog and the replication endpoints of the service, reads with ?min-sequence waiting up to maxWaitMillis
+    private static EmbeddedNode node(WarehouseService warehouseService, long maxWaitMillis) throws IOException {
+        return node(warehouseService, new RequestExecutor(RequestExecutor.Mode.SYNCHRONOUS, 64, 0, 0), maxWaitMillis);
+    }
+
+    private static EmbeddedNode node(WarehouseService warehouseService, RequestExecutor requestExecutor, long maxWaitMillis) throws IOException {
+        return new EmbeddedNode(List.of(new ProductResource(new CatalogRouter(warehouseService, null), new ResponseCache(), requestExecutor, maxWaitMillis),
+                        new ReplicationResource(warehouseService)),
+                List.of(IllegalArgumentExceptionMapper.class, ProductNotFoundExceptionMapper.class, ProductVersionConflictExceptionMapper.class,
+                        ReplicaLagExceptionMapper.class, ServiceOverloadedExceptionMapper.class, ProductFormatProvider.class),
+                List.of(new ReplicationFilter(warehouseService)));
+    }
+}
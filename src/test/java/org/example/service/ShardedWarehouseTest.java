@@ -0,0 +1,201 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductField;
+import org.example.entities.ProductRecord;
+import org.example.exceptionmapper.IllegalArgumentExceptionMapper;
+import org.example.exceptionmapper.ProductNotFoundExceptionMapper;
+import org.example.exceptionmapper.ProductVersionConflictException;
+import org.example.exceptionmapper.ProductVersionConflictExceptionMapper;
+import org.example.resource.RequestExecutor;
+import org.example.resource.ShardResource;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ShardedWarehouseTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-06-15T12:00:00Z"), ZoneOffset.UTC);
+    // A fullwidth and an astral letter, which sort one way by char and the other by code point
+    private static final String[] NAMES = {"Apple", "Robot", "Teddy", "Chess", "Kite", "Ärmel", "zebra", "Ap\uFF21le", "Ap\uD83C\uDF4Fle"};
+
+    @Test
+    void whenHashingIdsThenShardsGetEvenSharesAndANewShardOnlyTakesIds() {
+        ShardRing ring = new ShardRing(List.of("a", "b", "c", "d"));
+        ShardRing grown = new ShardRing(List.of("a", "b", "c", "d", "e"));
+        int ids = 100_000;
+        int[] counts = new int[4];
+        int moved = 0;
+        for (int id = 1; id <= ids; id++) {
+            int shard = ring.shardOf(id);
+            counts[shard]++;
+            String owner = grown.shards().get(grown.shardOf(id));
+            if (!owner.equals(ring.shards().get(shard))) {
+                assertEquals("e", owner, "ID " + id + " moved between old shards");
+                moved++;
+            }
+        }
+
+        for (int count : counts) {
+            assertTrue(Math.abs(count - ids / 4) < ids / 4 / 5, "Uneven share " + count);
+        }
+        assertTrue(moved > ids / 5 * 0.8 && moved < ids / 5 * 1.2, "Moved " + moved);
+        assertThrows(IllegalArgumentException.class, () -> new ShardRing(List.of("a", "a")));
+    }
+
+    @Test
+    void whenShardedInProcessThenResultsAreThoseOfOneWarehouse() {
+        WarehouseService reference = newService();
+        // Row stores on the shards, so their name order must agree with the reference's persistent collections
+        try (ShardedWarehouse sharded = ShardedWarehouse.inProcess(4, shard -> newService(StoreType.COLUMNAR))) {
+            runScenario(new Random(1), reference, sharded, 3000);
+        }
+    }
+
+    @Test
+    void whenShardedOverHttpThenResultsAreThoseOfOneWarehouse() throws IOException {
+        WarehouseService reference = newService();
+        List<EmbeddedNode> nodes = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                nodes.add(shardNode(newService()));
+            }
+            try (ShardedWarehouse sharded = ShardedWarehouse.overHttp(nodes.stream().map(EmbeddedNode::uri).toList())) {
+                runScenario(new Random(2), reference, sharded, 600);
+
+                // A stale If-Match comes back as a conflict carrying the node's version of the product
+                int id = sharded.getAllProducts().get(0).id();
+                ProductVersionConflictException conflict = assertThrows(ProductVersionConflictException.class,
+                        () -> sharded.patchProduct(id, null, null, 3, Set.of(-1L)));
+                assertEquals(sharded.getProductVersion(id), conflict.getCurrentVersion());
+                assertTrue(sharded.patchProduct(id, null, null, 3, Set.of(conflict.getCurrentVersion())));
+            }
+        } finally {
+            nodes.forEach(EmbeddedNode::close);
+        }
+    }
+
+    @Test
+    void whenANodeIsDownThenCallsFail() throws IOException {
+        EmbeddedNode node = shardNode(newService());
+        URI uri = node.uri();
+        node.close();
+        try (ShardedWarehouse sharded = ShardedWarehouse.overHttp(List.of(uri))) {
+            assertThrows(UncheckedIOException.class, sharded::getAllProducts);
+        }
+    }
+
+    // Makes the same random changes to both and expects the same answers to every change and query
+    private static void runScenario(Random random, WarehouseService reference, ShardedWarehouse sharded, int products) {
+        List<ProductRecord> batch = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            int id = 1 + random.nextInt(products * 2);
+            int rating = random.nextInt(20) == 0 ? 11 : 1 + random.nextInt(10);
+            Instant created = CLOCK.instant().minus(random.nextInt(400), ChronoUnit.DAYS).minusMillis(random.nextInt(1000));
+            batch.add(new ProductRecord(id, randomName(random), Category.values()[random.nextInt(Category.values().length)], rating, created, null));
+        }
+        assertEquals(reference.addProducts(batch), sharded.addProducts(batch));
+
+        for (int i = 0; i < products / 10; i++) {
+            int id = 1 + random.nextInt(products * 2);
+            String name = randomName(random);
+            Category category = Category.values()[random.nextInt(Category.values().length)];
+            int rating = 1 + random.nextInt(10);
+            switch (random.nextInt(5)) {
+                case 0 -> assertSameOutcome(() -> { reference.addProduct(id, name, category, rating, CLOCK.instant()); return null; },
+                        () -> { sharded.addProduct(id, name, category, rating, CLOCK.instant()); return null; });
+                case 1 -> assertSameOutcome(() -> reference.updateProduct(id, name, category, rating), () -> sharded.updateProduct(id, name, category, rating));
+                case 2 -> assertSameOutcome(() -> reference.patchProduct(id, null, null, rating, Set.of(reference.getProductVersion(id))),
+                        () -> sharded.patchProduct(id, null, null, rating, Set.of(sharded.getProductVersion(id))));
+                case 3 -> assertSameOutcome(() -> reference.patchProduct(id, name, null, null, Set.of()), () -> sharded.patchProduct(id, name, null, null, Set.of()));
+                default -> assertSameOutcome(() -> reference.deleteProduct(id, null), () -> sharded.deleteProduct(id, null));
+            }
+        }
+
+        assertEquals(reference.getAllProducts(), sharded.getAllProducts());
+        int afterId = random.nextInt(products);
+        assertEquals(reference.getProductsAfterId(afterId, 50), sharded.getProductsAfterId(afterId, 50));
+        for (Category category : Category.values()) {
+            List<ProductRecord> inCategory = reference.getAllProductsByCategorySortedByProductName(category);
+            assertEquals(inCategory, sharded.getAllProductsByCategorySortedByProductName(category));
+            List<ProductRecord> paged = new ArrayList<>();
+            for (List<ProductRecord> page = sharded.getProductsByCategorySortedByProductNameAfterId(category, 0, 25); !page.isEmpty();
+                 page = sharded.getProductsByCategorySortedByProductNameAfterId(category, page.get(page.size() - 1).id(), 25)) {
+                paged.addAll(page);
+            }
+            assertEquals(inCategory, paged);
+            assertEquals(reference.getNumberOfProductsInCategory(category), sharded.getNumberOfProductsInCategory(category));
+        }
+        Instant date = CLOCK.instant().minus(100, ChronoUnit.DAYS);
+        assertEquals(reference.getAllProductsCreatedAfterASpecificDate(date), sharded.getAllProductsCreatedAfterASpecificDate(date));
+        assertEquals(reference.getAllProductsThatHasBeenModifiedSinceCreation(), sharded.getAllProductsThatHasBeenModifiedSinceCreation());
+        assertEquals(reference.getAllCategoriesThatHasAtLeastOneProduct(), sharded.getAllCategoriesThatHasAtLeastOneProduct());
+        assertEquals(reference.getNumberOfProductsStartingWithEachLetter(), sharded.getNumberOfProductsStartingWithEachLetter());
+        for (YearMonth month : List.of(YearMonth.of(2024, 6), YearMonth.of(2024, 1))) {
+            assertEquals(reference.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(month), sharded.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(month));
+        }
+        for (ProductQuery query : List.of(ProductQuery.all(40),
+                new ProductQuery(null, Set.of(Category.TOYS), 1, 10, null, null, null, null, null, null,
+                        List.of(new ProductQuery.SortKey(ProductField.NAME, true)), 30),
+                new ProductQuery(null, null, 5, 10, date, null, null, null, null, "robot",
+                        List.of(new ProductQuery.SortKey(ProductField.RATING, true), new ProductQuery.SortKey(ProductField.CREATED_DATE, false)), 25),
+                new ProductQuery(null, null, 1, 10, null, null, null, null, "Ap", null, List.of(), 1000))) {
+            assertEquals(reference.search(query).products(), sharded.search(query).products());
+        }
+        // Every shard lists all of its words when asked for more than there are, so the counts add up exactly
+        assertEquals(reference.suggest("", 1000), sharded.suggest("", 1000));
+        long version = sharded.getVersion();
+        long categoryVersion = sharded.getCategoryVersion(Category.TOYS);
+        sharded.addProduct(products * 2 + 1, "Kite", Category.TOYS, 5, CLOCK.instant());
+        assertTrue(sharded.getVersion() > version);
+        assertTrue(sharded.getCategoryVersion(Category.TOYS) > categoryVersion);
+    }
+
+    private static void assertSameOutcome(Supplier<Object> expected, Supplier<Object> actual) {
+        assertEquals(outcome(expected), outcome(actual));
+    }
+
+    private static Object outcome(Supplier<Object> change) {
+        try {
+            return change.get();
+        } catch (IllegalArgumentException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        } catch (ProductVersionConflictException e) {
+            // Versions are sequences of the node holding the product, which differ between one warehouse and shards
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    private static WarehouseService newService() {
+        return newService(StoreType.PERSISTENT);
+    }
+
+    private static WarehouseService newService(StoreType storeType) {
+        return new WarehouseService(LockMode.READ_WRITE, storeType, WriteMode.LOCKED, CLOCK);
+    }
+
+    private static String randomName(Random random) {
+        return random.nextInt(10) == 0 ? "" : NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(20);
+    }
+
+    // A node serving ShardResource on a local port: the JDK's HTTP server hands every exchange to RESTEasy's mock
+    // dispatcher, standing in for a WildFly instance
+    // A node serving this service as a shard over HTTP
+    private static EmbeddedNode shardNode(WarehouseService warehouseService) throws IOException {
+        return new EmbeddedNode(List.of(new ShardResource(warehouseService, new RequestExecutor(RequestExecutor.Mode.SYNCHRONOUS, 64, 0, 0))),
+                List.of(IllegalArgumentExceptionMapper.class, ProductNotFoundExceptionMapper.class, ProductVersionConflictExceptionMapper.class),
+                List.of());
+    }
+}
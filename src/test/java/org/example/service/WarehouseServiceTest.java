@@ -0,0 +1,264 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductChange;
+import org.example.entities.ProductRecord;
+import org.example.exceptionmapper.ProductVersionConflictException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class WarehouseServiceTest {
+
+    private static final int THREADS = 8;
+    private static final int PRODUCTS_PER_THREAD = 2_000;
+
+    @ParameterizedTest
+    @EnumSource(LockMode.class)
+    void whenAddingConcurrentlyThenNoProductIsLost(LockMode lockMode) throws Exception {
+        WarehouseService warehouseService = new WarehouseService(lockMode);
+
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < PRODUCTS_PER_THREAD; i++) {
+                int id = thread * PRODUCTS_PER_THREAD + i + 1;
+                warehouseService.addProduct(id, "Product " + id, Category.BOOKS, 5, Instant.now());
+            }
+        });
+
+        assertEquals(THREADS * PRODUCTS_PER_THREAD, warehouseService.getAllProducts().size());
+        assertEquals(THREADS * PRODUCTS_PER_THREAD, warehouseService.getNumberOfProductsInCategory(Category.BOOKS));
+        for (int id = 1; id <= THREADS * PRODUCTS_PER_THREAD; id++) {
+            assertTrue(warehouseService.getProductById(id).isPresent(), "Missing product " + id);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(LockMode.class)
+    void whenUpdatingWhileReadingThenRecordsAreNeverTorn(LockMode lockMode) throws Exception {
+        assertRecordsAreNeverTorn(new WarehouseService(lockMode, StoreType.PERSISTENT));
+    }
+
+    // The columnar store changes in place, so its reads must take the lock even in snapshot mode
+    @Test
+    void whenUpdatingColumnarStoreWhileReadingThenRecordsAreNeverTorn() throws Exception {
+        assertRecordsAreNeverTorn(new WarehouseService(LockMode.SNAPSHOT, StoreType.COLUMNAR));
+    }
+
+    private static void assertRecordsAreNeverTorn(WarehouseService warehouseService) throws Exception {
+        int products = 100;
+        for (int id = 1; id <= products; id++) {
+            warehouseService.addProduct(id, nameFor(1), categoryFor(1), 1, Instant.now());
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<String> tornRecords = new ArrayList<>();
+
+        // Writers always change name, category and rating together, readers check they belong together
+        runConcurrently(THREADS, thread -> {
+            if (thread < THREADS / 2) {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        int rating = 1 + (thread + i) % 10;
+                        warehouseService.updateProduct(1 + i % products, nameFor(rating), categoryFor(rating), rating);
+                    }
+                } finally {
+                    writing.set(false);
+                }
+            } else {
+                while (writing.get()) {
+                    for (ProductRecord product : warehouseService.getAllProducts()) {
+                        if (!product.name().equals(nameFor(product.rating())) || product.category() != categoryFor(product.rating())) {
+                            synchronized (tornRecords) {
+                                tornRecords.add(product.toString());
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        assertTrue(tornRecords.isEmpty(), () -> "Torn records: " + tornRecords);
+        assertEquals(products, warehouseService.getAllProducts().size());
+    }
+
+    @Test
+    void whenMovingProductBetweenCategoriesThenBothCategoryVersionsChange() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        long version = warehouseService.getVersion();
+        long books = warehouseService.getCategoryVersion(Category.BOOKS);
+        long toys = warehouseService.getCategoryVersion(Category.TOYS);
+        long clothing = warehouseService.getCategoryVersion(Category.CLOTHING);
+
+        warehouseService.updateProduct(1, "Toy", Category.TOYS, 5);
+        warehouseService.updateProduct(2, "Missing", Category.CLOTHING, 5);
+
+        assertTrue(warehouseService.getVersion() > version);
+        assertTrue(warehouseService.getCategoryVersion(Category.BOOKS) > books);
+        assertTrue(warehouseService.getCategoryVersion(Category.TOYS) > toys);
+        assertEquals(clothing, warehouseService.getCategoryVersion(Category.CLOTHING));
+    }
+
+    @ParameterizedTest
+    @EnumSource(WriteMode.class)
+    void whenChangingProductsThenOnlyTheirOwnVersionsChangeAndStaleVersionsAreRefused(WriteMode writeMode) {
+        WarehouseService warehouseService = new WarehouseService(LockMode.SNAPSHOT, StoreType.PERSISTENT, writeMode);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        warehouseService.addProduct(2, "Robot", Category.TOYS, 7, Instant.now());
+        long book = warehouseService.getProductVersion(1);
+        long robot = warehouseService.getProductVersion(2);
+        // Each add is a change of its own, not a version shared with every other added product
+        assertNotEquals(book, robot);
+        assertNotEquals(warehouseService.getProductVersion(3), book);
+
+        assertTrue(warehouseService.patchProduct(1, null, null, 9, Set.of(book)));
+        long patched = warehouseService.getProductVersion(1);
+        // An empty patch changes nothing, so it keeps the version
+        assertTrue(warehouseService.patchProduct(1, null, null, null, null));
+
+        assertNotEquals(book, patched);
+        assertEquals(patched, warehouseService.getProductVersion(1));
+        assertEquals(robot, warehouseService.getProductVersion(2));
+        ProductVersionConflictException conflict = assertThrows(ProductVersionConflictException.class,
+                () -> warehouseService.deleteProduct(1, Set.of(book)));
+        assertEquals(patched, conflict.getCurrentVersion());
+        assertEquals(9, warehouseService.getProductById(1).orElseThrow().rating());
+        assertFalse(warehouseService.patchProduct(3, "Missing", null, null, null));
+
+        assertTrue(warehouseService.deleteProduct(1, Set.of(patched)));
+        assertFalse(warehouseService.deleteProduct(1, null));
+        assertTrue(warehouseService.getProductById(1).isEmpty());
+        assertNotEquals(patched, warehouseService.getProductVersion(1));
+        List<ProductChange> changes = warehouseService.getChangeJournal().since(0, 10);
+        assertEquals(List.of(false, false, false, true), changes.stream().map(ProductChange::removed).toList());
+        assertEquals(warehouseService.getProductVersion(1), changes.get(3).sequence());
+        // Added again under the same ID, the product must not look like the one that was deleted
+        long deleted = warehouseService.getProductVersion(1);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        assertNotEquals(deleted, warehouseService.getProductVersion(1));
+        assertEquals(1, warehouseService.getNumberOfProductsInCategory(Category.BOOKS));
+        warehouseService.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = StoreType.class, names = {"PERSISTENT", "COLUMNAR"})
+    void whenWritingConcurrentlyThroughQueueThenEveryChangeIsAppliedInOrderPerWriter(StoreType storeType) throws Exception {
+        WarehouseService warehouseService = new WarehouseService(LockMode.SNAPSHOT, storeType, WriteMode.QUEUED);
+
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < PRODUCTS_PER_THREAD; i++) {
+                int id = thread * PRODUCTS_PER_THREAD + i + 1;
+                warehouseService.addProductAsync(id, "Product " + id, Category.BOOKS, 5, Instant.now());
+                // Queued behind the add of the same writer, so it always finds the product
+                assertTrue(warehouseService.updateProduct(id, "Renamed " + id, Category.TOYS, 6));
+            }
+        });
+
+        assertEquals(THREADS * PRODUCTS_PER_THREAD, warehouseService.getNumberOfProductsInCategory(Category.TOYS));
+        assertEquals(0, warehouseService.getNumberOfProductsInCategory(Category.BOOKS));
+        assertEquals("Renamed 1", warehouseService.getProductById(1).orElseThrow().name());
+        assertEquals(2L * THREADS * PRODUCTS_PER_THREAD, warehouseService.getChangeJournal().lastSequence());
+        warehouseService.close();
+    }
+
+    @Test
+    void whenJournalWakesReaderForQueuedChangeThenChangeAndItsVersionAreVisible() throws Exception {
+        WarehouseService warehouseService = new WarehouseService(LockMode.SNAPSHOT, StoreType.PERSISTENT, WriteMode.QUEUED);
+        int count = 2000;
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+            try {
+                for (int sequence = 1; sequence <= 2 * count; sequence++) {
+                    assertTrue(warehouseService.awaitSequence(sequence, 10_000));
+                    int id = sequence <= count ? sequence : sequence - count;
+                    ProductRecord product = warehouseService.getProductById(id).orElseThrow();
+                    if (sequence > count) {
+                        assertEquals("Renamed " + id, product.name());
+                        assertEquals(sequence, warehouseService.getProductVersion(id));
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // Queued one after another from one writer, so the adds get sequences 1 to count and the renames the ones after
+        for (int id = 1; id <= count; id++) {
+            warehouseService.addProductAsync(id, "Product " + id, Category.BOOKS, 5, Instant.now());
+        }
+        List<CompletableFuture<Boolean>> renames = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            renames.add(warehouseService.updateProductAsync(id, "Renamed " + id, Category.BOOKS, 5));
+        }
+        renames.forEach(CompletableFuture::join);
+
+        reader.get(30, TimeUnit.SECONDS);
+        warehouseService.close();
+    }
+
+    @Test
+    void whenQueuedChangeIsRejectedThenCallerGetsTheExceptionAndOthersInTheBatchApply() {
+        WarehouseService warehouseService = new WarehouseService(LockMode.READ_WRITE, StoreType.PERSISTENT, WriteMode.QUEUED);
+        warehouseService.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        long toys = warehouseService.getCategoryVersion(Category.TOYS);
+
+        CompletableFuture<Void> duplicate = warehouseService.addProductAsync(1, "Again", Category.BOOKS, 5, Instant.now());
+        CompletableFuture<Boolean> missing = warehouseService.updateProductAsync(2, "Missing", Category.TOYS, 5);
+        CompletableFuture<Boolean> moved = warehouseService.updateProductAsync(1, "Toy", Category.TOYS, 5);
+
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(CompletionException.class, duplicate::join).getCause());
+        assertFalse(missing.join());
+        assertTrue(moved.join());
+        assertThrows(IllegalArgumentException.class, () -> warehouseService.updateProduct(1, "", Category.TOYS, 5));
+        assertEquals("Toy", warehouseService.getProductById(1).orElseThrow().name());
+        assertTrue(warehouseService.getCategoryVersion(Category.TOYS) > toys);
+        warehouseService.close();
+        assertThrows(IllegalStateException.class, () -> warehouseService.addProductAsync(3, "Late", Category.BOOKS, 5, Instant.now()));
+    }
+
+    private static String nameFor(int rating) {
+        return "Rated " + rating;
+    }
+
+    private static Category categoryFor(int rating) {
+        return Category.values()[rating % Category.values().length];
+    }
+
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(int threads, ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int current = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    body.run(current);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package org.example.service;
+
+import org.example.entities.Category;
+import org.example.entities.ProductImportError;
+import org.example.entities.ProductRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.provider.EnumSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class WarehouseTest {
+
+    Warehouse warehouse;
+
+    @TempDir
+    Path storeDirectory;
+
+    @BeforeEach
+    public void setUp() {
+        warehouse = new Warehouse();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        warehouse.close();
+    }
+
+    private void useStore(StoreType storeType) throws IOException {
+        useStore(storeType, Clock.systemDefaultZone());
+    }
+
+    private void useStore(StoreType storeType, Clock clock) throws IOException {
+        warehouse = storeType == StoreType.MAPPED
+                ? new Warehouse(MappedProductStore.open(storeDirectory, clock), clock)
+                : new Warehouse(storeType, clock);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenAddingManyProductsThenEachCanBeFoundById(StoreType storeType) throws IOException {
+        useStore(storeType);
+        for (int id = 1; id <= 10_000; id++) {
+            warehouse.addProduct(id, "Product " + id, Category.BOOKS, 1 + id % 10, Instant.now());
+        }
+
+        assertEquals(10_000, warehouse.getAllProducts().size());
+        for (int id = 1; id <= 10_000; id++) {
+            Optional<ProductRecord> product = warehouse.getProductById(id);
+            assertTrue(product.isPresent());
+            assertEquals("Product " + id, product.get().name());
+        }
+        assertTrue(warehouse.getProductById(10_001).isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenAddingProductWithExistingIdThenShouldThrow(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(1, "First", Category.BOOKS, 5, Instant.now());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> warehouse.addProduct(1, "Second", Category.TOYS, 5, Instant.now()));
+        assertEquals("First", warehouse.getProductById(1).orElseThrow().name());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenUpdatingProductThenLookupReturnsNewValues(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(7, "Old", Category.BOOKS, 5, Instant.now());
+
+        assertTrue(warehouse.updateProduct(7, "New", Category.TOYS, 9));
+        assertFalse(warehouse.updateProduct(8, "Missing", Category.TOYS, 9));
+
+        ProductRecord product = warehouse.getProductById(7).orElseThrow();
+        assertEquals("New", product.name());
+        assertEquals(Category.TOYS, product.category());
+        assertEquals(9, product.rating());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenUpdatingThenModifiedDateComesFromTheClockInWholeMillis(StoreType storeType) throws IOException {
+        Instant now = Instant.parse("2024-05-20T12:00:00.123456789Z");
+        useStore(storeType, Clock.fixed(now, ZoneId.of("UTC")));
+        warehouse.addProduct(7, "Old", Category.BOOKS, 5, Instant.parse("2024-05-01T00:00:00.000999Z"));
+
+        warehouse.updateProduct(7, "New", Category.TOYS, 9);
+
+        ProductRecord product = warehouse.getProductById(7).orElseThrow();
+        assertEquals(Instant.parse("2024-05-01T00:00:00Z"), product.createdDate());
+        assertEquals(Instant.parse("2024-05-20T12:00:00.123Z"), product.modifiedDate());
+        assertThrows(IllegalArgumentException.class, () -> warehouse.validateCreatedDate(now.plusMillis(1)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenPatchingThenOnlyGivenFieldsChangeAndAnEmptyPatchChangesNothing(StoreType storeType) throws IOException {
+        Instant now = Instant.parse("2024-05-20T12:00:00Z");
+        useStore(storeType, Clock.fixed(now, ZoneId.of("UTC")));
+        warehouse.addProduct(7, "Old", Category.BOOKS, 5, Instant.parse("2024-05-01T00:00:00Z"));
+        ProductRecord added = warehouse.getProductById(7).orElseThrow();
+
+        assertEquals(added, warehouse.patchProduct(7, null, null, null).orElseThrow());
+        assertEquals(added, warehouse.patchProduct(7, "Old", Category.BOOKS, 5).orElseThrow());
+        ProductRecord patched = warehouse.patchProduct(7, null, null, 9).orElseThrow();
+
+        assertEquals(new ProductRecord(7, "Old", Category.BOOKS, 9, added.createdDate(), now), patched);
+        assertEquals(patched, warehouse.getProductById(7).orElseThrow());
+        assertTrue(warehouse.patchProduct(8, "Missing", null, null).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> warehouse.patchProduct(7, " ", null, null));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.patchProduct(7, null, null, 11));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenRemovingRandomProductsThenEveryIndexForgetsThem(StoreType storeType) throws IOException {
+        useStore(storeType);
+        Random random = new Random(5);
+        TreeMap<Integer, ProductRecord> expected = new TreeMap<>();
+        for (int i = 0; i < 6000; i++) {
+            int id = 1 + random.nextInt(2000);
+            if (expected.containsKey(id) && random.nextInt(3) > 0) {
+                assertEquals(expected.remove(id), warehouse.removeProduct(id).orElseThrow());
+            } else if (!expected.containsKey(id)) {
+                warehouse.addProduct(id, (random.nextBoolean() ? "Äpple " : "Bok ") + random.nextInt(100), Category.values()[id % 4], 10,
+                        Instant.ofEpochMilli(random.nextInt(1000) * 1000L));
+                expected.put(id, warehouse.getProductById(id).orElseThrow());
+            }
+        }
+
+        assertTrue(warehouse.removeProduct(2001).isEmpty());
+        assertEquals(List.copyOf(expected.values()), warehouse.getAllProducts());
+        for (Category category : Category.values()) {
+            assertEquals(expected.values().stream().filter(p -> p.category() == category)
+                            .sorted(Comparator.comparing(ProductRecord::name).thenComparingInt(ProductRecord::id)).toList(),
+                    warehouse.getAllProductsByCategorySortedByProductName(category));
+        }
+        assertEquals(expected.values().stream().filter(p -> p.createdDate().isAfter(Instant.ofEpochMilli(500_000)))
+                        .sorted(Comparator.comparing(ProductRecord::createdDate).thenComparingInt(ProductRecord::id)).toList(),
+                warehouse.getAllProductsCreatedAfterASpecificDate(Instant.ofEpochMilli(500_000)));
+        assertEquals(expected.values().stream().collect(Collectors.groupingBy(p -> p.name().charAt(0), Collectors.counting())),
+                warehouse.getNumberOfProductsStartingWithEachLetter());
+        assertEquals(expected.values().stream().filter(p -> p.name().startsWith("Bok 42")).map(ProductRecord::id).toList(),
+                warehouse.search(new ProductQuery(null, null, 1, 10, null, null, null, null, null, "bok 42", List.of(), 1000)).products().stream().map(ProductRecord::id).toList());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenReadingBetweenWritesThenOrderingsFollowEveryChange(StoreType storeType) throws IOException {
+        useStore(storeType);
+        Random random = new Random(11);
+        TreeMap<Integer, ProductRecord> expected = new TreeMap<>();
+        for (int i = 0; i < 1500; i++) {
+            int id = 1 + random.nextInt(300);
+            if (!expected.containsKey(id)) {
+                warehouse.addProduct(id, "Name " + random.nextInt(50), Category.values()[random.nextInt(4)], 5,
+                        Instant.ofEpochMilli(random.nextInt(100) * 1000L));
+            } else if (random.nextBoolean()) {
+                warehouse.updateProduct(id, "Name " + random.nextInt(50), Category.values()[random.nextInt(4)], 5);
+            } else {
+                warehouse.removeProduct(id);
+                expected.remove(id);
+            }
+            warehouse.getProductById(id).ifPresent(product -> expected.put(id, product));
+
+            assertEquals(List.copyOf(expected.values()), warehouse.getAllProducts());
+            Category category = Category.values()[i % 4];
+            assertEquals(expected.values().stream().filter(p -> p.category() == category)
+                            .sorted(Comparator.comparing(ProductRecord::name).thenComparingInt(ProductRecord::id)).toList(),
+                    warehouse.getAllProductsByCategorySortedByProductName(category));
+            assertEquals(expected.values().stream().filter(p -> p.createdDate().isAfter(Instant.ofEpochMilli(50_000)))
+                            .sorted(Comparator.comparing(ProductRecord::createdDate).thenComparingInt(ProductRecord::id)).toList(),
+                    warehouse.getAllProductsCreatedAfterASpecificDate(Instant.ofEpochMilli(50_000)));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenUpdatingNameAndCategoryThenSecondaryIndexesFollow(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(1, "Banana", Category.BOOKS, 5, Instant.now());
+        warehouse.addProduct(2, "Apple", Category.BOOKS, 5, Instant.now());
+        warehouse.addProduct(3, "Cherry", Category.TOYS, 5, Instant.now());
+
+        assertEquals(List.of("Apple", "Banana"), names(warehouse.getAllProductsByCategorySortedByProductName(Category.BOOKS)));
+
+        warehouse.updateProduct(2, "Zucchini", Category.BOOKS, 5);
+        warehouse.updateProduct(3, "Avocado", Category.BOOKS, 5);
+
+        assertEquals(List.of("Avocado", "Banana", "Zucchini"), names(warehouse.getAllProductsByCategorySortedByProductName(Category.BOOKS)));
+        assertEquals(3, warehouse.getNumberOfProductsInCategory(Category.BOOKS));
+        assertEquals(0, warehouse.getNumberOfProductsInCategory(Category.TOYS));
+        assertEquals(Set.of(Category.BOOKS), warehouse.getAllCategoriesThatHasAtLeastOneProduct());
+        assertEquals(Map.of('A', 1L, 'B', 1L, 'Z', 1L), warehouse.getNumberOfProductsStartingWithEachLetter());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenNameIsTooLongToStoreThenChangeIsRejectedAndIndexesAreUntouched(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(1, "Apple", Category.BOOKS, 5, Instant.now());
+        warehouse.addProduct(2, "Banana", Category.BOOKS, 5, Instant.now());
+        // Fewer chars than the limit, but two bytes each in UTF-8
+        String tooLong = "é".repeat(40_000);
+
+        assertThrows(IllegalArgumentException.class, () -> warehouse.addProduct(3, tooLong, Category.BOOKS, 5, Instant.now()));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.updateProduct(1, tooLong, Category.TOYS, 5));
+        warehouse.updateProduct(2, "é".repeat(30_000), Category.BOOKS, 5);
+
+        assertEquals(List.of("Apple", "é".repeat(30_000)), names(warehouse.getAllProductsByCategorySortedByProductName(Category.BOOKS)));
+        assertEquals(2, warehouse.getNumberOfProductsInCategory(Category.BOOKS));
+        assertEquals(Map.of('A', 1L, 'é', 1L), warehouse.getNumberOfProductsStartingWithEachLetter());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenAddingOrUpdatingWithNullCategoryThenShouldThrow(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(1, "Apple", Category.BOOKS, 5, Instant.now());
+
+        assertThrows(IllegalArgumentException.class, () -> warehouse.addProduct(2, "Banana", null, 5, Instant.now()));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.updateProduct(1, "Apple", null, 5));
+
+        assertTrue(warehouse.getProductById(2).isEmpty());
+        assertEquals(Category.BOOKS, warehouse.getProductById(1).orElseThrow().category());
+        assertEquals(1, warehouse.getNumberOfProductsInCategory(Category.BOOKS));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenGettingAllProductsThenTheyComeInIdOrderNotTheOrderTheyWereAdded(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(30, "Cherry", Category.BOOKS, 5, Instant.now());
+        warehouse.addProduct(10, "Apple", Category.TOYS, 5, Instant.now());
+        warehouse.addProduct(20, "Banana", Category.BOOKS, 5, Instant.now());
+        warehouse.removeProduct(10);
+        warehouse.addProduct(10, "Avocado", Category.BOOKS, 5, Instant.now());
+
+        assertEquals(List.of("Avocado", "Banana", "Cherry"), names(warehouse.getAllProducts()));
+        assertEquals(warehouse.getAllProducts(), warehouse.getProductsAfterId(0, 10));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenGettingProductsCreatedAfterDateThenOnlyLaterProductsAreReturned(StoreType storeType) throws IOException {
+        useStore(storeType);
+        warehouse.addProduct(1, "Old", Category.BOOKS, 5, Instant.ofEpochMilli(1_000));
+        warehouse.addProduct(2, "Same", Category.BOOKS, 5, Instant.ofEpochMilli(2_000));
+        warehouse.addProduct(3, "New", Category.BOOKS, 5, Instant.ofEpochMilli(3_000));
+
+        assertEquals(List.of("New"), names(warehouse.getAllProductsCreatedAfterASpecificDate(Instant.ofEpochMilli(2_000))));
+        assertEquals(List.of("Same", "New"), names(warehouse.getAllProductsCreatedAfterASpecificDate(Instant.ofEpochMilli(1_500))));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenPagingThroughProductsThenEveryProductIsReturnedOnce(StoreType storeType) throws IOException {
+        useStore(storeType);
+        for (int id = 1; id <= 25; id++) {
+            warehouse.addProduct(id, "Product " + (char) ('Z' - id), id % 2 == 0 ? Category.BOOKS : Category.TOYS, 5, Instant.now());
+        }
+
+        assertEquals(List.of(11, 12, 13), warehouse.getProductsAfterId(10, 3).stream().map(ProductRecord::id).toList());
+        assertEquals(25, pageThrough(Category.BOOKS).size() + pageThrough(Category.TOYS).size());
+        assertEquals(names(warehouse.getAllProductsByCategorySortedByProductName(Category.BOOKS)), names(pageThrough(Category.BOOKS)));
+        assertThrows(IllegalArgumentException.class, () -> warehouse.getProductsAfterId(0, 0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenAddingBatchThenInvalidProductsAreSkippedAndReported(StoreType storeType) throws IOException {
+        useStore(storeType);
+        List<ProductRecord> batch = List.of(
+                new ProductRecord(1, "Valid", Category.BOOKS, 5, Instant.now(), null),
+                new ProductRecord(2, "", Category.BOOKS, 5, Instant.now(), null),
+                new ProductRecord(1, "Duplicate", Category.BOOKS, 5, Instant.now(), null),
+                new ProductRecord(3, "Future", Category.BOOKS, 5, Instant.ofEpochMilli(System.currentTimeMillis() + 60_000), null),
+                new ProductRecord(4, "No category", null, 5, Instant.now(), null));
+
+        List<ProductImportError> errors = warehouse.addProducts(batch);
+
+        assertEquals(List.of(1, 2, 3, 4), errors.stream().map(ProductImportError::index).toList());
+        assertEquals(1, warehouse.getAllProducts().size());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenRatingMovesInAndOutOfMaxThenTopRatedViewFollowsAndRollsOverWithTheMonth(StoreType storeType) throws IOException {
+        ZoneId zone = ZoneId.of("Europe/Stockholm");
+        Instant now = ZonedDateTime.of(2024, 5, 20, 12, 0, 0, 0, zone).toInstant();
+        useStore(storeType, Clock.fixed(now, zone));
+        warehouse.addProduct(1, "Start of month", Category.BOOKS, 10, ZonedDateTime.of(2024, 5, 1, 0, 0, 0, 0, zone).toInstant());
+        warehouse.addProduct(2, "Latest", Category.BOOKS, 10, now);
+        warehouse.addProduct(3, "Last month", Category.BOOKS, 10, ZonedDateTime.of(2024, 4, 30, 23, 59, 59, 0, zone).toInstant());
+        warehouse.addProduct(4, "Not max", Category.BOOKS, 9, now);
+
+        assertEquals(List.of("Latest", "Start of month"), names(warehouse.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate()));
+
+        warehouse.updateProduct(2, "Latest", Category.BOOKS, 3);
+        warehouse.updateProduct(4, "Now max", Category.BOOKS, 10);
+
+        assertEquals(List.of("Now max", "Start of month"), names(warehouse.getAllProductsWithMaxRatingCreatedThisMonthSortedByDate()));
+        assertEquals(List.of("Last month"), names(warehouse.getAllProductsWithMaxRatingCreatedInMonthSortedByDate(YearMonth.of(2024, 4))));
+    }
+
+    @Test
+    void whenChangingWarehouseThenEarlierSnapshotStillSeesItsPointInTime() {
+        warehouse.addProduct(1, "Book", Category.BOOKS, 5, Instant.now());
+        ProductStore before = warehouse.snapshot();
+
+        warehouse.updateProduct(1, "Toy", Category.TOYS, 10);
+        warehouse.addProducts(List.of(new ProductRecord(2, "Robot", Category.TOYS, 7, Instant.now(), null)));
+
+        assertEquals(List.of("Book"), names(before.getAllProducts()));
+        assertEquals(1, before.getNumberOfProductsInCategory(Category.BOOKS));
+        assertEquals(Map.of('B', 1L), before.getNumberOfProductsStartingWithEachLetter());
+        assertEquals(List.of("Toy", "Robot"), names(warehouse.snapshot().getAllProductsByCategorySortedByProductName(Category.TOYS).reversed()));
+        assertEquals(Set.of(Category.TOYS), warehouse.snapshot().getAllCategoriesThatHasAtLeastOneProduct());
+    }
+
+    @Test
+    void whenRenamingColumnarProductsManyTimesThenNamesSurviveArenaCompaction() throws IOException {
+        useStore(StoreType.COLUMNAR);
+        for (int id = 1; id <= 100; id++) {
+            warehouse.addProduct(id, "Ärm " + id, Category.CLOTHING, 5, Instant.now());
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int id = 1; id <= 100; id += 2) {
+                warehouse.updateProduct(id, "Øre " + round + " " + id, Category.CLOTHING, 5);
+            }
+        }
+
+        assertEquals("Øre 19 1", warehouse.getProductById(1).orElseThrow().name());
+        assertEquals("Ärm 2", warehouse.getProductById(2).orElseThrow().name());
+        assertEquals(Map.of('Ä', 50L, 'Ø', 50L), warehouse.getNumberOfProductsStartingWithEachLetter());
+        assertEquals("Ärm 10", warehouse.getAllProductsByCategorySortedByProductName(Category.CLOTHING).get(0).name());
+    }
+
+    @ParameterizedTest
+    @EnumSource(StoreType.class)
+    void whenScanningInParallelThenResultsMatchSequentialScan(StoreType storeType) throws IOException {
+        useStore(storeType);
+        for (int id = 1; id <= 30_000; id++) {
+            warehouse.addProduct(id, (char) ('A' + id % 26) + " product " + id, Category.values()[id % 4], id % 10 + 1, Instant.ofEpochMilli(id * 1000L));
+        }
+        for (int id = 3; id <= 30_000; id += 7) {
+            warehouse.updateProduct(id, "Updated " + id, Category.BOOKS, 5);
+        }
+        int threshold = ParallelScan.threshold();
+        List<ProductRecord> modified;
+        List<ProductRecord> all;
+        List<ProductRecord> created;
+        ParallelScan.setThreshold(Integer.MAX_VALUE);
+        try {
+            modified = warehouse.getAllProductsThatHasBeenModifiedSinceCreation();
+            all = warehouse.getAllProducts();
+            created = warehouse.getAllProductsCreatedAfterASpecificDate(Instant.ofEpochMilli(5_000_000));
+            ParallelScan.setThreshold(1);
+
+            assertEquals(4286, modified.size());
+            assertEquals(modified, warehouse.getAllProductsThatHasBeenModifiedSinceCreation());
+            assertEquals(all, warehouse.getAllProducts());
+            assertEquals(created, warehouse.getAllProductsCreatedAfterASpecificDate(Instant.ofEpochMilli(5_000_000)));
+        } finally {
+            ParallelScan.setThreshold(threshold);
+        }
+    }
+
+    @Test
+    void whenReopeningMappedStoreThenProductsAndIndexesSurvive() throws IOException {
+        useStore(StoreType.MAPPED);
+        for (int id = 1; id <= 2000; id++) {
+            warehouse.addProduct(id, (id % 2 == 0 ? "Äpple " : "Bok ") + id, Category.values()[id % 4], id % 10 + 1, Instant.ofEpochMilli(id * 1000L));
+        }
+        warehouse.updateProduct(7, "Ödla", Category.TOYS, 10);
+        List<ProductRecord> products = warehouse.getAllProducts();
+        List<ProductRecord> toys = warehouse.getAllProductsByCategorySortedByProductName(Category.TOYS);
+        Map<Character, Long> letters = warehouse.getNumberOfProductsStartingWithEachLetter();
+        warehouse.close();
+
+        int threshold = ParallelScan.threshold();
+        ParallelScan.setThreshold(1);
+        try {
+            useStore(StoreType.MAPPED);
+        } finally {
+            ParallelScan.setThreshold(threshold);
+        }
+
+        assertEquals(products, warehouse.getAllProducts());
+        assertEquals(toys, warehouse.getAllProductsByCategorySortedByProductName(Category.TOYS));
+        assertEquals(letters, warehouse.getNumberOfProductsStartingWithEachLetter());
+        assertEquals(500, warehouse.getNumberOfProductsInCategory(Category.TOYS));
+        assertEquals("Ödla", warehouse.getProductById(7).orElseThrow().name());
+        assertThrows(IllegalArgumentException.class, () -> warehouse.addProduct(2000, "Duplicate", Category.BOOKS, 1, Instant.now()));
+        warehouse.addProduct(2001, "Efter", Category.BOOKS, 1, Instant.now());
+        assertEquals(2001, warehouse.getAllProducts().size());
+    }
+
+    @Test
+    void whenReopeningMappedStoreAfterRemovalsThenRemovedProductsStayGone() throws IOException {
+        useStore(StoreType.MAPPED);
+        for (int id = 1; id <= 2000; id++) {
+            warehouse.addProduct(id, "Product " + id, Category.values()[id % 4], id % 10 + 1, Instant.ofEpochMilli(id * 1000L));
+        }
+        for (int id = 1; id <= 2000; id += 3) {
+            warehouse.removeProduct(id);
+        }
+        List<ProductRecord> products = warehouse.getAllProducts();
+        warehouse.close();
+
+        useStore(StoreType.MAPPED);
+
+        assertEquals(products, warehouse.getAllProducts());
+        assertTrue(warehouse.getProductById(1).isEmpty());
+        assertEquals("Product 2", warehouse.getProductById(2).orElseThrow().name());
+        warehouse.addProduct(1, "Back", Category.BOOKS, 1, Instant.now());
+        assertEquals("Back", warehouse.getProductById(1).orElseThrow().name());
+    }
+
+    private List<ProductRecord> pageThrough(Category category) {
+        List<ProductRecord> products = new ArrayList<>();
+        List<ProductRecord> page = warehouse.getProductsByCategorySortedByProductNameAfterId(category, 0, 4);
+        while (!page.isEmpty()) {
+            products.addAll(page);
+            page = warehouse.getProductsByCategorySortedByProductNameAfterId(category, page.get(page.size() - 1).id(), 4);
+        }
+        return products;
+    }
+
+    private static List<String> names(List<ProductRecord> products) {
+        return products.stream().map(ProductRecord::name).toList();
+    }
+}